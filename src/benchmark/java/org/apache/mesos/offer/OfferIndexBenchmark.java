@@ -0,0 +1,101 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.testutils.OfferRequirementTestUtils;
+import org.apache.mesos.testutils.ResourceTestUtils;
+import org.apache.mesos.testutils.TestConstants;
+
+import java.util.*;
+
+/**
+ * Measures the cost of evaluating an {@link OfferRequirement} against a growing number of Offers, with and without the
+ * {@link OfferIndex}.  Only the last Offer fits.  Unindexed evaluation therefore builds a {@link MesosResourcePool}
+ * for every Offer and fully evaluates it, as the evaluator did before Offers were indexed or prefiltered.  The index
+ * only yields the last Offer as a candidate.  Timings depend on the machine, so this is run with
+ * {@code gradle offerIndexBenchmark} rather than as part of the unit tests.
+ *
+ * Each measurement is the median of {@link #RUNS} runs, after {@link #WARMUP_RUNS} runs which are discarded.
+ */
+public final class OfferIndexBenchmark {
+    private static final List<Integer> OFFER_COUNTS = Arrays.asList(10, 100, 1000, 10000);
+    private static final int WARMUP_RUNS = 20;
+    private static final int RUNS = 50;
+
+    private OfferIndexBenchmark() {
+        // do not instantiate
+    }
+
+    public static void main(String[] args) throws InvalidRequirementException {
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(
+                Arrays.asList(ResourceTestUtils.getDesiredCpu(8.0), ResourceTestUtils.getDesiredMem(1024)));
+
+        System.out.println(String.format("%8s %14s %14s %14s %10s",
+                "offers", "unindexed(us)", "indexed(us)", "lookup(us)", "candidates"));
+        for (int offerCount : OFFER_COUNTS) {
+            List<Offer> offers = getOffers(offerCount);
+            OfferIndex index = new OfferIndex(offers);
+
+            long unindexedNanos = median(() -> evaluateUnindexed(offerRequirement, offers));
+            long indexedNanos = median(() -> new OfferEvaluator().evaluate(offerRequirement, new OfferIndex(offers)));
+            long lookupNanos = median(() -> index.getCandidates(offerRequirement));
+
+            System.out.println(String.format("%8d %14d %14d %14d %10d",
+                    offerCount,
+                    unindexedNanos / 1000,
+                    indexedNanos / 1000,
+                    lookupNanos / 1000,
+                    index.getCandidates(offerRequirement).size()));
+        }
+    }
+
+    /**
+     * Builds a pool for every Offer in turn and fully evaluates it until one fits, as the evaluator did before Offers
+     * were indexed.  Neither the {@link OfferNeeds} prefilter nor the {@link UnfitOfferCache} is consulted.
+     */
+    private static List<OfferRecommendation> evaluateUnindexed(OfferRequirement offerRequirement, List<Offer> offers) {
+        OfferEvaluator evaluator = new OfferEvaluator();
+        for (Offer offer : offers) {
+            List<OfferRecommendation> recommendations =
+                    evaluator.evaluate(offerRequirement, offer, new MesosResourcePool(offer));
+            if (!recommendations.isEmpty()) {
+                return recommendations;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static long median(Runnable runnable) {
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            runnable.run();
+        }
+
+        long[] nanos = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            runnable.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[RUNS / 2];
+    }
+
+    private static List<Offer> getOffers(int offerCount) {
+        List<Offer> offers = new ArrayList<>(offerCount);
+        for (int i = 0; i < offerCount; i++) {
+            double cpus = (i == offerCount - 1) ? 8.0 : 1.0 + (i % 4);
+            offers.add(Offer.newBuilder()
+                    .setId(Protos.OfferID.newBuilder().setValue("benchmark-offer-id-" + i))
+                    .setFrameworkId(TestConstants.FRAMEWORK_ID)
+                    .setSlaveId(Protos.SlaveID.newBuilder().setValue("benchmark-agent-id-" + i))
+                    .setHostname(TestConstants.HOSTNAME)
+                    .addAllResources(Arrays.asList(
+                            ResourceTestUtils.getUnreservedCpu(cpus),
+                            ResourceTestUtils.getUnreservedMem(4096),
+                            ResourceTestUtils.getUnreservedDisk(10240),
+                            ResourceTestUtils.getUnreservedPorts(10000, 11000)))
+                    .build());
+        }
+        return offers;
+    }
+}
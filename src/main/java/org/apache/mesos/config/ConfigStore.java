@@ -1,7 +1,10 @@
 package org.apache.mesos.config;
 
-import java.util.Collection;
-import java.util.UUID;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.offer.TaskException;
+import org.apache.mesos.offer.TaskUtils;
+
+import java.util.*;
 
 /**
  * This interface should be implemented in order to store and fetch Configurations
@@ -67,4 +70,48 @@ public interface ConfigStore<T extends Configuration> {
      * @throws ConfigStoreException if reading or deserializing the ID fails, or no value is set
      */
     UUID getTargetConfig() throws ConfigStoreException;
+
+    /**
+     * Returns the IDs of the configurations which are neither the current target configuration nor the target
+     * configuration of any of the provided Tasks.
+     *
+     * @param tasks All of the framework's stored Tasks
+     * @throws ConfigStoreException if listing the configurations fails, or no target configuration is set
+     * @see TaskUtils#getTargetConfiguration(TaskInfo)
+     */
+    default Collection<UUID> listUnreferenced(Collection<TaskInfo> tasks) throws ConfigStoreException {
+        Set<UUID> referencedIds = new HashSet<>();
+        referencedIds.add(getTargetConfig());
+        for (TaskInfo taskInfo : tasks) {
+            try {
+                referencedIds.add(TaskUtils.getTargetConfiguration(taskInfo));
+            } catch (TaskException e) {
+                // A Task without a target configuration references none.
+            }
+        }
+        List<UUID> unreferencedIds = new ArrayList<>();
+        for (UUID id : list()) {
+            if (!referencedIds.contains(id)) {
+                unreferencedIds.add(id);
+            }
+        }
+        return unreferencedIds;
+    }
+
+    /**
+     * Deletes the configurations returned by {@link #listUnreferenced(Collection)}, eg those left behind by earlier
+     * configuration updates.  This must not run while a configuration is being rolled out which was stored but is not
+     * yet the target of the framework or of any Task.
+     *
+     * @param tasks All of the framework's stored Tasks, whose target configurations are retained
+     * @return The IDs of the deleted configurations
+     * @throws ConfigStoreException if listing or deleting the configurations fails, or no target configuration is set
+     */
+    default Collection<UUID> clearUnreferenced(Collection<TaskInfo> tasks) throws ConfigStoreException {
+        Collection<UUID> unreferencedIds = listUnreferenced(tasks);
+        for (UUID id : unreferencedIds) {
+            clear(id);
+        }
+        return unreferencedIds;
+    }
 }
@@ -0,0 +1,481 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.mesos.Protos;
+import org.apache.mesos.dcos.DcosConstants;
+import org.apache.mesos.offer.TaskException;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.StateStore;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StoredTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CachedCuratorStateStore is a {@link CuratorStateStore} which mirrors the Task records in memory, so that Task reads
+ * are served locally from parsed protobufs rather than with one Zookeeper round trip per Task.
+ *
+ * Writes go through to Zookeeper before the in-memory copy is updated.  The copy is kept coherent with changes made
+ * by other clients through the {@link TreeCache} which watches the Task buckets for the store's
+ * {@link StateChangeFeed}, rather than a second watch of the same nodes: any change whose data differs from the
+ * in-memory copy marks that Task as dirty, and dirty Tasks are re-read from Zookeeper before the next read is served.
+ * The echo of this store's own writes matches the in-memory copy and is ignored, while a stale echo which arrives
+ * after a later write only causes a redundant re-read.
+ *
+ * Until the {@link TreeCache} has completed its initial load, all reads are served from Zookeeper.  Framework ID and
+ * property operations are never cached.
+ *
+ * A hot standby scheduler uses a read-only store from {@link #createReadOnly(String, String)} as a replica of the
+ * leader's data: the {@link TreeCache} keeps running while the store is read-only, so that the replica is current
+ * when {@link #openForWrites()} is called on takeover.
+ */
+public class CachedCuratorStateStore extends CuratorStateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedCuratorStateStore.class);
+
+    /**
+     * The maximum time for which construction waits for the initial load of the Task buckets.
+     */
+    private static final long INITIALIZATION_TIMEOUT_MS = 10000;
+
+    private final Object lock = new Object();
+    private final Map<String, StoredTask> tasks = new ConcurrentHashMap<>();
+    private final Set<String> dirtyTaskNames = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch initializedLatch = new CountDownLatch(1);
+    private final String bucketsRootPath;
+
+    private volatile boolean initialized = false;
+
+    /**
+     * Creates a new cached {@link StateStore} which uses Curator with a default {@link RetryPolicy} and connection
+     * string.
+     *
+     * @param frameworkName    The name of the framework
+     */
+    public CachedCuratorStateStore(String frameworkName) {
+        this(frameworkName, DcosConstants.MESOS_MASTER_ZK_CONNECTION_STRING);
+    }
+
+    /**
+     * Creates a new cached {@link StateStore} which uses Curator with a default {@link RetryPolicy}.
+     *
+     * @param frameworkName    The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     */
+    public CachedCuratorStateStore(String frameworkName, String connectionString) {
+        this(frameworkName, connectionString, new ExponentialBackoffRetry(
+                CuratorUtils.DEFAULT_CURATOR_POLL_DELAY_MS,
+                CuratorUtils.DEFAULT_CURATOR_MAX_RETRIES));
+    }
+
+    /**
+     * Creates a new cached {@link StateStore} which uses Curator with a custom {@link RetryPolicy}.  Waits for the
+     * initial load of the Task buckets, or for at most {@link #INITIALIZATION_TIMEOUT_MS}, after which reads are
+     * served from Zookeeper until the load completes.
+     *
+     * @param frameworkName    The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     * @param retryPolicy      The custom {@link RetryPolicy}
+     */
+    public CachedCuratorStateStore(String frameworkName, String connectionString, RetryPolicy retryPolicy) {
+        this(frameworkName, connectionString, retryPolicy, false);
+    }
+
+    private CachedCuratorStateStore(
+            String frameworkName, String connectionString, RetryPolicy retryPolicy, boolean readOnly) {
+        super(frameworkName, connectionString, retryPolicy, readOnly);
+        this.bucketsRootPath = taskPathMapper.getBucketsRootPath();
+        changeFeed.addTasksListener(new TasksListener());
+
+        try {
+            changeFeed.startInBackground();
+            if (!initializedLatch.await(INITIALIZATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Initial load of '{}' did not complete within {}ms, reading from Zookeeper until it does",
+                        bucketsRootPath, INITIALIZATION_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StateStoreException("Interrupted while loading Tasks from: " + bucketsRootPath, e);
+        } catch (Exception e) {
+            throw new StateStoreException("Failed to start watching Tasks in: " + bucketsRootPath, e);
+        }
+    }
+
+    /**
+     * Creates a new cached {@link StateStore} with a default {@link RetryPolicy}, which neither migrates nor writes the
+     * framework's data until {@link #openForWrites()} is called.
+     *
+     * @param frameworkName    The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     */
+    public static CachedCuratorStateStore createReadOnly(String frameworkName, String connectionString) {
+        return new CachedCuratorStateStore(frameworkName, connectionString, new ExponentialBackoffRetry(
+                CuratorUtils.DEFAULT_CURATOR_POLL_DELAY_MS,
+                CuratorUtils.DEFAULT_CURATOR_MAX_RETRIES), true);
+    }
+
+    /**
+     * Returns whether reads are being served from memory.
+     */
+    public boolean isInitialized() {
+        return initialized;
+    }
+
+    /**
+     * Opens a read-only store for writes.  The previous leader's last changes may not have been observed yet, so every
+     * Task which is either cached or stored is re-read from Zookeeper before the next read is served.
+     */
+    @Override
+    public synchronized void openForWrites() throws StateStoreException {
+        if (!isReadOnly()) {
+            return;
+        }
+        super.openForWrites();
+        synchronized (lock) {
+            dirtyTaskNames.addAll(tasks.keySet());
+            dirtyTaskNames.addAll(super.fetchTaskNames());
+        }
+    }
+
+    // Write Tasks
+
+    @Override
+    public void storeTasks(Collection<Protos.TaskInfo> taskInfos) throws StateStoreException {
+        synchronized (lock) {
+            try {
+                super.storeTasks(taskInfos);
+            } catch (StateStoreException e) {
+                // Some of the Tasks may have been stored before the failure.
+                for (Protos.TaskInfo taskInfo : taskInfos) {
+                    dirtyTaskNames.add(taskInfo.getName());
+                }
+                throw e;
+            }
+
+            for (Protos.TaskInfo taskInfo : taskInfos) {
+                StoredTask cachedTask = tasks.get(taskInfo.getName());
+                tasks.put(taskInfo.getName(), new StoredTask(taskInfo, cachedTask == null
+                        ? Optional.empty()
+                        : cachedTask.getStatus()));
+                if (!initialized) {
+                    dirtyTaskNames.add(taskInfo.getName());
+                }
+            }
+        }
+    }
+
+    @Override
+    public void storeStatus(Protos.TaskStatus status) throws StateStoreException {
+        synchronized (lock) {
+            super.storeStatus(status);
+
+            String taskName;
+            try {
+                taskName = TaskUtils.toTaskName(status.getTaskId());
+            } catch (TaskException e) {
+                // Not reached: the name was already parsed when storing the status.
+                throw new StateStoreException(e);
+            }
+
+            StoredTask cachedTask = tasks.get(taskName);
+            if (cachedTask == null || !initialized) {
+                dirtyTaskNames.add(taskName);
+            } else {
+                tasks.put(taskName, new StoredTask(cachedTask.getInfo(), Optional.of(status)));
+            }
+        }
+    }
+
+    @Override
+    public void storeTasksAndStatuses(Collection<Protos.TaskInfo> taskInfos, Collection<Protos.TaskStatus> statuses)
+            throws StateStoreException {
+        synchronized (lock) {
+            Map<String, Protos.TaskStatus> statusesByName = new HashMap<>();
+            try {
+                for (Protos.TaskStatus status : statuses) {
+                    statusesByName.put(TaskUtils.toTaskName(status.getTaskId()), status);
+                }
+            } catch (TaskException e) {
+                throw new StateStoreException(e);
+            }
+
+            try {
+                super.storeTasksAndStatuses(taskInfos, statuses);
+            } catch (StateStoreException e) {
+                // The transaction may have been committed before a connection failure was reported.
+                for (Protos.TaskInfo taskInfo : taskInfos) {
+                    dirtyTaskNames.add(taskInfo.getName());
+                }
+                dirtyTaskNames.addAll(statusesByName.keySet());
+                throw e;
+            }
+
+            for (Protos.TaskInfo taskInfo : taskInfos) {
+                StoredTask cachedTask = tasks.get(taskInfo.getName());
+                tasks.put(taskInfo.getName(), new StoredTask(taskInfo, cachedTask == null
+                        ? Optional.empty()
+                        : cachedTask.getStatus()));
+            }
+            for (Map.Entry<String, Protos.TaskStatus> entry : statusesByName.entrySet()) {
+                StoredTask cachedTask = tasks.get(entry.getKey());
+                if (cachedTask == null) {
+                    dirtyTaskNames.add(entry.getKey());
+                } else {
+                    tasks.put(entry.getKey(), new StoredTask(cachedTask.getInfo(), Optional.of(entry.getValue())));
+                }
+            }
+
+            if (!initialized) {
+                for (Protos.TaskInfo taskInfo : taskInfos) {
+                    dirtyTaskNames.add(taskInfo.getName());
+                }
+                dirtyTaskNames.addAll(statusesByName.keySet());
+            }
+        }
+    }
+
+    @Override
+    public void clearTask(String taskName) throws StateStoreException {
+        synchronized (lock) {
+            try {
+                super.clearTask(taskName);
+            } catch (StateStoreException e) {
+                dirtyTaskNames.add(taskName);
+                throw e;
+            }
+
+            tasks.remove(taskName);
+            if (!initialized) {
+                dirtyTaskNames.add(taskName);
+            }
+        }
+    }
+
+    // Read Tasks
+
+    @Override
+    public Collection<String> fetchTaskNames() throws StateStoreException {
+        if (!refresh()) {
+            return super.fetchTaskNames();
+        }
+
+        return new ArrayList<>(tasks.keySet());
+    }
+
+    @Override
+    public Collection<Protos.TaskInfo> fetchTasks() throws StateStoreException {
+        if (!refresh()) {
+            return super.fetchTasks();
+        }
+
+        Collection<Protos.TaskInfo> taskInfos = new ArrayList<>(tasks.size());
+        for (StoredTask cachedTask : tasks.values()) {
+            taskInfos.add(cachedTask.getInfo());
+        }
+        return taskInfos;
+    }
+
+    @Override
+    public Collection<StoredTask> fetchStoredTasks() throws StateStoreException {
+        if (!refresh()) {
+            return super.fetchStoredTasks();
+        }
+
+        return new ArrayList<>(tasks.values());
+    }
+
+    @Override
+    public Optional<Protos.TaskInfo> fetchTask(String taskName) throws StateStoreException {
+        if (!refresh()) {
+            return super.fetchTask(taskName);
+        }
+
+        return Optional.ofNullable(tasks.get(taskName)).map(StoredTask::getInfo);
+    }
+
+    @Override
+    public Collection<Protos.TaskStatus> fetchStatuses() throws StateStoreException {
+        if (!refresh()) {
+            return super.fetchStatuses();
+        }
+
+        Collection<Protos.TaskStatus> taskStatuses = new ArrayList<>(tasks.size());
+        for (StoredTask cachedTask : tasks.values()) {
+            if (cachedTask.getStatus().isPresent()) {
+                taskStatuses.add(cachedTask.getStatus().get());
+            }
+        }
+        return taskStatuses;
+    }
+
+    @Override
+    public Optional<Protos.TaskStatus> fetchStatus(String taskName) throws StateStoreException {
+        if (!refresh()) {
+            return super.fetchStatus(taskName);
+        }
+
+        return Optional.ofNullable(tasks.get(taskName)).flatMap(StoredTask::getStatus);
+    }
+
+    // Internals
+
+    /**
+     * Writes through {@link #getAsyncStateStore()} bypass the in-memory copy, so the Task is re-read before the next
+     * read is served.
+     */
+    @Override
+    void onAsyncTaskWrite(String taskName) {
+        super.onAsyncTaskWrite(taskName);
+        dirtyTaskNames.add(taskName);
+    }
+
+    /**
+     * Re-reads all dirty Tasks from Zookeeper.
+     *
+     * @return whether reads may be served from memory
+     */
+    private boolean refresh() throws StateStoreException {
+        if (!initialized) {
+            return false;
+        }
+
+        if (dirtyTaskNames.isEmpty()) {
+            return true;
+        }
+
+        synchronized (lock) {
+            List<String> taskNames = new ArrayList<>(dirtyTaskNames);
+            // Removed before reading, so that a change observed during the read marks the Task dirty again.
+            dirtyTaskNames.removeAll(taskNames);
+            Map<String, StoredTask> storedTasks;
+            try {
+                storedTasks = fetchStoredTasks(taskNames);
+            } catch (StateStoreException e) {
+                dirtyTaskNames.addAll(taskNames);
+                throw new StateStoreException("Failed to reload Tasks: " + taskNames, e);
+            }
+            for (String taskName : taskNames) {
+                StoredTask storedTask = storedTasks.get(taskName);
+                if (storedTask == null) {
+                    tasks.remove(taskName);
+                } else {
+                    tasks.put(taskName, storedTask);
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Applies a change to a node under the Task buckets.  During the initial load Tasks are populated from the
+     * received records.  Afterwards, any change which does not match the in-memory copy marks the Task dirty.
+     */
+    private void onNodeChanged(TreeCacheEvent.Type type, ChildData data) {
+        if (!data.getPath().startsWith(bucketsRootPath + "/")) {
+            if (data.getPath().equals(bucketsRootPath) && type == TreeCacheEvent.Type.NODE_REMOVED) {
+                dirtyTaskNames.addAll(tasks.keySet());
+            }
+            return;
+        }
+
+        String[] names = data.getPath().substring(bucketsRootPath.length() + 1).split("/");
+        if (names.length < 2) {
+            // Bucket nodes hold no data, and the removal of a bucket is also reported for each of its records.
+            return;
+        }
+
+        String taskName = names[1];
+        synchronized (lock) {
+            if (dirtyTaskNames.contains(taskName)) {
+                return;
+            }
+
+            StoredTask cachedTask = tasks.get(taskName);
+            if (type == TreeCacheEvent.Type.NODE_REMOVED) {
+                if (cachedTask != null) {
+                    markDirty(taskName, type);
+                }
+            } else if (cachedTask == null && !initialized && type == TreeCacheEvent.Type.NODE_ADDED) {
+                populate(taskName, data.getData());
+            } else if (cachedTask == null || !matches(cachedTask, data.getData())) {
+                markDirty(taskName, type);
+            }
+        }
+    }
+
+    /**
+     * Populates a Task from its record if all of the blobs it references are cached.  Otherwise the Task is marked
+     * dirty, so that the blobs of all such Tasks are read together rather than from the event thread.
+     */
+    private void populate(String taskName, byte[] bytes) {
+        try {
+            TaskRecord record = TaskRecord.parse(bytes);
+            Optional<Map<String, byte[]>> blobs = blobStore.fetchAllCached(record.getBlobIds());
+            if (blobs.isPresent()) {
+                tasks.put(taskName, record.resolve(blobs.get()));
+            } else {
+                dirtyTaskNames.add(taskName);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to decode record of Task '{}', it will be re-read", taskName, e);
+            dirtyTaskNames.add(taskName);
+        }
+    }
+
+    /**
+     * Returns whether the record decodes to the cached Task.  The record is decoded rather than the cached Task
+     * encoded, which would compress it again for every event.  A record which references blobs that aren't cached
+     * can't be decoded without reading them, so it is treated as changed.
+     */
+    private boolean matches(StoredTask cached, byte[] record) {
+        if (record == null) {
+            return false;
+        }
+
+        try {
+            TaskRecord taskRecord = TaskRecord.parse(record);
+            Optional<Map<String, byte[]>> blobs = blobStore.fetchAllCached(taskRecord.getBlobIds());
+            return blobs.isPresent() && cached.equals(taskRecord.resolve(blobs.get()));
+        } catch (StateStoreException e) {
+            return false;
+        }
+    }
+
+    private void markDirty(String taskName, TreeCacheEvent.Type type) {
+        logger.debug("Task '{}' changed in Zookeeper ({}), it will be re-read", taskName, type);
+        dirtyTaskNames.add(taskName);
+    }
+
+    private class TasksListener implements TreeCacheListener {
+        @Override
+        public void childEvent(CuratorFramework client, TreeCacheEvent event) {
+            switch (event.getType()) {
+                case NODE_ADDED:
+                case NODE_UPDATED:
+                case NODE_REMOVED:
+                    onNodeChanged(event.getType(), event.getData());
+                    break;
+                case INITIALIZED:
+                    logger.info("Loaded {} Tasks from '{}'", tasks.size(), bucketsRootPath);
+                    initialized = true;
+                    initializedLatch.countDown();
+                    break;
+                default:
+                    logger.info("Tasks cache connection state changed: {}", event.getType());
+                    break;
+            }
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package org.apache.mesos.curator;
+
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.storage.VersionedData;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+
+/**
+ * Holds Property values of any size, split into chunks which each fit in a node:
+ * <code>
+ * rootPath/
+ *     -> PropertyChunks/
+ *         -> [Key-0]                (manifest of the published generation)
+ *             -> [Generation-0]/
+ *                 -> 000000
+ *                 -> 000001
+ *                 -> ...
+ *         -> ...
+ * </code>
+ *
+ * A value is written as a new generation of chunks, and is then published by replacing the manifest of its key with a
+ * transaction which also checks that every chunk exists, so that readers see either the previous value or the complete
+ * new value.  The manifest lists the length of the value and the CRC32 of each chunk, which readers validate as they
+ * stream the chunks.  Other generations of the key are deleted once a value is published, so a concurrent reader of
+ * the previous value fails, as does a concurrent writer when it publishes.
+ *
+ * Publishing a value also clears the plain Property of the same key, so that a key has a single value.
+ */
+class ChunkedPropertyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedPropertyStore.class);
+
+    static final String PROPERTY_CHUNKS_ROOT_NAME = "PropertyChunks";
+
+    /**
+     * The size of each chunk, which leaves headroom below the node size limit (jute.maxbuffer, 1MB by default).
+     */
+    static final int DEFAULT_CHUNK_BYTES = 512 * 1024;
+
+    private static final int MANIFEST_FORMAT = 1;
+
+    /**
+     * The number of times the manifest is replaced when it is concurrently modified.
+     */
+    private static final int MAX_PUBLISH_ATTEMPTS = 3;
+
+    private final CuratorPersister curator;
+    private final String chunksRootPath;
+    private final String propertiesPath;
+    private final int chunkBytes;
+
+    ChunkedPropertyStore(CuratorPersister curator, String rootPath, String propertiesPath) {
+        this(curator, rootPath, propertiesPath, DEFAULT_CHUNK_BYTES);
+    }
+
+    ChunkedPropertyStore(CuratorPersister curator, String rootPath, String propertiesPath, int chunkBytes) {
+        this.curator = curator;
+        this.chunksRootPath = CuratorUtils.join(rootPath, PROPERTY_CHUNKS_ROOT_NAME);
+        this.propertiesPath = propertiesPath;
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Returns a stream which writes a new generation of chunks for the key, and publishes it when closed.
+     */
+    OutputStream openWriter(String key) throws Exception {
+        String generation = UUID.randomUUID().toString();
+        curator.store(getGenerationPath(key, generation), new byte[0]);
+        return new ChunkWriter(key, generation);
+    }
+
+    /**
+     * Returns a stream which reads the published value of the key, or an empty Optional if none is published.
+     */
+    Optional<InputStream> openReader(String key) throws Exception {
+        Optional<Manifest> manifest = fetchManifest(key);
+        if (!manifest.isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(new ChunkReader(key, manifest.get()));
+    }
+
+    /**
+     * Returns the keys which have a published value, reading their manifests with pipelined requests.
+     */
+    Collection<String> getKeys() throws Exception {
+        Collection<String> keys;
+        try {
+            keys = curator.getChildren(chunksRootPath);
+        } catch (KeeperException.NoNodeException e) {
+            return Collections.emptyList();
+        }
+        Map<String, String> pathsToKeys = new HashMap<>();
+        for (String key : keys) {
+            pathsToKeys.put(getKeyPath(key), key);
+        }
+        List<String> publishedKeys = new ArrayList<>();
+        for (Map.Entry<String, byte[]> entry : curator.fetchAll(pathsToKeys.keySet()).entrySet()) {
+            // The node of a key which was never published holds no manifest, eg while its first value is written.
+            if (entry.getValue().length > 0) {
+                publishedKeys.add(pathsToKeys.get(entry.getKey()));
+            }
+        }
+        return publishedKeys;
+    }
+
+    /**
+     * Deletes the value of the key along with any generations being written, returning whether there was any.
+     */
+    boolean clear(String key) throws Exception {
+        try {
+            curator.clear(getKeyPath(key));
+            return true;
+        } catch (KeeperException.NoNodeException e) {
+            return false;
+        }
+    }
+
+    // Internals
+
+    private Optional<Manifest> fetchManifest(String key) throws Exception {
+        byte[] bytes;
+        try {
+            bytes = curator.fetch(getKeyPath(key));
+        } catch (KeeperException.NoNodeException e) {
+            return Optional.empty();
+        }
+        return bytes.length == 0 ? Optional.empty() : Optional.of(Manifest.parse(bytes));
+    }
+
+    /**
+     * Replaces the manifest of the key, provided that all chunks of the new generation still exist, then deletes the
+     * other generations of the key and its plain Property.
+     */
+    private void publish(String key, Manifest manifest) throws Exception {
+        String keyPath = getKeyPath(key);
+        List<String> requiredPaths = new ArrayList<>();
+        requiredPaths.add(getGenerationPath(key, manifest.generation));
+        for (int index = 0; index < manifest.chunkChecksums.size(); index++) {
+            requiredPaths.add(getChunkPath(key, manifest.generation, index));
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            VersionedData current = curator.fetchVersioned(keyPath);
+            try {
+                curator.compareAndSetAll(
+                        Collections.singletonMap(keyPath, new VersionedData(manifest.toBytes(), current.getVersion())),
+                        requiredPaths);
+                break;
+            } catch (KeeperException.BadVersionException e) {
+                if (attempt >= MAX_PUBLISH_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Manifest of Property '{}' modified concurrently, retrying (attempt {})", key, attempt, e);
+            }
+        }
+
+        for (String generation : curator.getChildren(keyPath)) {
+            if (!generation.equals(manifest.generation)) {
+                deleteQuietly(getGenerationPath(key, generation));
+            }
+        }
+        deleteQuietly(CuratorUtils.join(propertiesPath, key));
+    }
+
+    private void deleteQuietly(String path) {
+        try {
+            curator.clear(path);
+        } catch (KeeperException.NoNodeException e) {
+            // Already deleted, eg by a concurrent writer.
+        } catch (Exception e) {
+            logger.warn("Failed to delete '{}'", path, e);
+        }
+    }
+
+    private String getKeyPath(String key) {
+        return CuratorUtils.join(chunksRootPath, key);
+    }
+
+    private String getGenerationPath(String key, String generation) {
+        return CuratorUtils.join(getKeyPath(key), generation);
+    }
+
+    private String getChunkPath(String key, String generation, int index) {
+        return CuratorUtils.join(getGenerationPath(key, generation), String.format("%06d", index));
+    }
+
+    private static long checksum(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Buffers one chunk at a time, storing each chunk once it is full.
+     */
+    private class ChunkWriter extends OutputStream {
+        private final String key;
+        private final String generation;
+        private final byte[] buffer = new byte[chunkBytes];
+        private final List<Long> chunkChecksums = new ArrayList<>();
+        private int bufferLength;
+        private long length;
+        private boolean closed;
+
+        private ChunkWriter(String key, String generation) {
+            this.key = key;
+            this.generation = generation;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int count) throws IOException {
+            if (closed) {
+                throw new IOException("Writer of Property '" + key + "' is closed");
+            }
+            while (count > 0) {
+                int copied = Math.min(count, buffer.length - bufferLength);
+                System.arraycopy(bytes, offset, buffer, bufferLength, copied);
+                bufferLength += copied;
+                length += copied;
+                offset += copied;
+                count -= copied;
+                if (bufferLength == buffer.length) {
+                    storeChunk();
+                }
+            }
+        }
+
+        /**
+         * Stores any buffered bytes as the last chunk and publishes the value.  The chunks are deleted if publishing
+         * fails.
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (bufferLength > 0) {
+                    storeChunk();
+                }
+                publish(key, new Manifest(generation, length, chunkChecksums));
+                logger.info("Published Property '{}' of {} bytes in {} chunks", key, length, chunkChecksums.size());
+            } catch (Exception e) {
+                deleteQuietly(getGenerationPath(key, generation));
+                throw toIOException("Failed to publish Property '" + key + "'", e);
+            }
+        }
+
+        private void storeChunk() throws IOException {
+            String path = getChunkPath(key, generation, chunkChecksums.size());
+            try {
+                curator.store(path, Arrays.copyOf(buffer, bufferLength));
+            } catch (Exception e) {
+                throw toIOException("Failed to store chunk '" + path + "'", e);
+            }
+            chunkChecksums.add(checksum(buffer, bufferLength));
+            bufferLength = 0;
+        }
+    }
+
+    /**
+     * Reads one chunk at a time, fetching the following chunk in the background.
+     */
+    private class ChunkReader extends InputStream {
+        private final String key;
+        private final Manifest manifest;
+        private byte[] chunk = new byte[0];
+        private int chunkOffset;
+        private int nextIndex;
+        private long remaining;
+        private CompletableFuture<byte[]> nextChunk;
+
+        private ChunkReader(String key, Manifest manifest) {
+            this.key = key;
+            this.manifest = manifest;
+            this.remaining = manifest.length;
+            this.nextChunk = fetchChunk(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] bytes = new byte[1];
+            return read(bytes, 0, 1) < 0 ? -1 : bytes[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            while (chunkOffset == chunk.length) {
+                if (!advance()) {
+                    return -1;
+                }
+            }
+            int copied = Math.min(count, chunk.length - chunkOffset);
+            System.arraycopy(chunk, chunkOffset, bytes, offset, copied);
+            chunkOffset += copied;
+            return copied;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - chunkOffset;
+        }
+
+        /**
+         * Moves to the next chunk, validating it against the manifest, or returns false after the last chunk.
+         */
+        private boolean advance() throws IOException {
+            if (nextChunk == null) {
+                if (remaining != 0) {
+                    throw new IOException(String.format(
+                            "Property '%s' is %d bytes shorter than its manifest", key, remaining));
+                }
+                return false;
+            }
+            int index = nextIndex;
+            byte[] bytes;
+            try {
+                bytes = nextChunk.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof KeeperException.NoNodeException) {
+                    throw new IOException(String.format(
+                            "Property '%s' was replaced or cleared while being read", key), e.getCause());
+                }
+                throw toIOException("Failed to fetch chunk " + index + " of Property '" + key + "'", e.getCause());
+            }
+            if (checksum(bytes, bytes.length) != manifest.chunkChecksums.get(index)) {
+                throw new IOException(String.format("Chunk %d of Property '%s' fails its checksum", index, key));
+            }
+            remaining -= bytes.length;
+            if (remaining < 0) {
+                throw new IOException(String.format("Property '%s' is longer than its manifest", key));
+            }
+
+            chunk = bytes;
+            chunkOffset = 0;
+            nextIndex = index + 1;
+            nextChunk = fetchChunk(nextIndex);
+            return true;
+        }
+
+        private CompletableFuture<byte[]> fetchChunk(int index) {
+            if (index >= manifest.chunkChecksums.size()) {
+                return null;
+            }
+            return curator.fetchAsync(getChunkPath(key, manifest.generation, index));
+        }
+    }
+
+    private static IOException toIOException(String message, Throwable e) {
+        return e instanceof IOException ? (IOException) e : new IOException(message, e);
+    }
+
+    /**
+     * The generation, length and chunk checksums of a published value.
+     */
+    private static class Manifest {
+        private final String generation;
+        private final long length;
+        private final List<Long> chunkChecksums;
+
+        private Manifest(String generation, long length, List<Long> chunkChecksums) {
+            this.generation = generation;
+            this.length = length;
+            this.chunkChecksums = chunkChecksums;
+        }
+
+        private static Manifest parse(byte[] bytes) throws IOException {
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+            int format = input.readInt();
+            if (format != MANIFEST_FORMAT) {
+                throw new IOException("Unsupported Property manifest format: " + format);
+            }
+            String generation = input.readUTF();
+            long length = input.readLong();
+            int chunkCount = input.readInt();
+            List<Long> chunkChecksums = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                chunkChecksums.add(input.readInt() & 0xffffffffL);
+            }
+            return new Manifest(generation, length, chunkChecksums);
+        }
+
+        private byte[] toBytes() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            output.writeInt(MANIFEST_FORMAT);
+            output.writeUTF(generation);
+            output.writeLong(length);
+            output.writeInt(chunkChecksums.size());
+            for (long checksum : chunkChecksums) {
+                output.writeInt((int) checksum);
+            }
+            output.flush();
+            return bytes.toByteArray();
+        }
+    }
+}
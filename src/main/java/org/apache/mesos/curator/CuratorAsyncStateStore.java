@@ -0,0 +1,596 @@
+package org.apache.mesos.curator;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.mesos.Protos;
+import org.apache.mesos.dcos.DcosConstants;
+import org.apache.mesos.state.AsyncStateStore;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StateStoreUtils;
+import org.apache.mesos.state.StoredTask;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.storage.VersionedData;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * CuratorAsyncStateStore is an implementation of {@link AsyncStateStore} which persists data in Zookeeper, using the
+ * same ZNode structure as {@link CuratorStateStore}.  Requests are sent with Curator background callbacks, so no thread
+ * waits on Zookeeper and any number of requests may be in flight on the connection at once.  Eg a burst of status
+ * updates takes about one round trip to store rather than two round trips per update.
+ *
+ * A write to a Task, Property or the FrameworkID is sent once the previous write issued to it has completed, so that
+ * writes are applied in the order in which they were issued even when they take several requests, eg validating a
+ * TaskStatus against its TaskInfo.  Writes to different Tasks are not ordered with respect to each other.
+ *
+ * Returned futures are completed on the Zookeeper event thread, so dependent stages which may block should be run on
+ * an executor, eg with {@link CompletableFuture#whenCompleteAsync}.
+ */
+public class CuratorAsyncStateStore implements AsyncStateStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(CuratorAsyncStateStore.class);
+
+    private final CuratorPersister curator;
+    private final CuratorStateStore.TaskPathMapper taskPathMapper;
+    private final TaskBlobStore blobStore;
+    private final String fwkIdPath;
+    private final String propertiesPath;
+    private final TaskWriteListener taskWriteListener;
+    private final Map<String, CompletableFuture<Void>> lastWrites = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new {@link AsyncStateStore} which uses Curator with a default {@link RetryPolicy} and connection
+     * string.
+     *
+     * @param frameworkName    The name of the framework
+     */
+    public CuratorAsyncStateStore(String frameworkName) {
+        this(frameworkName, DcosConstants.MESOS_MASTER_ZK_CONNECTION_STRING);
+    }
+
+    /**
+     * Creates a new {@link AsyncStateStore} which uses Curator with a default {@link RetryPolicy}.
+     *
+     * @param frameworkName    The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     */
+    public CuratorAsyncStateStore(String frameworkName, String connectionString) {
+        this(frameworkName, connectionString, new ExponentialBackoffRetry(
+                CuratorUtils.DEFAULT_CURATOR_POLL_DELAY_MS,
+                CuratorUtils.DEFAULT_CURATOR_MAX_RETRIES));
+    }
+
+    /**
+     * Creates a new {@link AsyncStateStore} which uses Curator with a custom {@link RetryPolicy}.
+     *
+     * @param frameworkName    The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     * @param retryPolicy      The custom {@link RetryPolicy}
+     */
+    public CuratorAsyncStateStore(String frameworkName, String connectionString, RetryPolicy retryPolicy) {
+        this(createPersister(frameworkName, connectionString, retryPolicy),
+                CuratorUtils.toServiceRootPath(frameworkName),
+                null,
+                TaskWriteListener.NONE);
+    }
+
+    /**
+     * Creates a store over an existing connection which has already been initialized by {@link CuratorStateStore}.
+     *
+     * @param blobStore         the blob store to share with another store of the same connection, or {@code null} to
+     *                          create one
+     * @param taskWriteListener notified of each Task once a write to it has completed, whether or not it succeeded
+     */
+    CuratorAsyncStateStore(
+            CuratorPersister curator,
+            String rootPath,
+            TaskBlobStore blobStore,
+            TaskWriteListener taskWriteListener) {
+        this.curator = curator;
+        this.taskPathMapper = new CuratorStateStore.TaskPathMapper(rootPath);
+        this.blobStore = blobStore != null ? blobStore : new TaskBlobStore(curator, rootPath);
+        this.fwkIdPath = CuratorUtils.join(rootPath, CuratorStateStore.FWK_ID_PATH_NAME);
+        this.propertiesPath = CuratorUtils.join(rootPath, CuratorStateStore.PROPERTIES_PATH_NAME);
+        this.taskWriteListener = taskWriteListener;
+    }
+
+    // Framework ID
+
+    @Override
+    public CompletableFuture<Void> storeFrameworkId(Protos.FrameworkID fwkId) {
+        logger.debug("Storing FrameworkID in '{}'", fwkIdPath);
+        byte[] bytes = fwkId.toByteArray();
+        return afterLastWrite(fwkIdPath, () -> curator.storeAsync(fwkIdPath, bytes).handle((ignored, e) -> {
+            if (e != null) {
+                throw new StateStoreException(String.format(
+                        "Failed to store FrameworkID in '%s'", fwkIdPath), unwrap(e));
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Void> clearFrameworkId() {
+        logger.debug("Clearing FrameworkID at '{}'", fwkIdPath);
+        return afterLastWrite(fwkIdPath, () -> curator.clearAsync(fwkIdPath).handle((ignored, e) -> {
+            if (isNoNode(e)) {
+                // Clearing a non-existent FrameworkID should not result in an exception from us.
+                logger.warn("Cleared unset FrameworkID, continuing silently");
+            } else if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Protos.FrameworkID>> fetchFrameworkId() {
+        logger.debug("Fetching FrameworkID from '{}'", fwkIdPath);
+        return curator.fetchAsync(fwkIdPath).handle((bytes, e) -> {
+            if (isNoNode(e)) {
+                logger.warn("No FrameworkId found at: " + fwkIdPath);
+                return Optional.empty();
+            } else if (e != null) {
+                throw toStateStoreException(e);
+            } else if (bytes.length == 0) {
+                throw new StateStoreException(String.format(
+                        "Failed to retrieve FrameworkID in '%s'", fwkIdPath));
+            }
+            return Optional.of(parse(Protos.FrameworkID::parseFrom, bytes));
+        });
+    }
+
+    // Write Tasks
+
+    /**
+     * Stores each TaskInfo with a conditional update of its Task's record, retaining the stored TaskStatus.
+     */
+    @Override
+    public CompletableFuture<Void> storeTasks(Collection<Protos.TaskInfo> tasks) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Protos.TaskInfo taskInfo : tasks) {
+            logger.debug("Storing Taskinfo for {} in '{}'",
+                    taskInfo.getName(), taskPathMapper.getTaskPath(taskInfo.getName()));
+            futures.add(updateTask(taskInfo.getName(),
+                    current -> TaskRecord.of(new StoredTask(taskInfo, current.flatMap(TaskRecord::getStatus)))));
+        }
+        return allOf(futures).thenApply(ignored -> null);
+    }
+
+    /**
+     * Stores the status once its TaskID has been validated against the current TaskInfo, which is read along with the
+     * record being updated once all previously issued writes to the Task have completed.
+     */
+    @Override
+    public CompletableFuture<Void> storeStatus(Protos.TaskStatus status) {
+        String taskName;
+        try {
+            taskName = CuratorStateStore.getTaskName(status);
+        } catch (StateStoreException e) {
+            return failed(e);
+        }
+
+        logger.debug("Storing status for '{}' in '{}'", taskName, taskPathMapper.getTaskPath(taskName));
+        return updateTask(taskName, current -> {
+            // We intentionally ignore TaskStatuses whose TaskID doesn't (exactly) match the current TaskInfo.
+            CuratorStateStore.validateStatus(status, taskName, current.map(TaskRecord::getStrippedInfo));
+            return current.get().withStatus(status);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> clearTask(String taskName) {
+        String path = taskPathMapper.getTaskPath(taskName);
+        logger.debug("Clearing Task at '{}'", path);
+        return afterLastWrite(path, () -> curator.clearAsync(path).handle((ignored, e) -> {
+            if (isNoNode(e)) {
+                // Clearing a non-existent Task should not result in an exception from us.
+                logger.warn("Cleared nonexistent Task, continuing silently: {}", taskName);
+            } else if (e != null) {
+                taskWriteListener.onTaskWriteFailed(taskName);
+                throw toStateStoreException(e);
+            }
+            taskWriteListener.onTaskCleared(taskName);
+            return null;
+        }));
+    }
+
+    // Read Tasks
+
+    @Override
+    public CompletableFuture<Collection<String>> fetchTaskNames() {
+        logger.debug("Fetching task names from '{}'", taskPathMapper.getBucketsRootPath());
+        List<CompletableFuture<Collection<String>>> futures = new ArrayList<>();
+        for (String bucketPath : taskPathMapper.getBucketPaths()) {
+            futures.add(curator.getChildrenAsync(bucketPath).handle((children, e) -> {
+                if (isNoNode(e)) {
+                    // Bucket doesn't exist yet. Treat as an empty list of tasks.
+                    return Collections.emptyList();
+                } else if (e != null) {
+                    throw toStateStoreException(e);
+                }
+                return children;
+            }));
+        }
+        return allOf(futures).thenApply(buckets -> buckets.stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * Fetches all Task records with a single request per Task, all of which are sent without waiting for the others.
+     */
+    @Override
+    public CompletableFuture<Collection<Protos.TaskInfo>> fetchTasks() {
+        return fetchStoredTasks().thenApply(storedTasks -> storedTasks.stream()
+                .map(StoredTask::getInfo)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Protos.TaskInfo>> fetchTask(String taskName) {
+        return fetchStoredTask(taskName).thenApply(storedTask -> storedTask.map(StoredTask::getInfo));
+    }
+
+    /**
+     * Fetches all Task records with a single request per Task, all of which are sent without waiting for the others.
+     */
+    @Override
+    public CompletableFuture<Collection<Protos.TaskStatus>> fetchStatuses() {
+        // The record may lack a TaskStatus. This may occur if the only contents are a TaskInfo.
+        return fetchRecords().thenApply(records -> records.stream()
+                .map(TaskRecord::getStatus)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Optional<Protos.TaskStatus>> fetchStatus(String taskName) {
+        return fetchRecord(taskName).thenApply(record -> record.flatMap(TaskRecord::getStatus));
+    }
+
+    // Read/Write Properties
+
+    @Override
+    public CompletableFuture<Void> storeProperty(final String key, final byte[] value) {
+        try {
+            StateStoreUtils.validateKey(key);
+            StateStoreUtils.validateValue(value);
+        } catch (StateStoreException e) {
+            return failed(e);
+        }
+
+        final String path = CuratorUtils.join(this.propertiesPath, key);
+        logger.debug("Storing property key: {} into path: {}", key, path);
+        return afterLastWrite(path, () -> curator.storeAsync(path, value).handle((ignored, e) -> {
+            if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return null;
+        }));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetchProperty(final String key) {
+        try {
+            StateStoreUtils.validateKey(key);
+        } catch (StateStoreException e) {
+            return failed(e);
+        }
+
+        final String path = CuratorUtils.join(this.propertiesPath, key);
+        logger.debug("Fetching property key: {} from path: {}", key, path);
+        return curator.fetchAsync(path).handle((bytes, e) -> {
+            if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return bytes;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Collection<String>> fetchPropertyKeys() {
+        return curator.getChildrenAsync(this.propertiesPath).handle((children, e) -> {
+            if (isNoNode(e)) {
+                // Root path doesn't exist yet. Treat as an empty list of properties. This scenario is
+                // expected to commonly occur when the Framework is being run for the first time.
+                return Collections.emptyList();
+            } else if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return children;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> clearProperty(final String key) {
+        try {
+            StateStoreUtils.validateKey(key);
+        } catch (StateStoreException e) {
+            return failed(e);
+        }
+
+        final String path = CuratorUtils.join(this.propertiesPath, key);
+        logger.debug("Removing property key: {} from path: {}", key, path);
+        return afterLastWrite(path, () -> curator.clearAsync(path).handle((ignored, e) -> {
+            if (isNoNode(e)) {
+                // Clearing a non-existent Property should not result in an exception from us.
+                logger.warn("Cleared nonexistent Property, continuing silently: {}", key);
+            } else if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return null;
+        }));
+    }
+
+    void close() {
+        curator.close();
+    }
+
+    // Internals
+
+    /**
+     * Starts the provided write once the last write issued for the same path has completed, whether or not it
+     * succeeded.  A write takes several requests when the node has to be created, or when its value is validated
+     * first, and so may otherwise be overtaken by a later write.
+     */
+    private CompletableFuture<Void> afterLastWrite(String path, Supplier<CompletableFuture<Void>> write) {
+        CompletableFuture<Void> thisWrite = new CompletableFuture<>();
+        CompletableFuture<Void> lastWrite = lastWrites.put(path, thisWrite);
+        CompletableFuture<Void> start = lastWrite == null
+                ? CompletableFuture.completedFuture(null)
+                : lastWrite.handle((ignored, e) -> null);
+        start.thenCompose(ignored -> write.get()).whenComplete((ignored, e) -> {
+            lastWrites.remove(path, thisWrite);
+            if (e == null) {
+                thisWrite.complete(null);
+            } else {
+                thisWrite.completeExceptionally(unwrap(e));
+            }
+        });
+        return thisWrite;
+    }
+
+    /**
+     * Replaces the record of the provided Task with the result of the update function, once the last write issued to
+     * the Task has completed.  The function is called with the current record, and again if the record is concurrently
+     * modified before the update is stored.
+     */
+    private CompletableFuture<Void> updateTask(String taskName, Function<Optional<TaskRecord>, TaskRecord> update) {
+        String path = taskPathMapper.getTaskPath(taskName);
+        return afterLastWrite(path, () -> updateRecord(path, update, 1).handle((stored, e) -> {
+            if (e != null) {
+                taskWriteListener.onTaskWriteFailed(taskName);
+                throw toStateStoreException(e);
+            }
+            taskWriteListener.onTaskStored(taskName, stored.version, stored.record);
+            return null;
+        }));
+    }
+
+    /**
+     * Reads the current record along with its version, and stores the updated record if the version is unchanged.
+     * Blobs which are newly referenced by the updated record are written first.  Completes with the stored record and
+     * the version of its node.
+     */
+    private CompletableFuture<StoredRecord> updateRecord(
+            String path, Function<Optional<TaskRecord>, TaskRecord> update, int attempt) {
+        return curator.fetchVersionedAsync(path).handle((record, e) -> {
+            if (isNoNode(e)) {
+                return Optional.<VersionedData>empty();
+            } else if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return Optional.of(record);
+        }).thenCompose(record -> {
+            Optional<TaskRecord> current = record.map(versioned -> TaskRecord.parse(versioned.getData()));
+            TaskRecord updated = update.apply(current);
+            Map<String, byte[]> newBlobs = new HashMap<>(updated.getBlobs());
+            if (current.isPresent()) {
+                newBlobs.keySet().removeAll(current.get().getBlobIds());
+            }
+            int version = record.isPresent() ? record.get().getVersion() : VersionedData.ABSENT;
+            VersionedData value = new VersionedData(updated.toBytes(), version);
+            return blobStore.storeAllAsync(newBlobs)
+                    .thenCompose(ignored -> curator.compareAndSetAsync(path, value))
+                    .thenApply(ignored -> new StoredRecord(
+                            updated, version == VersionedData.ABSENT ? 0 : version + 1));
+        }).handle((stored, e) -> {
+            if (e == null) {
+                return CompletableFuture.completedFuture(stored);
+            }
+            Throwable cause = unwrap(e);
+            if (attempt < CuratorStateStore.MAX_UPDATE_ATTEMPTS && isConflict(cause)) {
+                logger.warn("Task record at '{}' modified concurrently, retrying (attempt {})", path, attempt);
+                return updateRecord(path, update, attempt + 1);
+            }
+            return CuratorAsyncStateStore.<StoredRecord>failed(cause);
+        }).thenCompose(result -> result);
+    }
+
+    private CompletableFuture<Optional<StoredTask>> fetchStoredTask(String taskName) {
+        return fetchRecord(taskName).thenCompose(record -> {
+            if (!record.isPresent()) {
+                return CompletableFuture.completedFuture(Optional.empty());
+            }
+            return resolve(Collections.singletonList(record.get()))
+                    .thenApply(storedTasks -> Optional.of(storedTasks.iterator().next()));
+        });
+    }
+
+    private CompletableFuture<Optional<TaskRecord>> fetchRecord(String taskName) {
+        String path = taskPathMapper.getTaskPath(taskName);
+        logger.debug("Fetching Task {} from '{}'", taskName, path);
+        return curator.fetchAsync(path).handle((bytes, e) -> {
+            if (isNoNode(e)) {
+                logger.warn("No Task found for the requested name: " + taskName + " at: " + path);
+                return Optional.empty();
+            } else if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return Optional.of(TaskRecord.parse(bytes));
+        });
+    }
+
+    /**
+     * Fetches the Tasks of all records, reading all blobs which are not cached at once.
+     */
+    private CompletableFuture<Collection<StoredTask>> fetchStoredTasks() {
+        return fetchRecords().thenCompose(this::resolve);
+    }
+
+    /**
+     * Fetches the records of all Tasks, omitting any which are cleared after their names are listed.
+     */
+    private CompletableFuture<Collection<TaskRecord>> fetchRecords() {
+        return fetchTaskNames().thenCompose(taskNames -> {
+            List<CompletableFuture<Optional<TaskRecord>>> futures = new ArrayList<>();
+            for (String taskName : taskNames) {
+                futures.add(curator.fetchAsync(taskPathMapper.getTaskPath(taskName)).handle((bytes, e) -> {
+                    if (isNoNode(e)) {
+                        return Optional.empty();
+                    } else if (e != null) {
+                        throw toStateStoreException(e);
+                    }
+                    return Optional.of(TaskRecord.parse(bytes));
+                }));
+            }
+            return allOf(futures).thenApply(records -> records.stream()
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .collect(Collectors.toList()));
+        });
+    }
+
+    private CompletableFuture<Collection<StoredTask>> resolve(Collection<TaskRecord> records) {
+        Set<String> blobIds = new HashSet<>();
+        for (TaskRecord record : records) {
+            blobIds.addAll(record.getBlobIds());
+        }
+        return blobStore.fetchAllAsync(blobIds).handle((blobs, e) -> {
+            if (e != null) {
+                throw toStateStoreException(e);
+            }
+            return records.stream()
+                    .map(record -> record.resolve(blobs))
+                    .collect(Collectors.toList());
+        });
+    }
+
+    private static CuratorPersister createPersister(
+            String frameworkName, String connectionString, RetryPolicy retryPolicy) {
+        CuratorPersister curator = CuratorClientProvider.getDefault().getPersister(connectionString, retryPolicy);
+        CuratorStateStore.initialize(curator, frameworkName);
+        return curator;
+    }
+
+    /**
+     * Returns a future which completes with the values of all of the provided futures, in the same order, or
+     * exceptionally once any of them fails.
+     */
+    private static <T> CompletableFuture<Collection<T>> allOf(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]))
+                .thenApply(ignored -> futures.stream()
+                        .map(CompletableFuture::join)
+                        .collect(Collectors.toList()));
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private static boolean isNoNode(Throwable e) {
+        return unwrap(e) instanceof KeeperException.NoNodeException;
+    }
+
+    /**
+     * Returns whether a conditional update failed because the record was concurrently created, updated or deleted.
+     */
+    private static boolean isConflict(Throwable e) {
+        return e instanceof KeeperException.BadVersionException
+                || e instanceof KeeperException.NodeExistsException
+                || e instanceof KeeperException.NoNodeException;
+    }
+
+    private static StateStoreException toStateStoreException(Throwable e) {
+        Throwable cause = unwrap(e);
+        return cause instanceof StateStoreException ? (StateStoreException) cause : new StateStoreException(cause);
+    }
+
+    private static <T> T parse(Parser<T> parser, byte[] bytes) {
+        try {
+            return parser.parseFrom(bytes);
+        } catch (InvalidProtocolBufferException e) {
+            throw new StateStoreException(e);
+        }
+    }
+
+    /**
+     * Notified of each completed write to a Task, so that a {@link CuratorStateStore} sharing the connection can keep
+     * its index of Task records current.
+     */
+    interface TaskWriteListener {
+        TaskWriteListener NONE = new TaskWriteListener() {
+            @Override
+            public void onTaskStored(String taskName, int version, TaskRecord record) { }
+
+            @Override
+            public void onTaskCleared(String taskName) { }
+
+            @Override
+            public void onTaskWriteFailed(String taskName) { }
+        };
+
+        /**
+         * Called once the provided record has been stored as the given version of the Task's node.
+         */
+        void onTaskStored(String taskName, int version, TaskRecord record);
+
+        /**
+         * Called once the Task's node has been deleted, or was found to be absent.
+         */
+        void onTaskCleared(String taskName);
+
+        /**
+         * Called when a write to the Task failed, after which its stored record is unknown.
+         */
+        void onTaskWriteFailed(String taskName);
+    }
+
+    /**
+     * A Task record which was stored, along with the resulting version of its node.
+     */
+    private static class StoredRecord {
+        private final TaskRecord record;
+        private final int version;
+
+        private StoredRecord(TaskRecord record, int version) {
+            this.record = record;
+            this.version = version;
+        }
+    }
+
+    /**
+     * A protobuf parser, eg {@code Protos.TaskInfo::parseFrom}.
+     */
+    private interface Parser<T> {
+        T parseFrom(byte[] bytes) throws InvalidProtocolBufferException;
+    }
+}
@@ -0,0 +1,117 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.storage.CuratorPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares a single started Curator client, and therefore a single Zookeeper session, between all of the stores which
+ * use the same connection string.  Each store is handed its own {@link CuratorPersister}, and the client is closed once
+ * the persisters of all stores using it have been closed.  Eg a process running many frameworks against one ensemble
+ * holds one session rather than one per state, config and schema version store of each framework.
+ *
+ * The client is started with the {@link RetryPolicy} of the first persister requested for its connection string, and
+ * the policies of later requests are ignored while it remains open.
+ */
+public class CuratorClientProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(CuratorClientProvider.class);
+
+    private static final CuratorClientProvider DEFAULT = new CuratorClientProvider();
+
+    private final Map<String, SharedClient> clients = new HashMap<>();
+
+    /**
+     * Returns the provider which is used by the stores in this package.
+     */
+    public static CuratorClientProvider getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Returns a persister which uses the shared client for the provided connection string, starting the client if it
+     * isn't open.  The persister must be closed once it is no longer used.
+     *
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     * @param retryPolicy      The {@link RetryPolicy} to start the client with, if it isn't open
+     */
+    public synchronized CuratorPersister getPersister(String connectionString, RetryPolicy retryPolicy) {
+        SharedClient sharedClient = clients.get(connectionString);
+        if (sharedClient == null) {
+            logger.info("Starting shared Curator client for '{}'", connectionString);
+            CuratorFramework client = CuratorFrameworkFactory.newClient(connectionString, retryPolicy);
+            client.start();
+            sharedClient = new SharedClient(client);
+            clients.put(connectionString, sharedClient);
+        }
+        sharedClient.references++;
+
+        final SharedClient persisterClient = sharedClient;
+        return new CuratorPersister(sharedClient.client, () -> release(connectionString, persisterClient));
+    }
+
+    /**
+     * Migrates the schema of the provided framework's data and returns the resulting version, see
+     * {@link CuratorSchemaVersionStore#migrate()}.  The version is only read and migrated once while the shared client
+     * remains open, rather than once per store.  A migration only blocks other stores of the same framework, while
+     * stores of other frameworks and new persisters proceed.
+     */
+    int migrateSchemaVersion(CuratorPersister curator, String frameworkName) throws StateStoreException {
+        SchemaVersion schemaVersion = null;
+        synchronized (this) {
+            for (SharedClient client : clients.values()) {
+                if (client.client == curator.getClient()) {
+                    schemaVersion = client.schemaVersions.computeIfAbsent(frameworkName, name -> new SchemaVersion());
+                }
+            }
+        }
+        if (schemaVersion == null) {
+            // Not a shared client, eg a persister created directly by a test.
+            return new CuratorSchemaVersionStore(curator, frameworkName).migrate();
+        }
+
+        synchronized (schemaVersion) {
+            if (schemaVersion.version == null) {
+                schemaVersion.version = new CuratorSchemaVersionStore(curator, frameworkName).migrate();
+            }
+            return schemaVersion.version;
+        }
+    }
+
+    private synchronized void release(String connectionString, SharedClient sharedClient) {
+        sharedClient.references--;
+        if (sharedClient.references > 0) {
+            return;
+        }
+        logger.info("Closing shared Curator client for '{}'", connectionString);
+        clients.remove(connectionString, sharedClient);
+        sharedClient.client.close();
+    }
+
+    /**
+     * A started client along with the number of open persisters using it, and the schema versions read through it.
+     */
+    private static class SharedClient {
+        private final CuratorFramework client;
+        private final Map<String, SchemaVersion> schemaVersions = new HashMap<>();
+        private int references;
+
+        private SharedClient(CuratorFramework client) {
+            this.client = client;
+        }
+    }
+
+    /**
+     * The schema version of a framework's data, which is read and migrated while holding this object's lock.
+     */
+    private static class SchemaVersion {
+        private Integer version;
+    }
+}
@@ -2,6 +2,7 @@ package org.apache.mesos.curator;
 
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.mesos.Protos;
 import org.apache.mesos.config.ConfigStore;
 import org.apache.mesos.config.ConfigStoreException;
 import org.apache.mesos.config.Configuration;
@@ -13,9 +14,9 @@ import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * A CuratorConfigStore stores String Configurations in Zookeeper.
@@ -28,6 +29,11 @@ import java.util.UUID;
  *         -> [Config-ID-1] (contains serialized config)
  *         -> ...
  *
+ * In content-addressed mode, each configuration is stored against a name-based UUID of its serialized bytes, so that
+ * storing an identical configuration again returns the existing ID rather than adding another node.  Otherwise each
+ * stored configuration is given a random UUID.  In either mode the contents stored against an ID never change, so the
+ * most recently fetched configurations are held in memory once parsed, and are shared between callers.
+ *
  * @param <T> The {@code Configuration} object to be serialized and deserialized in the
  *            implementation of this interface
  */
@@ -36,17 +42,35 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
     private static final Logger logger = LoggerFactory.getLogger(CuratorConfigStore.class);
 
     /**
+     * Version 2 only changed the layout of Tasks, so Configurations are readable from either version.
+     *
      * @see CuratorSchemaVersionStore#CURRENT_SCHEMA_VERSION
      */
     private static final int MIN_SUPPORTED_SCHEMA_VERSION = 1;
-    private static final int MAX_SUPPORTED_SCHEMA_VERSION = 1;
+    private static final int MAX_SUPPORTED_SCHEMA_VERSION = 2;
 
     private static final String TARGET_PATH_NAME = "ConfigTarget";
     private static final String CONFIGURATIONS_PATH_NAME = "Configurations";
 
+    /**
+     * The number of parsed configurations held in memory, which only needs to cover those of the Tasks being updated.
+     */
+    private static final int MAX_CACHED_CONFIGS = 16;
+
     private final CuratorPersister curator;
     private final String configurationsPath;
     private final String targetPath;
+    private final boolean contentAddressed;
+    // Guards storedIds, and serializes storing configurations with deleting unreferenced ones.
+    private final Object gcLock = new Object();
+    private final Set<UUID> storedIds = new HashSet<>();
+    private final Map<UUID, T> cache = Collections.synchronizedMap(
+            new LinkedHashMap<UUID, T>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, T> eldest) {
+                    return size() > MAX_CACHED_CONFIGS;
+                }
+            });
 
     /**
      * Creates a new {@link ConfigStore} which uses Curator with a default {@link RetryPolicy} and
@@ -79,10 +103,25 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
      */
     public CuratorConfigStore(
             String frameworkName, String connectionString, RetryPolicy retryPolicy) {
-        this.curator = new CuratorPersister(connectionString, retryPolicy);
+        this(frameworkName, connectionString, retryPolicy, false);
+    }
+
+    /**
+     * Creates a new {@link ConfigStore} which uses Curator with a custom {@link RetryPolicy}, and which optionally
+     * stores configurations against IDs derived from their contents, see {@link CuratorConfigStore}.
+     *
+     * @param frameworkName The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     * @param retryPolicy The custom {@link RetryPolicy}
+     * @param contentAddressed Whether identical configurations are stored once, against the same ID
+     */
+    public CuratorConfigStore(
+            String frameworkName, String connectionString, RetryPolicy retryPolicy, boolean contentAddressed) {
+        this.contentAddressed = contentAddressed;
+        this.curator = CuratorClientProvider.getDefault().getPersister(connectionString, retryPolicy);
 
-        // Check version up-front:
-        int currentVersion = new CuratorSchemaVersionStore(curator, frameworkName).fetch();
+        // Check version up-front, migrating older layouts:
+        int currentVersion = CuratorClientProvider.getDefault().migrateSchemaVersion(curator, frameworkName);
         if (!SchemaVersionStore.isSupported(
                 currentVersion, MIN_SUPPORTED_SCHEMA_VERSION, MAX_SUPPORTED_SCHEMA_VERSION)) {
             throw new IllegalStateException(String.format(
@@ -98,10 +137,19 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
 
     @Override
     public UUID store(T config) throws ConfigStoreException {
-        UUID id = UUID.randomUUID();
+        byte[] bytes = config.getBytes();
+        UUID id = contentAddressed ? UUID.nameUUIDFromBytes(bytes) : UUID.randomUUID();
         String path = getConfigPath(id);
         try {
-            curator.store(path, config.getBytes());
+            synchronized (gcLock) {
+                if (contentAddressed) {
+                    // An existing node already holds these exact bytes.
+                    curator.createIfAbsentAsync(path, bytes).join();
+                } else {
+                    curator.store(path, bytes);
+                }
+                storedIds.add(id);
+            }
         } catch (Exception e) {
             throw new ConfigStoreException(String.format(
                     "Failed to serialize or store configuration to path '%s': %s",
@@ -113,9 +161,15 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
 
     @Override
     public T fetch(UUID id, ConfigurationFactory<T> factory) throws ConfigStoreException {
+        T config = cache.get(id);
+        if (config != null) {
+            return config;
+        }
         String path = getConfigPath(id);
         try {
-            return factory.parse(curator.fetch(path));
+            config = factory.parse(curator.fetch(path));
+            cache.put(id, config);
+            return config;
         } catch (Exception e) {
             throw new ConfigStoreException(String.format(
                     "Failed to retrieve or deserialize configuration '%s' from path '%s'",
@@ -125,6 +179,7 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
 
     @Override
     public void clear(UUID id) throws ConfigStoreException {
+        cache.remove(id);
         String path = getConfigPath(id);
         try {
             curator.clear(path);
@@ -164,6 +219,10 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
     public void setTargetConfig(UUID id) throws ConfigStoreException {
         try {
             curator.store(targetPath, CuratorUtils.serialize(id));
+            synchronized (gcLock) {
+                // Configurations stored before the target was set were either the target or superseded by it.
+                storedIds.clear();
+            }
         } catch (Exception e) {
             throw new ConfigStoreException(String.format(
                     "Failed to assign current target configuration to '%s' at path '%s'",
@@ -182,6 +241,49 @@ public class CuratorConfigStore<T extends Configuration> implements ConfigStore<
         }
     }
 
+    /**
+     * Also retains the configurations which were returned by {@link #store(Configuration)} on this instance since the
+     * target was last set.  One of them is about to become the target, and in content-addressed mode its ID may be
+     * that of an existing configuration which is not referenced yet.
+     */
+    @Override
+    public Collection<UUID> listUnreferenced(Collection<Protos.TaskInfo> tasks) throws ConfigStoreException {
+        synchronized (gcLock) {
+            Collection<UUID> unreferencedIds = ConfigStore.super.listUnreferenced(tasks);
+            unreferencedIds.removeAll(storedIds);
+            return unreferencedIds;
+        }
+    }
+
+    /**
+     * Deletes the unreferenced configurations with pipelined requests, rather than one round trip per configuration.
+     */
+    @Override
+    public Collection<UUID> clearUnreferenced(Collection<Protos.TaskInfo> tasks) throws ConfigStoreException {
+        synchronized (gcLock) {
+            Collection<UUID> unreferencedIds = listUnreferenced(tasks);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (UUID id : unreferencedIds) {
+                cache.remove(id);
+                futures.add(curator.clearAsync(getConfigPath(id)));
+            }
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    if (!(e.getCause() instanceof KeeperException.NoNodeException)) {
+                        throw new ConfigStoreException(String.format(
+                                "Failed to delete unreferenced configurations from '%s'", configurationsPath),
+                                e.getCause());
+                    }
+                    // Already deleted, eg by another scheduler.
+                }
+            }
+            logger.info("Deleted {} unreferenced configurations", unreferencedIds.size());
+            return unreferencedIds;
+        }
+    }
+
     public void close() {
         curator.close();
     }
@@ -0,0 +1,264 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.leader.LeaderLatch;
+import org.apache.curator.framework.recipes.leader.LeaderLatchListener;
+import org.apache.curator.framework.recipes.leader.Participant;
+import org.apache.curator.framework.state.ConnectionState;
+import org.apache.curator.framework.state.ConnectionStateListener;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.mesos.storage.CuratorPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Elects one leader among the scheduler instances of a framework, using a Curator {@link LeaderLatch} in the
+ * framework's namespace.  Every scheduler instance joins the election before it acts on the framework's behalf.
+ * Instances which aren't the leader may wait as hot standbys, and one of them is elected as soon as the leader's
+ * Zookeeper session ends.
+ *
+ * A suspended connection to Zookeeper doesn't end the leader's session, so it doesn't end its leadership either: the
+ * leader is told to pause, and to resume once the connection is restored.  Leadership is only lost when the session is
+ * lost, or when another instance was elected in the meantime, eg because the latch re-joined the election behind a
+ * hot standby after the connection was restored.  A scheduler must stop acting on the framework's behalf as soon as it
+ * is told that leadership was lost.
+ */
+public class CuratorLeaderElection {
+
+    private static final Logger logger = LoggerFactory.getLogger(CuratorLeaderElection.class);
+
+    /**
+     * The name of the node holding the latch.  It only holds the ephemeral nodes of running schedulers, so it is left
+     * out of snapshots.
+     *
+     * @see StateSnapshotter
+     */
+    static final String LEADER_LATCH_ROOT_NAME = "SchedulerLeader";
+
+    /**
+     * The interval at which a leader whose connection was restored checks whether another instance was elected, until
+     * it is either elected again or has lost leadership.
+     */
+    private static final long RECONNECTED_POLL_INTERVAL_MS = 1000;
+
+    private final CuratorPersister curator;
+    private final String latchPath;
+    private final LeaderLatch leaderLatch;
+
+    private LeadershipListener listener;
+    private ScheduledExecutorService poller;
+    private boolean elected = false;
+    private boolean suspended = false;
+    private boolean lost = false;
+    private boolean closed = false;
+
+    /**
+     * Creates an election which uses Curator with a default {@link RetryPolicy}.
+     *
+     * @param frameworkName    The name of the framework
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     * @param participantId    An identifier of this instance, eg its hostname, which is logged by the other instances
+     */
+    public CuratorLeaderElection(String frameworkName, String connectionString, String participantId) {
+        this(CuratorClientProvider.getDefault().getPersister(connectionString, new ExponentialBackoffRetry(
+                CuratorUtils.DEFAULT_CURATOR_POLL_DELAY_MS,
+                CuratorUtils.DEFAULT_CURATOR_MAX_RETRIES)), frameworkName, participantId);
+    }
+
+    CuratorLeaderElection(CuratorPersister curator, String frameworkName, String participantId) {
+        this.curator = curator;
+        this.latchPath = CuratorUtils.join(CuratorUtils.toServiceRootPath(frameworkName), LEADER_LATCH_ROOT_NAME);
+        this.leaderLatch = new LeaderLatch(curator.getClient(), latchPath, participantId);
+    }
+
+    /**
+     * Joins the election and blocks until this instance is the leader.  The provided listener is then told, on Curator
+     * threads, when this instance must pause and when it has lost leadership.
+     *
+     * @throws IOException if joining the election fails
+     * @throws InterruptedException if interrupted while waiting, in which case this instance leaves the election
+     */
+    public void awaitLeadership(LeadershipListener listener) throws IOException, InterruptedException {
+        synchronized (this) {
+            this.listener = listener;
+        }
+        // Added before the latch adds its own listener, so that a suspension is seen here before the latch reacts.
+        curator.getClient().getConnectionStateListenable().addListener(new ConnectionListener());
+        leaderLatch.addListener(new LatchListener());
+        try {
+            leaderLatch.start();
+        } catch (Exception e) {
+            throw new IOException("Failed to join leader election at: " + latchPath, e);
+        }
+
+        logger.info("Waiting for leadership as '{}'", leaderLatch.getId());
+        try {
+            leaderLatch.await();
+        } catch (InterruptedException e) {
+            close();
+            throw e;
+        }
+        synchronized (this) {
+            elected = true;
+        }
+    }
+
+    /**
+     * Returns whether this instance is currently the leader.  This is false while the connection is suspended.
+     */
+    public boolean hasLeadership() {
+        return leaderLatch.hasLeadership();
+    }
+
+    /**
+     * Leaves the election, which allows another instance to be elected if this instance was the leader.  The listener
+     * is not told that leadership was lost.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        stopPolling();
+        try {
+            if (leaderLatch.getState() == LeaderLatch.State.STARTED) {
+                leaderLatch.close();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to leave leader election at: " + latchPath, e);
+        }
+        curator.close();
+    }
+
+    private void onConnectionStateChanged(ConnectionState newState) {
+        Runnable event = null;
+        synchronized (this) {
+            if (!elected || lost || closed) {
+                return;
+            }
+            switch (newState) {
+                case SUSPENDED:
+                    if (!suspended) {
+                        logger.warn("Connection suspended, pausing as leader: {}", leaderLatch.getId());
+                        suspended = true;
+                        event = listener::onSuspended;
+                    }
+                    break;
+                case RECONNECTED:
+                    if (suspended) {
+                        // The latch re-joins the election, and is either elected again or queued behind a standby.
+                        startPolling();
+                    }
+                    break;
+                case LOST:
+                    event = lose("Zookeeper session lost");
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (event != null) {
+            event.run();
+        }
+    }
+
+    private void onElected() {
+        Runnable event = null;
+        synchronized (this) {
+            logger.info("Elected as leader: {}", leaderLatch.getId());
+            if (elected && suspended && !lost && !closed) {
+                logger.info("Connection restored, resuming as leader: {}", leaderLatch.getId());
+                suspended = false;
+                stopPolling();
+                event = listener::onResumed;
+            }
+        }
+        if (event != null) {
+            event.run();
+        }
+    }
+
+    private void onNotElected() {
+        Runnable event = null;
+        synchronized (this) {
+            // While suspended the latch drops leadership until it is restored, which doesn't mean it was lost.
+            if (elected && !suspended && !lost && !closed) {
+                event = lose("Latch no longer held");
+            }
+        }
+        if (event != null) {
+            event.run();
+        }
+    }
+
+    /**
+     * Checks whether another instance was elected while the connection was suspended.
+     */
+    private void checkLeader() {
+        Participant leader;
+        try {
+            leader = leaderLatch.getLeader();
+        } catch (Exception e) {
+            logger.warn("Failed to read leader of election at: " + latchPath, e);
+            return;
+        }
+
+        Runnable event = null;
+        synchronized (this) {
+            if (suspended && !lost && !closed
+                    && leader.isLeader() && !leader.getId().equals(leaderLatch.getId())) {
+                event = lose("Another scheduler was elected: " + leader.getId());
+            }
+        }
+        if (event != null) {
+            event.run();
+        }
+    }
+
+    private synchronized Runnable lose(String reason) {
+        logger.error("Lost leadership as '{}': {}", leaderLatch.getId(), reason);
+        lost = true;
+        stopPolling();
+        return listener::onLost;
+    }
+
+    private synchronized void startPolling() {
+        if (poller == null) {
+            poller = Executors.newSingleThreadScheduledExecutor();
+            poller.scheduleWithFixedDelay(this::checkLeader,
+                    RECONNECTED_POLL_INTERVAL_MS, RECONNECTED_POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void stopPolling() {
+        if (poller != null) {
+            poller.shutdownNow();
+            poller = null;
+        }
+    }
+
+    private class ConnectionListener implements ConnectionStateListener {
+        @Override
+        public void stateChanged(CuratorFramework client, ConnectionState newState) {
+            onConnectionStateChanged(newState);
+        }
+    }
+
+    private class LatchListener implements LeaderLatchListener {
+        @Override
+        public void isLeader() {
+            onElected();
+        }
+
+        @Override
+        public void notLeader() {
+            onNotElected();
+        }
+    }
+}
@@ -7,6 +7,10 @@ import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Implementation of {@link SchemaVersionStore} which persists data in Zookeeper.
  */
@@ -16,17 +20,25 @@ public class CuratorSchemaVersionStore implements SchemaVersionStore {
 
     /**
      * Increment this whenever CuratorStateStore or CuratorConfigStore change in a way that
-     * requires explicit migration.
-     *
-     * The migration implementation itself is not yet defined (let's wait until we need to actually
-     * do it..)
+     * requires explicit migration, and add the migration from the previous version to
+     * {@link #MIGRATIONS}.
      *
      * @see CuratorConfigStore#MIN_SUPPORTED_SCHEMA_VERSION
      * @see CuratorConfigStore#MAX_SUPPORTED_SCHEMA_VERSION
      * @see CuratorStateStore#MIN_SUPPORTED_SCHEMA_VERSION
      * @see CuratorStateStore#MAX_SUPPORTED_SCHEMA_VERSION
      */
-    static final int CURRENT_SCHEMA_VERSION = 1;
+    static final int CURRENT_SCHEMA_VERSION = 2;
+
+    /**
+     * The migration from each version to the next, keyed by the version being migrated from.
+     */
+    private static final Map<Integer, SchemaMigration> MIGRATIONS;
+    static {
+        Map<Integer, SchemaMigration> migrations = new HashMap<>();
+        migrations.put(1, new TaskBucketMigration());
+        MIGRATIONS = Collections.unmodifiableMap(migrations);
+    }
 
     /**
      * This name/path must remain the same forever. It's the basis of all other migrations.
@@ -37,6 +49,7 @@ public class CuratorSchemaVersionStore implements SchemaVersionStore {
     static final String SCHEMA_VERSION_NAME = "SchemaVersion";
 
     private final CuratorPersister curator;
+    private final String rootPath;
     private final String schemaVersionPath;
 
     /**
@@ -45,8 +58,8 @@ public class CuratorSchemaVersionStore implements SchemaVersionStore {
      */
     CuratorSchemaVersionStore(CuratorPersister curator, String frameworkName) {
         this.curator = curator;
-        this.schemaVersionPath = CuratorUtils.join(
-                CuratorUtils.toServiceRootPath(frameworkName), SCHEMA_VERSION_NAME);
+        this.rootPath = CuratorUtils.toServiceRootPath(frameworkName);
+        this.schemaVersionPath = CuratorUtils.join(rootPath, SCHEMA_VERSION_NAME);
     }
 
     public int fetch() throws StateStoreException {
@@ -89,4 +102,29 @@ public class CuratorSchemaVersionStore implements SchemaVersionStore {
                     "Storage error when storing schema version %d", version), e);
         }
     }
+
+    /**
+     * Migrates the stored data one version at a time up to {@link #CURRENT_SCHEMA_VERSION},
+     * storing the new version after each step. Each migration must be safe to repeat, since a
+     * step which fails or is interrupted is run again by the next caller.
+     *
+     * @return the schema version after migration, which is only lower than
+     *     {@link #CURRENT_SCHEMA_VERSION} if no migration is defined from that version
+     * @throws StateStoreException if fetching the version or migrating the data fails
+     */
+    public int migrate() throws StateStoreException {
+        int version = fetch();
+        while (version < CURRENT_SCHEMA_VERSION && MIGRATIONS.containsKey(version)) {
+            logger.info("Migrating storage schema from version {} to version {}", version, version + 1);
+            try {
+                MIGRATIONS.get(version).migrate(curator, rootPath);
+            } catch (Exception e) {
+                throw new StateStoreException(String.format(
+                        "Failed to migrate storage schema from version %d", version), e);
+            }
+            version++;
+            store(version);
+        }
+        return version;
+    }
 }
@@ -1,21 +1,37 @@
 package org.apache.mesos.curator;
 
+import com.google.common.io.ByteStreams;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.mesos.Protos;
 import org.apache.mesos.dcos.DcosConstants;
 import org.apache.mesos.offer.TaskException;
 import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.AsyncStateStore;
 import org.apache.mesos.state.SchemaVersionStore;
 import org.apache.mesos.state.StateStore;
 import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StateStoreListener;
 import org.apache.mesos.state.StateStoreUtils;
+import org.apache.mesos.state.StoredTask;
 import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.storage.VersionedData;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.zip.CRC32;
 
 /**
  * CuratorStateStore is an implementation of {@link StateStore} which persists data in Zookeeper.
@@ -24,20 +40,57 @@ import java.util.*;
  * <code>
  * rootPath/
  *     -> FrameworkID
- *     -> Tasks/
- *         -> [TaskName-0]/
- *             -> TaskInfo
- *             -> TaskStatus
- *         -> [TaskName-1]/
- *             -> TaskInfo
- *         -> [TaskName-2]/
- *             -> TaskInfo
- *             -> TaskStatus
+ *     -> Properties/
+ *         -> [Key-0]
  *         -> ...
+ *     -> TaskBuckets/
+ *         -> 00/
+ *             -> [TaskName-3]
+ *             -> ...
+ *         -> 01/
+ *             -> [TaskName-0]
+ *         -> ...
+ *         -> 3f/
+ *             -> [TaskName-1]
+ *             -> [TaskName-2]
+ *     -> TaskBlobs/
+ *         -> [BlobId-0]
+ *         -> ...
+ *     -> PropertyChunks/
+ *         -> [Key-1]
+ *             -> ...
  * </code>
  *
- * Note that for frameworks which don't use custom executors, the same structure is used, except
- * where ExecutorName values are equal to TaskName values.
+ * Each Task is held in a single compressed record node, which contains its TaskInfo and its TaskStatus if one has been
+ * stored.  The CommandInfos and ExecutorInfos which are usually shared by the Tasks of a pod are instead stored once in
+ * a content-addressed blob node, which the record references (see {@link TaskRecord} and {@link TaskBlobStore}).
+ * Blobs are written before the records which reference them, and unreferenced blobs are deleted by
+ * {@link #collectGarbage()} once a scheduler is elected as the leader.  Records are spread across a fixed number of
+ * bucket nodes by a hash of the Task name, so that no single node has an unbounded number of children.  Updates to a
+ * record are conditional on the version of the record which was read, and are retried when the record was
+ * concurrently modified.
+ *
+ * The last known record and version of each Task are held in memory, so that a record may be updated without first
+ * reading it, eg a TaskStatus is validated against the TaskID of the known TaskInfo and stored with a single write.
+ * Since the update is still conditional on the known version, a write based on a stale record, eg after another
+ * scheduler replaced the TaskInfo, fails and is retried against the record read from Zookeeper.
+ *
+ * The Tasks are also indexed by agent, by the state of their current TaskStatus and by target configuration (see
+ * {@link TaskIndex}), so that eg {@link #fetchTasksNeedingRecovery()} only reads the matching Tasks.  The index is
+ * built from watches on the Task records, which are started by the first index query or subscription, and is kept
+ * current by those watches and by the writes through this store.
+ *
+ * Properties which are stored with {@link #openPropertyOutputStream(String)} may exceed the size of a node, and are
+ * instead split into chunks under PropertyChunks/ (see {@link ChunkedPropertyStore}).
+ *
+ * This layout is schema version 2.  Version 1, which held the TaskInfo and TaskStatus in separate nodes under a single
+ * Tasks/ node, is migrated by {@link CuratorSchemaVersionStore#migrate()} when the store is created.  The migration
+ * is one-way: see {@link TaskBucketMigration}.
+ *
+ * A store may also be created read-only, eg by a hot standby scheduler which must not migrate or otherwise write the
+ * framework's data while another scheduler is the leader.  A read-only store neither migrates the layout nor creates
+ * the Task buckets, so a layout which still needs to be migrated reads as holding no Tasks, and all of its writes fail
+ * until {@link #openForWrites()} is called.
  */
 public class CuratorStateStore implements StateStore {
 
@@ -46,19 +99,35 @@ public class CuratorStateStore implements StateStore {
     /**
      * @see CuratorSchemaVersionStore#CURRENT_SCHEMA_VERSION
      */
-    private static final int MIN_SUPPORTED_SCHEMA_VERSION = 1;
-    private static final int MAX_SUPPORTED_SCHEMA_VERSION = 1;
+    private static final int MIN_SUPPORTED_SCHEMA_VERSION = 2;
+    private static final int MAX_SUPPORTED_SCHEMA_VERSION = 2;
+
+    /**
+     * The number of times a conditional update of Task records is retried when the records are concurrently modified.
+     */
+    static final int MAX_UPDATE_ATTEMPTS = 3;
+
+    /**
+     * The states of the TaskStatuses for which {@link TaskUtils#needsRecovery(Protos.TaskStatus)} holds.
+     */
+    private static final Set<Protos.TaskState> RECOVERY_STATES = getRecoveryStates();
 
-    private static final String TASK_INFO_PATH_NAME = "TaskInfo";
-    private static final String TASK_STATUS_PATH_NAME = "TaskStatus";
-    private static final String FWK_ID_PATH_NAME = "FrameworkID";
-    private static final String PROPERTIES_PATH_NAME = "Properties";
-    private static final String TASKS_ROOT_NAME = "Tasks";
+    static final String FWK_ID_PATH_NAME = "FrameworkID";
+    static final String PROPERTIES_PATH_NAME = "Properties";
+    private static final String TASK_BUCKETS_ROOT_NAME = "TaskBuckets";
 
-    private final CuratorPersister curator;
-    private final TaskPathMapper taskPathMapper;
+    final CuratorPersister curator;
+    final TaskPathMapper taskPathMapper;
+    final TaskBlobStore blobStore;
+    final StateChangeFeed changeFeed;
     private final String fwkIdPath;
     private final String propertiesPath;
+    private final CuratorAsyncStateStore asyncStateStore;
+    private final Map<String, VersionedRecord> recordIndex = new ConcurrentHashMap<>();
+    private final ChunkedPropertyStore chunkedProperties;
+    private final String frameworkName;
+
+    private volatile boolean readOnly;
 
     /**
      * Creates a new {@link StateStore} which uses Curator with a default {@link RetryPolicy} and
@@ -91,28 +160,95 @@ public class CuratorStateStore implements StateStore {
      */
     public CuratorStateStore(
             String frameworkName, String connectionString, RetryPolicy retryPolicy) {
-        this.curator = new CuratorPersister(connectionString, retryPolicy);
+        this(frameworkName, connectionString, retryPolicy, false);
+    }
 
-        // Check version up-front:
-        int currentVersion = new CuratorSchemaVersionStore(curator, frameworkName).fetch();
-        if (!SchemaVersionStore.isSupported(
-                currentVersion, MIN_SUPPORTED_SCHEMA_VERSION, MAX_SUPPORTED_SCHEMA_VERSION)) {
-            throw new IllegalStateException(String.format(
-                    "Storage schema version %d is not supported by this software " +
-                            "(support: min=%d, max=%d)",
-                    currentVersion, MIN_SUPPORTED_SCHEMA_VERSION, MAX_SUPPORTED_SCHEMA_VERSION));
+    /**
+     * Creates a new {@link StateStore} which uses Curator with a custom {@link RetryPolicy}, and which is read-only
+     * until {@link #openForWrites()} is called if {@code readOnly} is set.
+     */
+    CuratorStateStore(String frameworkName, String connectionString, RetryPolicy retryPolicy, boolean readOnly) {
+        this.curator = CuratorClientProvider.getDefault().getPersister(connectionString, retryPolicy);
+        this.frameworkName = frameworkName;
+        this.readOnly = readOnly;
+
+        if (!readOnly) {
+            // Check version up-front, migrating older layouts:
+            initialize(curator, frameworkName);
         }
 
         final String rootPath = CuratorUtils.toServiceRootPath(frameworkName);
         this.taskPathMapper = new TaskPathMapper(rootPath);
+        this.blobStore = new TaskBlobStore(curator, rootPath);
         this.fwkIdPath = CuratorUtils.join(rootPath, FWK_ID_PATH_NAME);
         this.propertiesPath = CuratorUtils.join(rootPath, PROPERTIES_PATH_NAME);
+        this.asyncStateStore = new CuratorAsyncStateStore(curator, rootPath, blobStore, new AsyncTaskWriteListener());
+        this.changeFeed = new StateChangeFeed(curator, taskPathMapper.getBucketsRootPath(), propertiesPath, blobStore);
+        this.chunkedProperties = new ChunkedPropertyStore(curator, rootPath, propertiesPath);
+    }
+
+    /**
+     * Migrates the layout of a read-only store and creates any missing Task buckets, as a store which is not
+     * read-only does when it is created, and then allows writes.  This must only be called by the elected leader among
+     * the framework's schedulers.  Calling it on a store which is not read-only has no effect.
+     *
+     * @throws StateStoreException if the migration fails, in which case the store remains read-only
+     */
+    public synchronized void openForWrites() throws StateStoreException {
+        if (!readOnly) {
+            return;
+        }
+        logger.info("Opening state store of '{}' for writes", frameworkName);
+        initialize(curator, frameworkName);
+        readOnly = false;
+    }
+
+    /**
+     * Returns whether writes fail until {@link #openForWrites()} is called.
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * Returns an {@link AsyncStateStore} which shares this store's Zookeeper connection and data.  Operations issued
+     * through it are not ordered with respect to operations issued through this store.
+     *
+     * @throws StateStoreException if this store is still read-only
+     */
+    public AsyncStateStore getAsyncStateStore() throws StateStoreException {
+        checkWritable();
+        return asyncStateStore;
+    }
+
+    /**
+     * Returns a {@link StateSnapshotter} which shares this store's Zookeeper connection, eg for exporting snapshots
+     * from a running scheduler.  Closing it leaves the connection open.
+     */
+    public StateSnapshotter getSnapshotter() {
+        return new StateSnapshotter(new CuratorPersister(curator.getClient(), () -> { }));
+    }
+
+    /**
+     * Deletes the Task blobs which are no longer referenced by any Task record, eg after all Tasks of a pod were
+     * updated to a new command, and indexes the records and caches the blobs which are still referenced.
+     *
+     * Blobs are written before the records which reference them, so this must only be called by the elected leader
+     * among the framework's schedulers, before it writes any Tasks.  A standby could otherwise delete a blob which the
+     * leader has just written for a record it is about to store.
+     *
+     * @throws StateStoreException if reading the records or deleting the blobs fails
+     */
+    public void collectGarbage() throws StateStoreException {
+        checkWritable();
+        collectGarbage(warmRecordIndex());
     }
 
     // Framework ID
 
     @Override
     public void storeFrameworkId(Protos.FrameworkID fwkId) throws StateStoreException {
+        checkWritable();
         try {
             logger.debug("Storing FrameworkID in '{}'", fwkIdPath);
             curator.store(fwkIdPath, fwkId.toByteArray());
@@ -124,6 +260,7 @@ public class CuratorStateStore implements StateStore {
 
     @Override
     public void clearFrameworkId() throws StateStoreException {
+        checkWritable();
         try {
             logger.debug("Clearing FrameworkID at '{}'", fwkIdPath);
             curator.clear(fwkIdPath);
@@ -157,73 +294,44 @@ public class CuratorStateStore implements StateStore {
 
     // Write Tasks
 
+    /**
+     * Stores all TaskInfos in a single Zookeeper transaction, retaining the stored TaskStatus of each Task.
+     */
     @Override
     public void storeTasks(Collection<Protos.TaskInfo> tasks) throws StateStoreException {
-        for (Protos.TaskInfo taskInfo : tasks) {
-            String path = taskPathMapper.getTaskInfoPath(taskInfo.getName());
-            logger.debug("Storing Taskinfo for {} in '{}'", taskInfo.getName(), path);
-            try {
-                curator.store(path, taskInfo.toByteArray());
-            } catch (Exception e) {
-                // exit early, without proceeding to other tasks:
-                throw new StateStoreException(String.format(
-                        "Failed to store TaskInfo in '%s'", path), e);
-            }
-        }
+        storeRecords(tasks, Collections.emptyList());
     }
 
+    /**
+     * Stores the TaskStatus with a single write when the record of its Task is known, see {@link CuratorStateStore}.
+     */
     @Override
     public void storeStatus(Protos.TaskStatus status) throws StateStoreException {
-        String taskName;
-        try {
-            taskName = TaskUtils.toTaskName(status.getTaskId());
-        } catch (TaskException e) {
-            throw new StateStoreException(String.format(
-                    "Failed to parse the Task Name from TaskStatus.task_id: '%s'", status), e);
-        }
-
         // Validate that a TaskInfo with the exact same UUID is currently present. We intentionally
         // ignore TaskStatuses whose TaskID doesn't (exactly) match the current TaskInfo: We will
         // occasionally get these for stale tasks that have since been changed (with new UUIDs).
-        Optional<Protos.TaskInfo> optionalTaskInfo;
-        try {
-            optionalTaskInfo = fetchTask(taskName);
-        } catch (Exception e) {
-            throw new StateStoreException(String.format(
-                    "Unable to retrieve matching TaskInfo for the provided TaskStatus name %s.", taskName), e);
-        }
-
-        if (!optionalTaskInfo.isPresent()) {
-            throw new StateStoreException(
-                    String.format("The following TaskInfo is not present in the StateStore: %s. " +
-                            "TaskInfo must be present in order to store a TaskStatus.", taskName));
-        }
-
-        if (!optionalTaskInfo.get().getTaskId().getValue().equals(status.getTaskId().getValue())) {
-            throw new StateStoreException(String.format(
-                    "Task ID '%s' of updated status doesn't match Task ID '%s' of current TaskInfo."
-                            + " Task IDs must exactly match before status may be updated."
-                            + " NewTaskStatus[%s] CurrentTaskInfo[%s]",
-                    status.getTaskId().getValue(), optionalTaskInfo.get().getTaskId().getValue(),
-                    status, optionalTaskInfo));
-        }
-
-        String path = taskPathMapper.getTaskStatusPath(taskName);
-        logger.debug("Storing status for '{}' in '{}'", taskName, path);
+        storeRecords(Collections.emptyList(), Collections.singletonList(status));
+    }
 
-        try {
-            curator.store(path, status.toByteArray());
-        } catch (Exception e) {
-            throw new StateStoreException(e);
-        }
+    /**
+     * Stores all TaskInfos and TaskStatuses in a single Zookeeper transaction.  Statuses for Tasks in the batch are
+     * validated against the batch itself, otherwise against the TaskInfo read along with the record being updated.
+     */
+    @Override
+    public void storeTasksAndStatuses(Collection<Protos.TaskInfo> tasks, Collection<Protos.TaskStatus> statuses)
+            throws StateStoreException {
+        storeRecords(tasks, statuses);
     }
 
     @Override
     public void clearTask(String taskName) throws StateStoreException {
+        checkWritable();
         String path = taskPathMapper.getTaskPath(taskName);
         logger.debug("Clearing Task at '{}'", path);
+        recordIndex.remove(taskName);
         try {
             curator.clear(path);
+            changeFeed.taskCleared(taskName);
         } catch (KeeperException.NoNodeException e) {
             // Clearing a non-existent Task should not result in an exception from us.
             logger.warn("Cleared nonexistent Task, continuing silently: {}", taskName, e);
@@ -235,73 +343,128 @@ public class CuratorStateStore implements StateStore {
 
     // Read Tasks
 
+    /**
+     * Lists the children of all buckets with pipelined reads, rather than one round trip per bucket.
+     */
     @Override
     public Collection<String> fetchTaskNames() throws StateStoreException {
-        String path = taskPathMapper.getTasksRootPath();
-        logger.debug("Fetching task names from '{}'", path);
-        try {
-            Collection<String> taskNames = new ArrayList<>();
-            for (String childNode : curator.getChildren(path)) {
-                taskNames.add(childNode);
+        logger.debug("Fetching task names from '{}'", taskPathMapper.getBucketsRootPath());
+        List<CompletableFuture<Collection<String>>> futures = new ArrayList<>(TaskPathMapper.BUCKET_COUNT);
+        for (String bucketPath : taskPathMapper.getBucketPaths()) {
+            futures.add(curator.getChildrenAsync(bucketPath));
+        }
+
+        Collection<String> taskNames = new ArrayList<>();
+        for (CompletableFuture<Collection<String>> future : futures) {
+            try {
+                taskNames.addAll(future.join());
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof KeeperException.NoNodeException)) {
+                    throw new StateStoreException(e.getCause());
+                }
+                // Bucket doesn't exist yet. Treat as an empty list of tasks.
             }
-            return taskNames;
-        } catch (KeeperException.NoNodeException e) {
-            // Root path doesn't exist yet. Treat as an empty list of tasks. This scenario is
-            // expected to commonly occur when the Framework is being run for the first time.
-            return Collections.emptyList();
-        } catch (Exception e) {
-            throw new StateStoreException(e);
         }
+        return taskNames;
     }
 
+    /**
+     * Fetches all Task records with pipelined reads, rather than one round trip per Task.
+     */
     @Override
     public Collection<Protos.TaskInfo> fetchTasks() throws StateStoreException {
         Collection<Protos.TaskInfo> taskInfos = new ArrayList<>();
-        for (String taskName : fetchTaskNames()) {
-            try {
-                byte[] bytes = curator.fetch(taskPathMapper.getTaskInfoPath(taskName));
-                taskInfos.add(Protos.TaskInfo.parseFrom(bytes));
-            } catch (Exception e) {
-                // Throw even for NoNodeException: We should always have a TaskInfo for every entry
-                throw new StateStoreException(e);
-            }
+        for (StoredTask storedTask : fetchStoredTasks()) {
+            taskInfos.add(storedTask.getInfo());
         }
         return taskInfos;
     }
 
+    /**
+     * Fetches all Task records with pipelined reads, rather than one round trip per Task.
+     */
     @Override
-    public Optional<Protos.TaskInfo> fetchTask(String taskName) throws StateStoreException {
-        String path = taskPathMapper.getTaskInfoPath(taskName);
-        logger.debug("Fetching TaskInfo {} from '{}'", taskName, path);
-        try {
-            byte[] bytes = curator.fetch(path);
-            if (bytes.length > 0) {
-                return Optional.of(Protos.TaskInfo.parseFrom(bytes));
-            } else {
-                throw new StateStoreException(String.format(
-                        "Failed to retrieve TaskInfo for TaskName: %s", taskName));
+    public Collection<StoredTask> fetchStoredTasks() throws StateStoreException {
+        // Tasks which were cleared since their names were listed are omitted.
+        return fetchStoredTasks(fetchTaskNames()).values();
+    }
+
+    /**
+     * Reads only the Tasks which the index selects, see {@link CuratorStateStore}.
+     */
+    @Override
+    public Collection<Protos.TaskInfo> fetchTasksNeedingRecovery() throws StateStoreException {
+        Optional<Collection<StoredTask>> storedTasks = queryIndex(index -> {
+            Set<String> taskNames = new HashSet<>();
+            for (Protos.TaskState state : RECOVERY_STATES) {
+                taskNames.addAll(index.getTasksInState(state));
             }
-        } catch (KeeperException.NoNodeException e) {
-            logger.warn("No TaskInfo found for the requested name: " + taskName + " at: " + path);
-            return Optional.empty();
-        } catch (Exception e) {
-            throw new StateStoreException(e);
-        }
+            return taskNames;
+        });
+        return storedTasks.isPresent() ? getInfos(storedTasks.get()) : StateStore.super.fetchTasksNeedingRecovery();
+    }
+
+    /**
+     * Reads only the Tasks which the index selects, see {@link CuratorStateStore}.
+     */
+    @Override
+    public Collection<Protos.TaskInfo> fetchTasksOnAgent(Protos.SlaveID agentId) throws StateStoreException {
+        Optional<Collection<StoredTask>> storedTasks = queryIndex(index -> index.getTasksOnAgent(agentId));
+        return storedTasks.isPresent() ? getInfos(storedTasks.get()) : StateStore.super.fetchTasksOnAgent(agentId);
+    }
+
+    /**
+     * Reads only the Tasks which the index selects, see {@link CuratorStateStore}.
+     */
+    @Override
+    public Collection<StoredTask> fetchTasksInState(Protos.TaskState state) throws StateStoreException {
+        Optional<Collection<StoredTask>> storedTasks = queryIndex(index -> index.getTasksInState(state));
+        return storedTasks.isPresent() ? storedTasks.get() : StateStore.super.fetchTasksInState(state);
+    }
+
+    /**
+     * Reads only the Tasks which the index selects, see {@link CuratorStateStore}.
+     */
+    @Override
+    public Collection<Protos.TaskInfo> fetchTasksWithTargetConfiguration(UUID targetConfigId)
+            throws StateStoreException {
+        Optional<Collection<StoredTask>> storedTasks =
+                queryIndex(index -> index.getTasksWithTargetConfiguration(targetConfigId));
+        return storedTasks.isPresent()
+                ? getInfos(storedTasks.get())
+                : StateStore.super.fetchTasksWithTargetConfiguration(targetConfigId);
+    }
+
+    /**
+     * Reads only the Tasks which the index selects, see {@link CuratorStateStore}.
+     */
+    @Override
+    public Collection<Protos.TaskInfo> fetchTasksNotOnTargetConfiguration(UUID targetConfigId)
+            throws StateStoreException {
+        Optional<Collection<StoredTask>> storedTasks =
+                queryIndex(index -> index.getTasksNotOnTargetConfiguration(targetConfigId));
+        return storedTasks.isPresent()
+                ? getInfos(storedTasks.get())
+                : StateStore.super.fetchTasksNotOnTargetConfiguration(targetConfigId);
+    }
+
+    @Override
+    public Optional<Protos.TaskInfo> fetchTask(String taskName) throws StateStoreException {
+        return fetchStoredTask(taskName).map(StoredTask::getInfo);
     }
 
+    /**
+     * Fetches all Task records with pipelined reads, rather than one round trip per Task.
+     */
     @Override
     public Collection<Protos.TaskStatus> fetchStatuses() throws StateStoreException {
+        // Statuses are held in the records themselves, so no blobs are read.
         Collection<Protos.TaskStatus> taskStatuses = new ArrayList<>();
-        for (String taskName : fetchTaskNames()) {
-            try {
-                byte[] bytes = curator.fetch(taskPathMapper.getTaskStatusPath(taskName));
-                taskStatuses.add(Protos.TaskStatus.parseFrom(bytes));
-            } catch (KeeperException.NoNodeException e) {
-                // The task node exists, but it doesn't contain a TaskStatus node. This may occur if
-                // the only contents are a TaskInfo.
-                continue;
-            } catch (Exception e) {
-                throw new StateStoreException(e);
+        for (VersionedData record : fetchRecords(fetchTaskNames()).values()) {
+            // The record may lack a TaskStatus. This may occur if the only contents are a TaskInfo.
+            Optional<Protos.TaskStatus> taskStatus = TaskRecord.parse(record.getData()).getStatus();
+            if (taskStatus.isPresent()) {
+                taskStatuses.add(taskStatus.get());
             }
         }
         return taskStatuses;
@@ -314,57 +477,96 @@ public class CuratorStateStore implements StateStore {
 
     @Override
     public Optional<Protos.TaskStatus> fetchStatus(String taskName) throws StateStoreException {
-        String path = taskPathMapper.getTaskStatusPath(taskName);
-        logger.debug("Fetching status for '{}' in '{}'", taskName, path);
-        try {
-            byte[] bytes = curator.fetch(path);
-            if (bytes.length > 0) {
-                return Optional.of(Protos.TaskStatus.parseFrom(bytes));
-            } else {
-                throw new StateStoreException(String.format(
-                        "Failed to retrieve TaskStatus for TaskName: %s", taskName));
-            }
-        } catch (KeeperException.NoNodeException e) {
-            logger.warn("No TaskInfo found for the requested name: " + taskName + " at: " + path);
-            return Optional.empty();
-        } catch (Exception e) {
-            throw new StateStoreException(e);
-        }
+        return fetchRecord(taskName).flatMap(TaskRecord::getStatus);
     }
 
     @Override
     public void storeProperty(final String key, final byte[] value) throws StateStoreException {
+        checkWritable();
         StateStoreUtils.validateKey(key);
         StateStoreUtils.validateValue(value);
         try {
             final String path = CuratorUtils.join(this.propertiesPath, key);
             logger.debug("Storing property key: {} into path: {}", key, path);
             curator.store(path, value);
+            changeFeed.propertyChanged(key, Optional.of(value));
         } catch (Exception e) {
             throw new StateStoreException(e);
         }
     }
 
+    /**
+     * Also returns values which were stored with {@link #openPropertyOutputStream(String)}, which are then read into
+     * memory as a whole.
+     */
     @Override
     public byte[] fetchProperty(final String key) throws StateStoreException {
         StateStoreUtils.validateKey(key);
+        final String path = CuratorUtils.join(this.propertiesPath, key);
         try {
-            final String path = CuratorUtils.join(this.propertiesPath, key);
             logger.debug("Fetching property key: {} from path: {}", key, path);
             return curator.fetch(path);
+        } catch (KeeperException.NoNodeException e) {
+            // Fall through to the chunked value, if any.
         } catch (Exception e) {
             throw new StateStoreException(e);
         }
+
+        try (InputStream stream = openChunkedProperty(key, path)) {
+            return ByteStreams.toByteArray(stream);
+        } catch (IOException e) {
+            throw new StateStoreException(String.format("Failed to read property key: %s", key), e);
+        }
     }
 
     @Override
     public Collection<String> fetchPropertyKeys() throws StateStoreException {
+        Set<String> keys = new TreeSet<>();
         try {
-            return curator.getChildren(this.propertiesPath);
+            keys.addAll(curator.getChildren(this.propertiesPath));
         } catch (KeeperException.NoNodeException e) {
             // Root path doesn't exist yet. Treat as an empty list of properties. This scenario is
             // expected to commonly occur when the Framework is being run for the first time.
-            return Collections.emptyList();
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
+        try {
+            keys.addAll(chunkedProperties.getKeys());
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
+        return keys;
+    }
+
+    /**
+     * Splits the value into chunks of at most 512KB, which are stored as they are written and published when the
+     * stream is closed, replacing any value stored with {@link #storeProperty(String, byte[])}.  Values stored this way
+     * are not reported to {@link StateStoreListener}s, and replacing a plain value with one is reported as clearing it.
+     */
+    @Override
+    public OutputStream openPropertyOutputStream(String key) throws StateStoreException {
+        checkWritable();
+        StateStoreUtils.validateKey(key);
+        try {
+            logger.debug("Opening chunked property key: {}", key);
+            return chunkedProperties.openWriter(key);
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
+    }
+
+    /**
+     * Streams values which were stored with {@link #openPropertyOutputStream(String)} one chunk at a time.  Reading
+     * fails with an {@link IOException} if the value is replaced or cleared meanwhile.
+     */
+    @Override
+    public InputStream openPropertyInputStream(String key) throws StateStoreException {
+        StateStoreUtils.validateKey(key);
+        final String path = CuratorUtils.join(this.propertiesPath, key);
+        try {
+            return new ByteArrayInputStream(curator.fetch(path));
+        } catch (KeeperException.NoNodeException e) {
+            return openChunkedProperty(key, path);
         } catch (Exception e) {
             throw new StateStoreException(e);
         }
@@ -372,47 +574,509 @@ public class CuratorStateStore implements StateStore {
 
     @Override
     public void clearProperty(final String key) throws StateStoreException {
+        checkWritable();
         StateStoreUtils.validateKey(key);
+        boolean cleared;
+        try {
+            cleared = chunkedProperties.clear(key);
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
         try {
             final String path = CuratorUtils.join(this.propertiesPath, key);
             logger.debug("Removing property key: {} from path: {}", key, path);
             curator.clear(path);
+            changeFeed.propertyChanged(key, Optional.empty());
         } catch (KeeperException.NoNodeException e) {
             // Clearing a non-existent Property should not result in an exception from us.
-            logger.warn("Cleared nonexistent Property, continuing silently: {}", key, e);
+            if (!cleared) {
+                logger.warn("Cleared nonexistent Property, continuing silently: {}", key, e);
+            }
             return;
         } catch (Exception e) {
             throw new StateStoreException(e);
         }
     }
 
+    /**
+     * Reports writes through this store once they succeed, and changes by other clients which are observed with
+     * watches.  Writes through {@link #getAsyncStateStore()} are observed as changes by other clients.  The watches
+     * are started by the first subscription, which waits for their initial load.
+     */
+    @Override
+    public void subscribe(StateStoreListener listener) throws StateStoreException {
+        changeFeed.subscribe(listener);
+    }
+
+    @Override
+    public void unsubscribe(StateStoreListener listener) {
+        changeFeed.unsubscribe(listener);
+    }
+
+    @Override
+    public boolean isSubscribable() {
+        return true;
+    }
+
     void close() {
+        changeFeed.close();
         curator.close();
     }
 
     // Internals
 
-    private static class TaskPathMapper {
-        private final String tasksRootPath;
+    /**
+     * Called once a write of the provided Task through {@link #getAsyncStateStore()} has completed, whether or not it
+     * succeeded, after the record index has been updated.
+     */
+    void onAsyncTaskWrite(String taskName) {
+    }
 
-        private TaskPathMapper(String rootPath) {
-            this.tasksRootPath = CuratorUtils.join(rootPath, TASKS_ROOT_NAME);
+    /**
+     * Reads the records of all provided Tasks which are not known, applies the TaskInfos and then the TaskStatuses to
+     * them, and stores the updated records with a conditional transaction.  The whole update is retried against records
+     * read from Zookeeper when any of the records is concurrently modified.  Blobs which are newly referenced by the
+     * updated records are written beforehand, and the transaction also fails if any of them has since been deleted.
+     */
+    private void storeRecords(Collection<Protos.TaskInfo> tasks, Collection<Protos.TaskStatus> statuses)
+            throws StateStoreException {
+        checkWritable();
+        Set<String> taskNames = new LinkedHashSet<>();
+        for (Protos.TaskInfo taskInfo : tasks) {
+            taskNames.add(taskInfo.getName());
+        }
+        for (Protos.TaskStatus status : statuses) {
+            taskNames.add(getTaskName(status));
+        }
+        if (taskNames.isEmpty()) {
+            return;
+        }
+
+        logger.debug("Storing {} TaskInfos and {} TaskStatuses in a single transaction", tasks.size(), statuses.size());
+        for (int attempt = 1; ; attempt++) {
+            Map<String, VersionedRecord> currentVersions = fetchRecordsForUpdate(taskNames);
+            Map<String, TaskRecord> currentRecords = new HashMap<>();
+            for (Map.Entry<String, VersionedRecord> entry : currentVersions.entrySet()) {
+                currentRecords.put(entry.getKey(), entry.getValue().record);
+            }
+
+            Map<String, TaskRecord> updatedRecords = new HashMap<>();
+            Map<String, byte[]> newBlobs = new HashMap<>();
+            for (Protos.TaskInfo taskInfo : tasks) {
+                Optional<TaskRecord> current = Optional.ofNullable(currentRecords.get(taskInfo.getName()));
+                TaskRecord updated = TaskRecord.of(new StoredTask(taskInfo, current.flatMap(TaskRecord::getStatus)));
+                updatedRecords.put(taskInfo.getName(), updated);
+                for (Map.Entry<String, byte[]> blob : updated.getBlobs().entrySet()) {
+                    if (!current.isPresent() || !current.get().getBlobIds().contains(blob.getKey())) {
+                        newBlobs.put(blob.getKey(), blob.getValue());
+                    }
+                }
+            }
+            for (Protos.TaskStatus status : statuses) {
+                String taskName = getTaskName(status);
+                Optional<TaskRecord> current = updatedRecords.containsKey(taskName)
+                        ? Optional.of(updatedRecords.get(taskName))
+                        : Optional.ofNullable(currentRecords.get(taskName));
+                validateStatus(status, taskName, current.map(TaskRecord::getStrippedInfo));
+                updatedRecords.put(taskName, current.get().withStatus(status));
+            }
+
+            Map<String, VersionedData> pathsToValues = new LinkedHashMap<>();
+            for (String taskName : taskNames) {
+                VersionedRecord currentVersion = currentVersions.get(taskName);
+                pathsToValues.put(taskPathMapper.getTaskPath(taskName), new VersionedData(
+                        updatedRecords.get(taskName).toBytes(),
+                        currentVersion == null ? VersionedData.ABSENT : currentVersion.version));
+            }
+            List<String> newBlobPaths = new ArrayList<>();
+            for (String blobId : newBlobs.keySet()) {
+                newBlobPaths.add(blobStore.getBlobPath(blobId));
+            }
+
+            try {
+                blobStore.storeAll(newBlobs);
+                curator.compareAndSetAll(pathsToValues, newBlobPaths);
+            } catch (KeeperException.BadVersionException
+                    | KeeperException.NodeExistsException
+                    | KeeperException.NoNodeException e) {
+                // Any of the known records may be stale.
+                recordIndex.keySet().removeAll(taskNames);
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    throw new StateStoreException(String.format(
+                            "Failed to store %d TaskInfos and %d TaskStatuses after %d concurrent modifications",
+                            tasks.size(), statuses.size(), attempt), e);
+                }
+                logger.warn("Task records modified concurrently, retrying (attempt {})", attempt, e);
+                continue;
+            } catch (Exception e) {
+                recordIndex.keySet().removeAll(taskNames);
+                throw new StateStoreException(String.format(
+                        "Failed to store %d TaskInfos and %d TaskStatuses", tasks.size(), statuses.size()), e);
+            }
+
+            Map<String, Protos.TaskInfo> infosByName = new HashMap<>();
+            for (Protos.TaskInfo taskInfo : tasks) {
+                infosByName.put(taskInfo.getName(), taskInfo);
+            }
+            for (String taskName : taskNames) {
+                VersionedRecord currentVersion = currentVersions.get(taskName);
+                int version = currentVersion == null ? 0 : currentVersion.version + 1;
+                TaskRecord updated = updatedRecords.get(taskName);
+                recordIndex.put(taskName, new VersionedRecord(updated.withoutBlobs(), version));
+                changeFeed.taskStored(taskName, version, updated, Optional.ofNullable(infosByName.get(taskName)));
+            }
+            return;
+        }
+    }
+
+    /**
+     * Returns the known records of the provided Tasks, reading and indexing those which are not known.  Tasks which
+     * have no record are omitted.
+     */
+    private Map<String, VersionedRecord> fetchRecordsForUpdate(Collection<String> taskNames)
+            throws StateStoreException {
+        Map<String, VersionedRecord> records = new HashMap<>();
+        List<String> unknownTaskNames = new ArrayList<>();
+        for (String taskName : taskNames) {
+            VersionedRecord record = recordIndex.get(taskName);
+            if (record != null) {
+                records.put(taskName, record);
+            } else {
+                unknownTaskNames.add(taskName);
+            }
+        }
+        if (!unknownTaskNames.isEmpty()) {
+            records.putAll(indexRecords(fetchRecords(unknownTaskNames)));
+        }
+        return records;
+    }
+
+    private InputStream openChunkedProperty(String key, String path) throws StateStoreException {
+        Optional<InputStream> stream;
+        try {
+            stream = chunkedProperties.openReader(key);
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
+        if (!stream.isPresent()) {
+            throw new StateStoreException(String.format("No property found for key: %s at path: %s", key, path));
+        }
+        return stream.get();
+    }
+
+    /**
+     * Restores the Tasks which the provided query selects from the index, from their known records and from cached
+     * blobs where possible.  The first query starts loading the index in the background.  Returns an empty Optional
+     * until the index is loaded, in which case the caller falls back to reading every Task.
+     */
+    private Optional<Collection<StoredTask>> queryIndex(Function<TaskIndex, Set<String>> query)
+            throws StateStoreException {
+        changeFeed.startInBackground();
+        Optional<Map<String, TaskRecord>> records = changeFeed.queryIndex(query);
+        if (!records.isPresent()) {
+            logger.info("Task index is not loaded yet, reading all Tasks");
+            return Optional.empty();
+        }
+        return Optional.of(resolve(records.get()).values());
+    }
+
+    private static Collection<Protos.TaskInfo> getInfos(Collection<StoredTask> storedTasks) {
+        Collection<Protos.TaskInfo> taskInfos = new ArrayList<>();
+        for (StoredTask storedTask : storedTasks) {
+            taskInfos.add(storedTask.getInfo());
+        }
+        return taskInfos;
+    }
+
+    /**
+     * Reads the records of all Tasks into the index, returning them.
+     */
+    private Map<String, VersionedRecord> warmRecordIndex() throws StateStoreException {
+        Map<String, VersionedRecord> records = indexRecords(fetchRecords(fetchTaskNames()));
+        logger.info("Indexed {} Task records", records.size());
+        return records;
+    }
+
+    private Map<String, VersionedRecord> indexRecords(Map<String, VersionedData> versionedRecords)
+            throws StateStoreException {
+        Map<String, VersionedRecord> records = new HashMap<>();
+        for (Map.Entry<String, VersionedData> entry : versionedRecords.entrySet()) {
+            VersionedRecord record = new VersionedRecord(
+                    TaskRecord.parse(entry.getValue().getData()), entry.getValue().getVersion());
+            records.put(entry.getKey(), record);
+            recordIndex.put(entry.getKey(), record);
+        }
+        return records;
+    }
+
+    private Optional<StoredTask> fetchStoredTask(String taskName) throws StateStoreException {
+        Optional<TaskRecord> record = fetchRecord(taskName);
+        if (!record.isPresent()) {
+            return Optional.empty();
+        }
+        return Optional.of(resolve(Collections.singletonMap(taskName, record.get())).get(taskName));
+    }
+
+    private Optional<TaskRecord> fetchRecord(String taskName) throws StateStoreException {
+        String path = taskPathMapper.getTaskPath(taskName);
+        logger.debug("Fetching Task {} from '{}'", taskName, path);
+        try {
+            return Optional.of(TaskRecord.parse(curator.fetch(path)));
+        } catch (KeeperException.NoNodeException e) {
+            logger.warn("No Task found for the requested name: " + taskName + " at: " + path);
+            return Optional.empty();
+        } catch (StateStoreException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
+    }
+
+    /**
+     * Fetches the provided Tasks with pipelined reads of their records and of any blobs which are not cached, keyed by
+     * Task name in the order of the provided names.  Tasks which have no record are omitted.
+     */
+    Map<String, StoredTask> fetchStoredTasks(Collection<String> taskNames) throws StateStoreException {
+        Map<String, TaskRecord> records = new LinkedHashMap<>();
+        Map<String, VersionedData> versionedRecords = fetchRecords(taskNames);
+        for (String taskName : taskNames) {
+            VersionedData record = versionedRecords.get(taskName);
+            if (record != null) {
+                records.put(taskName, TaskRecord.parse(record.getData()));
+            }
+        }
+        return resolve(records);
+    }
+
+    /**
+     * Restores the complete Tasks of the provided records, reading all blobs which are not cached at once.
+     */
+    private Map<String, StoredTask> resolve(Map<String, TaskRecord> records) throws StateStoreException {
+        Set<String> blobIds = new HashSet<>();
+        for (TaskRecord record : records.values()) {
+            blobIds.addAll(record.getBlobIds());
+        }
+        Map<String, byte[]> blobs;
+        try {
+            blobs = blobStore.fetchAll(blobIds);
+        } catch (Exception e) {
+            throw new StateStoreException("Failed to fetch Task blobs", e);
+        }
+
+        Map<String, StoredTask> storedTasks = new LinkedHashMap<>();
+        for (Map.Entry<String, TaskRecord> entry : records.entrySet()) {
+            storedTasks.put(entry.getKey(), entry.getValue().resolve(blobs));
+        }
+        return storedTasks;
+    }
+
+    /**
+     * Deletes the blobs which are no longer referenced by any Task record, eg after all Tasks of a pod were updated to
+     * a new command, and reads those which are.
+     */
+    private void collectGarbage(Map<String, VersionedRecord> records) throws StateStoreException {
+        Set<String> referencedBlobIds = new HashSet<>();
+        for (VersionedRecord record : records.values()) {
+            referencedBlobIds.addAll(record.record.getBlobIds());
+        }
+        try {
+            blobStore.deleteUnreferenced(referencedBlobIds);
+            // Warms the blob cache, so that the Tasks which follow are resolved without reading their blobs again.
+            blobStore.fetchAll(referencedBlobIds);
+        } catch (Exception e) {
+            throw new StateStoreException("Failed to delete unreferenced Task blobs", e);
+        }
+    }
+
+    /**
+     * Fetches the records of the provided Tasks along with their versions, keyed by Task name.  Tasks which have no
+     * record are omitted.
+     */
+    private Map<String, VersionedData> fetchRecords(Collection<String> taskNames) throws StateStoreException {
+        Map<String, String> pathsToNames = new HashMap<>();
+        for (String taskName : taskNames) {
+            pathsToNames.put(taskPathMapper.getTaskPath(taskName), taskName);
+        }
+        try {
+            Map<String, VersionedData> records = new HashMap<>();
+            for (Map.Entry<String, VersionedData> entry : curator.fetchAllVersioned(pathsToNames.keySet()).entrySet()) {
+                records.put(pathsToNames.get(entry.getKey()), entry.getValue());
+            }
+            return records;
+        } catch (Exception e) {
+            throw new StateStoreException(e);
+        }
+    }
+
+    private void checkWritable() throws StateStoreException {
+        if (readOnly) {
+            throw new StateStoreException(String.format(
+                    "State store of '%s' is read-only until it is opened for writes", frameworkName));
+        }
+    }
+
+    /**
+     * Migrates the schema of the provided framework's data to the current version, then validates that the version is
+     * supported by this store and creates any missing Task buckets.
+     */
+    static void initialize(CuratorPersister curator, String frameworkName) throws StateStoreException {
+        int currentVersion = CuratorClientProvider.getDefault().migrateSchemaVersion(curator, frameworkName);
+        if (!SchemaVersionStore.isSupported(
+                currentVersion, MIN_SUPPORTED_SCHEMA_VERSION, MAX_SUPPORTED_SCHEMA_VERSION)) {
+            throw new IllegalStateException(String.format(
+                    "Storage schema version %d is not supported by this software " +
+                            "(support: min=%d, max=%d)",
+                    currentVersion, MIN_SUPPORTED_SCHEMA_VERSION, MAX_SUPPORTED_SCHEMA_VERSION));
+        }
+
+        createMissingBuckets(curator, new TaskPathMapper(CuratorUtils.toServiceRootPath(frameworkName)));
+    }
+
+    /**
+     * Creates the bucket nodes which don't exist yet, eg when the framework is first launched.  The buckets are listed
+     * with a single read, so that the usual case where all of them exist writes nothing.
+     */
+    private static void createMissingBuckets(CuratorPersister curator, TaskPathMapper taskPathMapper)
+            throws StateStoreException {
+        try {
+            Set<String> existingBuckets;
+            try {
+                existingBuckets = new HashSet<>(curator.getChildren(taskPathMapper.getBucketsRootPath()));
+            } catch (KeeperException.NoNodeException e) {
+                existingBuckets = Collections.emptySet();
+            }
+
+            Map<String, byte[]> bucketsToBytes = new HashMap<>();
+            for (String bucketPath : taskPathMapper.getBucketPaths()) {
+                if (!existingBuckets.contains(ZKPaths.getNodeFromPath(bucketPath))) {
+                    bucketsToBytes.put(bucketPath, new byte[0]);
+                }
+            }
+            if (!bucketsToBytes.isEmpty()) {
+                logger.info("Creating {} missing Task buckets in '{}'",
+                        bucketsToBytes.size(), taskPathMapper.getBucketsRootPath());
+                curator.storeAll(bucketsToBytes);
+            }
+        } catch (Exception e) {
+            throw new StateStoreException("Failed to create Task buckets", e);
+        }
+    }
+
+    private static Set<Protos.TaskState> getRecoveryStates() {
+        Set<Protos.TaskState> states = EnumSet.noneOf(Protos.TaskState.class);
+        for (Protos.TaskState state : Protos.TaskState.values()) {
+            if (TaskUtils.needsRecovery(Protos.TaskStatus.newBuilder().setState(state).buildPartial())) {
+                states.add(state);
+            }
+        }
+        return states;
+    }
+
+    static String getTaskName(Protos.TaskStatus status) throws StateStoreException {
+        try {
+            return TaskUtils.toTaskName(status.getTaskId());
+        } catch (TaskException e) {
+            throw new StateStoreException(String.format(
+                    "Failed to parse the Task Name from TaskStatus.task_id: '%s'", status), e);
+        }
+    }
+
+    static void validateStatus(
+            Protos.TaskStatus status,
+            String taskName,
+            Optional<Protos.TaskInfo> optionalTaskInfo) throws StateStoreException {
+        if (!optionalTaskInfo.isPresent()) {
+            throw new StateStoreException(
+                    String.format("The following TaskInfo is not present in the StateStore: %s. " +
+                            "TaskInfo must be present in order to store a TaskStatus.", taskName));
+        }
+
+        if (!optionalTaskInfo.get().getTaskId().getValue().equals(status.getTaskId().getValue())) {
+            throw new StateStoreException(String.format(
+                    "Task ID '%s' of updated status doesn't match Task ID '%s' of current TaskInfo."
+                            + " Task IDs must exactly match before status may be updated."
+                            + " NewTaskStatus[%s] CurrentTaskInfo[%s]",
+                    status.getTaskId().getValue(), optionalTaskInfo.get().getTaskId().getValue(),
+                    status, optionalTaskInfo));
+        }
+    }
+
+    /**
+     * A parsed Task record along with the version of its node.
+     */
+    private static class VersionedRecord {
+        private final TaskRecord record;
+        private final int version;
+
+        private VersionedRecord(TaskRecord record, int version) {
+            this.record = record;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Applies the writes made through {@link #getAsyncStateStore()} to the record index and the change feed as soon as
+     * they complete, rather than once the feed's watches report them, so that the Tasks needing recovery are current
+     * when the write's future completes.
+     */
+    private class AsyncTaskWriteListener implements CuratorAsyncStateStore.TaskWriteListener {
+        @Override
+        public void onTaskStored(String taskName, int version, TaskRecord record) {
+            recordIndex.merge(taskName, new VersionedRecord(record.withoutBlobs(), version),
+                    (known, stored) -> known.version > stored.version ? known : stored);
+            changeFeed.taskStored(taskName, version, record, Optional.empty());
+            onAsyncTaskWrite(taskName);
+        }
+
+        @Override
+        public void onTaskCleared(String taskName) {
+            recordIndex.remove(taskName);
+            changeFeed.taskCleared(taskName);
+            onAsyncTaskWrite(taskName);
+        }
+
+        @Override
+        public void onTaskWriteFailed(String taskName) {
+            recordIndex.remove(taskName);
+            onAsyncTaskWrite(taskName);
+        }
+    }
+
+    /**
+     * Maps Task names to the paths of their records, which are spread across {@link #BUCKET_COUNT} bucket nodes by the
+     * CRC32 of the Task name.  The bucket count is part of the schema and must not change without a migration.
+     */
+    static class TaskPathMapper {
+        static final int BUCKET_COUNT = 64;
+
+        private final String bucketsRootPath;
+        private final List<String> bucketPaths;
+
+        TaskPathMapper(String rootPath) {
+            this.bucketsRootPath = CuratorUtils.join(rootPath, TASK_BUCKETS_ROOT_NAME);
+            List<String> paths = new ArrayList<>(BUCKET_COUNT);
+            for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+                paths.add(CuratorUtils.join(bucketsRootPath, String.format("%02x", bucket)));
+            }
+            this.bucketPaths = Collections.unmodifiableList(paths);
         }
 
-        private String getTaskInfoPath(String taskName) {
-            return CuratorUtils.join(getTaskPath(taskName), TASK_INFO_PATH_NAME);
+        static int getBucket(String taskName) {
+            CRC32 crc = new CRC32();
+            crc.update(taskName.getBytes(StandardCharsets.UTF_8));
+            return (int) (crc.getValue() % BUCKET_COUNT);
         }
 
-        private String getTaskStatusPath(String taskName) {
-            return CuratorUtils.join(getTaskPath(taskName), TASK_STATUS_PATH_NAME);
+        String getTaskPath(String taskName) {
+            return CuratorUtils.join(bucketPaths.get(getBucket(taskName)), taskName);
         }
 
-        private String getTaskPath(String taskName) {
-            return CuratorUtils.join(getTasksRootPath(), taskName);
+        List<String> getBucketPaths() {
+            return bucketPaths;
         }
 
-        private String getTasksRootPath() {
-            return tasksRootPath;
+        String getBucketsRootPath() {
+            return bucketsRootPath;
         }
     }
 }
@@ -0,0 +1,27 @@
+package org.apache.mesos.curator;
+
+/**
+ * This interface should be implemented by an elected scheduler in order to be told when it must stop acting on the
+ * framework's behalf, see {@link CuratorLeaderElection}.  Methods are invoked on Curator threads, and never after
+ * {@link #onLost()} or after the election was closed.
+ */
+public interface LeadershipListener {
+
+    /**
+     * Called when the connection to Zookeeper was suspended.  Leadership may be lost to another scheduler before the
+     * connection is restored, so the scheduler must pause all changes to the framework until it is resumed.
+     */
+    void onSuspended();
+
+    /**
+     * Called when the connection to Zookeeper was restored after {@link #onSuspended()}, and this scheduler is still
+     * the leader.
+     */
+    void onResumed();
+
+    /**
+     * Called when the Zookeeper session was lost, or another scheduler was elected.  The scheduler must not act on the
+     * framework's behalf again.
+     */
+    void onLost();
+}
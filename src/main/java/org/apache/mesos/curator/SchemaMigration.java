@@ -0,0 +1,16 @@
+package org.apache.mesos.curator;
+
+import org.apache.mesos.storage.CuratorPersister;
+
+/**
+ * Migrates the data stored by {@link CuratorStateStore} and {@link CuratorConfigStore} from one schema version to the
+ * next.  Migrations are run by {@link CuratorSchemaVersionStore#migrate()}.
+ */
+interface SchemaMigration {
+
+    /**
+     * Migrates the data under the provided framework root path.  This must leave the data in a state where the
+     * migration may be run again, should it fail or be interrupted before the new schema version is stored.
+     */
+    void migrate(CuratorPersister curator, String rootPath) throws Exception;
+}
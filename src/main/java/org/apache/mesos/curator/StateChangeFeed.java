@@ -0,0 +1,403 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.cache.ChildData;
+import org.apache.curator.framework.recipes.cache.TreeCache;
+import org.apache.curator.framework.recipes.cache.TreeCacheEvent;
+import org.apache.curator.framework.recipes.cache.TreeCacheListener;
+import org.apache.mesos.Protos;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StateStoreListener;
+import org.apache.mesos.storage.CuratorPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Reports changes to the Tasks and Properties of a {@link CuratorStateStore} to its {@link StateStoreListener}s.
+ * Writes through the store are reported once they succeed, and changes by other clients are observed with watches on
+ * the Task buckets and Properties.  The watches are only started once they are first needed: when a listener first
+ * subscribes, when the store's {@link TaskIndex} is first queried, or when a {@link CachedCuratorStateStore} shares
+ * them.
+ *
+ * The last reported record version of each Task and the last reported value of each Property are held in memory, so
+ * that the watch event which echoes a local write, or a local write which a watch event already reported, is not
+ * reported again.  The known records also maintain the store's {@link TaskIndex}, which is therefore rebuilt by the
+ * initial load of the watches.
+ *
+ * Changes are queued while holding this feed's lock, and delivered to listeners in order after it is released, so
+ * that a slow listener or the blob reads needed to restore a TaskInfo don't block the watches or other writes.
+ */
+class StateChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateChangeFeed.class);
+
+    /**
+     * The maximum time for which {@link #start()} waits for the initial load of the watched nodes, after which changes
+     * to nodes which were not loaded yet are reported as they are loaded, and the index is not used until it is
+     * complete.
+     */
+    private static final long INITIALIZATION_TIMEOUT_MS = 30000;
+
+    private final CuratorPersister curator;
+    private final String bucketsRootPath;
+    private final String propertiesPath;
+    private final TaskBlobStore blobStore;
+    private final List<StateStoreListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, KnownTask> knownTasks = new HashMap<>();
+    private final TaskIndex taskIndex = new TaskIndex();
+    private final Map<String, byte[]> knownProperties = new HashMap<>();
+    private final List<TreeCacheListener> tasksListeners = new ArrayList<>();
+    private final Queue<Runnable> pendingEvents = new ArrayDeque<>();
+    private final CountDownLatch initializedLatch = new CountDownLatch(2);
+    private final Object startLock = new Object();
+    private final Object deliveryLock = new Object();
+
+    private volatile boolean started;
+    private TreeCache tasksCache;
+    private TreeCache propertiesCache;
+    private boolean tasksInitialized;
+    private boolean propertiesInitialized;
+
+    StateChangeFeed(CuratorPersister curator, String bucketsRootPath, String propertiesPath, TaskBlobStore blobStore) {
+        this.curator = curator;
+        this.bucketsRootPath = bucketsRootPath;
+        this.propertiesPath = propertiesPath;
+        this.blobStore = blobStore;
+    }
+
+    /**
+     * Starts the watches if they are not started, and waits for their initial load.
+     */
+    void start() throws StateStoreException {
+        startInBackground();
+        try {
+            if (!initializedLatch.await(INITIALIZATION_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                logger.warn("Initial load of '{}' and '{}' did not complete within {}ms",
+                        bucketsRootPath, propertiesPath, INITIALIZATION_TIMEOUT_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StateStoreException("Interrupted while watching: " + bucketsRootPath, e);
+        }
+    }
+
+    /**
+     * Starts the watches if they are not started, without waiting for their initial load.
+     */
+    void startInBackground() throws StateStoreException {
+        // Not the lock which guards the reported state, which the initial load must acquire.
+        synchronized (startLock) {
+            if (!started) {
+                startWatches();
+            }
+        }
+    }
+
+    /**
+     * Adds a listener to the watch on the Task buckets, which receives all of its events including those of the initial
+     * load.  This allows a {@link CachedCuratorStateStore} to share the watch rather than adding its own.
+     *
+     * @throws IllegalStateException if the watches are already started
+     */
+    void addTasksListener(TreeCacheListener listener) {
+        synchronized (startLock) {
+            if (started) {
+                throw new IllegalStateException("Watches are already started: " + bucketsRootPath);
+            }
+            tasksListeners.add(listener);
+        }
+    }
+
+    /**
+     * Adds the listener, first starting the watches if they are not started.
+     */
+    void subscribe(StateStoreListener listener) throws StateStoreException {
+        start();
+        listeners.add(listener);
+    }
+
+    void unsubscribe(StateStoreListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Reports a Task record which was stored with the provided version.
+     *
+     * @param info the complete TaskInfo of the record if it is known, which is otherwise restored from the record
+     */
+    void taskStored(String taskName, int version, TaskRecord record, Optional<Protos.TaskInfo> info) {
+        synchronized (this) {
+            recordTaskStored(taskName, version, record, info);
+        }
+        deliverPendingEvents();
+    }
+
+    void taskCleared(String taskName) {
+        synchronized (this) {
+            recordTaskCleared(taskName);
+        }
+        deliverPendingEvents();
+    }
+
+    /**
+     * Returns the known records, without blobs, of the Tasks which the provided query selects from the index, or an
+     * empty Optional if the initial load of the index has not completed.
+     */
+    synchronized Optional<Map<String, TaskRecord>> queryIndex(Function<TaskIndex, Set<String>> query) {
+        if (!tasksInitialized) {
+            return Optional.empty();
+        }
+        Map<String, TaskRecord> records = new HashMap<>();
+        for (String taskName : query.apply(taskIndex)) {
+            records.put(taskName, knownTasks.get(taskName).record);
+        }
+        return Optional.of(records);
+    }
+
+    /**
+     * Reports a Property which was stored with the provided value, or cleared if the value is empty.
+     */
+    void propertyChanged(String key, Optional<byte[]> value) {
+        synchronized (this) {
+            recordPropertyChanged(key, value);
+        }
+        deliverPendingEvents();
+    }
+
+    void close() {
+        synchronized (startLock) {
+            if (tasksCache != null) {
+                tasksCache.close();
+            }
+            if (propertiesCache != null) {
+                propertiesCache.close();
+            }
+        }
+    }
+
+    // Internals
+
+    /**
+     * Updates the known record of a Task and queues the resulting events.  Must be called while holding this feed's
+     * lock.
+     */
+    private void recordTaskStored(String taskName, int version, TaskRecord record, Optional<Protos.TaskInfo> info) {
+        if (!started) {
+            return;
+        }
+        KnownTask known = knownTasks.get(taskName);
+        if (known != null && version <= known.version) {
+            return;
+        }
+        knownTasks.put(taskName, new KnownTask(version, record.withoutBlobs()));
+        taskIndex.put(taskName, record);
+
+        boolean infoChanged = known == null
+                || !known.record.getStrippedInfo().equals(record.getStrippedInfo())
+                || !known.record.getBlobIds().equals(record.getBlobIds());
+        if (infoChanged) {
+            // The TaskInfo is restored when the event is delivered, as it may require reading blobs.
+            pendingEvents.add(() -> {
+                Protos.TaskInfo taskInfo;
+                try {
+                    taskInfo = info.isPresent() ? info.get() : resolve(record);
+                } catch (Exception e) {
+                    logger.error("Failed to restore stored TaskInfo of '{}', not reporting it", taskName, e);
+                    return;
+                }
+                notifyListeners(listener -> listener.onTaskStored(taskInfo));
+            });
+        }
+
+        Optional<Protos.TaskStatus> status = record.getStatus();
+        if (status.isPresent() && (known == null || !status.equals(known.record.getStatus()))) {
+            pendingEvents.add(() -> notifyListeners(listener -> listener.onStatusStored(status.get())));
+        }
+    }
+
+    /**
+     * Must be called while holding this feed's lock.
+     */
+    private void recordTaskCleared(String taskName) {
+        if (started && knownTasks.remove(taskName) != null) {
+            taskIndex.remove(taskName);
+            pendingEvents.add(() -> notifyListeners(listener -> listener.onTaskCleared(taskName)));
+        }
+    }
+
+    /**
+     * Must be called while holding this feed's lock.
+     */
+    private void recordPropertyChanged(String key, Optional<byte[]> value) {
+        if (!started) {
+            return;
+        }
+        byte[] known = value.isPresent() ? knownProperties.put(key, value.get()) : knownProperties.remove(key);
+        boolean changed = value.isPresent() ? !Arrays.equals(known, value.get()) : known != null;
+        if (changed) {
+            pendingEvents.add(() -> notifyListeners(listener -> listener.onPropertyChanged(key, value)));
+        }
+    }
+
+    /**
+     * Delivers the queued events in order, without holding this feed's lock.  Only one thread delivers at a time, so
+     * listeners are never invoked concurrently.
+     */
+    private void deliverPendingEvents() {
+        synchronized (deliveryLock) {
+            while (true) {
+                Runnable event;
+                synchronized (this) {
+                    event = pendingEvents.poll();
+                }
+                if (event == null) {
+                    return;
+                }
+                event.run();
+            }
+        }
+    }
+
+    private void startWatches() throws StateStoreException {
+        tasksCache = TreeCache.newBuilder(curator.getClient(), bucketsRootPath)
+                .setCacheData(false)
+                .setMaxDepth(2)
+                .build();
+        tasksCache.getListenable().addListener((CuratorFramework client, TreeCacheEvent event) -> onTaskEvent(event));
+        for (TreeCacheListener listener : tasksListeners) {
+            tasksCache.getListenable().addListener(listener);
+        }
+        propertiesCache = TreeCache.newBuilder(curator.getClient(), propertiesPath)
+                .setCacheData(false)
+                .setMaxDepth(1)
+                .build();
+        propertiesCache.getListenable().addListener(
+                (CuratorFramework client, TreeCacheEvent event) -> onPropertyEvent(event));
+        started = true;
+
+        try {
+            tasksCache.start();
+            propertiesCache.start();
+        } catch (Exception e) {
+            throw new StateStoreException("Failed to start watching: " + bucketsRootPath, e);
+        }
+    }
+
+    private void onTaskEvent(TreeCacheEvent event) {
+        if (event.getType() == TreeCacheEvent.Type.INITIALIZED) {
+            synchronized (this) {
+                tasksInitialized = true;
+            }
+            initializedLatch.countDown();
+            return;
+        }
+        ChildData data = event.getData();
+        if (data == null || !data.getPath().startsWith(bucketsRootPath + "/")) {
+            return;
+        }
+        String[] names = data.getPath().substring(bucketsRootPath.length() + 1).split("/");
+        if (names.length < 2) {
+            // Bucket nodes hold no data.
+            return;
+        }
+
+        String taskName = names[1];
+        synchronized (this) {
+            switch (event.getType()) {
+                case NODE_ADDED:
+                case NODE_UPDATED:
+                    TaskRecord record;
+                    try {
+                        record = TaskRecord.parse(data.getData());
+                    } catch (StateStoreException e) {
+                        logger.error("Failed to decode record of Task '{}', not reporting it", taskName, e);
+                        return;
+                    }
+                    int version = data.getStat().getVersion();
+                    KnownTask known = knownTasks.get(taskName);
+                    if (tasksInitialized) {
+                        recordTaskStored(taskName, version, record, Optional.empty());
+                    } else if (known == null || version > known.version) {
+                        // Loaded without reporting, as it was stored before the first listener subscribed.
+                        knownTasks.put(taskName, new KnownTask(version, record));
+                        taskIndex.put(taskName, record);
+                    }
+                    break;
+                case NODE_REMOVED:
+                    recordTaskCleared(taskName);
+                    break;
+                default:
+                    break;
+            }
+        }
+        deliverPendingEvents();
+    }
+
+    private void onPropertyEvent(TreeCacheEvent event) {
+        if (event.getType() == TreeCacheEvent.Type.INITIALIZED) {
+            synchronized (this) {
+                propertiesInitialized = true;
+            }
+            initializedLatch.countDown();
+            return;
+        }
+        ChildData data = event.getData();
+        if (data == null || !data.getPath().startsWith(propertiesPath + "/")) {
+            return;
+        }
+
+        String key = data.getPath().substring(propertiesPath.length() + 1);
+        synchronized (this) {
+            switch (event.getType()) {
+                case NODE_ADDED:
+                case NODE_UPDATED:
+                    if (propertiesInitialized) {
+                        recordPropertyChanged(key, Optional.of(data.getData()));
+                    } else {
+                        knownProperties.put(key, data.getData());
+                    }
+                    break;
+                case NODE_REMOVED:
+                    recordPropertyChanged(key, Optional.empty());
+                    break;
+                default:
+                    break;
+            }
+        }
+        deliverPendingEvents();
+    }
+
+    private Protos.TaskInfo resolve(TaskRecord record) throws Exception {
+        return record.resolve(blobStore.fetchAll(record.getBlobIds())).getInfo();
+    }
+
+    private void notifyListeners(Consumer<StateStoreListener> event) {
+        for (StateStoreListener listener : listeners) {
+            try {
+                event.accept(listener);
+            } catch (RuntimeException e) {
+                logger.error("State store listener {} failed", listener, e);
+            }
+        }
+    }
+
+    /**
+     * The last reported record of a Task, along with its version.
+     */
+    private static class KnownTask {
+        private final int version;
+        private final TaskRecord record;
+
+        private KnownTask(int version, TaskRecord record) {
+            this.version = version;
+            this.record = record;
+        }
+    }
+}
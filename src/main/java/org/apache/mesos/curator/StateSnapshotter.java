@@ -0,0 +1,325 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.RetryPolicy;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.mesos.dcos.DcosConstants;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Exports all of a framework's data in Zookeeper, ie its FrameworkID, Tasks, Properties, Configurations and schema
+ * version, into a single snapshot stream, and restores a snapshot into the namespace of a framework which has no data.
+ * The namespace is walked generically, so that the snapshot covers any node which the stores in this package write,
+ * and a snapshot may be restored under a different framework name or into a different ensemble.  The nodes of the
+ * {@link CuratorLeaderElection} are left out.
+ *
+ * A snapshot starts with a magic number and format version, followed by a deflated sequence of records which are each
+ * prefixed with their length and CRC32.  Each record holds a node's path relative to the framework's root and its data,
+ * parents before children, and a final record holds the number of nodes, so that a truncated snapshot is detected.
+ * Nodes are restored with batched transactions, and the restored namespace is deleted again if restoring fails.
+ *
+ * Zookeeper has no point-in-time reads, so a snapshot of a framework whose scheduler is running may mix data from
+ * before and after concurrent writes.  Task records are exported before the blobs they reference, so that every
+ * exported record remains complete, and a running scheduler's data may be exported.  Schedulers must be stopped while
+ * their data is restored.
+ */
+public class StateSnapshotter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StateSnapshotter.class);
+
+    private static final int MAGIC = 0x44534e50; // "DSNP"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final byte NODE_RECORD = 1;
+    private static final byte END_RECORD = 2;
+
+    /**
+     * The maximum size of a record, which is bounded by the node size limit of Zookeeper (jute.maxbuffer).
+     */
+    private static final int MAX_RECORD_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The number of bytes after which a batch of restored nodes is written, which keeps each transaction well within
+     * the request size limit of Zookeeper.
+     */
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    private final CuratorPersister curator;
+
+    /**
+     * Creates a snapshotter which uses Curator with a default {@link RetryPolicy}.
+     *
+     * @param connectionString The host/port of the ZK server, eg "master.mesos:2181"
+     */
+    public StateSnapshotter(String connectionString) {
+        this(CuratorClientProvider.getDefault().getPersister(connectionString, new ExponentialBackoffRetry(
+                CuratorUtils.DEFAULT_CURATOR_POLL_DELAY_MS,
+                CuratorUtils.DEFAULT_CURATOR_MAX_RETRIES)));
+    }
+
+    StateSnapshotter(CuratorPersister curator) {
+        this.curator = curator;
+    }
+
+    /**
+     * Writes a snapshot of all of the framework's data to the provided stream, which is left open.
+     *
+     * @return The number of nodes in the snapshot
+     * @throws IOException if reading the data or writing the stream fails
+     */
+    public long export(String frameworkName, OutputStream output) throws IOException {
+        String rootPath = CuratorUtils.toServiceRootPath(frameworkName);
+        DataOutputStream header = new DataOutputStream(output);
+        header.writeInt(MAGIC);
+        header.writeInt(FORMAT_VERSION);
+        header.flush();
+
+        // Finished rather than closed, which leaves the caller's stream open.
+        DeflaterOutputStream deflater = new DeflaterOutputStream(output);
+        DataOutputStream records = new DataOutputStream(new BufferedOutputStream(deflater, 64 * 1024));
+        long nodeCount;
+        try {
+            writeNode(records, "", curator.fetch(rootPath));
+            Collection<String> children = new ArrayList<>(curator.getChildren(rootPath));
+            // Only holds the ephemeral nodes of running schedulers, which must not be restored as persistent nodes.
+            children.remove(CuratorLeaderElection.LEADER_LATCH_ROOT_NAME);
+            // Blobs are exported after the Task records referencing them.  Blobs are written before the records which
+            // reference them and are only deleted once unreferenced, so each exported record's blobs are exported too.
+            boolean hasBlobs = children.remove(TaskBlobStore.TASK_BLOBS_ROOT_NAME);
+            nodeCount = 1 + exportChildren(records, rootPath, "", children);
+            if (hasBlobs) {
+                nodeCount += exportChildren(
+                        records, rootPath, "", Collections.singletonList(TaskBlobStore.TASK_BLOBS_ROOT_NAME));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to read data of framework '" + frameworkName + "'", e);
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream end = new DataOutputStream(payload);
+        end.writeByte(END_RECORD);
+        end.writeLong(nodeCount);
+        writeRecord(records, payload.toByteArray());
+        records.flush();
+        deflater.finish();
+        output.flush();
+        logger.info("Exported {} nodes of framework '{}'", nodeCount, frameworkName);
+        return nodeCount;
+    }
+
+    /**
+     * Restores a snapshot from the provided stream into the namespace of the framework, which must not exist yet.  If
+     * the snapshot is invalid or restoring it otherwise fails, the nodes which were restored are deleted again.
+     *
+     * @return The number of restored nodes
+     * @throws IOException if the framework already has data, or if reading or validating the snapshot or writing its
+     *                     nodes fails
+     */
+    public long restore(String frameworkName, InputStream input) throws IOException {
+        String rootPath = CuratorUtils.toServiceRootPath(frameworkName);
+        try {
+            if (curator.getClient().checkExists().forPath(rootPath) != null) {
+                throw new IOException(String.format(
+                        "Framework '%s' already has data at '%s', refusing to restore over it",
+                        frameworkName, rootPath));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Failed to check for data at '" + rootPath + "'", e);
+        }
+
+        DataInputStream header = new DataInputStream(input);
+        if (header.readInt() != MAGIC) {
+            throw new IOException("Not a state snapshot");
+        }
+        int formatVersion = header.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported snapshot format version: " + formatVersion);
+        }
+
+        try {
+            long nodeCount = restoreNodes(new DataInputStream(new InflaterInputStream(input)), rootPath);
+            logger.info("Restored {} nodes of framework '{}'", nodeCount, frameworkName);
+            return nodeCount;
+        } catch (Exception e) {
+            logger.error("Failed to restore framework '{}', deleting its partially restored data", frameworkName, e);
+            try {
+                curator.clear(rootPath);
+            } catch (KeeperException.NoNodeException clearException) {
+                // Failed before any nodes were restored.
+            } catch (Exception clearException) {
+                logger.error("Failed to delete partially restored data at '{}'", rootPath, clearException);
+            }
+            throw e instanceof IOException
+                    ? (IOException) e
+                    : new IOException("Failed to restore framework '" + frameworkName + "'", e);
+        }
+    }
+
+    public void close() {
+        curator.close();
+    }
+
+    /**
+     * Exports or restores a snapshot of a framework's data with a local file.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3 || args.length > 4 || !(args[0].equals("export") || args[0].equals("restore"))) {
+            System.err.println(String.format(
+                    "Usage: %s <export|restore> <framework-name> <file> [zk-connection-string, default: %s]",
+                    StateSnapshotter.class.getName(), DcosConstants.MESOS_MASTER_ZK_CONNECTION_STRING));
+            System.exit(1);
+        }
+        String connectionString = args.length == 4 ? args[3] : DcosConstants.MESOS_MASTER_ZK_CONNECTION_STRING;
+        StateSnapshotter snapshotter = new StateSnapshotter(connectionString);
+        try {
+            if (args[0].equals("export")) {
+                try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[2])))) {
+                    snapshotter.export(args[1], output);
+                }
+            } else {
+                try (InputStream input = new BufferedInputStream(Files.newInputStream(Paths.get(args[2])))) {
+                    snapshotter.restore(args[1], input);
+                }
+            }
+        } finally {
+            snapshotter.close();
+        }
+    }
+
+    // Internals
+
+    /**
+     * Writes the children of the provided node and their descendants, parents before children, returning the number of
+     * nodes written.  The data and the children of all children are requested at once, so that a level of the tree
+     * takes about one round trip per parent rather than per node.
+     */
+    private long exportChildren(DataOutputStream records, String path, String relativePath, Collection<String> children)
+            throws Exception {
+        List<String> sortedChildren = new ArrayList<>(children);
+        Collections.sort(sortedChildren);
+        Map<String, CompletableFuture<Collection<String>>> grandchildren = new HashMap<>();
+        List<String> childPaths = new ArrayList<>();
+        for (String child : sortedChildren) {
+            String childPath = CuratorUtils.join(path, child);
+            childPaths.add(childPath);
+            grandchildren.put(childPath, curator.getChildrenAsync(childPath));
+        }
+        Map<String, byte[]> childData = curator.fetchAll(childPaths);
+
+        long nodeCount = 0;
+        for (String child : sortedChildren) {
+            String childPath = CuratorUtils.join(path, child);
+            byte[] data = childData.get(childPath);
+            Collection<String> childChildren;
+            try {
+                childChildren = grandchildren.get(childPath).join();
+            } catch (CompletionException e) {
+                if (!(e.getCause() instanceof KeeperException.NoNodeException)) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+                childChildren = Collections.emptyList();
+            }
+            if (data == null) {
+                // Deleted since its parent was listed.
+                continue;
+            }
+            String childRelativePath = relativePath + "/" + child;
+            writeNode(records, childRelativePath, data);
+            nodeCount += 1 + exportChildren(records, childPath, childRelativePath, childChildren);
+        }
+        return nodeCount;
+    }
+
+    private long restoreNodes(DataInputStream records, String rootPath) throws Exception {
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        long batchBytes = 0;
+        long nodeCount = 0;
+        while (true) {
+            DataInputStream payload = new DataInputStream(new ByteArrayInputStream(readRecord(records)));
+            byte type = payload.readByte();
+            if (type == END_RECORD) {
+                long expectedCount = payload.readLong();
+                if (expectedCount != nodeCount) {
+                    throw new IOException(String.format(
+                            "Snapshot lists %d nodes, but %d were read", expectedCount, nodeCount));
+                }
+                curator.createAll(batch);
+                return nodeCount;
+            } else if (type != NODE_RECORD) {
+                throw new IOException("Unknown snapshot record type: " + type);
+            }
+
+            String relativePath = payload.readUTF();
+            byte[] data = new byte[payload.readInt()];
+            payload.readFully(data);
+            if (nodeCount == 0 ? !relativePath.isEmpty() : !relativePath.startsWith("/")) {
+                throw new IOException("Invalid node path in snapshot: '" + relativePath + "'");
+            }
+            batch.put(rootPath + relativePath, data);
+            batchBytes += relativePath.length() + data.length;
+            nodeCount++;
+            if (batchBytes >= MAX_BATCH_BYTES) {
+                curator.createAll(batch);
+                batch.clear();
+                batchBytes = 0;
+            }
+        }
+    }
+
+    private static void writeNode(DataOutputStream records, String relativePath, byte[] data) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(data.length + relativePath.length() + 16);
+        DataOutputStream node = new DataOutputStream(payload);
+        node.writeByte(NODE_RECORD);
+        node.writeUTF(relativePath);
+        node.writeInt(data.length);
+        node.write(data);
+        writeRecord(records, payload.toByteArray());
+    }
+
+    private static void writeRecord(DataOutputStream records, byte[] payload) throws IOException {
+        records.writeInt(payload.length);
+        records.writeInt((int) checksum(payload));
+        records.write(payload);
+    }
+
+    private static byte[] readRecord(DataInputStream records) throws IOException {
+        int length;
+        try {
+            length = records.readInt();
+        } catch (EOFException e) {
+            throw new IOException("Snapshot is truncated", e);
+        }
+        if (length <= 0 || length > MAX_RECORD_BYTES) {
+            throw new IOException("Invalid snapshot record length: " + length);
+        }
+        long expectedChecksum = records.readInt() & 0xffffffffL;
+        byte[] payload = new byte[length];
+        records.readFully(payload);
+        if (checksum(payload) != expectedChecksum) {
+            throw new IOException("Snapshot record fails its checksum");
+        }
+        return payload;
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,191 @@
+package org.apache.mesos.curator;
+
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the sub-messages which {@link TaskRecord}s share, each in a node named by the SHA-256 of its contents:
+ * <code>
+ * rootPath/
+ *     -> TaskBlobs/
+ *         -> [BlobId-0]
+ *         -> [BlobId-1]
+ *         -> ...
+ * </code>
+ *
+ * The contents of a blob never change, so blobs are cached in memory once read or written, and are written without
+ * checking whether another client is concurrently writing the same blob.  Blobs are deleted by
+ * {@link #deleteUnreferenced(Set)} once no record references them.
+ */
+class TaskBlobStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskBlobStore.class);
+
+    static final String TASK_BLOBS_ROOT_NAME = "TaskBlobs";
+
+    /**
+     * The number of blobs held in memory, which only needs to cover the distinct commands and executors in use.
+     */
+    private static final int MAX_CACHED_BLOBS = 1024;
+
+    private final CuratorPersister curator;
+    private final String blobsRootPath;
+    private final Map<String, byte[]> cache = Collections.synchronizedMap(
+            new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                    return size() > MAX_CACHED_BLOBS;
+                }
+            });
+
+    TaskBlobStore(CuratorPersister curator, String rootPath) {
+        this.curator = curator;
+        this.blobsRootPath = CuratorUtils.join(rootPath, TASK_BLOBS_ROOT_NAME);
+    }
+
+    String getBlobPath(String blobId) {
+        return CuratorUtils.join(blobsRootPath, blobId);
+    }
+
+    /**
+     * Creates any of the provided blobs which do not exist yet, with pipelined requests.
+     */
+    void storeAll(Map<String, byte[]> blobs) throws Exception {
+        try {
+            storeAllAsync(blobs).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    CompletableFuture<Void> storeAllAsync(Map<String, byte[]> blobs) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(blobs.size());
+        for (Map.Entry<String, byte[]> entry : blobs.entrySet()) {
+            futures.add(curator.createIfAbsentAsync(getBlobPath(entry.getKey()), entry.getValue())
+                    .thenRun(() -> cache.put(entry.getKey(), entry.getValue())));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+
+    /**
+     * Fetches the contents of the provided blobs, reading those which are not cached with pipelined requests.  Blobs
+     * which do not exist are omitted.
+     */
+    Map<String, byte[]> fetchAll(Collection<String> blobIds) throws Exception {
+        Map<String, byte[]> blobs = new HashMap<>();
+        Map<String, String> pathsToIds = new HashMap<>();
+        for (String blobId : blobIds) {
+            byte[] contents = cache.get(blobId);
+            if (contents != null) {
+                blobs.put(blobId, contents);
+            } else {
+                pathsToIds.put(getBlobPath(blobId), blobId);
+            }
+        }
+
+        if (!pathsToIds.isEmpty()) {
+            for (Map.Entry<String, byte[]> entry : curator.fetchAll(pathsToIds.keySet()).entrySet()) {
+                String blobId = pathsToIds.get(entry.getKey());
+                cache.put(blobId, entry.getValue());
+                blobs.put(blobId, entry.getValue());
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Returns the contents of the provided blobs if all of them are cached, without reading from Zookeeper.
+     */
+    Optional<Map<String, byte[]>> fetchAllCached(Collection<String> blobIds) {
+        Map<String, byte[]> blobs = new HashMap<>();
+        for (String blobId : blobIds) {
+            byte[] contents = cache.get(blobId);
+            if (contents == null) {
+                return Optional.empty();
+            }
+            blobs.put(blobId, contents);
+        }
+        return Optional.of(blobs);
+    }
+
+    CompletableFuture<Map<String, byte[]>> fetchAllAsync(Collection<String> blobIds) {
+        Map<String, byte[]> blobs = new HashMap<>();
+        List<String> missingIds = new ArrayList<>();
+        for (String blobId : blobIds) {
+            byte[] contents = cache.get(blobId);
+            if (contents != null) {
+                blobs.put(blobId, contents);
+            } else {
+                missingIds.add(blobId);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return CompletableFuture.completedFuture(blobs);
+        }
+
+        List<CompletableFuture<byte[]>> futures = missingIds.stream()
+                .map(blobId -> curator.fetchAsync(getBlobPath(blobId)).handle((contents, e) -> {
+                    if (e == null) {
+                        cache.put(blobId, contents);
+                        return contents;
+                    }
+                    Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if (cause instanceof KeeperException.NoNodeException) {
+                        return null;
+                    }
+                    throw new CompletionException(cause);
+                }))
+                .collect(Collectors.toList());
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).thenApply(ignored -> {
+            for (int i = 0; i < missingIds.size(); i++) {
+                byte[] contents = futures.get(i).join();
+                if (contents != null) {
+                    blobs.put(missingIds.get(i), contents);
+                }
+            }
+            return blobs;
+        });
+    }
+
+    /**
+     * Deletes all blobs which are not in the provided set of referenced blobs.  This may delete a blob which another
+     * client has just written for a record that it has not stored yet: {@link CuratorStateStore} then fails the
+     * transaction which stores the record and retries it, but {@link CuratorAsyncStateStore} does not detect this.
+     * This is therefore only done when a scheduler starts, before it writes any Tasks.
+     *
+     * @return the number of deleted blobs
+     */
+    int deleteUnreferenced(Set<String> referencedBlobIds) throws Exception {
+        Collection<String> blobIds;
+        try {
+            blobIds = curator.getChildren(blobsRootPath);
+        } catch (KeeperException.NoNodeException e) {
+            return 0;
+        }
+
+        int deletedCount = 0;
+        for (String blobId : blobIds) {
+            if (referencedBlobIds.contains(blobId)) {
+                continue;
+            }
+            cache.remove(blobId);
+            try {
+                curator.clear(getBlobPath(blobId));
+                deletedCount++;
+            } catch (KeeperException.NoNodeException e) {
+                // Deleted concurrently.
+            }
+        }
+        if (deletedCount > 0) {
+            logger.info("Deleted {} unreferenced Task blobs from '{}'", deletedCount, blobsRootPath);
+        }
+        return deletedCount;
+    }
+}
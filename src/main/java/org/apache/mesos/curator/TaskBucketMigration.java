@@ -0,0 +1,124 @@
+package org.apache.mesos.curator;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.state.StoredTask;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.zookeeper.KeeperException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Migrates schema version 1 to version 2, by moving the TaskInfo and TaskStatus nodes of each Task into a single
+ * bucketed record node, whose shared sub-messages are stored in {@link TaskBlobStore}.
+ *
+ * Version 1 used the following structure:
+ * <code>
+ * rootPath/
+ *     -> Tasks/
+ *         -> [TaskName-0]/
+ *             -> TaskInfo
+ *             -> TaskStatus
+ *         -> [TaskName-1]/
+ *             -> TaskInfo
+ *         -> ...
+ * </code>
+ *
+ * All records are written before the old Tasks/ node is deleted, so an interrupted migration is completed by running
+ * it again.
+ *
+ * The migration is one-way.  Once Tasks/ is deleted, a scheduler built against schema version 1 no longer finds any
+ * Tasks and would relaunch them all, so it must not be run against the migrated state.  To allow a downgrade, export
+ * a snapshot of the framework's state with {@link StateSnapshotter} before upgrading.  It may then be restored once
+ * the migrated namespace has been deleted.
+ */
+class TaskBucketMigration implements SchemaMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskBucketMigration.class);
+
+    static final String TASKS_ROOT_NAME = "Tasks";
+    static final String TASK_INFO_PATH_NAME = "TaskInfo";
+    static final String TASK_STATUS_PATH_NAME = "TaskStatus";
+
+    /**
+     * Records are written in transactions of about this size, below the limit at which
+     * {@link CuratorPersister#storeAll(Map)} falls back to individual writes.
+     */
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    @Override
+    public void migrate(CuratorPersister curator, String rootPath) throws Exception {
+        String tasksRootPath = CuratorUtils.join(rootPath, TASKS_ROOT_NAME);
+        Collection<String> taskNames;
+        try {
+            taskNames = curator.getChildren(tasksRootPath);
+        } catch (KeeperException.NoNodeException e) {
+            logger.info("No Tasks to migrate at '{}'", tasksRootPath);
+            return;
+        }
+
+        List<String> paths = new ArrayList<>(taskNames.size() * 2);
+        for (String taskName : taskNames) {
+            paths.add(getTaskInfoPath(tasksRootPath, taskName));
+            paths.add(getTaskStatusPath(tasksRootPath, taskName));
+        }
+        Map<String, byte[]> pathsToBytes = curator.fetchAll(paths);
+
+        CuratorStateStore.TaskPathMapper taskPathMapper = new CuratorStateStore.TaskPathMapper(rootPath);
+        TaskBlobStore blobStore = new TaskBlobStore(curator, rootPath);
+        Map<String, byte[]> batch = new HashMap<>();
+        Map<String, byte[]> batchBlobs = new HashMap<>();
+        int batchBytes = 0;
+        int migratedCount = 0;
+        for (String taskName : taskNames) {
+            byte[] infoBytes = pathsToBytes.get(getTaskInfoPath(tasksRootPath, taskName));
+            if (infoBytes == null) {
+                // Version 1 could leave a Task node without a TaskInfo, which was never readable as a Task.
+                logger.warn("Skipping Task without a TaskInfo: {}", taskName);
+                continue;
+            }
+            byte[] statusBytes = pathsToBytes.get(getTaskStatusPath(tasksRootPath, taskName));
+            TaskRecord record = TaskRecord.of(new StoredTask(
+                    Protos.TaskInfo.parseFrom(infoBytes),
+                    statusBytes == null ? Optional.empty() : Optional.of(Protos.TaskStatus.parseFrom(statusBytes))));
+            byte[] recordBytes = record.toBytes();
+
+            if (!batch.isEmpty() && batchBytes + recordBytes.length > MAX_BATCH_BYTES) {
+                storeBatch(curator, blobStore, batch, batchBlobs);
+                batch = new HashMap<>();
+                batchBlobs = new HashMap<>();
+                batchBytes = 0;
+            }
+            batch.put(taskPathMapper.getTaskPath(taskName), recordBytes);
+            batchBlobs.putAll(record.getBlobs());
+            batchBytes += recordBytes.length;
+            migratedCount++;
+        }
+        storeBatch(curator, blobStore, batch, batchBlobs);
+
+        logger.info("Migrated {} Tasks into {} buckets, deleting '{}'",
+                migratedCount, CuratorStateStore.TaskPathMapper.BUCKET_COUNT, tasksRootPath);
+        curator.clear(tasksRootPath);
+    }
+
+    /**
+     * Stores a batch of records after the blobs which they reference, so that no stored record lacks a blob.
+     */
+    private static void storeBatch(
+            CuratorPersister curator,
+            TaskBlobStore blobStore,
+            Map<String, byte[]> records,
+            Map<String, byte[]> blobs) throws Exception {
+        blobStore.storeAll(blobs);
+        curator.storeAll(records);
+    }
+
+    private static String getTaskInfoPath(String tasksRootPath, String taskName) {
+        return CuratorUtils.join(CuratorUtils.join(tasksRootPath, taskName), TASK_INFO_PATH_NAME);
+    }
+
+    private static String getTaskStatusPath(String tasksRootPath, String taskName) {
+        return CuratorUtils.join(CuratorUtils.join(tasksRootPath, taskName), TASK_STATUS_PATH_NAME);
+    }
+}
@@ -0,0 +1,120 @@
+package org.apache.mesos.curator;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.state.StateStoreUtils;
+
+import java.util.*;
+
+/**
+ * Secondary indexes of the Tasks in a {@link CuratorStateStore}, by the agent each Task was placed on, by the state of
+ * its current TaskStatus and by its target configuration, so that a lookup takes time proportional to the number of
+ * matching Tasks rather than reading every record.  The keys of each Task are taken from its record alone, since the
+ * stripped TaskInfo retains the agent and labels of the Task.
+ *
+ * This class is not thread-safe.
+ */
+class TaskIndex {
+
+    private final Map<String, Set<String>> tasksByAgent = new HashMap<>();
+    private final Map<Protos.TaskState, Set<String>> tasksByState = new EnumMap<>(Protos.TaskState.class);
+    private final Map<Optional<UUID>, Set<String>> tasksByTargetConfig = new HashMap<>();
+    private final Map<String, Keys> keysByTask = new HashMap<>();
+
+    /**
+     * Indexes the provided record of a Task, replacing its previous entries.
+     */
+    void put(String taskName, TaskRecord record) {
+        remove(taskName);
+        Keys keys = new Keys(record);
+        keysByTask.put(taskName, keys);
+        add(tasksByAgent, keys.agentId, taskName);
+        if (keys.state.isPresent()) {
+            add(tasksByState, keys.state.get(), taskName);
+        }
+        add(tasksByTargetConfig, keys.targetConfigId, taskName);
+    }
+
+    void remove(String taskName) {
+        Keys keys = keysByTask.remove(taskName);
+        if (keys == null) {
+            return;
+        }
+        remove(tasksByAgent, keys.agentId, taskName);
+        if (keys.state.isPresent()) {
+            remove(tasksByState, keys.state.get(), taskName);
+        }
+        remove(tasksByTargetConfig, keys.targetConfigId, taskName);
+    }
+
+    Set<String> getTasksOnAgent(Protos.SlaveID agentId) {
+        return get(tasksByAgent, agentId.getValue());
+    }
+
+    /**
+     * Returns the Tasks whose current TaskStatus, ie the stored TaskStatus which matches the TaskID of the stored
+     * TaskInfo, has the provided state.
+     */
+    Set<String> getTasksInState(Protos.TaskState state) {
+        return get(tasksByState, state);
+    }
+
+    Set<String> getTasksWithTargetConfiguration(UUID targetConfigId) {
+        return get(tasksByTargetConfig, Optional.of(targetConfigId));
+    }
+
+    /**
+     * Returns the Tasks whose target configuration differs from the provided one, including those which have none.
+     */
+    Set<String> getTasksNotOnTargetConfiguration(UUID targetConfigId) {
+        Set<String> taskNames = new HashSet<>();
+        for (Map.Entry<Optional<UUID>, Set<String>> entry : tasksByTargetConfig.entrySet()) {
+            if (!entry.getKey().equals(Optional.of(targetConfigId))) {
+                taskNames.addAll(entry.getValue());
+            }
+        }
+        return taskNames;
+    }
+
+    int size() {
+        return keysByTask.size();
+    }
+
+    private static <K> void add(Map<K, Set<String>> index, K key, String taskName) {
+        Set<String> taskNames = index.get(key);
+        if (taskNames == null) {
+            taskNames = new HashSet<>();
+            index.put(key, taskNames);
+        }
+        taskNames.add(taskName);
+    }
+
+    private static <K> void remove(Map<K, Set<String>> index, K key, String taskName) {
+        Set<String> taskNames = index.get(key);
+        if (taskNames != null && taskNames.remove(taskName) && taskNames.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static <K> Set<String> get(Map<K, Set<String>> index, K key) {
+        Set<String> taskNames = index.get(key);
+        return taskNames == null ? Collections.emptySet() : new HashSet<>(taskNames);
+    }
+
+    /**
+     * The keys under which a Task is indexed.
+     */
+    private static class Keys {
+        private final String agentId;
+        private final Optional<Protos.TaskState> state;
+        private final Optional<UUID> targetConfigId;
+
+        private Keys(TaskRecord record) {
+            Protos.TaskInfo info = record.getStrippedInfo();
+            this.agentId = info.getSlaveId().getValue();
+            this.state = record.getStatus()
+                    .filter(status -> status.getTaskId().equals(info.getTaskId()))
+                    .map(Protos.TaskStatus::getState);
+            this.targetConfigId = StateStoreUtils.getTargetConfiguration(info);
+        }
+    }
+}
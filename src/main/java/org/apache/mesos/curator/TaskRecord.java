@@ -0,0 +1,328 @@
+package org.apache.mesos.curator;
+
+import com.google.common.io.BaseEncoding;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.mesos.Protos;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StoredTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The contents of the single record node which holds a Task's TaskInfo and TaskStatus in schema version 2 of
+ * {@link CuratorStateStore}.
+ *
+ * The sub-messages which are usually identical across the Tasks of a pod are stored once in shared blobs (see
+ * {@link TaskBlobStore}) and referenced from the record by the SHA-256 of their contents: the TaskInfo's CommandInfo,
+ * its ExecutorInfo, and the CommandInfo which {@link TaskUtils#packTaskInfo(Protos.TaskInfo)} packs into its data.  A
+ * record therefore holds the TaskInfo without those fields, along with the blob references needed to restore them.
+ *
+ * A record is a format byte followed by a deflated body.  The body is a varint of flags for the blob references
+ * present, each present reference as 32 raw digest bytes, the length-prefixed TaskInfo, and the length-prefixed
+ * TaskStatus if one has been stored.  Lengths are protobuf varints.  Records of the earlier inline format, with an
+ * uncompressed body holding the complete TaskInfo, are still read.
+ */
+final class TaskRecord {
+
+    private static final byte FORMAT_INLINE = 1;
+    private static final byte FORMAT_DEDUPLICATED = 2;
+
+    private static final int COMMAND_FLAG = 1;
+    private static final int EXECUTOR_FLAG = 1 << 1;
+    private static final int PACKED_COMMAND_FLAG = 1 << 2;
+
+    private static final int DIGEST_LENGTH = 32;
+    private static final BaseEncoding BLOB_ID_ENCODING = BaseEncoding.base16().lowerCase();
+
+    private final Protos.TaskInfo strippedInfo;
+    private final Optional<Protos.TaskStatus> status;
+    private final String commandBlobId;
+    private final String executorBlobId;
+    private final String packedCommandBlobId;
+    private final Map<String, byte[]> blobs;
+
+    private TaskRecord(
+            Protos.TaskInfo strippedInfo,
+            Optional<Protos.TaskStatus> status,
+            String commandBlobId,
+            String executorBlobId,
+            String packedCommandBlobId,
+            Map<String, byte[]> blobs) {
+        this.strippedInfo = strippedInfo;
+        this.status = status;
+        this.commandBlobId = commandBlobId;
+        this.executorBlobId = executorBlobId;
+        this.packedCommandBlobId = packedCommandBlobId;
+        this.blobs = blobs;
+    }
+
+    /**
+     * Splits the shared sub-messages of the provided Task out into blobs.
+     */
+    static TaskRecord of(StoredTask storedTask) {
+        Protos.TaskInfo info = storedTask.getInfo();
+        Protos.TaskInfo.Builder builder = info.toBuilder();
+        Map<String, byte[]> blobs = new HashMap<>();
+
+        String commandBlobId = null;
+        if (info.hasCommand()) {
+            commandBlobId = addBlob(blobs, info.getCommand().toByteArray());
+            builder.clearCommand();
+        }
+
+        String executorBlobId = null;
+        String packedCommandBlobId = null;
+        if (info.hasExecutor()) {
+            executorBlobId = addBlob(blobs, info.getExecutor().toByteArray());
+            builder.clearExecutor();
+
+            Optional<Protos.ExecutorInfo> packedExecutor = getPackedExecutor(info);
+            if (packedExecutor.isPresent()) {
+                packedCommandBlobId = addBlob(blobs, packedExecutor.get().getCommand().toByteArray());
+                builder.setData(packedExecutor.get().toBuilder().clearCommand().buildPartial().toByteString());
+            }
+        }
+
+        return new TaskRecord(
+                builder.build(), storedTask.getStatus(), commandBlobId, executorBlobId, packedCommandBlobId, blobs);
+    }
+
+    /**
+     * Parses a record, whose blob references are then resolved by {@link #resolve(Map)}.
+     */
+    static TaskRecord parse(byte[] record) throws StateStoreException {
+        if (record.length == 0) {
+            throw new StateStoreException("Empty Task record");
+        }
+        try {
+            switch (record[0]) {
+                case FORMAT_INLINE:
+                    return parseBody(CodedInputStream.newInstance(record, 1, record.length - 1), 0);
+                case FORMAT_DEDUPLICATED:
+                    CodedInputStream input = CodedInputStream.newInstance(inflate(record));
+                    return parseBody(input, input.readRawVarint32());
+                default:
+                    throw new StateStoreException(String.format("Unsupported Task record format: %d", record[0]));
+            }
+        } catch (IOException | DataFormatException e) {
+            throw new StateStoreException("Failed to decode Task record", e);
+        }
+    }
+
+    /**
+     * Returns the TaskInfo without the fields which are held in blobs, which is sufficient for validating the TaskID of
+     * a TaskStatus.
+     */
+    Protos.TaskInfo getStrippedInfo() {
+        return strippedInfo;
+    }
+
+    Optional<Protos.TaskStatus> getStatus() {
+        return status;
+    }
+
+    TaskRecord withStatus(Protos.TaskStatus status) {
+        return new TaskRecord(
+                strippedInfo, Optional.of(status), commandBlobId, executorBlobId, packedCommandBlobId, blobs);
+    }
+
+    /**
+     * Returns this record without the contents of its blobs, for holding in memory once the blobs are stored.
+     */
+    TaskRecord withoutBlobs() {
+        return new TaskRecord(
+                strippedInfo, status, commandBlobId, executorBlobId, packedCommandBlobId, Collections.emptyMap());
+    }
+
+    /**
+     * Returns the IDs of the blobs which this record references.
+     */
+    Set<String> getBlobIds() {
+        Set<String> blobIds = new HashSet<>();
+        for (String blobId : Arrays.asList(commandBlobId, executorBlobId, packedCommandBlobId)) {
+            if (blobId != null) {
+                blobIds.add(blobId);
+            }
+        }
+        return blobIds;
+    }
+
+    /**
+     * Returns the contents of the blobs which were split out by {@link #of(StoredTask)}, or an empty map for a parsed
+     * record.
+     */
+    Map<String, byte[]> getBlobs() {
+        return blobs;
+    }
+
+    /**
+     * Restores the complete Task from the provided blob contents, which must include all of {@link #getBlobIds()}.
+     */
+    StoredTask resolve(Map<String, byte[]> blobContents) throws StateStoreException {
+        Protos.TaskInfo.Builder builder = strippedInfo.toBuilder();
+        try {
+            if (commandBlobId != null) {
+                builder.setCommand(Protos.CommandInfo.parseFrom(getBlob(blobContents, commandBlobId)));
+            }
+            if (executorBlobId != null) {
+                builder.setExecutor(Protos.ExecutorInfo.parseFrom(getBlob(blobContents, executorBlobId)));
+            }
+            if (packedCommandBlobId != null) {
+                Protos.ExecutorInfo packedExecutor = Protos.ExecutorInfo.PARSER.parsePartialFrom(strippedInfo.getData())
+                        .toBuilder()
+                        .setCommand(Protos.CommandInfo.parseFrom(getBlob(blobContents, packedCommandBlobId)))
+                        .build();
+                builder.setData(packedExecutor.toByteString());
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new StateStoreException("Failed to decode blobs of Task: " + strippedInfo.getName(), e);
+        }
+        return new StoredTask(builder.build(), status);
+    }
+
+    /**
+     * Returns the encoded record.  Encoding is deterministic, so the records of equal Tasks are byte-for-byte equal.
+     */
+    byte[] toBytes() {
+        int flags = 0;
+        flags |= commandBlobId != null ? COMMAND_FLAG : 0;
+        flags |= executorBlobId != null ? EXECUTOR_FLAG : 0;
+        flags |= packedCommandBlobId != null ? PACKED_COMMAND_FLAG : 0;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        try {
+            output.writeRawVarint32(flags);
+            for (String blobId : Arrays.asList(commandBlobId, executorBlobId, packedCommandBlobId)) {
+                if (blobId != null) {
+                    output.writeRawBytes(BLOB_ID_ENCODING.decode(blobId));
+                }
+            }
+            writeLengthPrefixed(output, strippedInfo.toByteString());
+            if (status.isPresent()) {
+                writeLengthPrefixed(output, status.get().toByteString());
+            }
+            output.flush();
+        } catch (IOException e) {
+            // Not reached: writing to memory.
+            throw new IllegalStateException("Failed to encode record for Task: " + strippedInfo.getName(), e);
+        }
+        return deflate(bytes.toByteArray());
+    }
+
+    private static TaskRecord parseBody(CodedInputStream input, int flags) throws IOException {
+        String commandBlobId = (flags & COMMAND_FLAG) != 0 ? readBlobId(input) : null;
+        String executorBlobId = (flags & EXECUTOR_FLAG) != 0 ? readBlobId(input) : null;
+        String packedCommandBlobId = (flags & PACKED_COMMAND_FLAG) != 0 ? readBlobId(input) : null;
+
+        Protos.TaskInfo strippedInfo = Protos.TaskInfo.parseFrom(input.readRawBytes(input.readRawVarint32()));
+        Optional<Protos.TaskStatus> status = input.isAtEnd()
+                ? Optional.empty()
+                : Optional.of(Protos.TaskStatus.parseFrom(input.readRawBytes(input.readRawVarint32())));
+        if (!input.isAtEnd()) {
+            throw new StateStoreException("Unexpected trailing data in Task record: " + strippedInfo.getName());
+        }
+        return new TaskRecord(
+                strippedInfo, status, commandBlobId, executorBlobId, packedCommandBlobId, Collections.emptyMap());
+    }
+
+    /**
+     * Returns the ExecutorInfo which {@link TaskUtils#packTaskInfo(Protos.TaskInfo)} packed into the data of the
+     * TaskInfo, if its CommandInfo can be split out and restored exactly.
+     */
+    private static Optional<Protos.ExecutorInfo> getPackedExecutor(Protos.TaskInfo info) {
+        if (!info.hasData()) {
+            return Optional.empty();
+        }
+        Protos.ExecutorInfo packedExecutor;
+        try {
+            packedExecutor = Protos.ExecutorInfo.parseFrom(info.getData());
+        } catch (InvalidProtocolBufferException e) {
+            // The data is not a packed ExecutorInfo.
+            return Optional.empty();
+        }
+        boolean isPacked = packedExecutor.getExecutorId().getValue().equals(TaskUtils.COMMAND_DATA_PACKAGE_EXECUTOR)
+                && packedExecutor.hasCommand()
+                // Restoring re-serializes the ExecutorInfo, which must reproduce the original data:
+                && packedExecutor.toByteString().equals(info.getData());
+        return isPacked ? Optional.of(packedExecutor) : Optional.empty();
+    }
+
+    private static String addBlob(Map<String, byte[]> blobs, byte[] contents) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+        String blobId = BLOB_ID_ENCODING.encode(digest.digest(contents));
+        blobs.put(blobId, contents);
+        return blobId;
+    }
+
+    private static byte[] getBlob(Map<String, byte[]> blobContents, String blobId) throws StateStoreException {
+        byte[] contents = blobContents.get(blobId);
+        if (contents == null) {
+            throw new StateStoreException("Missing blob referenced by Task record: " + blobId);
+        }
+        return contents;
+    }
+
+    private static String readBlobId(CodedInputStream input) throws IOException {
+        return BLOB_ID_ENCODING.encode(input.readRawBytes(DIGEST_LENGTH));
+    }
+
+    private static void writeLengthPrefixed(CodedOutputStream output, ByteString bytes) throws IOException {
+        output.writeRawVarint32(bytes.size());
+        output.writeRawBytes(bytes);
+    }
+
+    private static byte[] deflate(byte[] body) {
+        // Records are written on every status update, where the default level compresses nearly as well as the best
+        // for a fraction of the time.
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(body);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(body.length / 2 + 16);
+            output.write(FORMAT_DEDUPLICATED);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                output.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] record) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(record, 1, record.length - 1);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(record.length * 3);
+            byte[] buffer = new byte[4096];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated Task record");
+                }
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
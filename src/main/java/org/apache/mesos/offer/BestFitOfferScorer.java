@@ -0,0 +1,20 @@
+package org.apache.mesos.offer;
+
+import java.util.Map;
+
+/**
+ * Bin-packing {@link OfferScorer} which prefers the Offer left with the least unreserved resources after placement.
+ * Filling up partially used agents first leaves other agents whole, so that large Tasks are still able to fit.
+ */
+public class BestFitOfferScorer extends ScalarFitOfferScorer {
+
+    @Override
+    protected double score(Map<String, Double> remainingFractions) {
+        double remaining = 0;
+        for (double fraction : remainingFractions.values()) {
+            remaining += fraction;
+        }
+
+        return -remaining;
+    }
+}
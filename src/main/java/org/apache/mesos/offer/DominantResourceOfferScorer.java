@@ -0,0 +1,21 @@
+package org.apache.mesos.offer;
+
+import java.util.Map;
+
+/**
+ * Dominant-resource-fit {@link OfferScorer} which prefers the Offer in which the requirement's dominant share is the
+ * largest.  The dominant share is the largest fraction of any single offered resource consumed by the placement, so
+ * this packs Offers along whichever resource is their bottleneck rather than along the sum of all resources.
+ */
+public class DominantResourceOfferScorer extends ScalarFitOfferScorer {
+
+    @Override
+    protected double score(Map<String, Double> remainingFractions) {
+        double dominantShare = 0;
+        for (double fraction : remainingFractions.values()) {
+            dominantShare = Math.max(dominantShare, 1 - fraction);
+        }
+
+        return dominantShare;
+    }
+}
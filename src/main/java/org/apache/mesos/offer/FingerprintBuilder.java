@@ -0,0 +1,50 @@
+package org.apache.mesos.offer;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds a SHA-256 fingerprint of a sequence of protobuf messages and strings.  Every element is length-prefixed, so
+ * that different sequences never produce the same input to the digest.
+ */
+final class FingerprintBuilder {
+    private final MessageDigest digest;
+
+    FingerprintBuilder() {
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    FingerprintBuilder add(Message message) {
+        return add(message.toByteArray());
+    }
+
+    FingerprintBuilder add(String value) {
+        return add(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    FingerprintBuilder add(int value) {
+        digest.update((byte) (value >>> 24));
+        digest.update((byte) (value >>> 16));
+        digest.update((byte) (value >>> 8));
+        digest.update((byte) value);
+        return this;
+    }
+
+    ByteString build() {
+        return ByteString.copyFrom(digest.digest());
+    }
+
+    private FingerprintBuilder add(byte[] bytes) {
+        add(bytes.length);
+        digest.update(bytes);
+        return this;
+    }
+}
@@ -12,6 +12,11 @@ import java.util.*;
 
 /**
  * A representation of the pool of resources available in a single Offer.
+ *
+ * Unreserved mergeable scalar resources (eg cpus and mem) are accounted for as primitive doubles, indexed by the
+ * position of their resource name in a small table kept by each pool, so that checking and consuming them allocates
+ * no protobuf objects.  They are only turned back into {@link Resource}s when they are consumed or when the merged
+ * pool is requested.
  **/
 public class MesosResourcePool {
     private static final Logger logger = LoggerFactory.getLogger(MesosResourcePool.class);
@@ -20,6 +25,10 @@ public class MesosResourcePool {
     private Collection<MesosResource> mesosResources;
     private Map<String, List<MesosResource>> unreservedAtomicPool;
     private Map<String, Value> unreservedMergedPool;
+    // Offers carry only a handful of scalar names, so they are searched linearly.  The names array is replaced, never
+    // modified, when a name is added, so copies of a pool may share it.
+    private String[] scalarNames = new String[0];
+    private double[] unreservedScalars = new double[0];
     private Map<String, MesosResource> reservedPool;
 
     public MesosResourcePool(Offer offer) {
@@ -30,6 +39,23 @@ public class MesosResourcePool {
         this.reservedPool = getReservedPool(offer);
     }
 
+    /**
+     * Creates a copy of the provided pool, so that resources may be tentatively consumed from it without affecting
+     * the original.
+     */
+    public MesosResourcePool(MesosResourcePool pool) {
+        this.offer = pool.offer;
+        this.mesosResources = pool.mesosResources;
+        this.unreservedAtomicPool = new HashMap<>();
+        for (Map.Entry<String, List<MesosResource>> entry : pool.unreservedAtomicPool.entrySet()) {
+            this.unreservedAtomicPool.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+        this.unreservedMergedPool = new HashMap<>(pool.unreservedMergedPool);
+        this.scalarNames = pool.scalarNames;
+        this.unreservedScalars = pool.unreservedScalars.clone();
+        this.reservedPool = new HashMap<>(pool.reservedPool);
+    }
+
     public Offer getOffer() {
         return offer;
     }
@@ -38,8 +64,30 @@ public class MesosResourcePool {
         return unreservedAtomicPool;
     }
 
+    /**
+     * Returns a read-only snapshot of the unreserved mergeable resources remaining in the pool, by resource name.
+     * This is a copy rather than a live view of the pool: it does not reflect later changes, and resources may only
+     * be removed from or returned to the pool with {@link #consume(ResourceRequirement)} and
+     * {@link #release(MesosResource)}.  Scalar values are materialized on every call, so this should not be used on
+     * evaluation hot paths.
+     */
     public Map<String, Value> getUnreservedMergedPool() {
-        return unreservedMergedPool;
+        Map<String, Value> pool = new HashMap<>(unreservedMergedPool);
+        for (int i = 0; i < scalarNames.length; i++) {
+            pool.put(scalarNames[i], getScalarValue(unreservedScalars[i]));
+        }
+
+        return Collections.unmodifiableMap(pool);
+    }
+
+    /**
+     * Returns the unreserved amount of the provided mergeable scalar resource remaining in the pool, or zero if none
+     * remains.  Unlike {@link #getUnreservedMergedPool()}, this allocates nothing, so it may be used while evaluating
+     * Offers.
+     */
+    public double getUnreservedScalar(String name) {
+        int index = indexOfScalar(name);
+        return index < 0 ? 0 : unreservedScalars[index];
     }
 
     public Map<String, MesosResource> getReservedPool() {
@@ -104,6 +152,19 @@ public class MesosResourcePool {
     }
 
     private void releaseMergedResource(MesosResource mesRes) {
+        if (mesRes.getType() == Value.Type.SCALAR) {
+            int index = indexOfScalar(mesRes.getName());
+            if (index < 0) {
+                index = scalarNames.length;
+                String[] names = Arrays.copyOf(scalarNames, index + 1);
+                names[index] = mesRes.getName();
+                scalarNames = names;
+                unreservedScalars = Arrays.copyOf(unreservedScalars, index + 1);
+            }
+            unreservedScalars[index] += mesRes.getResource().getScalar().getValue();
+            return;
+        }
+
         Value currValue = unreservedMergedPool.get(mesRes.getName());
 
         if (currValue == null) {
@@ -186,6 +247,10 @@ public class MesosResourcePool {
     }
 
     private MesosResource consumeUnreservedMerged(ResourceRequirement resReq) {
+        if (resReq.getResource().getType() == Value.Type.SCALAR) {
+            return consumeUnreservedScalar(resReq);
+        }
+
         Value desiredValue = resReq.getValue();
         Value availableValue = unreservedMergedPool.get(resReq.getName());
 
@@ -198,6 +263,19 @@ public class MesosResourcePool {
         }
     }
 
+    private MesosResource consumeUnreservedScalar(ResourceRequirement resReq) {
+        double desired = resReq.getResource().getScalar().getValue();
+        int index = indexOfScalar(resReq.getName());
+
+        if (index < 0 || desired > unreservedScalars[index]) {
+            return null;
+        }
+
+        unreservedScalars[index] -= desired;
+        Resource resource = ResourceUtils.getUnreservedResource(resReq.getName(), resReq.getValue());
+        return new MesosResource(resource);
+    }
+
     private boolean sufficientValue(Value desired, Value available) {
         if (desired == null) {
             return true;
@@ -205,6 +283,10 @@ public class MesosResourcePool {
             return false;
         }
 
+        if (desired.getType() == Value.Type.SCALAR && available.getType() == Value.Type.SCALAR) {
+            return desired.getScalar().getValue() <= available.getScalar().getValue();
+        }
+
         Value difference = ValueUtils.subtract(desired, available);
         return ValueUtils.compare(difference, ValueUtils.getZero(desired.getType())) <= 0;
     }
@@ -253,6 +335,11 @@ public class MesosResourcePool {
         Map<String, Value> pool = new HashMap<String, Value>();
 
         for (MesosResource mesResource : getUnreservedMergedResources()) {
+            if (mesResource.getType() == Value.Type.SCALAR) {
+                releaseMergedResource(mesResource);
+                continue;
+            }
+
             String name = mesResource.getName();
             Value currValue = pool.get(name);
 
@@ -266,6 +353,23 @@ public class MesosResourcePool {
         return pool;
     }
 
+    private int indexOfScalar(String name) {
+        for (int i = 0; i < scalarNames.length; i++) {
+            if (scalarNames[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static Value getScalarValue(double value) {
+        return Value.newBuilder()
+                .setType(Value.Type.SCALAR)
+                .setScalar(Value.Scalar.newBuilder().setValue(value))
+                .build();
+    }
+
     private Collection<MesosResource> getAtomicResources() {
         Collection<MesosResource> atomicResources = new ArrayList<MesosResource>();
 
@@ -0,0 +1,172 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos.Filters;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.OfferID;
+import org.apache.mesos.SchedulerDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * The OfferBuffer holds Offers which have not been used, so that they may be reused in later offer cycles instead of
+ * being declined immediately.  This allows work which becomes eligible between Mesos callbacks (eg a Block which
+ * returns to pending after a status update) to be placed without waiting a full allocation interval for new Offers.
+ *
+ * Offers are held for at most a fixed time-to-live after they were received.  Expired Offers are declined together
+ * by {@link #declineExpired(SchedulerDriver)}, and rescinded Offers are evicted without being declined.  All methods
+ * are thread-safe.
+ */
+public class OfferBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(OfferBuffer.class);
+
+    private final long ttlMs;
+    private final Map<OfferID, HeldOffer> heldOffers = new LinkedHashMap<>();
+
+    /**
+     * Creates a buffer which holds Offers for the provided time-to-live.  A zero time-to-live holds Offers only for
+     * the offer cycle in which they were received.
+     */
+    public OfferBuffer(Duration ttl) {
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("Offer time-to-live must not be negative: " + ttl);
+        }
+        this.ttlMs = ttl.toMillis();
+    }
+
+    /**
+     * Adds newly received Offers to the buffer.  Offers which are already held keep their original receipt time.
+     */
+    public synchronized void add(Collection<Offer> offers) {
+        long now = getCurrentTimeMs();
+        for (Offer offer : offers) {
+            if (!heldOffers.containsKey(offer.getId())) {
+                heldOffers.put(offer.getId(), new HeldOffer(offer, now));
+            }
+        }
+    }
+
+    /**
+     * Returns all held Offers, in the order in which they were received.
+     */
+    public synchronized List<Offer> getOffers() {
+        List<Offer> offers = new ArrayList<>(heldOffers.size());
+        for (HeldOffer heldOffer : heldOffers.values()) {
+            offers.add(heldOffer.offer);
+        }
+
+        return offers;
+    }
+
+    public synchronized int size() {
+        return heldOffers.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return heldOffers.isEmpty();
+    }
+
+    /**
+     * Removes Offers which have been used, eg because they were accepted.
+     */
+    public synchronized void remove(Collection<OfferID> offerIds) {
+        for (OfferID offerId : offerIds) {
+            heldOffers.remove(offerId);
+        }
+    }
+
+    /**
+     * Evicts an Offer which Mesos has rescinded.
+     *
+     * @return whether the Offer was held
+     */
+    public synchronized boolean rescind(OfferID offerId) {
+        boolean held = heldOffers.remove(offerId) != null;
+        logger.info("Offer rescinded: {} (held: {})", offerId.getValue(), held);
+        return held;
+    }
+
+    /**
+     * Removes and returns the Offers whose time-to-live has elapsed, in the order in which they were received.
+     */
+    public synchronized List<Offer> removeExpired() {
+        long now = getCurrentTimeMs();
+        List<Offer> expired = new ArrayList<>();
+        Iterator<HeldOffer> iterator = heldOffers.values().iterator();
+        while (iterator.hasNext()) {
+            HeldOffer heldOffer = iterator.next();
+            if (now - heldOffer.receivedMs >= ttlMs) {
+                expired.add(heldOffer.offer);
+                iterator.remove();
+            }
+        }
+
+        return expired;
+    }
+
+    /**
+     * Declines all Offers whose time-to-live has elapsed, with the default filter.
+     *
+     * @return the IDs of the declined Offers
+     */
+    public List<OfferID> declineExpired(SchedulerDriver driver) {
+        return decline(driver, removeExpired(), null);
+    }
+
+    /**
+     * Declines all Offers whose time-to-live has elapsed, with the provided filter.
+     *
+     * @return the IDs of the declined Offers
+     */
+    public List<OfferID> declineExpired(SchedulerDriver driver, Filters filters) {
+        return decline(driver, removeExpired(), filters);
+    }
+
+    /**
+     * Declines all held Offers regardless of their time-to-live, eg because the scheduler has no work for them.
+     *
+     * @return the IDs of the declined Offers
+     */
+    public List<OfferID> declineAll(SchedulerDriver driver, Filters filters) {
+        List<Offer> offers;
+        synchronized (this) {
+            offers = getOffers();
+            heldOffers.clear();
+        }
+
+        return decline(driver, offers, filters);
+    }
+
+    private static List<OfferID> decline(SchedulerDriver driver, List<Offer> offers, Filters filters) {
+        List<OfferID> declined = new ArrayList<>();
+        for (Offer offer : offers) {
+            if (filters == null) {
+                logger.info("Declining offer: {}", offer.getId().getValue());
+                driver.declineOffer(offer.getId());
+            } else {
+                logger.info("Declining offer: {} (refuse seconds: {})",
+                        offer.getId().getValue(), filters.getRefuseSeconds());
+                driver.declineOffer(offer.getId(), filters);
+            }
+            declined.add(offer.getId());
+        }
+
+        return declined;
+    }
+
+    protected long getCurrentTimeMs() {
+        return System.currentTimeMillis();
+    }
+
+    private static class HeldOffer {
+        private final Offer offer;
+        private final long receivedMs;
+
+        private HeldOffer(Offer offer, long receivedMs) {
+            this.offer = offer;
+            this.receivedMs = receivedMs;
+        }
+    }
+}
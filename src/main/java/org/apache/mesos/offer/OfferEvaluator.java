@@ -13,9 +13,12 @@ import org.apache.mesos.executor.ExecutorUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.protobuf.ByteString;
 import com.google.protobuf.TextFormat;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * The OfferEvaluator processes {@link Offer}s and produces {@link OfferRecommendation}s.
@@ -27,29 +30,150 @@ import java.util.*;
 public class OfferEvaluator {
     private static final Logger logger = LoggerFactory.getLogger(OfferEvaluator.class);
 
-    public OfferEvaluator() { }
+    /**
+     * The maximum number of candidate Offers which a single fork/join task evaluates before splitting its work.
+     */
+    private static final int PARALLEL_THRESHOLD = 8;
+
+    private final ForkJoinPool forkJoinPool;
+    private final OfferScorer offerScorer;
+    private final UnfitOfferCache unfitOfferCache;
+
+    public OfferEvaluator() {
+        this(null, null);
+    }
+
+    public OfferEvaluator(OfferScorer offerScorer) {
+        this(null, offerScorer);
+    }
+
+    public OfferEvaluator(ForkJoinPool forkJoinPool) {
+        this(forkJoinPool, null);
+    }
+
+    /**
+     * Creates an OfferEvaluator which evaluates candidate Offers in parallel on the provided {@link ForkJoinPool},
+     * or serially if it is {@code null}.  When an {@link OfferScorer} is provided every candidate Offer is evaluated
+     * and the highest scoring fit wins, otherwise the first fit in offer order wins.  In both cases ties are broken
+     * by offer order, so parallel and serial evaluation always select the same Offer.
+     */
+    public OfferEvaluator(ForkJoinPool forkJoinPool, OfferScorer offerScorer) {
+        this(forkJoinPool, offerScorer, new UnfitOfferCache());
+    }
+
+    /**
+     * Creates an OfferEvaluator which skips the full evaluation of Offers which the provided {@link UnfitOfferCache}
+     * already knows cannot satisfy a requirement, and records every Offer which is newly found not to.
+     */
+    public OfferEvaluator(ForkJoinPool forkJoinPool, OfferScorer offerScorer, UnfitOfferCache unfitOfferCache) {
+        this.forkJoinPool = forkJoinPool;
+        this.offerScorer = offerScorer;
+        this.unfitOfferCache = unfitOfferCache;
+    }
 
     public List<OfferRecommendation> evaluate(OfferRequirement offerRequirement, List<Offer> offers) {
-        for (Offer offer : offers) {
-            List<OfferRecommendation> recommendations = evaluate(offerRequirement, offer);
-            if (recommendations != null && !recommendations.isEmpty()) {
-                return recommendations;
+        return evaluate(offerRequirement, new OfferIndex(offers));
+    }
+
+    /**
+     * Evaluates the provided {@link OfferRequirement} against the indexed Offers, returning the recommendations for
+     * the winning Offer which satisfies the requirement.  Only the candidate Offers selected by the
+     * {@link OfferIndex} are fully evaluated.
+     */
+    public List<OfferRecommendation> evaluate(OfferRequirement offerRequirement, OfferIndex offerIndex) {
+        return evaluate(offerRequirement, offerIndex, new HashMap<>());
+    }
+
+    /**
+     * Evaluates the provided {@link OfferRequirement} against the indexed Offers, as if the resources already
+     * consumed from the provided pools were no longer offered.  This allows several requirements to be placed
+     * against the same Offers in a single offer cycle.
+     *
+     * @param pools the remaining pools of Offers which have been consumed by previously evaluated requirements, by
+     *              OfferID.  The pool of the winning Offer is added or replaced, while the pools of all other Offers
+     *              are left untouched.
+     */
+    public List<OfferRecommendation> evaluate(
+            OfferRequirement offerRequirement,
+            OfferIndex offerIndex,
+            Map<Protos.OfferID, MesosResourcePool> pools) {
+        List<Offer> candidates = offerIndex.getCandidates(offerRequirement);
+        logger.info("Evaluating {} candidate offers of {} offers", candidates.size(), offerIndex.size());
+
+        FittedOffer winner;
+        if (forkJoinPool != null && candidates.size() > PARALLEL_THRESHOLD) {
+            winner = forkJoinPool.invoke(
+                    new EvaluationTask(offerRequirement, offerIndex, candidates, pools, 0, candidates.size()));
+        } else {
+            winner = evaluate(offerRequirement, offerIndex, candidates, pools, 0, candidates.size());
+        }
+
+        if (winner == null) {
+            return Collections.emptyList();
+        }
+
+        pools.put(winner.pool.getOffer().getId(), winner.pool);
+        return winner.recommendations;
+    }
+
+    /**
+     * Serially evaluates the candidates in the range [{@code from}, {@code to}) and returns the winner among them,
+     * or {@code null} if none of them fit.
+     */
+    private FittedOffer evaluate(
+            OfferRequirement offerRequirement,
+            OfferIndex offerIndex,
+            List<Offer> candidates,
+            Map<Protos.OfferID, MesosResourcePool> pools,
+            int from,
+            int to) {
+        FittedOffer winner = null;
+        for (int i = from; i < to; i++) {
+            Offer candidate = candidates.get(i);
+            FittedOffer fittedOffer = fit(offerRequirement, offerIndex, candidate, pools.get(candidate.getId()), i);
+            if (fittedOffer != null) {
+                if (offerScorer == null) {
+                    return fittedOffer;
+                }
+                winner = FittedOffer.select(winner, fittedOffer);
             }
         }
-        return Collections.emptyList();
+
+        return winner;
     }
 
-    private boolean offerMeetsPlacementConstraints(OfferRequirement offerReq, Offer offer) {
-        if (offerReq.getAvoidAgents().contains(offer.getSlaveId())) {
-            return false;
+    /**
+     * Evaluates a single candidate Offer.  If the Offer has already been partially consumed its remaining pool is
+     * copied, so that a failed evaluation leaves it untouched.
+     */
+    private FittedOffer fit(
+            OfferRequirement offerRequirement,
+            OfferIndex offerIndex,
+            Offer offer,
+            MesosResourcePool consumedPool,
+            int order) {
+        // Candidates were already selected by the OfferIndex, which applies every check of OfferNeeds.mayFit().
+        OfferNeeds needs = offerRequirement.getNeeds();
+        ByteString offerFingerprint = offerIndex.getFingerprint(offer);
+        if (isKnownUnfit(needs, offer, offerFingerprint)) {
+            return null;
         }
 
-        if (offerReq.getColocateAgents().size() > 0 &&
-                !offerReq.getColocateAgents().contains(offer.getSlaveId())) {
-            return false;
+        MesosResourcePool pool = consumedPool == null
+                ? new MesosResourcePool(offer)
+                : new MesosResourcePool(consumedPool);
+        List<OfferRecommendation> recommendations = evaluate(offerRequirement, offer, pool);
+        if (recommendations.isEmpty()) {
+            // Consuming resources can only make an Offer fit less, so only failures against the whole Offer are
+            // recorded.
+            if (consumedPool == null) {
+                unfitOfferCache.putUnfit(needs, offer.getSlaveId(), offerFingerprint);
+            }
+            return null;
         }
 
-        return true;
+        double score = offerScorer == null ? 0 : offerScorer.score(offerRequirement, pool);
+        return new FittedOffer(order, score, pool, recommendations);
     }
 
     private boolean hasExpectedExecutorId(Offer offer, Protos.ExecutorID executorID) {
@@ -63,12 +187,40 @@ public class OfferEvaluator {
     }
 
     public List<OfferRecommendation> evaluate(OfferRequirement offerRequirement, Offer offer) {
-        if (!offerMeetsPlacementConstraints(offerRequirement, offer)) {
+        // The compiled needs reject most infeasible Offers before any MesosResourcePool is built.
+        OfferNeeds needs = offerRequirement.getNeeds();
+        if (!needs.mayFit(offer)) {
             return Collections.emptyList();
         }
 
-        MesosResourcePool pool = new MesosResourcePool(offer);
+        ByteString offerFingerprint = UnfitOfferCache.getFingerprint(offer);
+        if (isKnownUnfit(needs, offer, offerFingerprint)) {
+            return Collections.emptyList();
+        }
 
+        List<OfferRecommendation> recommendations = evaluate(offerRequirement, offer, new MesosResourcePool(offer));
+        if (recommendations.isEmpty()) {
+            unfitOfferCache.putUnfit(needs, offer.getSlaveId(), offerFingerprint);
+        }
+
+        return recommendations;
+    }
+
+    private boolean isKnownUnfit(OfferNeeds needs, Offer offer, ByteString offerFingerprint) {
+        if (unfitOfferCache.isUnfit(needs, offer.getSlaveId(), offerFingerprint)) {
+            logger.debug("Offer: '{}' is known not to satisfy the requirement", offer.getId().getValue());
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Fully evaluates the provided Offer against the remaining resources in the provided pool, without consulting
+     * the {@link OfferNeeds} or the {@link UnfitOfferCache}.  This is package-private so that the benchmarks can
+     * measure the unfiltered per-Offer evaluation.
+     */
+    List<OfferRecommendation> evaluate(OfferRequirement offerRequirement, Offer offer, MesosResourcePool pool) {
         List<OfferRecommendation> unreserves = new ArrayList<>();
         List<OfferRecommendation> reserves = new ArrayList<>();
         List<OfferRecommendation> creates = new ArrayList<>();
@@ -146,6 +298,96 @@ public class OfferEvaluator {
         return recommendations;
     }
 
+    /**
+     * An Offer which satisfied the requirement under evaluation, along with its position among the candidates, its
+     * score and the pool remaining after the requirement was consumed from it.
+     */
+    private static class FittedOffer {
+        private final int order;
+        private final double score;
+        private final MesosResourcePool pool;
+        private final List<OfferRecommendation> recommendations;
+
+        private FittedOffer(
+                int order,
+                double score,
+                MesosResourcePool pool,
+                List<OfferRecommendation> recommendations) {
+            this.order = order;
+            this.score = score;
+            this.pool = pool;
+            this.recommendations = recommendations;
+        }
+
+        /**
+         * Deterministically selects the better of two fits: the higher score wins and ties go to the earlier Offer.
+         */
+        private static FittedOffer select(FittedOffer a, FittedOffer b) {
+            if (a == null) {
+                return b;
+            } else if (b == null) {
+                return a;
+            }
+
+            int scoreComparison = Double.compare(a.score, b.score);
+            if (scoreComparison != 0) {
+                return scoreComparison > 0 ? a : b;
+            }
+
+            return a.order <= b.order ? a : b;
+        }
+    }
+
+    /**
+     * Evaluates a range of candidate Offers, splitting it in half until it is small enough to evaluate serially.
+     * Every candidate is evaluated against its own copy of a {@link MesosResourcePool}, so no mutable state is shared
+     * between tasks.
+     */
+    private class EvaluationTask extends RecursiveTask<FittedOffer> {
+        private final OfferRequirement offerRequirement;
+        private final OfferIndex offerIndex;
+        private final List<Offer> candidates;
+        private final Map<Protos.OfferID, MesosResourcePool> pools;
+        private final int from;
+        private final int to;
+
+        private EvaluationTask(
+                OfferRequirement offerRequirement,
+                OfferIndex offerIndex,
+                List<Offer> candidates,
+                Map<Protos.OfferID, MesosResourcePool> pools,
+                int from,
+                int to) {
+            this.offerRequirement = offerRequirement;
+            this.offerIndex = offerIndex;
+            this.candidates = candidates;
+            this.pools = pools;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected FittedOffer compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                return evaluate(offerRequirement, offerIndex, candidates, pools, from, to);
+            }
+
+            int mid = (from + to) >>> 1;
+            EvaluationTask right = new EvaluationTask(offerRequirement, offerIndex, candidates, pools, mid, to);
+            right.fork();
+            FittedOffer leftWinner =
+                    new EvaluationTask(offerRequirement, offerIndex, candidates, pools, from, mid).compute();
+
+            if (leftWinner != null && offerScorer == null) {
+                // Without a scorer the earliest fit wins, so the later half can no longer produce the winner.
+                right.cancel(false);
+                return leftWinner;
+            }
+
+            return FittedOffer.select(leftWinner, right.join());
+        }
+    }
+
     private static class FulfilledRequirement {
         private List<Resource> fulfilledResources = new ArrayList<>();
         private List<OfferRecommendation> unreserveRecommendations = new ArrayList<>();
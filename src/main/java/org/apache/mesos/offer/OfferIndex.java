@@ -0,0 +1,287 @@
+package org.apache.mesos.offer;
+
+import com.google.protobuf.ByteString;
+import org.apache.mesos.Protos.ExecutorID;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.OfferID;
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.util.MutableRangeSet;
+import org.apache.mesos.util.RangeSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An OfferIndex is built once over a batch of {@link Offer}s and allows the {@link OfferEvaluator} to quickly
+ * select the few Offers which could possibly satisfy an {@link OfferRequirement}, without constructing a
+ * {@link MesosResourcePool} for every Offer in the batch.
+ *
+ * Offers are indexed by agent, by the amount of each unreserved scalar resource they contain (kept sorted, so that
+ * "at least N cpus" is a binary search), by the ranges of each unreserved ranges resource they contain, and by the
+ * IDs of the reserved resources they contain.  Candidate selection is conservative: an Offer which is filtered out
+ * is guaranteed to fail full evaluation, while an Offer which is returned may still fail full evaluation.
+ * Candidates are always returned in the order in which they were originally offered.
+ */
+public class OfferIndex {
+    private final List<Offer> offers;
+    private final Map<SlaveID, BitSet> offersByAgent = new HashMap<>();
+    private final Map<String, BitSet> offersByResourceId = new HashMap<>();
+    private final Map<String, SortedAmounts> offersByScalar = new HashMap<>();
+    private final Map<String, SortedAmounts> offersByRangeCount = new HashMap<>();
+    private final List<Map<String, RangeSet>> rangesByOffer;
+    private final ConcurrentMap<OfferID, ByteString> fingerprintsByOffer = new ConcurrentHashMap<>();
+
+    public OfferIndex(List<Offer> offers) {
+        this.offers = Collections.unmodifiableList(new ArrayList<>(offers));
+        this.rangesByOffer = new ArrayList<>(offers.size());
+
+        Map<String, double[]> scalarAmounts = new HashMap<>();
+        Map<String, double[]> rangeCounts = new HashMap<>();
+
+        for (int i = 0; i < this.offers.size(); i++) {
+            Offer offer = this.offers.get(i);
+            getBits(offersByAgent, offer.getSlaveId()).set(i);
+
+            Map<String, MutableRangeSet> offerRanges = new HashMap<>();
+            for (Resource resource : offer.getResourcesList()) {
+                MesosResource mesosResource = new MesosResource(resource);
+                if (mesosResource.hasResourceId()) {
+                    getBits(offersByResourceId, mesosResource.getResourceId()).set(i);
+                    continue;
+                }
+
+                if (mesosResource.isAtomic()) {
+                    continue;
+                }
+
+                switch (resource.getType()) {
+                    case SCALAR:
+                        getAmounts(scalarAmounts, resource.getName())[i] += resource.getScalar().getValue();
+                        break;
+                    case RANGES:
+                        MutableRangeSet ranges = offerRanges.get(resource.getName());
+                        if (ranges == null) {
+                            ranges = new MutableRangeSet();
+                            offerRanges.put(resource.getName(), ranges);
+                        }
+                        ranges.addAll(RangeSet.of(resource.getRanges()));
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            Map<String, RangeSet> offerRangeSets = new HashMap<>();
+            for (Map.Entry<String, MutableRangeSet> entry : offerRanges.entrySet()) {
+                RangeSet ranges = entry.getValue().toRangeSet();
+                offerRangeSets.put(entry.getKey(), ranges);
+                getAmounts(rangeCounts, entry.getKey())[i] = ranges.size();
+            }
+            rangesByOffer.add(offerRangeSets);
+        }
+
+        for (Map.Entry<String, double[]> entry : scalarAmounts.entrySet()) {
+            offersByScalar.put(entry.getKey(), new SortedAmounts(entry.getValue()));
+        }
+
+        for (Map.Entry<String, double[]> entry : rangeCounts.entrySet()) {
+            offersByRangeCount.put(entry.getKey(), new SortedAmounts(entry.getValue()));
+        }
+    }
+
+    /**
+     * Returns all indexed Offers, in the order in which they were offered.
+     */
+    public List<Offer> getOffers() {
+        return offers;
+    }
+
+    /**
+     * Returns the number of indexed Offers.
+     */
+    public int size() {
+        return offers.size();
+    }
+
+    /**
+     * Returns the {@link UnfitOfferCache#getFingerprint(Offer)} of an indexed Offer.  It is computed at most once per
+     * index, rather than once for every requirement evaluated against the Offer.  This method is thread-safe.
+     */
+    public ByteString getFingerprint(Offer offer) {
+        return fingerprintsByOffer.computeIfAbsent(offer.getId(), offerId -> UnfitOfferCache.getFingerprint(offer));
+    }
+
+    /**
+     * Returns the indexed Offers which were made by the provided agent, in the order in which they were offered.
+     */
+    public List<Offer> getOffers(SlaveID agentId) {
+        return toOffers(offersByAgent.get(agentId));
+    }
+
+    /**
+     * Returns the Offers which could possibly satisfy the provided {@link OfferRequirement}, in the order in which
+     * they were offered.  Every Offer which is not returned would be rejected by
+     * {@link OfferEvaluator#evaluate(OfferRequirement, Offer)}, and every Offer which is returned passes
+     * {@link OfferNeeds#mayFit(Offer)}, so the evaluator does not check the candidates again.
+     */
+    public List<Offer> getCandidates(OfferRequirement offerRequirement) {
+        OfferNeeds needs = offerRequirement.getNeeds();
+        BitSet candidates = new BitSet(offers.size());
+        candidates.set(0, offers.size());
+
+        filterPlacement(needs, candidates);
+
+        for (String resourceId : needs.getExpectedResourceIds()) {
+            and(candidates, offersByResourceId.get(resourceId));
+        }
+
+        if (needs.hasUnreservedDemand()) {
+            for (int i = 0; i < needs.getScalarCount(); i++) {
+                filterAtLeast(offersByScalar.get(needs.getScalarName(i)), needs.getScalarDemand(i), candidates);
+            }
+            for (int i = 0; i < needs.getRangeCount(); i++) {
+                filterAtLeast(offersByRangeCount.get(needs.getRangeName(i)), needs.getRangeDemand(i), candidates);
+            }
+        }
+
+        ExecutorID expectedExecutorId = needs.getExpectedExecutorId();
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            if (expectedExecutorId != null && !offers.get(i).getExecutorIdsList().contains(expectedExecutorId)) {
+                candidates.clear(i);
+            } else if (!coversRanges(rangesByOffer.get(i), needs.getStaticRanges())) {
+                candidates.clear(i);
+            }
+        }
+
+        return toOffers(candidates);
+    }
+
+    private void filterPlacement(OfferNeeds needs, BitSet candidates) {
+        Collection<SlaveID> colocateAgents = needs.getColocateAgents();
+        if (!colocateAgents.isEmpty()) {
+            BitSet colocated = new BitSet(offers.size());
+            for (SlaveID agentId : colocateAgents) {
+                BitSet agentOffers = offersByAgent.get(agentId);
+                if (agentOffers != null) {
+                    colocated.or(agentOffers);
+                }
+            }
+            candidates.and(colocated);
+        }
+
+        for (SlaveID agentId : needs.getAvoidAgents()) {
+            BitSet agentOffers = offersByAgent.get(agentId);
+            if (agentOffers != null) {
+                candidates.andNot(agentOffers);
+            }
+        }
+    }
+
+    private static boolean coversRanges(Map<String, RangeSet> offeredRanges, Map<String, RangeSet> desiredRanges) {
+        for (Map.Entry<String, RangeSet> entry : desiredRanges.entrySet()) {
+            RangeSet available = offeredRanges.get(entry.getKey());
+            if (available == null || !available.containsAll(entry.getValue())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void filterAtLeast(SortedAmounts amounts, double minimum, BitSet candidates) {
+        if (amounts == null) {
+            candidates.clear();
+        } else {
+            candidates.and(amounts.atLeast(minimum - OfferNeeds.SCALAR_EPSILON));
+        }
+    }
+
+    private static void and(BitSet candidates, BitSet matches) {
+        if (matches == null) {
+            candidates.clear();
+        } else {
+            candidates.and(matches);
+        }
+    }
+
+    private List<Offer> toOffers(BitSet bits) {
+        if (bits == null) {
+            return Collections.emptyList();
+        }
+
+        List<Offer> selected = new ArrayList<>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            selected.add(offers.get(i));
+        }
+
+        return selected;
+    }
+
+    private static <K> BitSet getBits(Map<K, BitSet> bitsByKey, K key) {
+        BitSet bits = bitsByKey.get(key);
+        if (bits == null) {
+            bits = new BitSet();
+            bitsByKey.put(key, bits);
+        }
+
+        return bits;
+    }
+
+    private double[] getAmounts(Map<String, double[]> amountsByName, String name) {
+        double[] amounts = amountsByName.get(name);
+        if (amounts == null) {
+            amounts = new double[offers.size()];
+            amountsByName.put(name, amounts);
+        }
+
+        return amounts;
+    }
+
+    /**
+     * The amounts of a single resource across all indexed Offers, sorted ascending so that the Offers with at least
+     * a given amount may be found with a binary search.
+     */
+    private static class SortedAmounts {
+        private final double[] amounts;
+        private final int[] offerIndices;
+        private final int offerCount;
+
+        private SortedAmounts(double[] amountsByOffer) {
+            this.offerCount = amountsByOffer.length;
+            Integer[] order = new Integer[offerCount];
+            for (int i = 0; i < offerCount; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(amountsByOffer[a], amountsByOffer[b]));
+
+            this.amounts = new double[offerCount];
+            this.offerIndices = new int[offerCount];
+            for (int i = 0; i < offerCount; i++) {
+                offerIndices[i] = order[i];
+                amounts[i] = amountsByOffer[order[i]];
+            }
+        }
+
+        private BitSet atLeast(double minimum) {
+            int low = 0;
+            int high = offerCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (amounts[mid] < minimum) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            BitSet matches = new BitSet(offerCount);
+            for (int i = low; i < offerCount; i++) {
+                matches.set(offerIndices[i]);
+            }
+
+            return matches;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package org.apache.mesos.offer;
+
+import com.google.protobuf.ByteString;
+import org.apache.mesos.Protos.ExecutorID;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.Protos.Resource.DiskInfo.Source;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.Protos.Value;
+import org.apache.mesos.util.MutableRangeSet;
+import org.apache.mesos.util.RangeSet;
+
+import java.util.*;
+
+/**
+ * OfferNeeds is the compiled, immutable form of an {@link OfferRequirement}: the total unreserved demand per resource
+ * name, the reserved resource IDs and executor ID which must be offered, and the agent placement constraints.  It is
+ * computed once per requirement (see {@link OfferRequirement#getNeeds()}) so that Offers which cannot possibly satisfy
+ * the requirement may be rejected with a single pass over their resources, before any {@link MesosResourcePool} is
+ * built.
+ *
+ * The needs are conservative: an Offer rejected by {@link #mayFit(Offer)} would be rejected by the
+ * {@link OfferEvaluator}, but an Offer which may fit still has to be fully evaluated.
+ */
+public final class OfferNeeds {
+    /**
+     * Tolerance applied in favor of the Offer when comparing scalar amounts, so that floating point error when
+     * summing demands never causes an Offer which would fit to be rejected.
+     */
+    static final double SCALAR_EPSILON = 1e-9;
+
+    private final Set<SlaveID> avoidAgents;
+    private final Set<SlaveID> colocateAgents;
+    private final ExecutorID expectedExecutorId;
+    private final Set<String> expectedResourceIds;
+    private final String[] scalarNames;
+    private final double[] scalarDemand;
+    private final String[] rangeNames;
+    private final long[] rangeDemand;
+    private final Map<String, RangeSet> staticRanges;
+    private final Collection<ResourceRequirement> resourceRequirements;
+    private final ByteString fingerprint;
+
+    private OfferNeeds(
+            Set<SlaveID> avoidAgents,
+            Set<SlaveID> colocateAgents,
+            ExecutorID expectedExecutorId,
+            Set<String> expectedResourceIds,
+            Map<String, Double> scalarDemand,
+            Map<String, Long> rangeDemand,
+            Map<String, RangeSet> staticRanges,
+            Collection<ResourceRequirement> resourceRequirements,
+            ByteString fingerprint) {
+        this.avoidAgents = avoidAgents;
+        this.colocateAgents = colocateAgents;
+        this.expectedExecutorId = expectedExecutorId;
+        this.expectedResourceIds = expectedResourceIds;
+        this.scalarNames = scalarDemand.keySet().toArray(new String[scalarDemand.size()]);
+        this.scalarDemand = new double[scalarNames.length];
+        for (int i = 0; i < scalarNames.length; i++) {
+            this.scalarDemand[i] = scalarDemand.get(scalarNames[i]);
+        }
+        this.rangeNames = rangeDemand.keySet().toArray(new String[rangeDemand.size()]);
+        this.rangeDemand = new long[rangeNames.length];
+        for (int i = 0; i < rangeNames.length; i++) {
+            this.rangeDemand[i] = rangeDemand.get(rangeNames[i]);
+        }
+        this.staticRanges = staticRanges;
+        this.resourceRequirements = resourceRequirements;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Compiles the needs of the provided {@link OfferRequirement}.
+     */
+    public static OfferNeeds compile(OfferRequirement offerRequirement) {
+        Collection<ResourceRequirement> resourceRequirements = new ArrayList<>();
+        Collection<DynamicPortRequirement> dynamicPortRequirements = new ArrayList<>();
+        ExecutorID expectedExecutorId = null;
+        FingerprintBuilder fingerprint = new FingerprintBuilder();
+
+        // The fingerprint covers exactly the inputs of an evaluation, in the order in which they are consumed.
+        ExecutorRequirement execReq = offerRequirement.getExecutorRequirement();
+        if (execReq == null) {
+            fingerprint.add(0);
+        } else if (execReq.desiresResources() || execReq.getExecutorInfo().getExecutorId().getValue().isEmpty()) {
+            resourceRequirements.addAll(execReq.getResourceRequirements());
+            dynamicPortRequirements.addAll(execReq.getDynamicPortRequirements());
+            addFingerprint(fingerprint.add(1), execReq.getResourceRequirements(), execReq.getDynamicPortRequirements());
+        } else {
+            expectedExecutorId = execReq.getExecutorInfo().getExecutorId();
+            fingerprint.add(2).add(expectedExecutorId);
+        }
+
+        for (TaskRequirement taskReq : offerRequirement.getTaskRequirements()) {
+            resourceRequirements.addAll(taskReq.getResourceRequirements());
+            dynamicPortRequirements.addAll(taskReq.getDynamicPortRequirements());
+            addFingerprint(fingerprint, taskReq.getResourceRequirements(), taskReq.getDynamicPortRequirements());
+        }
+
+        Set<String> expectedResourceIds = new HashSet<>();
+        for (ResourceRequirement resReq : resourceRequirements) {
+            if (resReq.expectsResource()) {
+                expectedResourceIds.add(resReq.getResourceId());
+            }
+        }
+
+        // Expected resources whose reservation shrinks release their excess into the unreserved pool, where it may
+        // be consumed by later requirements.  The amounts offered for those resources are only known at evaluation
+        // time, so unreserved demand is only compiled for requirements which expect no reserved resources.  These are
+        // narrowed to very few Offers by their resource IDs anyway.
+        Map<String, Double> scalarDemand = new TreeMap<>();
+        Map<String, Long> rangeDemand = new TreeMap<>();
+        Map<String, RangeSet> staticRanges = new HashMap<>();
+        if (expectedResourceIds.isEmpty()) {
+            Map<String, MutableRangeSet> desiredRanges = new HashMap<>();
+            for (ResourceRequirement resReq : resourceRequirements) {
+                if (resReq.isAtomic() || !(resReq.reservesResource() || resReq.consumesUnreservedResource())) {
+                    continue;
+                }
+
+                Value value = resReq.getValue();
+                switch (value.getType()) {
+                    case SCALAR:
+                        scalarDemand.merge(resReq.getName(), value.getScalar().getValue(), Double::sum);
+                        break;
+                    case RANGES:
+                        RangeSet ranges = RangeSet.of(value.getRanges());
+                        rangeDemand.merge(resReq.getName(), ranges.size(), Long::sum);
+                        MutableRangeSet nameRanges = desiredRanges.get(resReq.getName());
+                        if (nameRanges == null) {
+                            nameRanges = new MutableRangeSet();
+                            desiredRanges.put(resReq.getName(), nameRanges);
+                        }
+                        nameRanges.addAll(ranges);
+                        break;
+                    default:
+                        break;
+                }
+            }
+
+            // Each dynamic port consumes exactly one value from the unreserved ranges.
+            for (DynamicPortRequirement dynamicPortRequirement : dynamicPortRequirements) {
+                rangeDemand.merge(dynamicPortRequirement.getName(), 1L, Long::sum);
+            }
+
+            for (Map.Entry<String, MutableRangeSet> entry : desiredRanges.entrySet()) {
+                staticRanges.put(entry.getKey(), entry.getValue().toRangeSet());
+            }
+        }
+
+        return new OfferNeeds(
+                new HashSet<>(offerRequirement.getAvoidAgents()),
+                new HashSet<>(offerRequirement.getColocateAgents()),
+                expectedExecutorId,
+                Collections.unmodifiableSet(expectedResourceIds),
+                scalarDemand,
+                rangeDemand,
+                Collections.unmodifiableMap(staticRanges),
+                Collections.unmodifiableCollection(resourceRequirements),
+                fingerprint.build());
+    }
+
+    private static void addFingerprint(
+            FingerprintBuilder fingerprint,
+            Collection<ResourceRequirement> resourceRequirements,
+            Collection<DynamicPortRequirement> dynamicPortRequirements) {
+        fingerprint.add(resourceRequirements.size());
+        for (ResourceRequirement resReq : resourceRequirements) {
+            fingerprint.add(resReq.getResource());
+        }
+
+        fingerprint.add(dynamicPortRequirements.size());
+        for (DynamicPortRequirement dynamicPortRequirement : dynamicPortRequirements) {
+            fingerprint.add(dynamicPortRequirement.getResource());
+        }
+    }
+
+    public Set<SlaveID> getAvoidAgents() {
+        return Collections.unmodifiableSet(avoidAgents);
+    }
+
+    public Set<SlaveID> getColocateAgents() {
+        return Collections.unmodifiableSet(colocateAgents);
+    }
+
+    /**
+     * Returns the ID of the executor which must already be running on the offering agent, or {@code null} if there
+     * is none.
+     */
+    public ExecutorID getExpectedExecutorId() {
+        return expectedExecutorId;
+    }
+
+    /**
+     * Returns the IDs of the reserved resources which must be offered.
+     */
+    public Set<String> getExpectedResourceIds() {
+        return expectedResourceIds;
+    }
+
+    /**
+     * Returns whether the unreserved demand was compiled.  It is not when any reserved resources are expected.
+     */
+    public boolean hasUnreservedDemand() {
+        return expectedResourceIds.isEmpty();
+    }
+
+    public int getScalarCount() {
+        return scalarNames.length;
+    }
+
+    public String getScalarName(int index) {
+        return scalarNames[index];
+    }
+
+    /**
+     * Returns the total unreserved amount of the scalar resource at the provided index which is demanded.
+     */
+    public double getScalarDemand(int index) {
+        return scalarDemand[index];
+    }
+
+    public int getRangeCount() {
+        return rangeNames.length;
+    }
+
+    public String getRangeName(int index) {
+        return rangeNames[index];
+    }
+
+    /**
+     * Returns the number of unreserved values of the ranges resource at the provided index (eg ports) which are
+     * demanded, including dynamic ports.
+     */
+    public long getRangeDemand(int index) {
+        return rangeDemand[index];
+    }
+
+    /**
+     * Returns the explicitly requested unreserved range values, by resource name.
+     */
+    public Map<String, RangeSet> getStaticRanges() {
+        return staticRanges;
+    }
+
+    /**
+     * Returns the resource requirements of the tasks and of any executor which is to be launched.
+     */
+    public Collection<ResourceRequirement> getResourceRequirements() {
+        return resourceRequirements;
+    }
+
+    /**
+     * Returns a digest of everything which determines whether an Offer satisfies the requirement once its placement
+     * constraints are met: the resources and dynamic ports of the executor and of each task, in evaluation order, and
+     * any expected executor ID.  Requirements with equal fingerprints fit exactly the same Offers.
+     */
+    public ByteString getFingerprint() {
+        return fingerprint;
+    }
+
+    public boolean meetsPlacementConstraints(SlaveID agentId) {
+        if (avoidAgents.contains(agentId)) {
+            return false;
+        }
+
+        return colocateAgents.isEmpty() || colocateAgents.contains(agentId);
+    }
+
+    /**
+     * Returns whether the provided Offer may satisfy these needs, in a single pass over its resources.  Offers for
+     * which this returns {@code false} can not satisfy the requirement.
+     */
+    public boolean mayFit(Offer offer) {
+        if (!meetsPlacementConstraints(offer.getSlaveId())) {
+            return false;
+        }
+
+        if (expectedExecutorId != null && !offer.getExecutorIdsList().contains(expectedExecutorId)) {
+            return false;
+        }
+
+        if (expectedResourceIds.isEmpty() && scalarNames.length == 0 && rangeNames.length == 0) {
+            return true;
+        }
+
+        Set<String> offeredResourceIds = expectedResourceIds.isEmpty() ? null : new HashSet<>();
+        double[] offeredScalars = new double[scalarNames.length];
+        long[] offeredRanges = new long[rangeNames.length];
+
+        for (Resource resource : offer.getResourcesList()) {
+            String resourceId = ResourceUtils.getResourceId(resource);
+            if (resourceId != null) {
+                if (offeredResourceIds != null && expectedResourceIds.contains(resourceId)) {
+                    offeredResourceIds.add(resourceId);
+                }
+                continue;
+            }
+
+            if (isAtomic(resource)) {
+                continue;
+            }
+
+            int index;
+            switch (resource.getType()) {
+                case SCALAR:
+                    index = indexOf(scalarNames, resource.getName());
+                    if (index >= 0) {
+                        offeredScalars[index] += resource.getScalar().getValue();
+                    }
+                    break;
+                case RANGES:
+                    index = indexOf(rangeNames, resource.getName());
+                    if (index >= 0) {
+                        for (Value.Range range : resource.getRanges().getRangeList()) {
+                            offeredRanges[index] += range.getEnd() - range.getBegin() + 1;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        if (offeredResourceIds != null && offeredResourceIds.size() < expectedResourceIds.size()) {
+            return false;
+        }
+
+        for (int i = 0; i < scalarNames.length; i++) {
+            if (offeredScalars[i] < scalarDemand[i] - SCALAR_EPSILON) {
+                return false;
+            }
+        }
+
+        for (int i = 0; i < rangeNames.length; i++) {
+            if (offeredRanges[i] < rangeDemand[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isAtomic(Resource resource) {
+        return resource.hasDisk()
+                && resource.getDisk().hasSource()
+                && resource.getDisk().getSource().getType().equals(Source.Type.MOUNT);
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
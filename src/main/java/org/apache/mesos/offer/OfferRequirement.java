@@ -24,6 +24,7 @@ public class OfferRequirement {
     private Collection<SlaveID> colocateAgents;
     private Collection<TaskRequirement> taskRequirements;
     private ExecutorRequirement executorRequirement;
+    private volatile OfferNeeds needs;
 
     public OfferRequirement(
         Collection<TaskInfo> taskInfos,
@@ -74,6 +75,20 @@ public class OfferRequirement {
         return colocateAgents;
     }
 
+    /**
+     * Returns the compiled {@link OfferNeeds} of this requirement.  They are computed on first use and reused for
+     * every subsequent evaluation.
+     */
+    public OfferNeeds getNeeds() {
+        OfferNeeds compiledNeeds = needs;
+        if (compiledNeeds == null) {
+            // Compilation is idempotent, so a concurrent duplicate compilation is harmless.
+            compiledNeeds = OfferNeeds.compile(this);
+            needs = compiledNeeds;
+        }
+        return compiledNeeds;
+    }
+
     public Collection<String> getResourceIds() {
         Collection<String> resourceIds = new ArrayList<String>();
 
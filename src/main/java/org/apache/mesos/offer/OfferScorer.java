@@ -0,0 +1,18 @@
+package org.apache.mesos.offer;
+
+/**
+ * An OfferScorer ranks the Offers which are able to satisfy an {@link OfferRequirement}.  When an
+ * {@link OfferEvaluator} is configured with an OfferScorer, every candidate Offer is evaluated and the fit with the
+ * highest score is selected.  Fits with equal scores are resolved in favor of the earliest Offer.
+ */
+public interface OfferScorer {
+    /**
+     * Returns the score of placing the provided {@link OfferRequirement} on the Offer of the provided pool.  Higher
+     * scores are preferred.
+     *
+     * @param offerRequirement the requirement which was satisfied
+     * @param remainingPool the pool of the satisfying Offer, from which the requirement's resources have already been
+     *                      consumed
+     */
+    double score(OfferRequirement offerRequirement, MesosResourcePool remainingPool);
+}
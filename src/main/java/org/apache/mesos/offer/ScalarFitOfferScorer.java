@@ -0,0 +1,77 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.Protos.Value;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Base class for {@link OfferScorer}s which score an Offer by how much of each scalar resource demanded by the
+ * {@link OfferRequirement} would remain unreserved in the Offer after placement.  Amounts are normalized by the
+ * amount originally offered, so that resources measured in different units (eg cpus and MB of mem) are comparable.
+ */
+public abstract class ScalarFitOfferScorer implements OfferScorer {
+
+    @Override
+    public double score(OfferRequirement offerRequirement, MesosResourcePool remainingPool) {
+        Map<String, Double> offered = getOfferedScalars(remainingPool);
+
+        Map<String, Double> remainingFractions = new HashMap<>();
+        for (String name : getDemandedScalars(offerRequirement)) {
+            Double offeredAmount = offered.get(name);
+            if (offeredAmount == null || offeredAmount <= 0) {
+                continue;
+            }
+
+            double remainingAmount = remainingPool.getUnreservedScalar(name);
+            remainingFractions.put(name, Math.max(0, Math.min(1, remainingAmount / offeredAmount)));
+        }
+
+        return score(remainingFractions);
+    }
+
+    /**
+     * Returns the score of an Offer given, for each demanded scalar resource, the fraction (between 0 and 1) of the
+     * offered unreserved amount which would remain after placement.  Higher scores are preferred.
+     */
+    protected abstract double score(Map<String, Double> remainingFractions);
+
+    private static Set<String> getDemandedScalars(OfferRequirement offerRequirement) {
+        Set<String> names = new HashSet<>();
+        for (TaskRequirement taskRequirement : offerRequirement.getTaskRequirements()) {
+            addScalarNames(taskRequirement.getTaskInfo().getResourcesList(), names);
+        }
+
+        ExecutorRequirement executorRequirement = offerRequirement.getExecutorRequirement();
+        if (executorRequirement != null) {
+            addScalarNames(executorRequirement.getExecutorInfo().getResourcesList(), names);
+        }
+
+        return names;
+    }
+
+    private static void addScalarNames(Iterable<Resource> resources, Set<String> names) {
+        for (Resource resource : resources) {
+            if (resource.getType() == Value.Type.SCALAR) {
+                names.add(resource.getName());
+            }
+        }
+    }
+
+    private static Map<String, Double> getOfferedScalars(MesosResourcePool pool) {
+        Map<String, Double> offered = new HashMap<>();
+        for (Resource resource : pool.getOffer().getResourcesList()) {
+            MesosResource mesosResource = new MesosResource(resource);
+            if (resource.getType() == Value.Type.SCALAR
+                    && !mesosResource.isAtomic()
+                    && !mesosResource.hasResourceId()) {
+                offered.merge(resource.getName(), resource.getScalar().getValue(), Double::sum);
+            }
+        }
+
+        return offered;
+    }
+}
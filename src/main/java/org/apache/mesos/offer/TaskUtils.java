@@ -21,7 +21,7 @@ public class TaskUtils {
     private static final Logger LOGGER = LoggerFactory.getLogger(TaskUtils.class);
     private static final String TARGET_CONFIGURATION_KEY = "target_configuration";
     private static final String TASK_NAME_DELIM = "__";
-    private static final String COMMAND_DATA_PACKAGE_EXECUTOR = "command_data_package_executor";
+    public static final String COMMAND_DATA_PACKAGE_EXECUTOR = "command_data_package_executor";
 
     private TaskUtils() {
         // do not instantiate
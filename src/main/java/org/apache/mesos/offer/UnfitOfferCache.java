@@ -0,0 +1,123 @@
+package org.apache.mesos.offer;
+
+import com.google.protobuf.ByteString;
+import org.apache.mesos.Protos.ExecutorID;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.Protos.SlaveID;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The UnfitOfferCache remembers which agents' Offers could not satisfy a requirement, so that the same resources are
+ * not fully evaluated again on every offer cycle while a requirement is stalled, eg while waiting for a specific agent
+ * to return.
+ *
+ * Entries are keyed by the {@link OfferNeeds#getFingerprint()} of the requirement and the agent ID, and record the
+ * fingerprint of the resources which that agent offered.  A lookup only hits when the agent offers exactly the same
+ * resources again, while an entry whose resources changed is invalidated.  Entries for requirements which are no
+ * longer evaluated are evicted in least recently used order once the cache is full.  All methods are thread-safe.
+ */
+public class UnfitOfferCache {
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final Map<Key, ByteString> entries;
+
+    public UnfitOfferCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public UnfitOfferCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maxEntries);
+        }
+
+        this.entries = new LinkedHashMap<Key, ByteString>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, ByteString> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a digest of the resources and executors of the provided Offer, which unlike its ID is stable across
+     * offer cycles while the agent's resources are unchanged.
+     */
+    public static ByteString getFingerprint(Offer offer) {
+        FingerprintBuilder fingerprint = new FingerprintBuilder();
+        fingerprint.add(offer.getResourcesCount());
+        for (Resource resource : offer.getResourcesList()) {
+            fingerprint.add(resource);
+        }
+
+        fingerprint.add(offer.getExecutorIdsCount());
+        for (ExecutorID executorId : offer.getExecutorIdsList()) {
+            fingerprint.add(executorId);
+        }
+
+        return fingerprint.build();
+    }
+
+    /**
+     * Returns whether an Offer with the provided fingerprint from the provided agent is known not to satisfy the
+     * needs.  A recorded result for different resources from the same agent is invalidated.
+     */
+    public synchronized boolean isUnfit(OfferNeeds needs, SlaveID agentId, ByteString offerFingerprint) {
+        Key key = new Key(needs.getFingerprint(), agentId);
+        ByteString unfitFingerprint = entries.get(key);
+        if (unfitFingerprint == null) {
+            return false;
+        } else if (unfitFingerprint.equals(offerFingerprint)) {
+            return true;
+        }
+
+        entries.remove(key);
+        return false;
+    }
+
+    /**
+     * Records that an Offer with the provided fingerprint from the provided agent does not satisfy the needs.
+     */
+    public synchronized void putUnfit(OfferNeeds needs, SlaveID agentId, ByteString offerFingerprint) {
+        entries.put(new Key(needs.getFingerprint(), agentId), offerFingerprint);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static class Key {
+        private final ByteString needsFingerprint;
+        private final SlaveID agentId;
+
+        private Key(ByteString needsFingerprint, SlaveID agentId) {
+            this.needsFingerprint = needsFingerprint;
+            this.agentId = agentId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) o;
+            return needsFingerprint.equals(other.needsFingerprint) && agentId.equals(other.agentId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(needsFingerprint, agentId);
+        }
+    }
+}
@@ -2,12 +2,10 @@ package org.apache.mesos.offer;
 
 import org.apache.mesos.Protos.Resource;
 import org.apache.mesos.Protos.Value;
-import org.apache.mesos.Protos.Value.Range;
 import org.apache.mesos.Protos.Value.Type;
-import org.apache.mesos.util.Algorithms;
+import org.apache.mesos.util.RangeSet;
 
 import java.util.Collections;
-import java.util.List;
 
 /**
  * Utilities for manipulating Value protobufs.
@@ -56,10 +54,7 @@ public class ValueUtils {
   }
 
   private static Value.Ranges add(Value.Ranges ranges1, Value.Ranges ranges2) {
-    List<Range> list1 = ranges1.getRangeList();
-    List<Range> list2 = ranges2.getRangeList();
-    List<Range> list = Algorithms.mergeRanges(list1, list2);
-    return Value.Ranges.newBuilder().addAllRange(list).build();
+    return RangeSet.of(ranges1).union(RangeSet.of(ranges2)).toProto();
   }
 
   public static Value subtract(Value val1, Value val2) {
@@ -88,10 +83,7 @@ public class ValueUtils {
   }
 
   private static Value.Ranges subtract(Value.Ranges ranges1, Value.Ranges ranges2) {
-    List<Range> list1 = ranges1.getRangeList();
-    List<Range> list2 = ranges2.getRangeList();
-    List<Range> list = Algorithms.subtractRanges(list1, list2);
-    return Value.Ranges.newBuilder().addAllRange(list).build();
+    return RangeSet.of(ranges1).difference(RangeSet.of(ranges2)).toProto();
   }
 
   public static boolean equal(Value val1, Value val2) {
@@ -130,12 +122,12 @@ public class ValueUtils {
   }
 
   private static Integer compare(Value.Ranges ranges1, Value.Ranges ranges2) {
-    List<Range> list1 = ranges1.getRangeList();
-    List<Range> list2 = ranges2.getRangeList();
+    RangeSet set1 = RangeSet.of(ranges1);
+    RangeSet set2 = RangeSet.of(ranges2);
 
-    if (Algorithms.rangesEqual(list1, list2)) {
+    if (set1.equals(set2)) {
       return 0;
-    } else if (Algorithms.subtractRanges(list1, list2).size() == 0) {
+    } else if (set2.containsAll(set1)) {
       return -1;
     } else {
       return 1;
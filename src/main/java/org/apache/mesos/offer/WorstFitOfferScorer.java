@@ -0,0 +1,20 @@
+package org.apache.mesos.offer;
+
+import java.util.Map;
+
+/**
+ * Spreading {@link OfferScorer} which prefers the Offer left with the most unreserved resources after placement.
+ * This distributes Tasks across agents, reducing contention between them.
+ */
+public class WorstFitOfferScorer extends ScalarFitOfferScorer {
+
+    @Override
+    protected double score(Map<String, Double> remainingFractions) {
+        double remaining = 0;
+        for (double fraction : remainingFractions.values()) {
+            remaining += fraction;
+        }
+
+        return remaining;
+    }
+}
@@ -4,7 +4,12 @@ import com.google.protobuf.TextFormat;
 import org.apache.mesos.Protos;
 import org.apache.mesos.Scheduler;
 import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.config.ConfigStore;
+import org.apache.mesos.config.ConfigStoreException;
+import org.apache.mesos.curator.CachedCuratorStateStore;
+import org.apache.mesos.curator.CuratorLeaderElection;
 import org.apache.mesos.curator.CuratorStateStore;
+import org.apache.mesos.curator.LeadershipListener;
 import org.apache.mesos.dcos.DcosConstants;
 import org.apache.mesos.offer.*;
 import org.apache.mesos.reconciliation.DefaultReconciler;
@@ -17,15 +22,21 @@ import org.apache.mesos.scheduler.recovery.constrain.LaunchConstrainer;
 import org.apache.mesos.scheduler.recovery.constrain.TimedLaunchConstrainer;
 import org.apache.mesos.scheduler.recovery.monitor.TimedFailureMonitor;
 import org.apache.mesos.specification.ServiceSpecification;
+import org.apache.mesos.state.AsyncStateStore;
 import org.apache.mesos.state.PersistentOperationRecorder;
-import org.apache.mesos.state.StateStore;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StateStoreListener;
+import org.apache.mesos.state.api.SnapshotResource;
 import org.apache.mesos.state.api.StateResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -37,31 +48,129 @@ public class DefaultScheduler implements Scheduler {
     private static final Integer DELAY_BETWEEN_DESTRUCTIVE_RECOVERIES_SEC = 10 * 60;
     private static final Integer PERMANENT_FAILURE_DELAY_SEC = 20 * 60;
     private static final Integer AWAIT_TERMINATION_TIMEOUT_MS = 10000;
+    private static final Integer OFFER_EXPIRY_INTERVAL_MS = 1000;
+
+    /**
+     * Status updates which may have made work eligible are coalesced into at most one offer cycle per this interval,
+     * so that a burst of updates doesn't run a full cycle, with its reads of the state store, for every update.
+     */
+    private static final Integer STATUS_OFFER_CYCLE_DELAY_MS = 500;
+
+    /**
+     * Changes observed by a hot standby are coalesced into at most one rebuild of its plan per this interval.
+     */
+    private static final Integer STANDBY_PLAN_REBUILD_DELAY_MS = 500;
+
+    /**
+     * The default time for which unused Offers are held for reuse before they are declined.
+     */
+    public static final Duration DEFAULT_OFFER_TTL = Duration.ofSeconds(5);
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
     private final ServiceSpecification serviceSpecification;
     private final String zkConnectionString;
-    private final ExecutorService executor = Executors.newFixedThreadPool(1);
+    private final OfferScorer offerScorer;
+    private final OfferBuffer offerBuffer;
+    private final ConfigStore<?> configStore;
+    private final OfferDemandTracker demandTracker = new OfferDemandTracker();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
     private final AtomicReference<RecoveryStatus> recoveryStatusRef;
+    private final AtomicBoolean statusOfferCycleScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean standbyPlanRebuildScheduled = new AtomicBoolean(false);
+    private final Object pauseLock = new Object();
     private final BlockingQueue<Collection<Object>> resourcesQueue;
 
     private Reconciler reconciler;
-    private StateStore stateStore;
+    private CuratorStateStore stateStore;
+    private AsyncStateStore asyncStateStore;
     private TaskFailureListener taskFailureListener;
     private TaskKiller taskKiller;
     private OfferAccepter offerAccepter;
+    private OfferEvaluator offerEvaluator;
     private Plan plan;
     private PlanManager planManager;
     private DefaultPlanScheduler planScheduler;
     private DefaultRecoveryScheduler recoveryScheduler;
     private Collection<Object> resources;
+    private CuratorLeaderElection leaderElection;
+    private StandbyListener standbyListener;
+    private boolean paused = false;
+
+    /**
+     * Builds {@link DefaultScheduler}s with optional collaborators.  Those which aren't set keep the defaults of
+     * {@link DefaultScheduler#DefaultScheduler(ServiceSpecification)}.
+     */
+    public static final class Builder {
+
+        private final ServiceSpecification serviceSpecification;
+        private String zkConnectionString = DcosConstants.MESOS_MASTER_ZK_CONNECTION_STRING;
+        private OfferScorer offerScorer;
+        private Duration offerTtl = DEFAULT_OFFER_TTL;
+        private ConfigStore<?> configStore;
+
+        private Builder(ServiceSpecification serviceSpecification) {
+            this.serviceSpecification = serviceSpecification;
+        }
+
+        public Builder setZkConnectionString(String zkConnectionString) {
+            this.zkConnectionString = zkConnectionString;
+            return this;
+        }
+
+        /**
+         * Places deployed Tasks using the provided {@link OfferScorer}, eg a {@link BestFitOfferScorer} to reduce
+         * fragmentation.  By default the first Offer which fits is used.
+         */
+        public Builder setOfferScorer(OfferScorer offerScorer) {
+            this.offerScorer = offerScorer;
+            return this;
+        }
+
+        /**
+         * Holds unused Offers for up to {@code offerTtl} so that they may be used by work which becomes eligible
+         * before they expire.  A zero {@code offerTtl} declines unused Offers at the end of every offer cycle.  By
+         * default {@link DefaultScheduler#DEFAULT_OFFER_TTL} is used.
+         */
+        public Builder setOfferTtl(Duration offerTtl) {
+            this.offerTtl = offerTtl;
+            return this;
+        }
+
+        /**
+         * Deletes the framework's unreferenced configurations from the provided {@link ConfigStore} once the scheduler
+         * is registered.  The target configuration must be set before the scheduler is registered, as it is retained
+         * along with the target configurations of all stored Tasks.  By default no configurations are deleted.
+         *
+         * @see ConfigStore#clearUnreferenced(Collection)
+         */
+        public Builder setConfigStore(ConfigStore<?> configStore) {
+            this.configStore = configStore;
+            return this;
+        }
+
+        public DefaultScheduler build() {
+            return new DefaultScheduler(this);
+        }
+    }
+
+    public static Builder builder(ServiceSpecification serviceSpecification) {
+        return new Builder(serviceSpecification);
+    }
 
     public DefaultScheduler(ServiceSpecification serviceSpecification) {
-        this(serviceSpecification, DcosConstants.MESOS_MASTER_ZK_CONNECTION_STRING);
+        this(builder(serviceSpecification));
     }
 
     public DefaultScheduler(ServiceSpecification serviceSpecification, String zkConnectionString) {
-        this.serviceSpecification = serviceSpecification;
-        this.zkConnectionString = zkConnectionString;
+        this(builder(serviceSpecification).setZkConnectionString(zkConnectionString));
+    }
+
+    private DefaultScheduler(Builder builder) {
+        this.serviceSpecification = builder.serviceSpecification;
+        this.zkConnectionString = builder.zkConnectionString;
+        this.offerScorer = builder.offerScorer;
+        this.offerBuffer = new OfferBuffer(builder.offerTtl);
+        this.configStore = builder.configStore;
         this.recoveryStatusRef =
                 new AtomicReference<>(new RecoveryStatus(Collections.emptyList(), Collections.emptyList()));
         this.resourcesQueue = new ArrayBlockingQueue<>(1);
@@ -84,21 +193,128 @@ public class DefaultScheduler implements Scheduler {
         return plan;
     }
 
-    private void initialize(SchedulerDriver driver) throws InterruptedException {
+    CuratorLeaderElection getLeaderElection() {
+        return leaderElection;
+    }
+
+    /**
+     * Returns the store of the framework's state, once it was opened by {@link #joinLeaderElection()} or
+     * {@link #awaitLeadership()}.
+     */
+    public CuratorStateStore getStateStore() {
+        return stateStore;
+    }
+
+    /**
+     * Joins the election among the schedulers of this framework, and blocks until this scheduler is elected as the
+     * leader, after which it should be registered with Mesos.  The framework's state is only opened once leadership is
+     * held, as opening it may migrate the framework's storage layout, which must not happen while another scheduler is
+     * running.  Every scheduler of a framework takes part in the election, whether or not it is run as a hot standby,
+     * so that a scheduler which is restarted while another one is still running waits for it to exit.
+     *
+     * Offers and status updates are not processed while the connection to Zookeeper is suspended, and the scheduler
+     * exits only if its session is lost or another scheduler was elected in the meantime.
+     *
+     * @throws IOException if joining the election fails
+     * @throws InterruptedException if interrupted while waiting for leadership
+     * @see CuratorLeaderElection
+     */
+    public void joinLeaderElection() throws IOException, InterruptedException {
+        elect();
+        initializeState(new CuratorStateStore(serviceSpecification.getName(), zkConnectionString));
+    }
+
+    /**
+     * Runs this scheduler as a hot standby until it is elected as the leader, as {@link #joinLeaderElection()} does.
+     *
+     * While in standby the framework's state is loaded into a read-only {@link CachedCuratorStateStore}, which neither
+     * migrates nor writes it, and which is kept current with the leader's changes.  The plan is built from it up-front
+     * and rebuilt as the leader's changes are observed.  On takeover the store is opened for writes, and only those
+     * Tasks whose status changed since the last change observed in standby are explicitly reconciled on registration,
+     * as the previous leader may have failed before the standby observed them.  All other Tasks are covered by implicit
+     * reconciliation.
+     *
+     * @throws IOException if joining the election or taking over fails
+     * @throws InterruptedException if interrupted while waiting for leadership
+     */
+    public void awaitLeadership() throws IOException, InterruptedException {
+        logger.info("Loading state as a hot standby.");
+        CachedCuratorStateStore replica =
+                CachedCuratorStateStore.createReadOnly(serviceSpecification.getName(), zkConnectionString);
+        initializeState(replica);
+        standbyListener = new StandbyListener();
+        replica.subscribe(standbyListener);
+        standbyListener.addObservedStatuses(replica.fetchStatuses());
+        // Changes stored between the initial build of the plan and the subscription were not observed.
+        scheduleStandbyPlanRebuild();
+
+        logger.info("Waiting for leadership as a hot standby.");
+        elect();
+
+        logger.info("Taking over as leader.");
+        try {
+            // Run on the executor, so that no rebuild of the plan is in progress.
+            executor.submit(() -> takeOver(replica)).get();
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to take over as leader", e.getCause());
+        }
+    }
+
+    private void elect() throws IOException, InterruptedException {
+        leaderElection = new CuratorLeaderElection(
+                serviceSpecification.getName(),
+                zkConnectionString,
+                ManagementFactory.getRuntimeMXBean().getName());
+        leaderElection.awaitLeadership(new LeadershipHandler());
+    }
+
+    private void takeOver(CachedCuratorStateStore replica) {
+        replica.unsubscribe(standbyListener);
+        replica.openForWrites();
+
+        Set<Protos.TaskStatus> changedStatuses = standbyListener.getChangedStatuses(replica.fetchStatuses());
+        if (!changedStatuses.isEmpty() || standbyListener.isPlanStale()) {
+            rebuildPlan();
+        }
+        standbyListener = null;
+
+        logger.info("Reconciling {} Tasks whose status changed after they were last observed in standby.",
+                changedStatuses.size());
+        reconciler = new DefaultReconciler(() -> changedStatuses);
+        reconciler.start();
+    }
+
+    private void initialize(SchedulerDriver driver) throws IOException, InterruptedException {
         logger.info("Initializing.");
-        initializeGlobals(driver);
+        if (leaderElection == null) {
+            logger.warn("Registered without joining the leader election first, joining it now.");
+            joinLeaderElection();
+        }
+        asyncStateStore = stateStore.getAsyncStateStore();
+        collectGarbage();
+        initializeDriverGlobals(driver);
+    }
+
+    private void initializeState(CuratorStateStore curatorStateStore) throws InterruptedException {
+        initializeGlobals(curatorStateStore);
         initializeRecoveryScheduler();
         initializeDeploymentPlan();
-        initializeResources();
+        initializeResources(curatorStateStore);
     }
 
-    private void initializeGlobals(SchedulerDriver driver) {
+    private void initializeGlobals(CuratorStateStore curatorStateStore) {
         logger.info("Initializing globals");
-        stateStore = new CuratorStateStore(serviceSpecification.getName(), zkConnectionString);
+        stateStore = curatorStateStore;
         taskFailureListener = new DefaultTaskFailureListener(stateStore);
-        taskKiller = new DefaultTaskKiller(stateStore, taskFailureListener, driver);
         reconciler = new DefaultReconciler(stateStore);
         offerAccepter = new OfferAccepter(Arrays.asList(new PersistentOperationRecorder(stateStore)));
+        // Offers are evaluated independently, so large batches (eg after a master failover) are spread across cores.
+        offerEvaluator = new OfferEvaluator(ForkJoinPool.commonPool(), offerScorer);
+    }
+
+    private void initializeDriverGlobals(SchedulerDriver driver) {
+        taskKiller = new DefaultTaskKiller(stateStore, taskFailureListener, driver);
+        planScheduler = new DefaultPlanScheduler(offerAccepter, offerEvaluator, taskKiller);
     }
 
     private void initializeRecoveryScheduler() {
@@ -119,25 +335,58 @@ public class DefaultScheduler implements Scheduler {
 
     private void initializeDeploymentPlan() {
         logger.info("Initializing deployment plan");
-        planScheduler = new DefaultPlanScheduler(offerAccepter, taskKiller);
+        plan = buildPlan();
+        planManager = new DefaultPlanManager(plan, new DefaultStrategyFactory());
+    }
+
+    /**
+     * Replaces the plan of a hot standby with one built from the current state, as the leader progresses through it.
+     */
+    private void rebuildPlan() {
+        plan = buildPlan();
+        planManager.setPlan(plan);
+    }
+
+    /**
+     * Schedules a rebuild of the plan of a hot standby, unless one is already scheduled.
+     */
+    private void scheduleStandbyPlanRebuild() {
+        if (!standbyPlanRebuildScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                standbyPlanRebuildScheduled.set(false);
+                // Not rebuilt after taking over, when the plan is updated by this scheduler.
+                if (standbyListener != null) {
+                    standbyListener.planRebuilt();
+                    rebuildPlan();
+                }
+            }
+        }, STANDBY_PLAN_REBUILD_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
 
+    private Plan buildPlan() {
         try {
-            plan = new DefaultPlanFactory(stateStore).getPlan(serviceSpecification);
-            logger.info("Generated plan: " + plan);
-            planManager = new DefaultPlanManager(plan, new DefaultStrategyFactory());
+            Plan generatedPlan = new DefaultPlanFactory(stateStore).getPlan(serviceSpecification);
+            logger.info("Generated plan: " + generatedPlan);
+            return generatedPlan;
         } catch (InvalidRequirementException e) {
             logger.error("Failed to generate plan with exception: ", e);
             hardExit(SchedulerErrorCode.PLAN_CREATE_FAILURE);
+            return null;
         }
-
     }
 
-    private void initializeResources() throws InterruptedException {
+    private void initializeResources(CuratorStateStore curatorStateStore) throws InterruptedException {
         logger.info("Initializing resources");
         Collection<Object> resources = new ArrayList<>();
         resources.add(new PlanResource(planManager));
         resources.add(new RecoveryResource(recoveryStatusRef));
         resources.add(new StateResource(stateStore));
+        resources.add(new SnapshotResource(curatorStateStore.getSnapshotter(), serviceSpecification.getName()));
         resourcesQueue.put(resources);
     }
 
@@ -153,14 +402,116 @@ public class DefaultScheduler implements Scheduler {
         }
     }
 
-    private void declineOffers(SchedulerDriver driver, List<Protos.OfferID> acceptedOffers, List<Protos.Offer> offers) {
-        for (Protos.Offer offer : offers) {
-            Protos.OfferID offerId = offer.getId();
-            if (!acceptedOffers.contains(offerId)) {
-                logger.info("Declining offer: " + offerId.getValue());
-                driver.declineOffer(offerId);
+    private void initializeOfferExpiry(SchedulerDriver driver) {
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (isPaused()) {
+                    return;
+                }
+                // Work may also become pending outside of offer cycles and status updates, eg when a Block is
+                // restarted through the plan API, so demand is re-evaluated here as well.
+                if (reconciler.isReconciled()) {
+                    updateDemand(driver);
+                }
+                offerBuffer.declineExpired(driver, demandTracker.getDeclineFilters());
+            }
+        }, OFFER_EXPIRY_INTERVAL_MS, OFFER_EXPIRY_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs an offer cycle against all Offers currently held in the {@link OfferBuffer}.  Accepted Offers are removed
+     * from the buffer, while unused Offers are held until they expire.
+     */
+    private void processOffers(SchedulerDriver driver) {
+        if (isPaused()) {
+            logger.info("Accepting no offers: connection to Zookeeper is suspended");
+            return;
+        }
+        List<Protos.Offer> offers = offerBuffer.getOffers();
+
+        // Task Reconciliation:
+        // Task Reconciliation must complete before any Tasks may be launched.  It ensures that a Scheduler and
+        // Mesos have agreed upon the state of all Tasks of interest to the scheduler.
+        // http://mesos.apache.org/documentation/latest/reconciliation/
+        reconciler.reconcile(driver);
+        List<Protos.OfferID> acceptedOffers = new ArrayList<>();
+        if (!reconciler.isReconciled()) {
+            logger.info("Accepting no offers: Reconciler is still in progress");
+            offerBuffer.declineExpired(driver);
+            return;
+        }
+
+        // Deployment:
+        // The PlanManager provides blocks of work usually representing a Task to a PlanScheduler to be
+        // evaluated against the Offer stream.  The PlanScheduler launches Tasks and reserves Resources and
+        // Creates volumes where appropriate.  It's work is complete once all Tasks have been deployed to the
+        // current target configuration.
+        // All blocks which the current phase allows to execute are placed against the offers in one pass.
+        List<Block> blocks = planManager.getCurrentBlocks();
+        if (!blocks.isEmpty()) {
+            acceptedOffers = planScheduler.resourceOffersForBlocks(driver, offers, blocks);
+            logger.info(String.format("Accepted %d of %d offers: %s",
+                    acceptedOffers.size(), offers.size(), acceptedOffers));
+        }
+        List<Protos.Offer> unacceptedOffers = filterAcceptedOffers(offers, acceptedOffers);
+
+        // Recovery:
+        // Post deployment it is the role of a RecoveryScheduler to monitor service state for failed task and
+        // restart them appropriately.  It restarts tasks destructively or not depending upon the configuration
+        // of the TaskFailureMonitor.
+        try {
+            acceptedOffers.addAll(recoveryScheduler.resourceOffers(driver, unacceptedOffers, blocks));
+        } catch (Exception e) {
+            logger.error("Error recovering blocks: " + blocks + " Reason: " + e);
+        }
+
+        // Resource Cleaning:
+        // A ResourceCleaner ensures that reserved Resources are not leaked.  It is possible that an Agent may
+        // become inoperable for long enough that Tasks resident there were relocated.  However, this Agent may
+        // return at a later point and begin offering reserved Resources again.  To ensure that these unexpected
+        // reserved Resources are returned to the Mesos Cluster, the Resource Cleaner performs all necessary
+        // UNRESERVE and DESTROY (in the case of persistent volumes) Operations.
+        ResourceCleanerScheduler cleanerScheduler = getCleanerScheduler();
+        if (cleanerScheduler != null) {
+            unacceptedOffers = filterAcceptedOffers(unacceptedOffers, acceptedOffers);
+            acceptedOffers.addAll(getCleanerScheduler().resourceOffers(driver, unacceptedOffers));
+        }
+
+        offerBuffer.remove(acceptedOffers);
+        if (!acceptedOffers.isEmpty()) {
+            demandTracker.offersUsed();
+        }
+        updateDemand(driver);
+        offerBuffer.declineExpired(driver, demandTracker.getDeclineFilters());
+    }
+
+    /**
+     * Suppresses Offers when neither the plan nor recovery has pending work, and revives them when new work appears.
+     * Held Offers are declined as soon as there is no work left for them.  While suppressed, Offers are still revived
+     * periodically, so that the {@link ResourceCleaner} sees any leaked reservations of returning agents.
+     */
+    private void updateDemand(SchedulerDriver driver) {
+        demandTracker.updateDemand(driver, getDemand(planManager.getCurrentBlocks()));
+        if (demandTracker.getDemand() == 0 && !offerBuffer.isEmpty()) {
+            offerBuffer.declineAll(driver, demandTracker.getDeclineFilters());
+        }
+    }
+
+    /**
+     * Returns the amount of pending work which needs Offers: the pending Blocks which the current phase allows to
+     * execute, plus the Tasks awaiting recovery as of the last recovery pass.
+     */
+    private int getDemand(List<Block> blocks) {
+        int demand = 0;
+        for (Block block : blocks) {
+            if (block.isPending()) {
+                demand++;
             }
         }
+
+        RecoveryStatus recoveryStatus = recoveryStatusRef.get();
+        return demand + recoveryStatus.getStopped().size() + recoveryStatus.getFailed().size();
     }
 
     private ResourceCleanerScheduler getCleanerScheduler() {
@@ -194,6 +545,69 @@ public class DefaultScheduler implements Scheduler {
         return false;
     }
 
+    /**
+     * Deletes the Task blobs left behind by earlier updates.  This is only done while holding leadership, as blobs are
+     * written ahead of the records referencing them, and another scheduler could otherwise delete a blob which the
+     * leader is about to reference.  Failing to do so only leaves the blobs in place until the next registration.
+     */
+    private void collectGarbage() {
+        try {
+            stateStore.collectGarbage();
+        } catch (StateStoreException e) {
+            logger.error("Failed to delete unreferenced Task blobs", e);
+        }
+    }
+
+    /**
+     * Deletes the configurations left behind by earlier configuration updates.  Failing to do so only leaves them in
+     * place until the next registration.
+     */
+    private void clearUnreferencedConfigs() {
+        try {
+            Collection<UUID> clearedIds = configStore.clearUnreferenced(stateStore.fetchTasks());
+            logger.info("Cleared unreferenced configurations: {}", clearedIds);
+        } catch (ConfigStoreException | StateStoreException e) {
+            logger.error("Failed to clear unreferenced configurations", e);
+        }
+    }
+
+    /**
+     * Pauses the processing of Offers and status updates, as another scheduler may be elected while the connection to
+     * Zookeeper is suspended.
+     */
+    private void pause() {
+        synchronized (pauseLock) {
+            logger.warn("Pausing: connection to Zookeeper is suspended.");
+            paused = true;
+        }
+    }
+
+    private void resume() {
+        synchronized (pauseLock) {
+            logger.info("Resuming: connection to Zookeeper is restored.");
+            paused = false;
+            pauseLock.notifyAll();
+        }
+    }
+
+    private boolean isPaused() {
+        synchronized (pauseLock) {
+            return paused;
+        }
+    }
+
+    /**
+     * Blocks while paused.  Status updates are acknowledged once they have been handled, so they are redelivered by
+     * Mesos to whichever scheduler is leading once the pause ends, rather than being lost.
+     */
+    private void awaitResumed() throws InterruptedException {
+        synchronized (pauseLock) {
+            while (paused) {
+                pauseLock.wait();
+            }
+        }
+    }
+
     @SuppressWarnings({"DM_EXIT"})
     private void hardExit(SchedulerErrorCode errorCode) {
         System.exit(errorCode.ordinal());
@@ -204,7 +618,7 @@ public class DefaultScheduler implements Scheduler {
         logger.info("Registered framework with frameworkId: " + frameworkId.getValue());
         try {
             initialize(driver);
-        } catch (InterruptedException e) {
+        } catch (IOException | InterruptedException e) {
             logger.error("Initialization failed with exception: ", e);
             hardExit(SchedulerErrorCode.INITIALIZATION_FAILURE);
         }
@@ -218,6 +632,10 @@ public class DefaultScheduler implements Scheduler {
         }
 
         reconciler.reconcile(driver);
+        initializeOfferExpiry(driver);
+        if (configStore != null) {
+            executor.execute(this::clearUnreferencedConfigs);
+        }
     }
 
     @Override
@@ -232,85 +650,86 @@ public class DefaultScheduler implements Scheduler {
             @Override
             public void run() {
                 logOffers(offers);
-
-                // Task Reconciliation:
-                // Task Reconciliation must complete before any Tasks may be launched.  It ensures that a Scheduler and
-                // Mesos have agreed upon the state of all Tasks of interest to the scheduler.
-                // http://mesos.apache.org/documentation/latest/reconciliation/
-                reconciler.reconcile(driver);
-                List<Protos.OfferID> acceptedOffers = new ArrayList<>();
-                if (!reconciler.isReconciled()) {
-                    logger.info("Accepting no offers: Reconciler is still in progress");
-                    return;
-                }
-
-                // Deployment:
-                // The PlanManager provides blocks of work usually representing a Task to a PlanScheduler to be
-                // evaluated against the Offer stream.  The PlanScheduler launches Tasks and reserves Resources and
-                // Creates volumes where appropriate.  It's work is complete once all Tasks have been deployed to the
-                // current target configuration.
-                Optional<Block> block = planManager.getCurrentBlock();
-                if (block.isPresent()) {
-                    acceptedOffers = planScheduler.resourceOffers(driver, offers, block.get());
-                    logger.info(String.format("Accepted %d of %d offers: %s",
-                            acceptedOffers.size(), offers.size(), acceptedOffers));
-                }
-                List<Protos.Offer> unacceptedOffers = filterAcceptedOffers(offers, acceptedOffers);
-
-                // Recovery:
-                // Post deployment it is the role of a RecoveryScheduler to monitor service state for failed task and
-                // restart them appropriately.  It restarts tasks destructively or not depending upon the configuration
-                // of the TaskFailureMonitor.
-                try {
-                    acceptedOffers.addAll(recoveryScheduler.resourceOffers(driver, unacceptedOffers, block));
-                } catch (Exception e) {
-                    logger.error("Error recovering block: " + block + " Reason: " + e);
-                }
-
-                // Resource Cleaning:
-                // A ResourceCleaner ensures that reserved Resources are not leaked.  It is possible that an Agent may
-                // become inoperable for long enough that Tasks resident there were relocated.  However, this Agent may
-                // return at a later point and begin offering reserved Resources again.  To ensure that these unexpected
-                // reserved Resources are returned to the Mesos Cluster, the Resource Cleaner performs all necessary
-                // UNRESERVE and DESTROY (in the case of persistent volumes) Operations.
-                ResourceCleanerScheduler cleanerScheduler = getCleanerScheduler();
-                if (cleanerScheduler != null) {
-                    unacceptedOffers = filterAcceptedOffers(unacceptedOffers, acceptedOffers);
-                    acceptedOffers.addAll(getCleanerScheduler().resourceOffers(driver, unacceptedOffers));
-                }
-
-                declineOffers(driver, acceptedOffers, offers);
+                offerBuffer.add(offers);
+                processOffers(driver);
             }
         });
     }
 
     @Override
     public void offerRescinded(SchedulerDriver driver, Protos.OfferID offerId) {
-        logger.error("Rescinding offers is not supported.");
-        hardExit(SchedulerErrorCode.OFFER_RESCINDED);
+        offerBuffer.rescind(offerId);
     }
 
     @Override
     public void statusUpdate(SchedulerDriver driver, Protos.TaskStatus status) {
-        executor.execute(new Runnable() {
-            @Override
-            public void run() {
-                logger.info(String.format(
-                        "Received status update for taskId=%s state=%s message='%s'",
-                        status.getTaskId().getValue(),
-                        status.getState().toString(),
-                        status.getMessage()));
+        logger.info(String.format(
+                "Received status update for taskId=%s state=%s message='%s'",
+                status.getTaskId().getValue(),
+                status.getState().toString(),
+                status.getMessage()));
+
+        try {
+            awaitResumed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while paused, dropping status update: " + status, e);
+            return;
+        }
 
-                // Store status, then pass status to PlanManager => Plan => Blocks
+        // Completes the explicit reconciliation of the Task, if any is in progress.
+        reconciler.update(status);
+
+        // Store status, then pass status to PlanManager => Plan => Blocks
+        // The status is stored without occupying the executor, so that a burst of updates is written to Zookeeper
+        // concurrently rather than one round trip at a time.  Updates are still passed to the PlanManager one at a
+        // time, as each is handed to the executor once it has been stored, and those of a Task in the order they were
+        // received.
+        asyncStateStore.storeStatus(status).whenCompleteAsync((ignored, storeException) -> {
+            Throwable failure = storeException;
+            if (failure == null) {
                 try {
-                    stateStore.storeStatus(status);
                     planManager.update(status);
                 } catch (Exception e) {
-                    logger.warn("Failed to update TaskStatus received from Mesos. "
-                            + "This may be expected if Mesos sent stale status information: " + status, e);
+                    failure = e;
                 }
             }
-        });
+            if (failure != null) {
+                logger.warn("Failed to update TaskStatus received from Mesos. "
+                        + "This may be expected if Mesos sent stale status information: " + status, failure);
+                return;
+            }
+
+            scheduleStatusOfferCycle(driver);
+        }, executor);
+    }
+
+    /**
+     * Schedules an offer cycle for work which a status update may have made eligible, eg a failed Block returning to
+     * pending, unless one is already scheduled.  Held Offers are used for it rather than waiting for the next
+     * allocation.
+     */
+    private void scheduleStatusOfferCycle(SchedulerDriver driver) {
+        if (!statusOfferCycleScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                statusOfferCycleScheduled.set(false);
+                if (isPaused()) {
+                    return;
+                } else if (!offerBuffer.isEmpty()) {
+                    processOffers(driver);
+                } else if (reconciler.isReconciled()) {
+                    // Offers may be suppressed, so refresh the recovery status and revive them if the updates
+                    // produced new work.
+                    recoveryScheduler.hasOperations(planManager.getCurrentBlocks());
+                    updateDemand(driver);
+                }
+            }
+        }, STATUS_OFFER_CYCLE_DELAY_MS, TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -345,4 +764,85 @@ public class DefaultScheduler implements Scheduler {
         logger.error("SchedulerDriver failed with message: " + message);
         hardExit(SchedulerErrorCode.ERROR);
     }
+
+    /**
+     * Pauses this scheduler while its connection to Zookeeper is suspended, and exits once leadership is lost.
+     */
+    private class LeadershipHandler implements LeadershipListener {
+        @Override
+        public void onSuspended() {
+            pause();
+        }
+
+        @Override
+        public void onResumed() {
+            resume();
+        }
+
+        @Override
+        public void onLost() {
+            hardExit(SchedulerErrorCode.LEADERSHIP_LOST);
+        }
+    }
+
+    /**
+     * Follows the leader's changes to the framework's state while this scheduler is a hot standby.  Each change
+     * schedules a rebuild of the plan, and the last status observed for each Task is retained, so that only the Tasks
+     * whose status changed since are reconciled on takeover.
+     */
+    private class StandbyListener implements StateStoreListener {
+        private final Map<String, Protos.TaskStatus> observedStatuses = new ConcurrentHashMap<>();
+        private final AtomicBoolean planStale = new AtomicBoolean(false);
+
+        @Override
+        public void onTaskStored(Protos.TaskInfo taskInfo) {
+            onChanged();
+        }
+
+        @Override
+        public void onStatusStored(Protos.TaskStatus status) {
+            observedStatuses.put(status.getTaskId().getValue(), status);
+            onChanged();
+        }
+
+        @Override
+        public void onTaskCleared(String taskName) {
+            onChanged();
+        }
+
+        /**
+         * Adds the statuses which were stored before the subscription, unless a later status was already observed.
+         */
+        private void addObservedStatuses(Collection<Protos.TaskStatus> statuses) {
+            for (Protos.TaskStatus status : statuses) {
+                observedStatuses.putIfAbsent(status.getTaskId().getValue(), status);
+            }
+        }
+
+        /**
+         * Returns the provided statuses which differ from the last status observed for their Task.
+         */
+        private Set<Protos.TaskStatus> getChangedStatuses(Collection<Protos.TaskStatus> statuses) {
+            Set<Protos.TaskStatus> changedStatuses = new HashSet<>();
+            for (Protos.TaskStatus status : statuses) {
+                if (!status.equals(observedStatuses.get(status.getTaskId().getValue()))) {
+                    changedStatuses.add(status);
+                }
+            }
+            return changedStatuses;
+        }
+
+        private boolean isPlanStale() {
+            return planStale.get();
+        }
+
+        private void planRebuilt() {
+            planStale.set(false);
+        }
+
+        private void onChanged() {
+            planStale.set(true);
+            scheduleStandbyPlanRebuild();
+        }
+    }
 }
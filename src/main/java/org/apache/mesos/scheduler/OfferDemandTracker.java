@@ -0,0 +1,135 @@
+package org.apache.mesos.scheduler;
+
+import org.apache.mesos.Protos.Filters;
+import org.apache.mesos.SchedulerDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+
+/**
+ * The OfferDemandTracker adapts how many Offers a scheduler receives to how much work it has pending.  When there is
+ * no pending work Offers are suppressed, and when new work appears they are revived.  While work is pending, the
+ * filter applied to declined Offers grows with the time for which no Offer has been used, so that Offers which keep
+ * failing to fit are not immediately re-offered to the scheduler.
+ *
+ * Pending work is expressed as a demand count, eg the number of pending Blocks plus the number of Tasks awaiting
+ * recovery.  Any increase in demand revives Offers, which also clears all previously applied decline filters.
+ *
+ * Reserved resources which were leaked, eg on an agent which returns after its Tasks were relocated, only become known
+ * when they are offered.  So while there is no demand, Offers are still revived once per cleanup interval, and are
+ * suppressed again once the maximum decline filter has passed, so that such resources are offered to be cleaned up.
+ */
+public class OfferDemandTracker {
+    private static final Logger logger = LoggerFactory.getLogger(OfferDemandTracker.class);
+
+    public static final Duration DEFAULT_MIN_REFUSE = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_MAX_REFUSE = Duration.ofSeconds(60);
+    public static final Duration DEFAULT_CLEANUP_INTERVAL = Duration.ofMinutes(10);
+
+    private final long minRefuseMs;
+    private final long maxRefuseMs;
+    private final long cleanupIntervalMs;
+
+    private Boolean suppressed = null;
+    private int demand = 0;
+    private long lastPlacementMs;
+    private long lastSuppressedChangeMs;
+
+    public OfferDemandTracker() {
+        this(DEFAULT_MIN_REFUSE, DEFAULT_MAX_REFUSE);
+    }
+
+    /**
+     * Creates a tracker whose decline filters range from {@code minRefuse}, right after an Offer was used or demand
+     * increased, to {@code maxRefuse}.
+     */
+    public OfferDemandTracker(Duration minRefuse, Duration maxRefuse) {
+        this(minRefuse, maxRefuse, DEFAULT_CLEANUP_INTERVAL);
+    }
+
+    /**
+     * Creates a tracker whose decline filters range from {@code minRefuse} to {@code maxRefuse}, and which revives
+     * suppressed Offers every {@code cleanupInterval} while there is no demand.
+     */
+    public OfferDemandTracker(Duration minRefuse, Duration maxRefuse, Duration cleanupInterval) {
+        if (minRefuse.isNegative() || maxRefuse.compareTo(minRefuse) < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid refuse durations: min='%s' max='%s'", minRefuse, maxRefuse));
+        }
+        if (cleanupInterval.compareTo(maxRefuse) <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Cleanup interval '%s' must exceed max refuse duration '%s'", cleanupInterval, maxRefuse));
+        }
+        this.minRefuseMs = minRefuse.toMillis();
+        this.maxRefuseMs = maxRefuse.toMillis();
+        this.cleanupIntervalMs = cleanupInterval.toMillis();
+        this.lastPlacementMs = getCurrentTimeMs();
+        this.lastSuppressedChangeMs = lastPlacementMs;
+    }
+
+    /**
+     * Updates the current demand, suppressing Offers when it drops to zero and reviving them when it increases.  The
+     * first update always either suppresses or revives, as the state left by a previous scheduler instance is unknown.
+     * Without demand, Offers are also revived for cleanup once per cleanup interval, see {@link OfferDemandTracker}.
+     */
+    public synchronized void updateDemand(SchedulerDriver driver, int currentDemand) {
+        long nowMs = getCurrentTimeMs();
+        if (currentDemand <= 0) {
+            if (Boolean.TRUE.equals(suppressed)) {
+                if (nowMs - lastSuppressedChangeMs >= cleanupIntervalMs) {
+                    logger.info("No pending work, reviving offers to clean up leaked resources");
+                    driver.reviveOffers();
+                    suppressed = false;
+                    lastSuppressedChangeMs = nowMs;
+                }
+            } else if (suppressed == null || demand > 0 || nowMs - lastSuppressedChangeMs >= maxRefuseMs) {
+                // After a cleanup revive, Offers stay revived until every agent has had a chance to offer.
+                logger.info("No pending work, suppressing offers");
+                driver.suppressOffers();
+                suppressed = true;
+                lastSuppressedChangeMs = nowMs;
+            }
+        } else if (!Boolean.FALSE.equals(suppressed) || currentDemand > demand) {
+            logger.info("Demand increased from {} to {}, reviving offers", demand, currentDemand);
+            driver.reviveOffers();
+            suppressed = false;
+            lastPlacementMs = nowMs;
+            lastSuppressedChangeMs = nowMs;
+        }
+
+        demand = Math.max(currentDemand, 0);
+    }
+
+    /**
+     * Records that an offer cycle used at least one Offer, which resets the decline filter to its minimum.
+     */
+    public synchronized void offersUsed() {
+        lastPlacementMs = getCurrentTimeMs();
+    }
+
+    public synchronized boolean isSuppressed() {
+        return Boolean.TRUE.equals(suppressed);
+    }
+
+    public synchronized int getDemand() {
+        return demand;
+    }
+
+    /**
+     * Returns the filter to apply to declined Offers.  With no demand the maximum is used.  Otherwise it is the time
+     * since an Offer was last used or demand last increased, bounded by the minimum and maximum.
+     */
+    public synchronized Filters getDeclineFilters() {
+        long refuseMs = maxRefuseMs;
+        if (demand > 0) {
+            refuseMs = Math.min(maxRefuseMs, Math.max(minRefuseMs, getCurrentTimeMs() - lastPlacementMs));
+        }
+
+        return Filters.newBuilder().setRefuseSeconds(refuseMs / 1000.0).build();
+    }
+
+    protected long getCurrentTimeMs() {
+        return System.currentTimeMillis();
+    }
+}
@@ -83,6 +83,15 @@ public interface Block extends Completable {
      */
     void update(Protos.TaskStatus status);
 
+    /**
+     * Returns whether starting the Block replaces Tasks which were previously launched, eg to
+     * update their configuration. Such Blocks kill their running Tasks, so they are not started
+     * alongside other Blocks of their {@link Phase}.
+     */
+    default boolean replacesTasks() {
+        return false;
+    }
+
     /**
      * Returns the unique identifier of the block.
      */
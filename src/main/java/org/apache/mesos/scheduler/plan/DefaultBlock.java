@@ -17,17 +17,27 @@ public class DefaultBlock extends DefaultObservable implements Block {
     private final String name;
     private final Optional<OfferRequirement> offerRequirementOptional;
     private final UUID id = UUID.randomUUID();
+    private final boolean replacesTasks;
     private Status status;
     private Map<Protos.TaskID, Status> tasks = new HashMap<>();
 
     public DefaultBlock(String name, OfferRequirement offerRequirement, Status status) {
-        this(name, Optional.of(offerRequirement), status);
+        this(name, offerRequirement, status, false);
     }
 
-    private DefaultBlock(String name, Optional<OfferRequirement> offerRequirementOptional, Status status) {
+    public DefaultBlock(String name, OfferRequirement offerRequirement, Status status, boolean replacesTasks) {
+        this(name, Optional.of(offerRequirement), status, replacesTasks);
+    }
+
+    private DefaultBlock(
+            String name,
+            Optional<OfferRequirement> offerRequirementOptional,
+            Status status,
+            boolean replacesTasks) {
         this.name = name;
         this.offerRequirementOptional = offerRequirementOptional;
         this.status = status;
+        this.replacesTasks = replacesTasks;
     }
 
     private boolean isStatus(Status status) {
@@ -140,6 +150,11 @@ public class DefaultBlock extends DefaultObservable implements Block {
         setStatus(Status.COMPLETE);
     }
 
+    @Override
+    public boolean replacesTasks() {
+        return replacesTasks;
+    }
+
     @Override
     public UUID getId() {
         return id;
@@ -46,7 +46,8 @@ public class DefaultBlockFactory implements BlockFactory {
                 return new DefaultBlock(
                         taskSpecification.getName(),
                         offerRequirementProvider.getExistingOfferRequirement(taskInfoOptional.get(), taskSpecification),
-                        status);
+                        status,
+                        true);
             } catch (InvalidTaskSpecificationException e) {
                 logger.error("Failed to generate TaskSpecification for existing Task with exception: ", e);
                 throw new InvalidRequirementException(e);
@@ -1,5 +1,8 @@
 package org.apache.mesos.scheduler.plan;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -31,6 +34,33 @@ public class DefaultInstallStrategy implements PhaseStrategy {
         }
     }
 
+    /**
+     * Installation has no decision points, so every incomplete Block which launches new Tasks may
+     * execute together. Blocks which replace running Tasks are rolled one at a time instead, so
+     * that only one of the Phase's Tasks is unavailable during an update.
+     */
+    @Override
+    public List<Block> getCurrentBlocks() {
+        if (interrupted.get()) {
+            return Collections.emptyList();
+        }
+
+        List<Block> blocks = new ArrayList<>();
+        for (Block block : phase.getBlocks()) {
+            if (block.isComplete()) {
+                continue;
+            }
+            if (block.replacesTasks()) {
+                if (blocks.isEmpty()) {
+                    blocks.add(block);
+                }
+                break;
+            }
+            blocks.add(block);
+        }
+        return blocks;
+    }
+
     @Override
     public void proceed() {
         interrupted.set(false);
@@ -67,6 +67,13 @@ public class DefaultPlanManager implements PlanManager {
                 currPhaseOptional.get().getCurrentBlock() : Optional.empty();
     }
 
+    @Override
+    public List<Block> getCurrentBlocks() {
+        Optional<PhaseStrategy> currPhaseOptional = getCurrentPhaseStrategy();
+        return currPhaseOptional.isPresent() ?
+                currPhaseOptional.get().getCurrentBlocks() : Collections.emptyList();
+    }
+
     @Override
     public boolean isComplete() {
         return plan.isComplete();
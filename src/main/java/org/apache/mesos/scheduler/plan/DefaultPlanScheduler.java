@@ -90,6 +90,80 @@ public class DefaultPlanScheduler implements PlanScheduler {
         return acceptedOffers;
     }
 
+    @Override
+    public List<Protos.OfferID> resourceOffersForBlocks(
+            SchedulerDriver driver, List<Protos.Offer> offers, List<Block> blocks) {
+        List<Protos.OfferID> acceptedOffers = new ArrayList<>();
+
+        if (driver == null || offers == null || blocks == null) {
+            logger.error("Unexpected null argument encountered: driver='{}' offers='{}' blocks='{}'",
+                    driver, offers, blocks);
+            return acceptedOffers;
+        }
+
+        // Every block is evaluated against the same index, and against the pools remaining after the blocks before it
+        // were placed.
+        OfferIndex offerIndex = new OfferIndex(offers);
+        Map<Protos.OfferID, MesosResourcePool> pools = new HashMap<>();
+        Map<Block, List<OfferRecommendation>> recommendationsByBlock = new LinkedHashMap<>();
+        Map<Protos.OfferID, List<OfferRecommendation>> recommendationsByOffer = new LinkedHashMap<>();
+
+        for (Block block : blocks) {
+            if (block == null || !block.isPending()) {
+                continue;
+            }
+
+            logger.info("Processing resource offers for block: {}", block.getName());
+            Optional<OfferRequirement> offerRequirementOptional = block.start();
+            if (!offerRequirementOptional.isPresent()) {
+                logger.info("No OfferRequirement for block: {}", block.getName());
+                block.updateOfferStatus(Collections.emptyList());
+                continue;
+            }
+
+            OfferRequirement offerRequirement = offerRequirementOptional.get();
+            killTasks(offerRequirement);
+
+            List<OfferRecommendation> recommendations = offerEvaluator.evaluate(offerRequirement, offerIndex, pools);
+            if (recommendations.isEmpty()) {
+                logger.warn(
+                        "Unable to find any offers which fulfill requirement provided by block {}: {}",
+                        block.getName(), offerRequirement);
+                block.updateOfferStatus(Collections.emptyList());
+                continue;
+            }
+
+            recommendationsByBlock.put(block, recommendations);
+            for (OfferRecommendation recommendation : recommendations) {
+                Protos.OfferID offerId = recommendation.getOffer().getId();
+                List<OfferRecommendation> offerRecommendations = recommendationsByOffer.get(offerId);
+                if (offerRecommendations == null) {
+                    offerRecommendations = new ArrayList<>();
+                    recommendationsByOffer.put(offerId, offerRecommendations);
+                }
+                offerRecommendations.add(recommendation);
+            }
+        }
+
+        for (List<OfferRecommendation> offerRecommendations : recommendationsByOffer.values()) {
+            acceptedOffers.addAll(offerAccepter.accept(driver, offerRecommendations));
+        }
+        logger.info("Placed {} of {} blocks on {} offers",
+                recommendationsByBlock.size(), blocks.size(), acceptedOffers.size());
+
+        // Notify blocks of offer outcome.  A block's recommendations are always made against a single Offer.
+        for (Map.Entry<Block, List<OfferRecommendation>> entry : recommendationsByBlock.entrySet()) {
+            List<OfferRecommendation> recommendations = entry.getValue();
+            if (acceptedOffers.contains(recommendations.get(0).getOffer().getId())) {
+                entry.getKey().updateOfferStatus(getOperations(recommendations));
+            } else {
+                entry.getKey().updateOfferStatus(Collections.emptyList());
+            }
+        }
+
+        return acceptedOffers;
+    }
+
     private void killTasks(OfferRequirement offerRequirement) {
         for (TaskRequirement taskRequirement : offerRequirement.getTaskRequirements()) {
             String taskName = taskRequirement.getTaskInfo().getName();
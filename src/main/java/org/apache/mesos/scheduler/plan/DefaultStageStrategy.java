@@ -1,5 +1,6 @@
 package org.apache.mesos.scheduler.plan;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -79,6 +80,33 @@ public class DefaultStageStrategy implements PhaseStrategy {
     }
   }
 
+  /**
+   * Returns the incomplete Blocks from the current position up to, but excluding, the next decision point.
+   * Blocks which replace running Tasks are rolled one at a time, so that a staged update never restarts
+   * more than one of the Phase's Tasks in an offer cycle.
+   */
+  @Override
+  public List<Block> getCurrentBlocks() {
+    synchronized (this) {
+      advancePosition();
+      List<Block> blocks = new ArrayList<>();
+      for (int i = currPos; i < shouldStart.length && shouldStart[i]; i++) {
+        Block block = phase.getBlocks().get(i);
+        if (block.isComplete()) {
+          continue;
+        }
+        if (block.replacesTasks()) {
+          if (blocks.isEmpty()) {
+            blocks.add(block);
+          }
+          break;
+        }
+        blocks.add(block);
+      }
+      return blocks;
+    }
+  }
+
   @Override
   public void proceed() {
     synchronized (this) {
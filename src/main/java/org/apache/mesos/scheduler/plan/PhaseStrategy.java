@@ -1,5 +1,7 @@
 package org.apache.mesos.scheduler.plan;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -14,6 +16,16 @@ public interface PhaseStrategy {
      */
     Optional<Block> getCurrentBlock();
 
+    /**
+     * @return All Blocks which the strategy currently allows to execute, in order.  These may be placed
+     * together in a single offer cycle.  If non-empty, the first element is the current Block.  By default
+     * only the current Block is returned.
+     */
+    default List<Block> getCurrentBlocks() {
+        Optional<Block> block = getCurrentBlock();
+        return block.isPresent() ? Collections.singletonList(block.get()) : Collections.emptyList();
+    }
+
     /**
      * If the current Plan is interrupted at this Phase. This phase should
      * now proceed with execution.
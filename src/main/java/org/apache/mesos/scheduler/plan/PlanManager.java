@@ -2,6 +2,7 @@ package org.apache.mesos.scheduler.plan;
 
 import org.apache.mesos.Protos;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Observer;
 import java.util.Optional;
@@ -20,6 +21,15 @@ public interface PlanManager extends Observer {
 
     Optional<Block> getCurrentBlock();
 
+    /**
+     * Returns all Blocks which may be placed together in the current offer cycle.  By default only
+     * the current Block is returned.
+     */
+    default List<Block> getCurrentBlocks() {
+        Optional<Block> block = getCurrentBlock();
+        return block.isPresent() ? Collections.singletonList(block.get()) : Collections.emptyList();
+    }
+
     boolean isComplete();
 
     void proceed();
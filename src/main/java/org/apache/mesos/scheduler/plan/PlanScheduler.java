@@ -20,4 +20,19 @@ public interface PlanScheduler {
    */
   List<Protos.OfferID> resourceOffers(
       SchedulerDriver driver, List<Protos.Offer> offers, Block block);
+
+  /**
+   * Processes the provided {@code offers} using the provided {@code driver} against all of the
+   * provided {@code blocks} in a single pass.  Blocks are placed in order, and resources consumed
+   * by earlier blocks are not available to later blocks.  Each Offer which is used by any block is
+   * accepted exactly once, with the operations of all blocks placed on it.  By default only the
+   * first of the {@code blocks} is processed, via {@link #resourceOffers}.
+   *
+   * @return a list of zero or more of the provided offers which were accepted to fulfill offer
+   *         requirements returned by the blocks
+   */
+  default List<Protos.OfferID> resourceOffersForBlocks(
+      SchedulerDriver driver, List<Protos.Offer> offers, List<Block> blocks) {
+    return resourceOffers(driver, offers, blocks == null || blocks.isEmpty() ? null : blocks.get(0));
+  }
 }
@@ -3,6 +3,8 @@ package org.apache.mesos.scheduler.plan;
 import org.apache.commons.lang3.builder.EqualsBuilder;
 import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
@@ -28,6 +30,11 @@ public class ReconciliationStrategy implements PhaseStrategy {
         return Optional.of(phase.getBlock(0));
     }
 
+    @Override
+    public List<Block> getCurrentBlocks() {
+        return Arrays.asList(phase.getBlock(0));
+    }
+
     @Override
     public void proceed() {
         // no-op: interrupting reconciliation not supported
@@ -58,7 +58,17 @@ public class DefaultRecoveryScheduler {
      * @return true if this scheduler has operations to perform.
      */
     public boolean hasOperations(Optional<Block> block) {
-        updateRecoveryStatus(getTerminatedTasks(block));
+        return hasOperations(toList(block));
+    }
+
+    /**
+     * True if this scheduler has operations to perform.
+     *
+     * @param blocks blocks whose tasks to exclude from consideration, possibly empty.
+     * @return true if this scheduler has operations to perform.
+     */
+    public boolean hasOperations(List<Block> blocks) {
+        updateRecoveryStatus(getTerminatedTasks(blocks));
 
         return recoveryStatusRef.get().getStopped().size() > 0 ||
                 recoveryStatusRef.get().getFailed().size() > 0;
@@ -80,8 +90,23 @@ public class DefaultRecoveryScheduler {
      */
     public synchronized List<OfferID> resourceOffers(SchedulerDriver driver, List<Offer> offers, Optional<Block> block)
             throws Exception {
+        return resourceOffers(driver, offers, toList(block));
+    }
+
+    /**
+     * Runs the recovery logic while excluding the tasks of all of the provided {@code blocks}, which are being
+     * processed by another scheduler.
+     *
+     * @param driver The current SchedulerDriver
+     * @param offers A list of offers to use to launch tasks
+     * @param blocks The blocks currently being deployed, possibly empty
+     * @return IDs of accepted offers
+     * @throws Exception
+     */
+    public synchronized List<OfferID> resourceOffers(SchedulerDriver driver, List<Offer> offers, List<Block> blocks)
+            throws Exception {
         List<OfferID> acceptedOffers = new ArrayList<>();
-        updateRecoveryStatus(getTerminatedTasks(block));
+        updateRecoveryStatus(getTerminatedTasks(blocks));
 
         List<TaskInfo> stopped = recoveryStatusRef.get().getStopped();
         List<TaskInfo> failed = recoveryStatusRef.get().getFailed();
@@ -115,28 +140,31 @@ public class DefaultRecoveryScheduler {
             }
         }
 
-        updateRecoveryStatus(getTerminatedTasks(block));
+        updateRecoveryStatus(getTerminatedTasks(blocks));
         return acceptedOffers;
     }
 
     /**
-     * Returns all terminated tasks, excluding those corresponding to {@code block}.  This allows for mutual exclusion
+     * Returns all terminated tasks, excluding those corresponding to {@code blocks}.  This allows for mutual exclusion
      * with another scheduler.
      *
-     * @param block Block with tasks to exclude, empty if no tasks should be excluded
-     * @return Terminated tasks, excluding those corresponding to {@code block}
+     * @param blocks Blocks with tasks to exclude, empty if no tasks should be excluded
+     * @return Terminated tasks, excluding those corresponding to {@code blocks}
      */
-    private Collection<TaskInfo> getTerminatedTasks(Optional<Block> block) {
+    private Collection<TaskInfo> getTerminatedTasks(List<Block> blocks) {
         List<TaskInfo> filteredTerminatedTasks = new ArrayList<TaskInfo>();
 
         try {
-            if (!block.isPresent()) {
+            if (blocks.isEmpty()) {
                 return stateStore.fetchTasksNeedingRecovery();
             }
 
-            String blockName = block.get().getName();
+            Set<String> blockNames = new HashSet<>();
+            for (Block block : blocks) {
+                blockNames.add(block.getName());
+            }
             for (TaskInfo taskInfo : stateStore.fetchTasksNeedingRecovery()) {
-                if (!taskInfo.getName().equals(blockName)) {
+                if (!blockNames.contains(taskInfo.getName())) {
                     filteredTerminatedTasks.add(taskInfo);
                 }
             }
@@ -147,6 +175,10 @@ public class DefaultRecoveryScheduler {
         return filteredTerminatedTasks;
     }
 
+    private static List<Block> toList(Optional<Block> block) {
+        return block.isPresent() ? Arrays.asList(block.get()) : Collections.emptyList();
+    }
+
     private void updateRecoveryStatus(Collection<TaskInfo> terminatedTasks) {
         List<TaskInfo> failed = new ArrayList<>();
         List<TaskInfo> stopped = new ArrayList<>();
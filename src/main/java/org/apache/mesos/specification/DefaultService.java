@@ -4,7 +4,6 @@ import org.apache.mesos.Protos;
 import org.apache.mesos.Scheduler;
 import org.apache.mesos.SchedulerDriver;
 import org.apache.mesos.api.JettyApiServer;
-import org.apache.mesos.curator.CuratorStateStore;
 import org.apache.mesos.scheduler.DefaultScheduler;
 import org.apache.mesos.scheduler.SchedulerDriverFactory;
 import org.apache.mesos.scheduler.SchedulerUtils;
@@ -12,6 +11,7 @@ import org.apache.mesos.state.StateStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.Optional;
 
 /**
@@ -28,6 +28,7 @@ public class DefaultService implements Service {
     private static final String USER = "root";
     private static final Logger LOGGER = LoggerFactory.getLogger(DefaultService.class);
     private final int apiPort;
+    private final boolean hotStandby;
     private StateStore stateStore;
     private ServiceSpecification serviceSpecification;
 
@@ -38,7 +39,23 @@ public class DefaultService implements Service {
      * @param apiPort the port to run the HTTP API service against, typically the 'PORT0' envvar
      */
     public DefaultService(int apiPort)  {
+        this(apiPort, false);
+    }
+
+    /**
+     * Creates a new instance which when registered will start a Jetty HTTP API service on the
+     * provided port.  Every instance of the service is elected as the leader before it registers
+     * with Mesos.  When {@code hotStandby} is true, instances which aren't elected keep a replica
+     * of the framework's state to take over quickly when the leader fails, see
+     * {@link DefaultScheduler#awaitLeadership()}.  Otherwise they only open it once elected, see
+     * {@link DefaultScheduler#joinLeaderElection()}.
+     *
+     * @param apiPort the port to run the HTTP API service against, typically the 'PORT0' envvar
+     * @param hotStandby whether to wait for leadership among instances before registering
+     */
+    public DefaultService(int apiPort, boolean hotStandby)  {
         this.apiPort = apiPort;
+        this.hotStandby = hotStandby;
     }
 
     /**
@@ -48,9 +65,11 @@ public class DefaultService implements Service {
     @Override
     public void register(ServiceSpecification serviceSpecification) {
         this.serviceSpecification = serviceSpecification;
-        this.stateStore = new CuratorStateStore(serviceSpecification.getName());
         DefaultScheduler defaultScheduler = new DefaultScheduler(serviceSpecification);
         startApiServer(defaultScheduler, apiPort);
+        awaitLeadership(defaultScheduler, hotStandby);
+        // Read once leadership is held, as a previous leader may have stored the framework ID.
+        this.stateStore = defaultScheduler.getStateStore();
         registerFramework(defaultScheduler, getFrameworkInfo(), MASTER_URI);
     }
 
@@ -79,6 +98,21 @@ public class DefaultService implements Service {
         }).start();
     }
 
+    private static void awaitLeadership(DefaultScheduler defaultScheduler, boolean hotStandby) {
+        try {
+            if (hotStandby) {
+                defaultScheduler.awaitLeadership();
+            } else {
+                defaultScheduler.joinLeaderElection();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for leadership", e);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to wait for leadership", e);
+        }
+    }
+
     private static void registerFramework(Scheduler sched, Protos.FrameworkInfo frameworkInfo, String masterUri) {
         LOGGER.info("Registering framework: %s", frameworkInfo);
         SchedulerDriver driver = new SchedulerDriverFactory().create(sched, frameworkInfo, masterUri);
@@ -0,0 +1,132 @@
+package org.apache.mesos.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.Protos.TaskStatus;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface is the non-blocking counterpart of {@link StateStore}.  Each method has the same semantics as the
+ * {@link StateStore} method of the same name, except that it returns immediately with a {@link CompletableFuture}.
+ * Where the {@link StateStore} method would throw a {@link StateStoreException}, the future instead completes
+ * exceptionally with it, which dependent stages observe wrapped in a
+ * {@link java.util.concurrent.CompletionException}.
+ * <p>
+ * Requests may be issued without waiting for earlier ones to complete.  Implementations apply writes to the same Task,
+ * Property or FrameworkID in the order in which they were issued from a given thread.
+ *
+ * @see BlockingStateStore
+ */
+public interface AsyncStateStore {
+
+
+    // Write Framework ID
+
+
+    /**
+     * @see StateStore#storeFrameworkId(Protos.FrameworkID)
+     */
+    CompletableFuture<Void> storeFrameworkId(Protos.FrameworkID fwkId);
+
+
+    /**
+     * @see StateStore#clearFrameworkId()
+     */
+    CompletableFuture<Void> clearFrameworkId();
+
+
+    // Read Framework ID
+
+
+    /**
+     * @see StateStore#fetchFrameworkId()
+     */
+    CompletableFuture<Optional<Protos.FrameworkID>> fetchFrameworkId();
+
+
+    // Write Tasks
+
+
+    /**
+     * Stores TaskInfo objects.  Unlike {@link StateStore#storeTasks(Collection)}, all of the Tasks are written
+     * concurrently, so a failure to store one of them does not prevent the others from being stored.
+     *
+     * @see StateStore#storeTasks(Collection)
+     */
+    CompletableFuture<Void> storeTasks(Collection<TaskInfo> tasks);
+
+
+    /**
+     * @see StateStore#storeStatus(TaskStatus)
+     */
+    CompletableFuture<Void> storeStatus(TaskStatus status);
+
+
+    /**
+     * @see StateStore#clearTask(String)
+     */
+    CompletableFuture<Void> clearTask(String taskName);
+
+
+    // Read Tasks
+
+
+    /**
+     * @see StateStore#fetchTaskNames()
+     */
+    CompletableFuture<Collection<String>> fetchTaskNames();
+
+
+    /**
+     * @see StateStore#fetchTasks()
+     */
+    CompletableFuture<Collection<TaskInfo>> fetchTasks();
+
+
+    /**
+     * @see StateStore#fetchTask(String)
+     */
+    CompletableFuture<Optional<TaskInfo>> fetchTask(String taskName);
+
+
+    /**
+     * @see StateStore#fetchStatuses()
+     */
+    CompletableFuture<Collection<TaskStatus>> fetchStatuses();
+
+
+    /**
+     * @see StateStore#fetchStatus(String)
+     */
+    CompletableFuture<Optional<TaskStatus>> fetchStatus(String taskName);
+
+
+    // Read/Write Properties
+
+
+    /**
+     * @see StateStore#storeProperty(String, byte[])
+     */
+    CompletableFuture<Void> storeProperty(String key, byte[] value);
+
+
+    /**
+     * @see StateStore#fetchProperty(String)
+     */
+    CompletableFuture<byte[]> fetchProperty(String key);
+
+
+    /**
+     * @see StateStore#fetchPropertyKeys()
+     */
+    CompletableFuture<Collection<String>> fetchPropertyKeys();
+
+
+    /**
+     * @see StateStore#clearProperty(String)
+     */
+    CompletableFuture<Void> clearProperty(String key);
+}
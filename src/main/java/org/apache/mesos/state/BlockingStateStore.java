@@ -0,0 +1,118 @@
+package org.apache.mesos.state;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.Protos.TaskStatus;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * BlockingStateStore is an implementation of {@link StateStore} which waits for the completion of each operation of an
+ * underlying {@link AsyncStateStore}.  It allows code written against {@link StateStore} to share a store with code
+ * which pipelines its requests.
+ */
+public class BlockingStateStore implements StateStore {
+
+    private final AsyncStateStore asyncStateStore;
+
+    public BlockingStateStore(AsyncStateStore asyncStateStore) {
+        this.asyncStateStore = asyncStateStore;
+    }
+
+    @Override
+    public void storeFrameworkId(Protos.FrameworkID fwkId) throws StateStoreException {
+        await(asyncStateStore.storeFrameworkId(fwkId));
+    }
+
+    @Override
+    public void clearFrameworkId() throws StateStoreException {
+        await(asyncStateStore.clearFrameworkId());
+    }
+
+    @Override
+    public Optional<Protos.FrameworkID> fetchFrameworkId() throws StateStoreException {
+        return await(asyncStateStore.fetchFrameworkId());
+    }
+
+    @Override
+    public void storeTasks(Collection<TaskInfo> tasks) throws StateStoreException {
+        await(asyncStateStore.storeTasks(tasks));
+    }
+
+    @Override
+    public void storeStatus(TaskStatus status) throws StateStoreException {
+        await(asyncStateStore.storeStatus(status));
+    }
+
+    @Override
+    public void clearTask(String taskName) throws StateStoreException {
+        await(asyncStateStore.clearTask(taskName));
+    }
+
+    @Override
+    public Collection<String> fetchTaskNames() throws StateStoreException {
+        return await(asyncStateStore.fetchTaskNames());
+    }
+
+    @Override
+    public Collection<TaskInfo> fetchTasks() throws StateStoreException {
+        return await(asyncStateStore.fetchTasks());
+    }
+
+    @Override
+    public Optional<TaskInfo> fetchTask(String taskName) throws StateStoreException {
+        return await(asyncStateStore.fetchTask(taskName));
+    }
+
+    @Override
+    public Collection<TaskStatus> fetchStatuses() throws StateStoreException {
+        return await(asyncStateStore.fetchStatuses());
+    }
+
+    @Override
+    public Optional<TaskStatus> fetchStatus(String taskName) throws StateStoreException {
+        return await(asyncStateStore.fetchStatus(taskName));
+    }
+
+    @Override
+    public Set<TaskStatus> getTaskStatuses() throws StateStoreException {
+        return new HashSet<>(fetchStatuses());
+    }
+
+    @Override
+    public void storeProperty(String key, byte[] value) throws StateStoreException {
+        await(asyncStateStore.storeProperty(key, value));
+    }
+
+    @Override
+    public byte[] fetchProperty(String key) throws StateStoreException {
+        return await(asyncStateStore.fetchProperty(key));
+    }
+
+    @Override
+    public Collection<String> fetchPropertyKeys() throws StateStoreException {
+        return await(asyncStateStore.fetchPropertyKeys());
+    }
+
+    @Override
+    public void clearProperty(String key) throws StateStoreException {
+        await(asyncStateStore.clearProperty(key));
+    }
+
+    /**
+     * Waits for the future to complete, rethrowing any failure as the {@link StateStoreException} which the
+     * corresponding {@link StateStore} method would have thrown.
+     */
+    private static <T> T await(CompletableFuture<T> future) throws StateStoreException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof StateStoreException) {
+                throw (StateStoreException) e.getCause();
+            }
+            throw new StateStoreException(e.getCause());
+        }
+    }
+}
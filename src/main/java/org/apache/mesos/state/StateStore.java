@@ -3,9 +3,11 @@ package org.apache.mesos.state;
 import org.apache.mesos.Protos;
 import org.apache.mesos.Protos.TaskInfo;
 import org.apache.mesos.Protos.TaskStatus;
+import org.apache.mesos.offer.TaskException;
 import org.apache.mesos.offer.TaskUtils;
 import org.apache.mesos.reconciliation.TaskStatusProvider;
 
+import java.io.*;
 import java.util.*;
 
 /**
@@ -78,6 +80,27 @@ public interface StateStore extends TaskStatusProvider {
     void storeStatus(TaskStatus status) throws StateStoreException;
 
 
+    /**
+     * Stores TaskInfo objects along with TaskStatuses for them, as a single atomic operation where the underlying
+     * storage supports it. Each TaskStatus must match the exact TaskId of a TaskInfo in {@code tasks}, or of a
+     * TaskInfo which was stored beforehand, as with {@link #storeStatus(TaskStatus)}.
+     *
+     * The default implementation stores the tasks and then each status individually, and so is not atomic.
+     *
+     * @param tasks Tasks to be stored, as with {@link #storeTasks(Collection)}
+     * @param statuses The statuses to be stored, which meet the above requirements
+     * @throws StateStoreException if storing fails, in which case atomic implementations have stored nothing, or if a
+     *                             TaskId is malformed or doesn't match its TaskInfo
+     */
+    default void storeTasksAndStatuses(Collection<TaskInfo> tasks, Collection<TaskStatus> statuses)
+            throws StateStoreException {
+        storeTasks(tasks);
+        for (TaskStatus status : statuses) {
+            storeStatus(status);
+        }
+    }
+
+
     /**
      * Removes all data associated with a particular Task including any stored TaskInfo and/or TaskStatus.
      *
@@ -116,21 +139,111 @@ public interface StateStore extends TaskStatusProvider {
      * @throws StateStoreException
      */
     default Collection<TaskInfo> fetchTasksNeedingRecovery() throws StateStoreException {
-        Collection<TaskInfo> allInfos = fetchTasks();
-        Collection<TaskStatus> allStatuses = fetchStatuses();
-        Map<Protos.TaskID, TaskStatus> statusMap = new HashMap<>();
-        for (TaskStatus status : allStatuses) {
-            statusMap.put(status.getTaskId(), status);
+        List<TaskInfo> results = new ArrayList<>();
+        for (StoredTask storedTask : fetchStoredTasks()) {
+            Optional<TaskStatus> status = storedTask.getCurrentStatus();
+            if (status.isPresent() && TaskUtils.needsRecovery(status.get())) {
+                results.add(storedTask.getInfo());
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * Fetches and returns all {@link TaskInfo}s from underlying storage that were placed on the provided agent, eg to
+     * find the Tasks affected by the loss of the agent.
+     *
+     * The default implementation reads every stored Task.  Implementations may instead maintain indexes, so that this
+     * and the following lookups take time proportional to the number of matching Tasks.
+     *
+     * @throws StateStoreException if fetching the data fails
+     */
+    default Collection<TaskInfo> fetchTasksOnAgent(Protos.SlaveID agentId) throws StateStoreException {
+        List<TaskInfo> results = new ArrayList<>();
+        for (StoredTask storedTask : fetchStoredTasks()) {
+            if (storedTask.getInfo().getSlaveId().getValue().equals(agentId.getValue())) {
+                results.add(storedTask.getInfo());
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * Fetches and returns all Tasks from underlying storage whose current TaskStatus has the provided state, see
+     * {@link StoredTask#getCurrentStatus()}.
+     *
+     * @throws StateStoreException if fetching the data fails
+     */
+    default Collection<StoredTask> fetchTasksInState(Protos.TaskState state) throws StateStoreException {
+        List<StoredTask> results = new ArrayList<>();
+        for (StoredTask storedTask : fetchStoredTasks()) {
+            Optional<TaskStatus> status = storedTask.getCurrentStatus();
+            if (status.isPresent() && status.get().getState() == state) {
+                results.add(storedTask);
+            }
+        }
+        return results;
+    }
+
+
+    /**
+     * Fetches and returns all {@link TaskInfo}s from underlying storage whose target configuration is the provided
+     * configuration, see {@link TaskUtils#getTargetConfiguration(TaskInfo)}.
+     *
+     * @throws StateStoreException if fetching the data fails
+     */
+    default Collection<TaskInfo> fetchTasksWithTargetConfiguration(UUID targetConfigId) throws StateStoreException {
+        List<TaskInfo> results = new ArrayList<>();
+        for (TaskInfo taskInfo : fetchTasks()) {
+            if (Optional.of(targetConfigId).equals(StateStoreUtils.getTargetConfiguration(taskInfo))) {
+                results.add(taskInfo);
+            }
         }
+        return results;
+    }
+
+
+    /**
+     * Fetches and returns all {@link TaskInfo}s from underlying storage whose target configuration is not the provided
+     * configuration, including those which have no target configuration, eg to find the Tasks which a configuration
+     * rollout must still update.
+     *
+     * @throws StateStoreException if fetching the data fails
+     */
+    default Collection<TaskInfo> fetchTasksNotOnTargetConfiguration(UUID targetConfigId) throws StateStoreException {
         List<TaskInfo> results = new ArrayList<>();
-        for (TaskInfo info : allInfos) {
-            if (!statusMap.containsKey(info.getTaskId())) {
-                continue;
+        for (TaskInfo taskInfo : fetchTasks()) {
+            if (!Optional.of(targetConfigId).equals(StateStoreUtils.getTargetConfiguration(taskInfo))) {
+                results.add(taskInfo);
             }
-            if (TaskUtils.needsRecovery(statusMap.get(info.getTaskId()))) {
-                results.add(info);
+        }
+        return results;
+    }
+
+
+    /**
+     * Fetches all {@link TaskInfo}s along with the {@link TaskStatus} stored for each of them, if any, as a single
+     * view.  This should be preferred over joining the results of {@link #fetchTasks()} and {@link #fetchStatuses()},
+     * which implementations may serve with a single pass over the underlying storage.
+     *
+     * @return Every stored Task, or an empty list if none are found
+     * @throws StateStoreException if fetching the data fails, or if a Task lacks a TaskInfo
+     */
+    default Collection<StoredTask> fetchStoredTasks() throws StateStoreException {
+        Map<String, TaskStatus> statusMap = new HashMap<>();
+        for (TaskStatus status : fetchStatuses()) {
+            try {
+                statusMap.put(TaskUtils.toTaskName(status.getTaskId()), status);
+            } catch (TaskException e) {
+                throw new StateStoreException(e);
             }
         }
+        List<StoredTask> results = new ArrayList<>();
+        for (TaskInfo info : fetchTasks()) {
+            results.add(new StoredTask(info, Optional.ofNullable(statusMap.get(info.getName()))));
+        }
         return results;
     }
 
@@ -175,7 +288,8 @@ public interface StateStore extends TaskStatusProvider {
      * Stores an arbitrary key/value pair.
      *
      * @param key   must be a non-blank String without any forward slashes ('/')
-     * @param value The value should be a byte array no larger than 1MB (1024 * 1024 bytes)
+     * @param value The value should be a byte array no larger than 1MB (1024 * 1024 bytes), see
+     *              {@link #openPropertyOutputStream(String)} for larger values
      * @throw StateStoreException if the key or value fail validation, or if storing the data otherwise fails
      * @see StateStoreUtils#validateKey(String)
      * @see StateStoreUtils#validateValue(byte[])
@@ -206,4 +320,74 @@ public interface StateStore extends TaskStatusProvider {
      * @throws StateStoreException if key validation fails or clearing the entry fails
      */
     void clearProperty(final String key) throws StateStoreException;
+
+    /**
+     * Opens a stream which stores a value against the Property {@code key} once it is closed, replacing any previous
+     * value, and which may exceed the size limit of {@link #storeProperty(String, byte[])} where the underlying storage
+     * supports it.  The value is published atomically on {@link OutputStream#close()}, which fails with an
+     * {@link IOException} if storing it fails, and nothing is stored if the stream is never closed.
+     *
+     * The default implementation buffers the value in memory and stores it with
+     * {@link #storeProperty(String, byte[])}, and so is subject to its size limit.
+     *
+     * @param key must be a non-blank String without any forward slashes ('/')
+     * @throws StateStoreException if key validation fails or opening the stream otherwise fails
+     */
+    default OutputStream openPropertyOutputStream(String key) throws StateStoreException {
+        StateStoreUtils.validateKey(key);
+        return new ByteArrayOutputStream() {
+            @Override
+            public void close() throws IOException {
+                try {
+                    storeProperty(key, toByteArray());
+                } catch (StateStoreException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Opens a stream which reads the value stored against the Property {@code key}, whether it was stored with
+     * {@link #storeProperty(String, byte[])} or {@link #openPropertyOutputStream(String)}, without necessarily holding
+     * the whole value in memory.
+     *
+     * The default implementation reads the whole value with {@link #fetchProperty(String)}.
+     *
+     * @param key must be a non-blank String without any forward slashes ('/')
+     * @throws StateStoreException if no data was found for the requested key, or if opening the stream otherwise fails
+     */
+    default InputStream openPropertyInputStream(String key) throws StateStoreException {
+        return new ByteArrayInputStream(fetchProperty(key));
+    }
+
+
+    // Listeners
+
+
+    /**
+     * Subscribes the listener to changes of this store's contents, see {@link StateStoreListener}.  Changes which
+     * occurred before subscribing are not reported.
+     *
+     * By default a store doesn't report changes, and the listener is never invoked.  Stores which report changes
+     * return {@code true} from {@link #isSubscribable()}.
+     *
+     * @throws StateStoreException if watching the underlying storage fails
+     */
+    default void subscribe(StateStoreListener listener) throws StateStoreException {
+    }
+
+    /**
+     * Returns whether listeners passed to {@link #subscribe(StateStoreListener)} are notified of changes.
+     */
+    default boolean isSubscribable() {
+        return false;
+    }
+
+    /**
+     * Unsubscribes a listener which was passed to {@link #subscribe(StateStoreListener)}, or does nothing if it isn't
+     * subscribed.
+     */
+    default void unsubscribe(StateStoreListener listener) {
+    }
 }
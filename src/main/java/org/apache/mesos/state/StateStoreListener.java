@@ -0,0 +1,44 @@
+package org.apache.mesos.state;
+
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.Protos.TaskStatus;
+
+import java.util.Optional;
+
+/**
+ * This interface should be implemented in order to be notified of changes to the contents of a {@link StateStore},
+ * whether they were written through that store or by another client of the same storage.  This allows a consumer to
+ * maintain an incremental view of the stored Tasks rather than re-reading all of them.
+ * <p>
+ * Events are delivered after the change has been stored, and never concurrently for the same store.  A change is
+ * reported once, even when it is both written locally and then observed in the underlying storage.  All methods
+ * default to doing nothing, so that a listener only needs to implement the events which it uses.
+ */
+public interface StateStoreListener {
+
+    /**
+     * Called when a TaskInfo was stored which differs from the previous TaskInfo of that Task, if any.
+     */
+    default void onTaskStored(TaskInfo taskInfo) {
+    }
+
+    /**
+     * Called when a TaskStatus was stored which differs from the previous TaskStatus of that Task, if any.
+     */
+    default void onStatusStored(TaskStatus status) {
+    }
+
+    /**
+     * Called when all data of a Task was cleared.
+     */
+    default void onTaskCleared(String taskName) {
+    }
+
+    /**
+     * Called when a Property was stored with a new value, or cleared.
+     *
+     * @param value the new value, or an empty Optional if the Property was cleared
+     */
+    default void onPropertyChanged(String key, Optional<byte[]> value) {
+    }
+}
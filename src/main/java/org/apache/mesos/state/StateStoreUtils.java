@@ -1,6 +1,12 @@
 package org.apache.mesos.state;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.offer.TaskException;
+import org.apache.mesos.offer.TaskUtils;
+
+import java.util.Optional;
+import java.util.UUID;
 
 /**
  * Utilities for implementations and users of {@link StateStore}.
@@ -32,6 +38,20 @@ public class StateStoreUtils {
     // Utilities for StateStore implementations:
 
 
+    /**
+     * Returns the target configuration of the provided Task, or an empty Optional if it has none or if its label is
+     * malformed.
+     *
+     * @see StateStore#fetchTasksWithTargetConfiguration(java.util.UUID)
+     */
+    public static Optional<UUID> getTargetConfiguration(TaskInfo taskInfo) {
+        try {
+            return Optional.of(TaskUtils.getTargetConfiguration(taskInfo));
+        } catch (TaskException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
     /**
      * Shared implementation for validating property key limits, for use by all StateStore
      * implementations.
@@ -0,0 +1,69 @@
+package org.apache.mesos.state;
+
+import com.google.common.base.Objects;
+import org.apache.mesos.Protos.TaskInfo;
+import org.apache.mesos.Protos.TaskStatus;
+
+import java.util.Optional;
+
+/**
+ * Represents everything stored for a single Task: its TaskInfo, and its TaskStatus if one has been stored.  Note that
+ * the TaskStatus may be for a previous TaskID of the Task, eg after its TaskInfo was updated for a relaunch.
+ */
+public class StoredTask {
+    private final TaskInfo info;
+    private final Optional<TaskStatus> status;
+
+    public StoredTask(TaskInfo info, Optional<TaskStatus> status) {
+        this.info = info;
+        this.status = status;
+    }
+
+    public String getName() {
+        return info.getName();
+    }
+
+    public TaskInfo getInfo() {
+        return info;
+    }
+
+    public Optional<TaskStatus> getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns the TaskStatus if it is for the current TaskID of the TaskInfo.
+     */
+    public Optional<TaskStatus> getCurrentStatus() {
+        if (status.isPresent() && status.get().getTaskId().equals(info.getTaskId())) {
+            return status;
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public String toString() {
+        return "StoredTask{" +
+                "info=" + info +
+                ", status=" + status +
+                '}';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        StoredTask that = (StoredTask) o;
+        return Objects.equal(info, that.info) &&
+                Objects.equal(status, that.status);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(info, status);
+    }
+}
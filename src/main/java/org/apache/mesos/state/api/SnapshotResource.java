@@ -0,0 +1,50 @@
+package org.apache.mesos.state.api;
+
+import org.apache.mesos.curator.StateSnapshotter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * An admin API for exporting a snapshot of the framework's persistent state, see {@link StateSnapshotter}.  Snapshots
+ * are restored offline with {@link StateSnapshotter#main(String[])}, while no scheduler of the target framework runs.
+ */
+@Path("/v1/snapshot")
+public class SnapshotResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotResource.class);
+
+    private final StateSnapshotter snapshotter;
+    private final String frameworkName;
+
+    /**
+     * @param snapshotter the snapshotter for the Zookeeper ensemble holding the framework's state, eg
+     *                    {@link org.apache.mesos.curator.CuratorStateStore#getSnapshotter()}
+     * @param frameworkName the name of the framework whose state is exported
+     */
+    public SnapshotResource(StateSnapshotter snapshotter, String frameworkName) {
+        this.snapshotter = snapshotter;
+        this.frameworkName = frameworkName;
+    }
+
+    /**
+     * Streams a snapshot of the framework's state.  Failures while streaming are logged, and truncate the response.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public Response getSnapshot() {
+        StreamingOutput snapshot = output -> {
+            try {
+                snapshotter.export(frameworkName, output);
+            } catch (Exception ex) {
+                logger.error("Failed to export snapshot of framework '{}'", frameworkName, ex);
+                throw ex;
+            }
+        };
+        return Response.ok(snapshot, MediaType.APPLICATION_OCTET_STREAM).build();
+    }
+}
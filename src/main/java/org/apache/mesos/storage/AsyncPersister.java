@@ -0,0 +1,16 @@
+package org.apache.mesos.storage;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interface should be implemented in order to store and fetch data without blocking the calling thread.  The
+ * returned futures complete with the same values as the corresponding {@link Persister} methods, or exceptionally with
+ * the exceptions which those methods would throw.
+ */
+public interface AsyncPersister {
+    CompletableFuture<Void> storeAsync(String path, byte[] bytes);
+    CompletableFuture<byte[]> fetchAsync(String path);
+    CompletableFuture<Void> clearAsync(String path);
+    CompletableFuture<Collection<String>> getChildrenAsync(String path);
+}
@@ -3,23 +3,79 @@ package org.apache.mesos.storage;
 import org.apache.curator.RetryPolicy;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.api.BackgroundCallback;
+import org.apache.curator.framework.api.CuratorEvent;
+import org.apache.curator.framework.api.transaction.CuratorTransaction;
+import org.apache.curator.framework.api.transaction.CuratorTransactionFinal;
+import org.apache.curator.utils.ZKPaths;
 import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.data.Stat;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * The CuratorPersistor implemenation of the Persister interface
  * provides for persistence and retrieval of data from Zookeeper.
+ *
+ * The {@link AsyncPersister} methods send their requests with Curator background callbacks, and their futures are
+ * completed on the Zookeeper event thread.  Requests are applied by Zookeeper in the order in which they are sent, so
+ * values stored to the same path from a single thread are applied in order.
  */
-public class CuratorPersister implements Persister {
-    private final String connectionString;
-    private final RetryPolicy retryPolicy;
+public class CuratorPersister implements Persister, AsyncPersister {
+    private static final Logger logger = LoggerFactory.getLogger(CuratorPersister.class);
+
+    /**
+     * The number of times a transaction is rebuilt when nodes are concurrently created or deleted by another client.
+     */
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+
+    /**
+     * The maximum time to wait for the response to a background request.
+     */
+    private static final long RESPONSE_TIMEOUT_MS = 30000;
+
+    /**
+     * The maximum number of reads which {@link #fetchAll(Collection)} has outstanding at once, which bounds the memory
+     * held by responses queued on the connection.
+     */
+    private static final int MAX_READS_IN_FLIGHT = 256;
+
+    /**
+     * Transactions are sent as a single request, which Zookeeper rejects when it exceeds jute.maxbuffer (1MB by
+     * default).  Larger batches are stored one value at a time instead, leaving headroom for request overhead.
+     */
+    private static final int MAX_TRANSACTION_BYTES = 512 * 1024;
+
     private final CuratorFramework client;
+    private final Runnable onClose;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
+    /**
+     * Creates a persister with its own client, which is closed along with the persister.
+     */
     public CuratorPersister(String connectionString, RetryPolicy retryPolicy) {
-        this.connectionString = connectionString;
-        this.retryPolicy = retryPolicy;
-        this.client = startClient();
+        this(startClient(connectionString, retryPolicy), null);
+    }
+
+    /**
+     * Creates a persister which uses a started client that is shared with other persisters.  Closing the persister
+     * calls {@code onClose} rather than closing the client.
+     */
+    public CuratorPersister(CuratorFramework client, Runnable onClose) {
+        this.client = client;
+        this.onClose = onClose;
     }
 
     @Override
@@ -31,11 +87,237 @@ public class CuratorPersister implements Persister {
         }
     }
 
+    /**
+     * Stores all values in a single ZK multi-op, unless their total size exceeds {@link #MAX_TRANSACTION_BYTES}, in
+     * which case they are stored individually and not atomically.
+     *
+     * The transaction is first attempted with only updates, which succeeds in a single round trip when all nodes
+     * already exist.  Otherwise the existence of all nodes and their parents is checked with pipelined requests, and
+     * the missing nodes are created within the transaction.
+     */
+    @Override
+    public void storeAll(Map<String, byte[]> pathsToBytes) throws Exception {
+        if (pathsToBytes.isEmpty()) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+            totalBytes += entry.getKey().length() + entry.getValue().length;
+        }
+        if (totalBytes > MAX_TRANSACTION_BYTES) {
+            logger.warn("Storing {} values of {} bytes individually, exceeding the transaction limit of {} bytes",
+                    pathsToBytes.size(), totalBytes, MAX_TRANSACTION_BYTES);
+            for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+                store(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        try {
+            commit(pathsToBytes, Collections.emptySet());
+            return;
+        } catch (KeeperException.NoNodeException e) {
+            logger.debug("Nodes missing for transaction of {} values, checking existence", pathsToBytes.size());
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                commit(pathsToBytes, getMissingNodes(pathsToBytes.keySet()));
+                return;
+            } catch (KeeperException.NoNodeException | KeeperException.NodeExistsException e) {
+                if (attempt >= MAX_TRANSACTION_ATTEMPTS) {
+                    throw e;
+                }
+                logger.warn("Nodes changed concurrently with transaction, retrying (attempt {})", attempt, e);
+            }
+        }
+    }
+
+    /**
+     * Creates all of the provided nodes in a single ZK multi-op, in iteration order, so that a parent may be created
+     * ahead of its children within the same call.  Fails with a {@link KeeperException.NodeExistsException} or
+     * {@link KeeperException.NoNodeException} if any node already exists or lacks its parent, in which case none are
+     * created.  As with {@link #storeAll(Map)}, values whose total size exceeds {@link #MAX_TRANSACTION_BYTES} are
+     * instead created individually and not atomically.
+     */
+    public void createAll(Map<String, byte[]> pathsToBytes) throws Exception {
+        if (pathsToBytes.isEmpty()) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+            totalBytes += entry.getKey().length() + entry.getValue().length;
+        }
+        if (totalBytes > MAX_TRANSACTION_BYTES) {
+            logger.warn("Creating {} values of {} bytes individually, exceeding the transaction limit of {} bytes",
+                    pathsToBytes.size(), totalBytes, MAX_TRANSACTION_BYTES);
+            for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+                client.create().forPath(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        CuratorTransaction transaction = client.inTransaction();
+        CuratorTransactionFinal finalTransaction = null;
+        for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+            finalTransaction = transaction.create().forPath(entry.getKey(), entry.getValue()).and();
+            transaction = finalTransaction;
+        }
+        finalTransaction.commit();
+    }
+
     @Override
     public byte[] fetch(String path) throws Exception {
         return client.getData().forPath(path);
     }
 
+    /**
+     * Fetches the value of the node, or returns an empty value in place of a {@link KeeperException.NoNodeException}.
+     */
+    @Override
+    public Optional<byte[]> fetchIfPresent(String path) throws Exception {
+        try {
+            return Optional.of(fetch(path));
+        } catch (KeeperException.NoNodeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Fetches all values with pipelined reads, of which at most {@link #MAX_READS_IN_FLIGHT} are outstanding at once,
+     * so that the whole fetch takes about as many round trips as there are batches rather than paths.
+     */
+    @Override
+    public Map<String, byte[]> fetchAll(Collection<String> paths) throws Exception {
+        Map<String, byte[]> pathsToBytes = new HashMap<>();
+        for (Map.Entry<String, VersionedData> entry : fetchAllVersioned(paths).entrySet()) {
+            pathsToBytes.put(entry.getKey(), entry.getValue().getData());
+        }
+        return pathsToBytes;
+    }
+
+    /**
+     * Fetches all values along with the versions of their nodes, as with {@link #fetchAll(Collection)}.
+     */
+    public Map<String, VersionedData> fetchAllVersioned(Collection<String> paths) throws Exception {
+        Map<String, VersionedData> pathsToData = new ConcurrentHashMap<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Semaphore permits = new Semaphore(MAX_READS_IN_FLIGHT);
+
+        for (String path : paths) {
+            if (failure.get() != null) {
+                break;
+            }
+            acquire(permits, 1);
+            try {
+                client.getData().inBackground((eventClient, event) -> {
+                    KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                    if (code == KeeperException.Code.OK) {
+                        pathsToData.put(
+                                event.getPath(), new VersionedData(event.getData(), event.getStat().getVersion()));
+                    } else if (code != KeeperException.Code.NONODE) {
+                        failure.compareAndSet(null, KeeperException.create(code, event.getPath()));
+                    }
+                    permits.release();
+                }).forPath(path);
+            } catch (Exception e) {
+                permits.release();
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        // Wait for all outstanding reads to complete.
+        acquire(permits, MAX_READS_IN_FLIGHT);
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return pathsToData;
+    }
+
+    /**
+     * Fetches the value of a node along with its version, for a subsequent {@link #compareAndSet}.
+     */
+    public VersionedData fetchVersioned(String path) throws Exception {
+        Stat stat = new Stat();
+        byte[] bytes = client.getData().storingStatIn(stat).forPath(path);
+        return new VersionedData(bytes, stat.getVersion());
+    }
+
+    /**
+     * Stores the value if the node still has the provided version, or creates the node if the version is
+     * {@link VersionedData#ABSENT}.  Otherwise fails with a {@link KeeperException.BadVersionException},
+     * {@link KeeperException.NodeExistsException} or {@link KeeperException.NoNodeException}.  Parent nodes must
+     * already exist.
+     */
+    public void compareAndSet(String path, VersionedData value) throws Exception {
+        if (value.getVersion() == VersionedData.ABSENT) {
+            client.create().forPath(path, value.getData());
+        } else {
+            client.setData().withVersion(value.getVersion()).forPath(path, value.getData());
+        }
+    }
+
+    /**
+     * Performs {@link #compareAndSet} for all of the provided values in a single ZK multi-op, so that either all of
+     * them are stored or none are.  As with {@link #storeAll(Map)}, values whose total size exceeds
+     * {@link #MAX_TRANSACTION_BYTES} are instead stored individually and not atomically.
+     */
+    public void compareAndSetAll(Map<String, VersionedData> pathsToValues) throws Exception {
+        compareAndSetAll(pathsToValues, Collections.emptyList());
+    }
+
+    /**
+     * Performs {@link #compareAndSetAll(Map)}, failing with a {@link KeeperException.NoNodeException} unless all of the
+     * required paths exist when the transaction is applied, eg nodes referenced by the stored values.
+     */
+    public void compareAndSetAll(Map<String, VersionedData> pathsToValues, Collection<String> requiredPaths)
+            throws Exception {
+        if (pathsToValues.isEmpty()) {
+            return;
+        }
+
+        long totalBytes = 0;
+        for (Map.Entry<String, VersionedData> entry : pathsToValues.entrySet()) {
+            totalBytes += entry.getKey().length() + entry.getValue().getData().length;
+        }
+        if (totalBytes > MAX_TRANSACTION_BYTES) {
+            logger.warn("Storing {} values of {} bytes individually, exceeding the transaction limit of {} bytes",
+                    pathsToValues.size(), totalBytes, MAX_TRANSACTION_BYTES);
+            for (String requiredPath : requiredPaths) {
+                if (client.checkExists().forPath(requiredPath) == null) {
+                    throw new KeeperException.NoNodeException(requiredPath);
+                }
+            }
+            for (Map.Entry<String, VersionedData> entry : pathsToValues.entrySet()) {
+                compareAndSet(entry.getKey(), entry.getValue());
+            }
+            return;
+        }
+
+        CuratorTransaction transaction = client.inTransaction();
+        CuratorTransactionFinal finalTransaction = null;
+        for (String requiredPath : requiredPaths) {
+            finalTransaction = transaction.check().forPath(requiredPath).and();
+            transaction = finalTransaction;
+        }
+        for (Map.Entry<String, VersionedData> entry : pathsToValues.entrySet()) {
+            VersionedData value = entry.getValue();
+            if (value.getVersion() == VersionedData.ABSENT) {
+                finalTransaction = transaction.create().forPath(entry.getKey(), value.getData()).and();
+            } else {
+                finalTransaction = transaction.setData()
+                        .withVersion(value.getVersion())
+                        .forPath(entry.getKey(), value.getData())
+                        .and();
+            }
+            transaction = finalTransaction;
+        }
+        finalTransaction.commit();
+    }
+
     @Override
     public void clear(String path) throws Exception {
         client.delete().deletingChildrenIfNeeded().forPath(path);
@@ -46,12 +328,222 @@ public class CuratorPersister implements Persister {
         return client.getChildren().forPath(path);
     }
 
+    /**
+     * Stores the value by updating the node, which succeeds in a single round trip in the common case where it already
+     * exists, and otherwise creates it along with any missing parents.
+     */
+    @Override
+    public CompletableFuture<Void> storeAsync(String path, byte[] bytes) {
+        return recover(setDataAsync(path, bytes), KeeperException.Code.NONODE,
+                () -> recover(createAsync(path, bytes), KeeperException.Code.NODEEXISTS,
+                        () -> setDataAsync(path, bytes)));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetchAsync(String path) {
+        return inBackground(callback -> client.getData().inBackground(callback).forPath(path), CuratorEvent::getData);
+    }
+
+    /**
+     * Fetches the value of a node along with its version, as with {@link #fetchVersioned(String)}.
+     */
+    public CompletableFuture<VersionedData> fetchVersionedAsync(String path) {
+        return inBackground(
+                callback -> client.getData().inBackground(callback).forPath(path),
+                event -> new VersionedData(event.getData(), event.getStat().getVersion()));
+    }
+
+    /**
+     * Stores the value if the node still has the provided version, as with {@link #compareAndSet}.
+     */
+    public CompletableFuture<Void> compareAndSetAsync(String path, VersionedData value) {
+        if (value.getVersion() == VersionedData.ABSENT) {
+            return inBackground(
+                    callback -> client.create().inBackground(callback).forPath(path, value.getData()),
+                    event -> null);
+        }
+        return inBackground(
+                callback -> client.setData()
+                        .withVersion(value.getVersion())
+                        .inBackground(callback)
+                        .forPath(path, value.getData()),
+                event -> null);
+    }
+
+    /**
+     * Creates the node along with any missing parents, or does nothing if it already exists.
+     */
+    public CompletableFuture<Void> createIfAbsentAsync(String path, byte[] bytes) {
+        return recover(createAsync(path, bytes), KeeperException.Code.NODEEXISTS,
+                () -> CompletableFuture.completedFuture(null));
+    }
+
+    @Override
+    public CompletableFuture<Void> clearAsync(String path) {
+        return inBackground(
+                callback -> client.delete().deletingChildrenIfNeeded().inBackground(callback).forPath(path),
+                event -> null);
+    }
+
+    @Override
+    public CompletableFuture<Collection<String>> getChildrenAsync(String path) {
+        return inBackground(
+                callback -> client.getChildren().inBackground(callback).forPath(path),
+                CuratorEvent::getChildren);
+    }
+
+    /**
+     * Returns the underlying client, eg for building Curator recipes which observe the persisted data.
+     */
+    public CuratorFramework getClient() {
+        return client;
+    }
+
     @Override
     public void close() {
-        client.close();
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (onClose != null) {
+            onClose.run();
+        } else {
+            client.close();
+        }
+    }
+
+    /**
+     * Commits a transaction which creates every node in {@code missingNodes}, parents first, and updates every other
+     * provided path.
+     */
+    private void commit(Map<String, byte[]> pathsToBytes, Set<String> missingNodes) throws Exception {
+        CuratorTransaction transaction = client.inTransaction();
+        CuratorTransactionFinal finalTransaction = null;
+
+        // Sorting by path places every parent before its children.
+        List<String> sortedMissingNodes = new ArrayList<>(missingNodes);
+        Collections.sort(sortedMissingNodes);
+        for (String missingNode : sortedMissingNodes) {
+            byte[] bytes = pathsToBytes.get(missingNode);
+            finalTransaction = transaction.create().forPath(missingNode, bytes == null ? new byte[0] : bytes).and();
+            transaction = finalTransaction;
+        }
+
+        for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+            if (!missingNodes.contains(entry.getKey())) {
+                finalTransaction = transaction.setData().forPath(entry.getKey(), entry.getValue()).and();
+                transaction = finalTransaction;
+            }
+        }
+
+        finalTransaction.commit();
+    }
+
+    /**
+     * Returns which of the provided paths and their parents do not exist.  All existence checks are sent without
+     * waiting for the previous response, so that they take a single round trip.
+     */
+    private Set<String> getMissingNodes(Collection<String> paths) throws Exception {
+        Set<String> nodes = new HashSet<>();
+        for (String path : paths) {
+            for (String node = path; !node.equals("/"); node = ZKPaths.getPathAndNode(node).getPath()) {
+                if (!nodes.add(node)) {
+                    break;
+                }
+            }
+        }
+
+        Set<String> missingNodes = ConcurrentHashMap.newKeySet();
+        CountDownLatch latch = new CountDownLatch(nodes.size());
+        for (String node : nodes) {
+            client.checkExists().inBackground((eventClient, event) -> {
+                if (event.getStat() == null) {
+                    missingNodes.add(event.getPath());
+                }
+                latch.countDown();
+            }).forPath(node);
+        }
+
+        if (!latch.await(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException(String.format(
+                    "Timed out checking existence of %d nodes", nodes.size()));
+        }
+
+        return missingNodes;
+    }
+
+    private CompletableFuture<Void> setDataAsync(String path, byte[] bytes) {
+        return inBackground(callback -> client.setData().inBackground(callback).forPath(path, bytes), event -> null);
+    }
+
+    private CompletableFuture<Void> createAsync(String path, byte[] bytes) {
+        return inBackground(
+                callback -> client.create().creatingParentsIfNeeded().inBackground(callback).forPath(path, bytes),
+                event -> null);
+    }
+
+    /**
+     * Sends a request with a background callback, returning a future which completes with the result extracted from
+     * the response, or exceptionally with the {@link KeeperException} matching the response's error code.
+     */
+    private static <T> CompletableFuture<T> inBackground(
+            BackgroundRequest request, Function<CuratorEvent, T> getResult) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            request.send((eventClient, event) -> {
+                KeeperException.Code code = KeeperException.Code.get(event.getResultCode());
+                if (code == KeeperException.Code.OK) {
+                    future.complete(getResult.apply(event));
+                } else {
+                    future.completeExceptionally(KeeperException.create(code, event.getPath()));
+                }
+            });
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Returns a future which completes as {@code future} does, except that a failure with the provided error code is
+     * replaced with the outcome of {@code fallback}.
+     */
+    private static <T> CompletableFuture<T> recover(
+            CompletableFuture<T> future, KeeperException.Code code, Supplier<CompletableFuture<T>> fallback) {
+        CompletableFuture<T> recovered = new CompletableFuture<>();
+        future.whenComplete((value, e) -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause == null) {
+                recovered.complete(value);
+            } else if (cause instanceof KeeperException && ((KeeperException) cause).code() == code) {
+                fallback.get().whenComplete((fallbackValue, fallbackException) -> {
+                    if (fallbackException == null) {
+                        recovered.complete(fallbackValue);
+                    } else {
+                        recovered.completeExceptionally(fallbackException);
+                    }
+                });
+            } else {
+                recovered.completeExceptionally(cause);
+            }
+        });
+        return recovered;
+    }
+
+    /**
+     * A Curator request which is sent with the provided callback.
+     */
+    private interface BackgroundRequest {
+        void send(BackgroundCallback callback) throws Exception;
+    }
+
+    private static void acquire(Semaphore permits, int count) throws InterruptedException {
+        if (!permits.tryAcquire(count, RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException(String.format(
+                    "Timed out waiting for %d outstanding reads", MAX_READS_IN_FLIGHT - permits.availablePermits()));
+        }
     }
 
-    private CuratorFramework startClient() {
+    private static CuratorFramework startClient(String connectionString, RetryPolicy retryPolicy) {
         CuratorFramework client = CuratorFrameworkFactory.newClient(connectionString, retryPolicy);
         client.start();
         return client;
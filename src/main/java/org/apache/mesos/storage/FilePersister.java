@@ -0,0 +1,518 @@
+package org.apache.mesos.storage;
+
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.common.PathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * The FilePersister implementation of the Persister interface stores data in an append-only log on local disk, for
+ * single-node deployments, tests and simulations which don't need Zookeeper.  Paths behave as Zookeeper nodes stored
+ * with {@link CuratorPersister}: storing a value creates any missing parents with empty values, and reading or clearing
+ * a path which doesn't exist fails with a {@link KeeperException.NoNodeException}.
+ *
+ * All values are held in memory, and every change is appended as a record to a memory-mapped segment file.  Each
+ * record is a length, a CRC32 of its contents, and its contents, so a record which was partially written when the
+ * process stopped is detected and discarded when the log is replayed.  Each {@link #storeAll(Map)} is a single record,
+ * and is therefore applied atomically.  Once the records appended since the last snapshot exceed a threshold, a
+ * snapshot of all values is written and the segments which it covers are deleted:
+ * <code>
+ * directory/
+ *     -> snapshot-[N].snap     (all values as of the start of segment N)
+ *     -> segment-[N].log
+ *     -> segment-[N+1].log
+ *     -> ...
+ * </code>
+ *
+ * Appended records are in the page cache once a method returns, so they survive a crash of the process.  They are
+ * only forced to disk on every write when {@code syncWrites} is enabled, and otherwise when a segment is completed.
+ */
+public class FilePersister implements Persister {
+    private static final Logger logger = LoggerFactory.getLogger(FilePersister.class);
+
+    /**
+     * The size of each segment file, which is mapped into memory in full.
+     */
+    static final int DEFAULT_SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The number of bytes appended after which a snapshot is written and the covered segments are deleted.
+     */
+    static final long DEFAULT_COMPACTION_BYTES = 64 * 1024 * 1024;
+
+    private static final int HEADER_BYTES = 8;
+    private static final byte PUT_RECORD = 1;
+    private static final byte CLEAR_RECORD = 2;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final boolean syncWrites;
+    private final int segmentBytes;
+    private final long compactionBytes;
+    private final NavigableMap<String, byte[]> nodes = new TreeMap<>();
+
+    private MappedByteBuffer segment;
+    private long segmentSeq;
+    private long bytesSinceSnapshot;
+
+    /**
+     * Creates a new {@link Persister} which stores its log in the provided directory, replaying any existing log.
+     *
+     * @param directory The directory which holds the log, which is created if needed
+     */
+    public FilePersister(Path directory) throws IOException {
+        this(directory, false);
+    }
+
+    /**
+     * Creates a new {@link Persister} which stores its log in the provided directory, replaying any existing log.
+     *
+     * @param directory  The directory which holds the log, which is created if needed
+     * @param syncWrites Whether every write is forced to disk before returning, so that it survives a crash of the host
+     */
+    public FilePersister(Path directory, boolean syncWrites) throws IOException {
+        this(directory, syncWrites, DEFAULT_SEGMENT_BYTES, DEFAULT_COMPACTION_BYTES);
+    }
+
+    FilePersister(Path directory, boolean syncWrites, int segmentBytes, long compactionBytes) throws IOException {
+        this.directory = directory;
+        this.syncWrites = syncWrites;
+        this.segmentBytes = segmentBytes;
+        this.compactionBytes = compactionBytes;
+        recover();
+    }
+
+    @Override
+    public synchronized void store(String path, byte[] bytes) throws Exception {
+        storeAll(Collections.singletonMap(path, bytes));
+    }
+
+    @Override
+    public synchronized void storeAll(Map<String, byte[]> pathsToBytes) throws Exception {
+        checkOpen();
+        if (pathsToBytes.isEmpty()) {
+            return;
+        }
+        for (String path : pathsToBytes.keySet()) {
+            PathUtils.validatePath(path);
+        }
+
+        byte[] payload = encodePut(pathsToBytes);
+        append(payload);
+        apply(payload);
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized byte[] fetch(String path) throws Exception {
+        checkOpen();
+        byte[] bytes = path.equals("/") ? new byte[0] : nodes.get(path);
+        if (bytes == null) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        return bytes.clone();
+    }
+
+    @Override
+    public synchronized Optional<byte[]> fetchIfPresent(String path) throws Exception {
+        checkOpen();
+        byte[] bytes = path.equals("/") ? new byte[0] : nodes.get(path);
+        return bytes == null ? Optional.empty() : Optional.of(bytes.clone());
+    }
+
+    @Override
+    public synchronized Map<String, byte[]> fetchAll(Collection<String> paths) throws Exception {
+        checkOpen();
+        Map<String, byte[]> pathsToBytes = new HashMap<>();
+        for (String path : paths) {
+            byte[] bytes = nodes.get(path);
+            if (bytes != null) {
+                pathsToBytes.put(path, bytes.clone());
+            }
+        }
+        return pathsToBytes;
+    }
+
+    /**
+     * Deletes the value at the provided path along with all of its children.
+     */
+    @Override
+    public synchronized void clear(String path) throws Exception {
+        checkOpen();
+        PathUtils.validatePath(path);
+        if (!exists(path)) {
+            throw new KeeperException.NoNodeException(path);
+        }
+
+        byte[] payload = encodeClear(path);
+        append(payload);
+        apply(payload);
+        compactIfNeeded();
+    }
+
+    @Override
+    public synchronized Collection<String> getChildren(String path) throws Exception {
+        checkOpen();
+        if (!exists(path)) {
+            throw new KeeperException.NoNodeException(path);
+        }
+        List<String> children = new ArrayList<>();
+        String prefix = getChildPrefix(path);
+        for (String descendant : getDescendants(path).keySet()) {
+            String name = descendant.substring(prefix.length());
+            if (!name.contains("/")) {
+                children.add(name);
+            }
+        }
+        return children;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (segment == null) {
+            return;
+        }
+        segment.force();
+        // The mapping is released once the buffer is garbage collected.
+        segment = null;
+    }
+
+    // Internals
+
+    /**
+     * Loads the latest snapshot and replays the segments which follow it.  Replay of the last segment stops at the
+     * first record which is incomplete or fails its CRC check, and appending resumes from there.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        for (Path tempPath : list(TEMP_SUFFIX)) {
+            Files.delete(tempPath);
+        }
+
+        long firstSegmentSeq = 0;
+        List<Long> snapshotSeqs = listSeqs(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        if (!snapshotSeqs.isEmpty()) {
+            firstSegmentSeq = snapshotSeqs.get(snapshotSeqs.size() - 1);
+            loadSnapshot(getSnapshotPath(firstSegmentSeq));
+        }
+        deleteBefore(firstSegmentSeq);
+
+        List<Long> segmentSeqs = listSeqs(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        if (segmentSeqs.isEmpty()) {
+            openSegment(firstSegmentSeq, segmentBytes);
+            return;
+        }
+        for (int i = 0; i < segmentSeqs.size(); i++) {
+            long seq = segmentSeqs.get(i);
+            if (seq != firstSegmentSeq + i) {
+                throw new IOException(String.format(
+                        "Missing segment %d in log at '%s'", firstSegmentSeq + i, directory));
+            }
+            Path segmentPath = getSegmentPath(seq);
+            boolean isLast = i == segmentSeqs.size() - 1;
+            MappedByteBuffer buffer = map(segmentPath, (int) Files.size(segmentPath));
+            replay(buffer, segmentPath, isLast);
+            if (isLast) {
+                segment = buffer;
+                segmentSeq = seq;
+            }
+        }
+        logger.info("Recovered {} values from log at '{}'", nodes.size(), directory);
+    }
+
+    private void loadSnapshot(Path snapshotPath) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(snapshotPath));
+        byte[] payload;
+        while ((payload = readRecord(buffer)) != null) {
+            apply(payload);
+        }
+        if (buffer.hasRemaining()) {
+            throw new IOException(String.format(
+                    "Corrupt record at offset %d of snapshot '%s'", buffer.position(), snapshotPath));
+        }
+    }
+
+    /**
+     * Applies the records of a segment, leaving the buffer positioned after the last valid record.
+     */
+    private void replay(MappedByteBuffer buffer, Path segmentPath, boolean isLast) throws IOException {
+        byte[] payload;
+        while ((payload = readRecord(buffer)) != null) {
+            apply(payload);
+            bytesSinceSnapshot += HEADER_BYTES + payload.length;
+        }
+        // A zero length alone doesn't mark the end of the log: the length of a record is written last, so a record
+        // which was partially written may have a zero length followed by parts of its CRC and contents.
+        if (isZeroFrom(buffer, buffer.position())) {
+            return;
+        }
+
+        if (!isLast) {
+            throw new IOException(String.format(
+                    "Corrupt record at offset %d of segment '%s'", buffer.position(), segmentPath));
+        }
+        logger.warn("Discarding incomplete record at offset {} of segment '{}'", buffer.position(), segmentPath);
+        // Zeroed so that no remains of the discarded record follow the records which are appended next.
+        int position = buffer.position();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+        buffer.position(position);
+    }
+
+    /**
+     * Appends a record to the current segment, first moving to a new segment if it doesn't fit.  The length is written
+     * last, so that a record which is partially written reads as the end of the log.
+     */
+    private void append(byte[] payload) throws IOException {
+        int recordBytes = HEADER_BYTES + payload.length;
+        if (segment.remaining() < recordBytes) {
+            segment.force();
+            openSegment(segmentSeq + 1, Math.max(segmentBytes, recordBytes));
+        }
+
+        int position = segment.position();
+        segment.position(position + Integer.BYTES);
+        segment.putInt(getCrc(payload));
+        segment.put(payload);
+        segment.putInt(position, payload.length);
+        if (syncWrites) {
+            segment.force();
+        }
+        bytesSinceSnapshot += recordBytes;
+    }
+
+    /**
+     * Writes a snapshot of all values once enough records have been appended since the last one, then starts a new
+     * segment and deletes the segments which the snapshot covers.  The snapshot is written to a temporary file which
+     * is renamed once complete, so the previous snapshot and segments remain valid until then.
+     */
+    private void compactIfNeeded() throws IOException {
+        if (bytesSinceSnapshot < compactionBytes) {
+            return;
+        }
+
+        long snapshotSeq = segmentSeq + 1;
+        Path snapshotPath = getSnapshotPath(snapshotSeq);
+        Path tempPath = directory.resolve(snapshotPath.getFileName() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(
+                tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            for (Map.Entry<String, byte[]> entry : nodes.entrySet()) {
+                writeRecord(output, encodePut(Collections.singletonMap(entry.getKey(), entry.getValue())));
+            }
+            output.flush();
+            channel.force(true);
+        }
+        Files.move(tempPath, snapshotPath, StandardCopyOption.ATOMIC_MOVE);
+
+        segment.force();
+        openSegment(snapshotSeq, segmentBytes);
+        deleteBefore(snapshotSeq);
+        logger.info("Compacted {} bytes of log into a snapshot of {} values at '{}'",
+                bytesSinceSnapshot, nodes.size(), snapshotPath);
+        bytesSinceSnapshot = 0;
+    }
+
+    private void openSegment(long seq, int size) throws IOException {
+        segment = map(getSegmentPath(seq), size);
+        segmentSeq = seq;
+    }
+
+    /**
+     * Deletes the snapshots and segments which precede the provided segment.
+     */
+    private void deleteBefore(long seq) throws IOException {
+        for (long snapshotSeq : listSeqs(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+            if (snapshotSeq < seq) {
+                Files.delete(getSnapshotPath(snapshotSeq));
+            }
+        }
+        for (long oldSegmentSeq : listSeqs(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (oldSegmentSeq < seq) {
+                Files.delete(getSegmentPath(oldSegmentSeq));
+            }
+        }
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = input.readByte();
+        switch (type) {
+            case PUT_RECORD:
+                int count = input.readInt();
+                for (int i = 0; i < count; i++) {
+                    String path = input.readUTF();
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    put(path, bytes);
+                }
+                break;
+            case CLEAR_RECORD:
+                String path = input.readUTF();
+                nodes.remove(path);
+                getDescendants(path).clear();
+                break;
+            default:
+                throw new IOException("Unknown record type: " + type);
+        }
+    }
+
+    /**
+     * Stores the value, creating any missing parents with empty values.
+     */
+    private void put(String path, byte[] bytes) {
+        for (int i = path.indexOf('/', 1); i > 0; i = path.indexOf('/', i + 1)) {
+            nodes.putIfAbsent(path.substring(0, i), new byte[0]);
+        }
+        nodes.put(path, bytes);
+    }
+
+    private boolean exists(String path) {
+        return path.equals("/") || nodes.containsKey(path);
+    }
+
+    private SortedMap<String, byte[]> getDescendants(String path) {
+        String prefix = getChildPrefix(path);
+        // '0' follows '/', so this covers all paths which start with the prefix.
+        return nodes.subMap(prefix, prefix.substring(0, prefix.length() - 1) + '0');
+    }
+
+    private void checkOpen() {
+        if (segment == null) {
+            throw new IllegalStateException("Persister is closed: " + directory);
+        }
+    }
+
+    private Path getSegmentPath(long seq) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    private Path getSnapshotPath(long seq) {
+        return directory.resolve(String.format("%s%020d%s", SNAPSHOT_PREFIX, seq, SNAPSHOT_SUFFIX));
+    }
+
+    private List<Path> list(String suffix) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            for (Path path : stream) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private List<Long> listSeqs(String prefix, String suffix) throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        for (Path path : list(suffix)) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(prefix)) {
+                seqs.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+            }
+        }
+        Collections.sort(seqs);
+        return seqs;
+    }
+
+    private static String getChildPrefix(String path) {
+        return path.equals("/") ? path : path + "/";
+    }
+
+    private static MappedByteBuffer map(Path path, int size) throws IOException {
+        try (FileChannel channel = FileChannel.open(
+                path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Extends the file with zeros when it is shorter, which read as the end of the log.
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static boolean isZeroFrom(ByteBuffer buffer, int position) {
+        for (int i = position; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the contents of the record at the buffer's position, advancing past it, or {@code null} without
+     * advancing if there is no valid record there.
+     */
+    private static byte[] readRecord(ByteBuffer buffer) {
+        int position = buffer.position();
+        if (buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt();
+        int crc = buffer.getInt();
+        if (length <= 0 || length > buffer.remaining()) {
+            buffer.position(position);
+            return null;
+        }
+        byte[] payload = new byte[length];
+        buffer.get(payload);
+        if (getCrc(payload) != crc) {
+            buffer.position(position);
+            return null;
+        }
+        return payload;
+    }
+
+    private static void writeRecord(DataOutputStream output, byte[] payload) throws IOException {
+        output.writeInt(payload.length);
+        output.writeInt(getCrc(payload));
+        output.write(payload);
+    }
+
+    private static int getCrc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encodePut(Map<String, byte[]> pathsToBytes) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(PUT_RECORD);
+            output.writeInt(pathsToBytes.size());
+            for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeInt(entry.getValue().length);
+                output.write(entry.getValue());
+            }
+        } catch (IOException e) {
+            // Not reached: writing to memory.
+            throw new IllegalStateException("Failed to encode record", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeClear(String path) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        try {
+            output.writeByte(CLEAR_RECORD);
+            output.writeUTF(path);
+        } catch (IOException e) {
+            // Not reached: writing to memory.
+            throw new IllegalStateException("Failed to encode record", e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -1,13 +1,53 @@
 package org.apache.mesos.storage;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * This interface should be implemented in order to store and fetch data.
  */
 public interface Persister {
     void store(String path, byte[] bytes) throws Exception;
+
+    /**
+     * Stores all of the provided values, by path, as a single atomic operation where the implementation supports it:
+     * either all of them are stored or none are.  Missing parent nodes are created as with
+     * {@link #store(String, byte[])}.  By default each value is stored individually, without atomicity.
+     */
+    default void storeAll(Map<String, byte[]> pathsToBytes) throws Exception {
+        for (Map.Entry<String, byte[]> entry : pathsToBytes.entrySet()) {
+            store(entry.getKey(), entry.getValue());
+        }
+    }
+
     byte[] fetch(String path) throws Exception;
+
+    /**
+     * Fetches the value of the provided path, or returns an empty value if the path doesn't exist.  By default this
+     * is {@link #fetch(String)}, so that a path which doesn't exist fails in whichever way the implementation's
+     * {@code fetch} does.  Implementations override this to report such paths as absent.
+     */
+    default Optional<byte[]> fetchIfPresent(String path) throws Exception {
+        return Optional.of(fetch(path));
+    }
+
+    /**
+     * Fetches the values of all of the provided paths, by path.  Paths which {@link #fetchIfPresent(String)} reports
+     * as absent are omitted from the result.  By default each value is fetched individually.
+     */
+    default Map<String, byte[]> fetchAll(Collection<String> paths) throws Exception {
+        Map<String, byte[]> pathsToBytes = new HashMap<>();
+        for (String path : paths) {
+            Optional<byte[]> bytes = fetchIfPresent(path);
+            if (bytes.isPresent()) {
+                pathsToBytes.put(path, bytes.get());
+            }
+        }
+        return pathsToBytes;
+    }
+
     void clear(String path) throws Exception;
     Collection<String> getChildren(String path) throws Exception;
     void close();
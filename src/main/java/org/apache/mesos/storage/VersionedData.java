@@ -0,0 +1,26 @@
+package org.apache.mesos.storage;
+
+/**
+ * A value along with the version of the node which holds it, for conditional updates through
+ * {@link CuratorPersister#compareAndSet(String, VersionedData)}.  When used as an update, the version is the one which
+ * the node is expected to have before the update, or {@link #ABSENT} if the node is expected not to exist.
+ */
+public class VersionedData {
+    public static final int ABSENT = -1;
+
+    private final byte[] data;
+    private final int version;
+
+    public VersionedData(byte[] data, int version) {
+        this.data = data;
+        this.version = version;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+}
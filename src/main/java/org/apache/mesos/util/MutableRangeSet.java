@@ -0,0 +1,156 @@
+package org.apache.mesos.util;
+
+import java.util.Arrays;
+
+/**
+ * A mutable counterpart to {@link RangeSet}, for building up or consuming a set of 64-bit integer values in place.
+ * Ranges are kept sorted, disjoint and non-adjacent in a single growable {@code long[]}.
+ */
+public final class MutableRangeSet {
+  private static final int INITIAL_CAPACITY = 8;
+
+  private long[] bounds;
+  private int length;
+
+  public MutableRangeSet() {
+    this.bounds = new long[INITIAL_CAPACITY];
+    this.length = 0;
+  }
+
+  public MutableRangeSet(RangeSet rangeSet) {
+    this();
+    addAll(rangeSet);
+  }
+
+  /**
+   * Adds every value in {@code [begin, end]} to this set.  Does nothing if {@code begin} is greater than
+   * {@code end}.
+   */
+  public MutableRangeSet add(long begin, long end) {
+    if (begin > end) {
+      return this;
+    }
+
+    int floor = RangeSet.floorRange(bounds, length, begin);
+    int first = (floor >= 0 && RangeSet.touches(bounds[floor + 1], begin)) ? floor : floor + 2;
+    if (floor < 0) {
+      first = 0;
+    }
+
+    // The range after the last one beginning at or before end, which is the first range when there is none.
+    int last = RangeSet.floorRange(bounds, length, end);
+    int next = last < 0 ? 0 : last + 2;
+    if (next < length && RangeSet.touches(end, bounds[next])) {
+      last = next;
+    }
+
+    if (first > last) {
+      replace(first, first, new long[]{begin, end});
+    } else {
+      long mergedBegin = Math.min(begin, bounds[first]);
+      long mergedEnd = Math.max(end, bounds[last + 1]);
+      replace(first, last + 2, new long[]{mergedBegin, mergedEnd});
+    }
+
+    return this;
+  }
+
+  /**
+   * Removes every value in {@code [begin, end]} from this set.  Does nothing if {@code begin} is greater than
+   * {@code end}.
+   */
+  public MutableRangeSet remove(long begin, long end) {
+    if (begin > end) {
+      return this;
+    }
+
+    int floor = RangeSet.floorRange(bounds, length, begin);
+    int first = (floor >= 0 && bounds[floor + 1] >= begin) ? floor : floor + 2;
+    if (floor < 0) {
+      first = 0;
+    }
+
+    int last = RangeSet.floorRange(bounds, length, end);
+    if (first > last) {
+      return this;
+    }
+
+    long[] remnants = new long[4];
+    int remnantLength = 0;
+    if (bounds[first] < begin) {
+      remnants[remnantLength++] = bounds[first];
+      remnants[remnantLength++] = begin - 1;
+    }
+    if (bounds[last + 1] > end) {
+      remnants[remnantLength++] = end + 1;
+      remnants[remnantLength++] = bounds[last + 1];
+    }
+    replace(first, last + 2, Arrays.copyOf(remnants, remnantLength));
+
+    return this;
+  }
+
+  public MutableRangeSet addAll(RangeSet rangeSet) {
+    for (int i = 0; i < rangeSet.getRangeCount(); i++) {
+      add(rangeSet.getBegin(i), rangeSet.getEnd(i));
+    }
+
+    return this;
+  }
+
+  public MutableRangeSet removeAll(RangeSet rangeSet) {
+    long[] subtrahend = new long[rangeSet.getRangeCount() * 2];
+    for (int i = 0; i < rangeSet.getRangeCount(); i++) {
+      subtrahend[i * 2] = rangeSet.getBegin(i);
+      subtrahend[i * 2 + 1] = rangeSet.getEnd(i);
+    }
+
+    long[] difference = RangeSet.difference(bounds, length, subtrahend);
+    bounds = Arrays.copyOf(difference, Math.max(INITIAL_CAPACITY, difference.length));
+    length = difference.length;
+
+    return this;
+  }
+
+  public boolean contains(long value) {
+    int index = RangeSet.floorRange(bounds, length, value);
+    return index >= 0 && value <= bounds[index + 1];
+  }
+
+  public boolean isEmpty() {
+    return length == 0;
+  }
+
+  /**
+   * Returns the number of values in this set.
+   */
+  public long size() {
+    return RangeSet.size(bounds, length);
+  }
+
+  /**
+   * Returns an immutable snapshot of this set.
+   */
+  public RangeSet toRangeSet() {
+    return length == 0 ? RangeSet.empty() : new RangeSet(Arrays.copyOf(bounds, length));
+  }
+
+  @Override
+  public String toString() {
+    return toRangeSet().toString();
+  }
+
+  /**
+   * Replaces {@code bounds[from, to)} with {@code pairs}.
+   */
+  private void replace(int from, int to, long[] pairs) {
+    int newLength = length - (to - from) + pairs.length;
+    if (newLength > bounds.length) {
+      bounds = Arrays.copyOf(bounds, Math.max(newLength, bounds.length * 2));
+    }
+
+    System.arraycopy(bounds, to, bounds, from + pairs.length, length - to);
+    System.arraycopy(pairs, 0, bounds, from, pairs.length);
+    length = newLength;
+  }
+}
@@ -0,0 +1,285 @@
+package org.apache.mesos.util;
+
+import org.apache.mesos.Protos.Value;
+import org.apache.mesos.Protos.Value.Range;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of 64-bit integer values, stored as sorted, disjoint and non-adjacent inclusive ranges.  The
+ * ranges are held in a single {@code long[]} of {@code [begin0, end0, begin1, end1, ...]} pairs, so containment
+ * checks are a binary search and union/difference are single linear merges.
+ *
+ * Use {@link MutableRangeSet} to build a set incrementally.
+ */
+public final class RangeSet {
+  private static final RangeSet EMPTY = new RangeSet(new long[0]);
+
+  private final long[] bounds;
+
+  RangeSet(long[] bounds) {
+    this.bounds = bounds;
+  }
+
+  public static RangeSet empty() {
+    return EMPTY;
+  }
+
+  public static RangeSet of(long begin, long end) {
+    return begin > end ? EMPTY : new RangeSet(new long[]{begin, end});
+  }
+
+  public static RangeSet of(Value.Ranges ranges) {
+    return of(ranges.getRangeList());
+  }
+
+  /**
+   * Returns the set of values covered by the provided ranges, which may be unsorted and overlapping.  Ranges whose
+   * begin is greater than their end are empty.
+   */
+  public static RangeSet of(List<Range> ranges) {
+    if (ranges.isEmpty()) {
+      return EMPTY;
+    }
+
+    MutableRangeSet rangeSet = new MutableRangeSet();
+    for (Range range : ranges) {
+      rangeSet.add(range.getBegin(), range.getEnd());
+    }
+
+    return rangeSet.toRangeSet();
+  }
+
+  /**
+   * Returns the number of disjoint ranges in this set.
+   */
+  public int getRangeCount() {
+    return bounds.length / 2;
+  }
+
+  public long getBegin(int index) {
+    return bounds[index * 2];
+  }
+
+  public long getEnd(int index) {
+    return bounds[index * 2 + 1];
+  }
+
+  public boolean isEmpty() {
+    return bounds.length == 0;
+  }
+
+  /**
+   * Returns the number of values in this set.
+   */
+  public long size() {
+    return size(bounds, bounds.length);
+  }
+
+  public boolean contains(long value) {
+    int index = floorRange(bounds, bounds.length, value);
+    return index >= 0 && value <= bounds[index + 1];
+  }
+
+  /**
+   * Returns whether every value in {@code [begin, end]} is in this set.
+   */
+  public boolean contains(long begin, long end) {
+    if (begin > end) {
+      return true;
+    }
+
+    int index = floorRange(bounds, bounds.length, begin);
+    return index >= 0 && end <= bounds[index + 1];
+  }
+
+  /**
+   * Returns whether every value in {@code other} is in this set.
+   */
+  public boolean containsAll(RangeSet other) {
+    int i = 0;
+    for (int j = 0; j < other.bounds.length; j += 2) {
+      while (i < bounds.length && bounds[i + 1] < other.bounds[j]) {
+        i += 2;
+      }
+
+      if (i >= bounds.length || bounds[i] > other.bounds[j] || bounds[i + 1] < other.bounds[j + 1]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  public RangeSet union(RangeSet other) {
+    if (other.isEmpty()) {
+      return this;
+    } else if (isEmpty()) {
+      return other;
+    }
+
+    long[] merged = new long[bounds.length + other.bounds.length];
+    int length = 0;
+    int i = 0;
+    int j = 0;
+    while (i < bounds.length || j < other.bounds.length) {
+      long begin;
+      long end;
+      if (j >= other.bounds.length || (i < bounds.length && bounds[i] <= other.bounds[j])) {
+        begin = bounds[i];
+        end = bounds[i + 1];
+        i += 2;
+      } else {
+        begin = other.bounds[j];
+        end = other.bounds[j + 1];
+        j += 2;
+      }
+      length = append(merged, length, begin, end);
+    }
+
+    return new RangeSet(Arrays.copyOf(merged, length));
+  }
+
+  /**
+   * Returns the values in this set which are not in {@code other}.
+   */
+  public RangeSet difference(RangeSet other) {
+    if (isEmpty() || other.isEmpty()) {
+      return this;
+    }
+
+    return new RangeSet(difference(bounds, bounds.length, other.bounds));
+  }
+
+  public List<Range> toRanges() {
+    List<Range> ranges = new ArrayList<>(getRangeCount());
+    for (int i = 0; i < bounds.length; i += 2) {
+      ranges.add(Range.newBuilder().setBegin(bounds[i]).setEnd(bounds[i + 1]).build());
+    }
+
+    return ranges;
+  }
+
+  public Value.Ranges toProto() {
+    return Value.Ranges.newBuilder().addAllRange(toRanges()).build();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof RangeSet)) {
+      return false;
+    }
+
+    return Arrays.equals(bounds, ((RangeSet) o).bounds);
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(bounds);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < bounds.length; i += 2) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(bounds[i]).append('-').append(bounds[i + 1]);
+    }
+
+    return builder.append(']').toString();
+  }
+
+  /**
+   * Returns the index of the begin of the last range in {@code bounds[0, length)} which begins at or before
+   * {@code value}, or -1 if there is none.
+   */
+  static int floorRange(long[] bounds, int length, long value) {
+    int low = 0;
+    int high = length / 2 - 1;
+    int floor = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (bounds[mid * 2] <= value) {
+        floor = mid * 2;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    return floor;
+  }
+
+  static long size(long[] bounds, int length) {
+    long size = 0;
+    for (int i = 0; i < length; i += 2) {
+      size += bounds[i + 1] - bounds[i] + 1;
+    }
+
+    return size;
+  }
+
+  /**
+   * Appends {@code [begin, end]} to the sorted ranges in {@code bounds[0, length)}, coalescing it with the last range
+   * if they overlap or are adjacent.  {@code begin} must not be less than the begin of the last range.
+   *
+   * @return the new length of {@code bounds}
+   */
+  static int append(long[] bounds, int length, long begin, long end) {
+    if (length > 0 && touches(bounds[length - 1], begin)) {
+      bounds[length - 1] = Math.max(bounds[length - 1], end);
+      return length;
+    }
+
+    bounds[length] = begin;
+    bounds[length + 1] = end;
+    return length + 2;
+  }
+
+  /**
+   * Returns whether a range beginning at {@code begin} overlaps or is adjacent to a range ending at {@code end}.
+   */
+  static boolean touches(long end, long begin) {
+    return begin <= end || begin - end == 1;
+  }
+
+  static long[] difference(long[] minuend, int length, long[] subtrahend) {
+    long[] difference = new long[length + subtrahend.length];
+    int differenceLength = 0;
+    int j = 0;
+
+    for (int i = 0; i < length; i += 2) {
+      long begin = minuend[i];
+      long end = minuend[i + 1];
+
+      while (j < subtrahend.length && subtrahend[j + 1] < begin) {
+        j += 2;
+      }
+
+      boolean covered = false;
+      for (int k = j; k < subtrahend.length && subtrahend[k] <= end; k += 2) {
+        if (subtrahend[k] > begin) {
+          differenceLength = append(difference, differenceLength, begin, subtrahend[k] - 1);
+        }
+        if (subtrahend[k + 1] >= end) {
+          covered = true;
+          break;
+        }
+        begin = Math.max(begin, subtrahend[k + 1] + 1);
+      }
+
+      if (!covered) {
+        differenceLength = append(difference, differenceLength, begin, end);
+      }
+    }
+
+    return Arrays.copyOf(difference, differenceLength);
+  }
+}
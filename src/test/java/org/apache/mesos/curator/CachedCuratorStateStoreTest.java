@@ -0,0 +1,193 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StoredTask;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the operation of the {@link CachedCuratorStateStore}.
+ */
+public class CachedCuratorStateStoreTest {
+    private static final String ROOT_ZK_PATH = "/test-root-path";
+    private static final long AWAIT_TIMEOUT_MS = 10000;
+
+    private static TestingServer testZk;
+    private CachedCuratorStateStore store;
+    private CuratorStateStore otherStore;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        otherStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        store = new CachedCuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        assertTrue(store.isInitialized());
+    }
+
+    @After
+    public void afterEach() {
+        store.close();
+        otherStore.close();
+    }
+
+    @Test
+    public void testReadOwnWrites() throws Exception {
+        Protos.TaskInfo taskInfo = createTask("a");
+        store.storeTasks(Arrays.asList(taskInfo));
+        assertEquals(taskInfo, store.fetchTask("a").get());
+        assertEquals(Arrays.asList("a"), store.fetchTaskNames());
+        assertFalse(store.fetchStatus("a").isPresent());
+
+        Protos.TaskStatus status = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_RUNNING);
+        store.storeStatus(status);
+        assertEquals(status, store.fetchStatus("a").get());
+        assertEquals(Arrays.asList(status), store.fetchStatuses());
+        assertEquals(
+                Arrays.asList(new StoredTask(taskInfo, Optional.of(status))),
+                new ArrayList<>(store.fetchStoredTasks()));
+
+        // Writes went through to Zookeeper.
+        assertEquals(taskInfo, otherStore.fetchTask("a").get());
+        assertEquals(status, otherStore.fetchStatus("a").get());
+
+        store.clearTask("a");
+        assertFalse(store.fetchTask("a").isPresent());
+        assertTrue(store.fetchTaskNames().isEmpty());
+        assertFalse(otherStore.fetchTask("a").isPresent());
+    }
+
+    @Test
+    public void testReadAsyncWrites() throws Exception {
+        Protos.TaskInfo taskInfo = createTask("a");
+        store.storeTasks(Arrays.asList(taskInfo));
+        assertFalse(store.fetchStatus("a").isPresent());
+
+        Protos.TaskStatus status = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_RUNNING);
+        store.getAsyncStateStore().storeStatus(status).join();
+        assertEquals(status, store.fetchStatus("a").get());
+
+        store.getAsyncStateStore().clearTask("a").join();
+        assertFalse(store.fetchTask("a").isPresent());
+    }
+
+    @Test
+    public void testInitialLoad() throws Exception {
+        Protos.TaskInfo taskInfoA = createTask("a");
+        Protos.TaskStatus status = createTaskStatus(taskInfoA.getTaskId(), Protos.TaskState.TASK_FAILED);
+        otherStore.storeTasks(Arrays.asList(taskInfoA, createTask("b")));
+        otherStore.storeStatus(status);
+
+        CachedCuratorStateStore loadedStore = new CachedCuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        try {
+            assertTrue(loadedStore.isInitialized());
+            assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(loadedStore.fetchTaskNames()));
+            assertEquals(taskInfoA, loadedStore.fetchTask("a").get());
+            assertEquals(status, loadedStore.fetchStatus("a").get());
+            assertFalse(loadedStore.fetchStatus("b").isPresent());
+            assertEquals(Arrays.asList(taskInfoA), loadedStore.fetchTasksNeedingRecovery());
+        } finally {
+            loadedStore.close();
+        }
+    }
+
+    @Test
+    public void testExternalChangesAreObserved() throws Exception {
+        Protos.TaskInfo taskInfo = createTask("a");
+        store.storeTasks(Arrays.asList(taskInfo));
+
+        Protos.TaskStatus status = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_RUNNING);
+        otherStore.storeStatus(status);
+        awaitEquals(Optional.of(status), () -> store.fetchStatus("a"));
+
+        Protos.TaskInfo otherTaskInfo = createTask("b");
+        otherStore.storeTasks(Arrays.asList(otherTaskInfo));
+        awaitEquals(Optional.of(otherTaskInfo), () -> store.fetchTask("b"));
+
+        otherStore.clearTask("a");
+        awaitEquals(Arrays.asList("b"), () -> store.fetchTaskNames());
+    }
+
+    @Test
+    public void testStoreTasksAndStatuses() throws Exception {
+        Protos.TaskInfo taskInfo = createTask("a");
+        Protos.TaskStatus status = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_STAGING);
+        store.storeTasksAndStatuses(Arrays.asList(taskInfo), Arrays.asList(status));
+
+        assertEquals(taskInfo, store.fetchTask("a").get());
+        assertEquals(status, store.fetchStatus("a").get());
+        assertEquals(status, otherStore.fetchStatus("a").get());
+    }
+
+    @Test(expected = StateStoreException.class)
+    public void testStoreStatusForMismatchedTaskId() throws Exception {
+        store.storeTasks(Arrays.asList(createTask("a")));
+        store.storeStatus(createTaskStatus(TaskUtils.toTaskId("a"), Protos.TaskState.TASK_RUNNING));
+    }
+
+    @Test
+    public void testReadOnlyReplica() throws Exception {
+        CachedCuratorStateStore replica = CachedCuratorStateStore.createReadOnly(
+                ROOT_ZK_PATH, testZk.getConnectString());
+        try {
+            assertTrue(replica.isReadOnly());
+            try {
+                replica.storeTasks(Arrays.asList(createTask("a")));
+                fail("Expected exception");
+            } catch (StateStoreException e) {
+                // expected
+            }
+            assertTrue(otherStore.fetchTaskNames().isEmpty());
+
+            // The replica follows the writes of the leader.
+            Protos.TaskInfo taskInfo = createTask("a");
+            otherStore.storeTasks(Arrays.asList(taskInfo));
+            awaitEquals(Arrays.asList("a"), () -> replica.fetchTaskNames());
+            assertEquals(taskInfo, replica.fetchTask("a").get());
+
+            replica.openForWrites();
+            assertFalse(replica.isReadOnly());
+            Protos.TaskStatus status = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_RUNNING);
+            replica.storeStatus(status);
+            assertEquals(status, otherStore.fetchStatus("a").get());
+        } finally {
+            replica.close();
+        }
+    }
+
+    private static <T> void awaitEquals(T expected, Callable<T> actual) throws Exception {
+        long deadline = System.currentTimeMillis() + AWAIT_TIMEOUT_MS;
+        while (!expected.equals(actual.call()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, actual.call());
+    }
+
+    private static Protos.TaskStatus createTaskStatus(Protos.TaskID taskId, Protos.TaskState state) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(taskId)
+                .setState(state)
+                .build();
+    }
+
+    private static Protos.TaskInfo createTask(String taskName) {
+        return Protos.TaskInfo.newBuilder()
+                .setName(taskName)
+                .setTaskId(TaskUtils.toTaskId(taskName))
+                .setSlaveId(SlaveID.newBuilder().setValue("ignored")) // proto field required
+                .build();
+    }
+}
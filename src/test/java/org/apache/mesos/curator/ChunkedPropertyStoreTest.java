@@ -0,0 +1,142 @@
+package org.apache.mesos.curator;
+
+import com.google.common.io.ByteStreams;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the operation of the {@link ChunkedPropertyStore}.
+ */
+public class ChunkedPropertyStoreTest {
+    private static final String ROOT_ZK_PATH = "/test-root-path";
+    private static final String PROPERTIES_PATH = ROOT_ZK_PATH + "/Properties";
+    private static final String CHUNKS_PATH = ROOT_ZK_PATH + "/" + ChunkedPropertyStore.PROPERTY_CHUNKS_ROOT_NAME;
+    private static final int CHUNK_BYTES = 1024;
+    private static final String KEY = "topology";
+
+    private static TestingServer testZk;
+    private CuratorPersister curator;
+    private ChunkedPropertyStore store;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        curator = new CuratorPersister(testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+        store = new ChunkedPropertyStore(curator, ROOT_ZK_PATH, PROPERTIES_PATH, CHUNK_BYTES);
+    }
+
+    @After
+    public void afterEach() {
+        curator.close();
+    }
+
+    @Test
+    public void testRoundTripAcrossChunks() throws Exception {
+        byte[] value = randomBytes(5 * CHUNK_BYTES + 17);
+        write(value);
+
+        assertArrayEquals(value, read());
+        assertEquals(6, curator.getChildren(getGenerationPath()).size());
+        assertEquals(Arrays.asList(KEY), store.getKeys());
+    }
+
+    @Test
+    public void testEmptyValue() throws Exception {
+        write(new byte[0]);
+        assertArrayEquals(new byte[0], read());
+    }
+
+    @Test
+    public void testUnpublishedValueIsNotVisible() throws Exception {
+        OutputStream writer = store.openWriter(KEY);
+        writer.write(randomBytes(3 * CHUNK_BYTES));
+
+        assertFalse(store.openReader(KEY).isPresent());
+        assertTrue(store.getKeys().isEmpty());
+        writer.close();
+        assertTrue(store.openReader(KEY).isPresent());
+    }
+
+    @Test
+    public void testPublishReplacesPreviousValueAndPlainProperty() throws Exception {
+        curator.store(PROPERTIES_PATH + "/" + KEY, new byte[] {1});
+        write(randomBytes(2 * CHUNK_BYTES));
+        InputStream staleReader = store.openReader(KEY).get();
+        byte[] value = randomBytes(3 * CHUNK_BYTES);
+        write(value);
+
+        assertArrayEquals(value, read());
+        // Only the published generation remains:
+        assertEquals(1, curator.getChildren(CHUNKS_PATH + "/" + KEY).size());
+        assertTrue(curator.getChildren(PROPERTIES_PATH).isEmpty());
+        try {
+            ByteStreams.toByteArray(staleReader);
+            fail("Expected exception");
+        } catch (IOException e) {
+            // expected: the previous generation was deleted
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testCorruptChunkFailsChecksum() throws Exception {
+        write(randomBytes(2 * CHUNK_BYTES));
+        String chunkPath = getGenerationPath() + "/000001";
+        byte[] chunk = curator.fetch(chunkPath);
+        chunk[0] ^= 1;
+        curator.store(chunkPath, chunk);
+
+        read();
+    }
+
+    @Test
+    public void testClear() throws Exception {
+        assertFalse(store.clear(KEY));
+        write(randomBytes(CHUNK_BYTES));
+        assertTrue(store.clear(KEY));
+        assertFalse(store.openReader(KEY).isPresent());
+        assertEquals(Collections.emptyList(), store.getKeys());
+    }
+
+    private void write(byte[] value) throws Exception {
+        try (OutputStream writer = store.openWriter(KEY)) {
+            // Uneven writes, which straddle chunk boundaries:
+            for (int offset = 0; offset < value.length; offset += 300) {
+                writer.write(value, offset, Math.min(300, value.length - offset));
+            }
+        }
+    }
+
+    private byte[] read() throws Exception {
+        try (InputStream reader = store.openReader(KEY).get()) {
+            return ByteStreams.toByteArray(reader);
+        }
+    }
+
+    private String getGenerationPath() throws Exception {
+        String keyPath = CHUNKS_PATH + "/" + KEY;
+        return keyPath + "/" + curator.getChildren(keyPath).iterator().next();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
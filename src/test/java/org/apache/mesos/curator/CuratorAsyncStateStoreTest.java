@@ -0,0 +1,173 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the operation of the {@link CuratorAsyncStateStore}.
+ */
+public class CuratorAsyncStateStoreTest {
+    private static final Protos.FrameworkID FRAMEWORK_ID =
+            Protos.FrameworkID.newBuilder().setValue("test-framework-id").build();
+    private static final String ROOT_ZK_PATH = "/test-root-path";
+
+    private static TestingServer testZk;
+    private CuratorAsyncStateStore store;
+    private CuratorStateStore syncStore;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        store = new CuratorAsyncStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        syncStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+    }
+
+    @After
+    public void afterEach() {
+        store.close();
+        syncStore.close();
+    }
+
+    @Test
+    public void testStoreFetchClearFrameworkId() throws Exception {
+        assertFalse(store.fetchFrameworkId().join().isPresent());
+        store.storeFrameworkId(FRAMEWORK_ID).join();
+        assertEquals(FRAMEWORK_ID, store.fetchFrameworkId().join().get());
+        assertEquals(FRAMEWORK_ID, syncStore.fetchFrameworkId().get());
+        store.clearFrameworkId().join();
+        assertFalse(store.fetchFrameworkId().join().isPresent());
+        store.clearFrameworkId().join();
+    }
+
+    @Test
+    public void testStoreFetchTasksAndStatuses() throws Exception {
+        Protos.TaskInfo taskInfoA = createTask("a");
+        Protos.TaskInfo taskInfoB = createTask("b");
+        assertTrue(store.fetchTaskNames().join().isEmpty());
+        assertTrue(store.fetchTasks().join().isEmpty());
+
+        store.storeTasks(Arrays.asList(taskInfoA, taskInfoB)).join();
+        Protos.TaskStatus status = createTaskStatus(taskInfoA.getTaskId(), Protos.TaskState.TASK_RUNNING);
+        store.storeStatus(status).join();
+
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(store.fetchTaskNames().join()));
+        assertEquals(
+                new HashSet<>(Arrays.asList(taskInfoA, taskInfoB)),
+                new HashSet<>(store.fetchTasks().join()));
+        assertEquals(taskInfoB, store.fetchTask("b").join().get());
+        assertEquals(Arrays.asList(status), store.fetchStatuses().join());
+        assertEquals(status, store.fetchStatus("a").join().get());
+        assertFalse(store.fetchStatus("b").join().isPresent());
+
+        // The layout is shared with CuratorStateStore.
+        assertEquals(status, syncStore.fetchStatus("a").get());
+
+        store.clearTask("a").join();
+        assertFalse(store.fetchTask("a").join().isPresent());
+        assertEquals(Arrays.asList("b"), store.fetchTaskNames().join());
+        store.clearTask("a").join();
+    }
+
+    @Test
+    public void testPipelinedStatusesAreAppliedInOrder() throws Exception {
+        Protos.TaskInfo taskInfo = createTask("a");
+        store.storeTasks(Arrays.asList(taskInfo)).join();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        Protos.TaskStatus lastStatus = null;
+        for (int i = 0; i < 50; i++) {
+            lastStatus = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_RUNNING).toBuilder()
+                    .setMessage(String.valueOf(i))
+                    .build();
+            futures.add(store.storeStatus(lastStatus));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.join();
+        }
+
+        assertEquals(lastStatus, store.fetchStatus("a").join().get());
+    }
+
+    @Test
+    public void testStoreStatusWithoutInfoFails() throws Exception {
+        Protos.TaskStatus status = createTaskStatus(TaskUtils.toTaskId("a"), Protos.TaskState.TASK_RUNNING);
+        assertFailsWithStateStoreException(store.storeStatus(status));
+        assertFalse(store.fetchStatus("a").join().isPresent());
+    }
+
+    @Test
+    public void testStoreStatusMismatchFails() throws Exception {
+        store.storeTasks(Arrays.asList(createTask("a"))).join();
+        Protos.TaskStatus status = createTaskStatus(TaskUtils.toTaskId("a"), Protos.TaskState.TASK_RUNNING);
+        assertFailsWithStateStoreException(store.storeStatus(status));
+    }
+
+    @Test
+    public void testStoreStatusBadTaskIdFails() throws Exception {
+        Protos.TaskStatus status = createTaskStatus(
+                Protos.TaskID.newBuilder().setValue("bad").build(), Protos.TaskState.TASK_RUNNING);
+        assertFailsWithStateStoreException(store.storeStatus(status));
+    }
+
+    @Test
+    public void testProperties() throws Exception {
+        assertTrue(store.fetchPropertyKeys().join().isEmpty());
+        store.storeProperty("hey", "DC/OS".getBytes(StandardCharsets.UTF_8)).join();
+        assertEquals("DC/OS", new String(store.fetchProperty("hey").join(), StandardCharsets.UTF_8));
+        assertEquals(Arrays.asList("hey"), new ArrayList<>(store.fetchPropertyKeys().join()));
+        store.clearProperty("hey").join();
+        assertTrue(store.fetchPropertyKeys().join().isEmpty());
+        store.clearProperty("hey").join();
+
+        assertFailsWithStateStoreException(store.fetchProperty("hey"));
+        assertFailsWithStateStoreException(store.storeProperty("hey/hi", new byte[1]));
+        assertFailsWithStateStoreException(store.clearProperty(" "));
+    }
+
+    @Test
+    public void testSharedWithStateStore() throws Exception {
+        Protos.TaskInfo taskInfo = createTask("a");
+        syncStore.storeTasks(Arrays.asList(taskInfo));
+        Protos.TaskStatus status = createTaskStatus(taskInfo.getTaskId(), Protos.TaskState.TASK_FINISHED);
+        syncStore.getAsyncStateStore().storeStatus(status).join();
+        assertEquals(status, syncStore.fetchStatus("a").get());
+    }
+
+    private static void assertFailsWithStateStoreException(CompletableFuture<?> future) {
+        try {
+            future.join();
+            fail("Expected failure");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof StateStoreException);
+        }
+    }
+
+    private static Protos.TaskStatus createTaskStatus(Protos.TaskID taskId, Protos.TaskState state) {
+        return Protos.TaskStatus.newBuilder().setTaskId(taskId).setState(state).build();
+    }
+
+    private static Protos.TaskInfo createTask(String taskName) {
+        return Protos.TaskInfo.newBuilder()
+                .setName(taskName)
+                .setTaskId(TaskUtils.toTaskId(taskName))
+                .setSlaveId(SlaveID.newBuilder().setValue("ignored")) // proto field required
+                .build();
+    }
+}
@@ -0,0 +1,97 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.framework.imps.CuratorFrameworkState;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.apache.zookeeper.KeeperException;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the operation of the {@link CuratorClientProvider}.
+ */
+public class CuratorClientProviderTest {
+    private static final String ROOT_ZK_PATH = "/test-root-path";
+    private static final String SCHEMA_VERSION_PATH = "/dcos-service-test-root-path/SchemaVersion";
+
+    private static TestingServer testZk;
+    private CuratorClientProvider provider;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        provider = new CuratorClientProvider();
+    }
+
+    @Test
+    public void testPersistersShareClientUntilAllClosed() throws Exception {
+        CuratorPersister first = getPersister();
+        CuratorPersister second = getPersister();
+        assertSame(first.getClient(), second.getClient());
+
+        first.close();
+        // Closing again doesn't release the client on behalf of the other persister:
+        first.close();
+        second.store("/root", new byte[0]);
+        assertEquals(CuratorFrameworkState.STARTED, second.getClient().getState());
+
+        second.close();
+        assertEquals(CuratorFrameworkState.STOPPED, second.getClient().getState());
+
+        CuratorPersister third = getPersister();
+        assertNotSame(first.getClient(), third.getClient());
+        assertEquals(0, third.fetch("/root").length);
+        third.close();
+    }
+
+    @Test
+    public void testSchemaVersionReadOnce() throws Exception {
+        CuratorPersister first = getPersister();
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION,
+                provider.migrateSchemaVersion(first, ROOT_ZK_PATH));
+        first.clear(SCHEMA_VERSION_PATH);
+
+        CuratorPersister second = getPersister();
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION,
+                provider.migrateSchemaVersion(second, ROOT_ZK_PATH));
+        try {
+            second.fetch(SCHEMA_VERSION_PATH);
+            fail("Expected exception");
+        } catch (KeeperException.NoNodeException e) {
+            // expected: the cached version was used
+        }
+        first.close();
+        second.close();
+
+        // A new client reads the version again:
+        CuratorPersister third = getPersister();
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION,
+                provider.migrateSchemaVersion(third, ROOT_ZK_PATH));
+        assertNotEquals(0, third.fetch(SCHEMA_VERSION_PATH).length);
+        third.close();
+    }
+
+    @Test
+    public void testStoresShareClient() throws Exception {
+        CuratorStateStore store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        CuratorStateStore otherStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        assertSame(store.curator.getClient(), otherStore.curator.getClient());
+        store.close();
+        otherStore.close();
+        assertEquals(CuratorFrameworkState.STOPPED, store.curator.getClient().getState());
+    }
+
+    private CuratorPersister getPersister() {
+        return provider.getPersister(testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+    }
+}
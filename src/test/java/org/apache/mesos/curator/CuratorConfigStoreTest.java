@@ -2,9 +2,11 @@ package org.apache.mesos.curator;
 
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
 import org.apache.mesos.config.ConfigStore;
 import org.apache.mesos.config.ConfigStoreException;
 import org.apache.mesos.config.StringConfiguration;
+import org.apache.mesos.offer.TaskUtils;
 import org.apache.mesos.storage.CuratorPersister;
 import org.apache.mesos.testing.CuratorTestUtils;
 import org.junit.After;
@@ -12,9 +14,7 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.UUID;
+import java.util.*;
 
 import static org.junit.Assert.*;
 
@@ -129,4 +129,69 @@ public class CuratorConfigStoreTest {
     public void testGetEmptyTargetConfig() throws Exception {
         store.getTargetConfig();
     }
+
+    @Test
+    public void testContentAddressedStoreConfig() throws Exception {
+        CuratorConfigStore<StringConfiguration> contentStore = new CuratorConfigStore<>(
+                ROOT_ZK_PATH, testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3), true);
+        UUID id = contentStore.store(testConfig);
+        assertEquals(id, contentStore.store(new StringConfiguration("test-config")));
+        assertNotEquals(id, contentStore.store(new StringConfiguration("other-config")));
+        assertEquals(2, contentStore.list().size());
+        assertEquals(testConfig, contentStore.fetch(id, configFactory));
+        contentStore.close();
+    }
+
+    @Test
+    public void testFetchedConfigIsCached() throws Exception {
+        UUID id = store.store(testConfig);
+        StringConfiguration config = store.fetch(id, configFactory);
+        assertSame(config, store.fetch(id, configFactory));
+
+        store.clear(id);
+        try {
+            store.fetch(id, configFactory);
+            fail("Expected exception");
+        } catch (ConfigStoreException e) {
+            // expected: the cached config was cleared along with the stored one
+        }
+    }
+
+    @Test
+    public void testClearUnreferenced() throws Exception {
+        UUID targetId = store.store(testConfig);
+        UUID taskConfigId = store.store(new StringConfiguration("task-config"));
+        UUID unreferencedId = store.store(new StringConfiguration("old-config"));
+        store.setTargetConfig(targetId);
+        Protos.TaskInfo task = TaskUtils.setTargetConfiguration(Protos.TaskInfo.newBuilder()
+                .setName("task")
+                .setTaskId(TaskUtils.toTaskId("task"))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue("ignored")) // proto field required
+                .build(), taskConfigId);
+
+        assertEquals(Arrays.asList(unreferencedId), store.listUnreferenced(Arrays.asList(task)));
+        assertEquals(Arrays.asList(unreferencedId), store.clearUnreferenced(Arrays.asList(task)));
+        assertEquals(new HashSet<>(Arrays.asList(targetId, taskConfigId)), new HashSet<>(store.list()));
+        assertTrue(store.clearUnreferenced(Arrays.asList(task)).isEmpty());
+    }
+
+    @Test
+    public void testStoredConfigRetainedUntilTargetSet() throws Exception {
+        CuratorConfigStore<StringConfiguration> contentStore = new CuratorConfigStore<>(
+                ROOT_ZK_PATH, testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3), true);
+        UUID oldId = contentStore.store(new StringConfiguration("old-config"));
+        UUID targetId = contentStore.store(testConfig);
+        contentStore.setTargetConfig(targetId);
+        contentStore.close();
+
+        // Storing an existing unreferenced config returns its ID, which must survive until it becomes the target:
+        contentStore = new CuratorConfigStore<>(
+                ROOT_ZK_PATH, testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3), true);
+        assertEquals(oldId, contentStore.store(new StringConfiguration("old-config")));
+        assertTrue(contentStore.clearUnreferenced(Collections.emptyList()).isEmpty());
+        contentStore.setTargetConfig(oldId);
+        assertEquals(Arrays.asList(targetId), contentStore.clearUnreferenced(Collections.emptyList()));
+        assertEquals(Arrays.asList(oldId), contentStore.list());
+        contentStore.close();
+    }
 }
@@ -0,0 +1,106 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Tests to validate the operation of the {@link CuratorLeaderElection}.
+ */
+public class CuratorLeaderElectionTest {
+    private static final String FRAMEWORK_NAME = "test-framework-name";
+
+    private static TestingServer testZk;
+    private List<CuratorLeaderElection> elections;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        elections = new ArrayList<>();
+    }
+
+    @After
+    public void afterEach() {
+        for (CuratorLeaderElection election : elections) {
+            election.close();
+        }
+    }
+
+    @Test
+    public void testStandbyElectedWhenLeaderLeaves() throws Exception {
+        LeadershipListener leaderListener = mock(LeadershipListener.class);
+        CuratorLeaderElection leader = createElection("leader");
+        leader.awaitLeadership(leaderListener);
+        assertTrue(leader.hasLeadership());
+
+        CuratorLeaderElection standby = createElection("standby");
+        CompletableFuture<Void> standbyElected = awaitLeadershipAsync(standby, mock(LeadershipListener.class));
+        try {
+            standbyElected.get(500, TimeUnit.MILLISECONDS);
+            fail("Expected timeout");
+        } catch (TimeoutException e) {
+            // expected: the leader is still present
+        }
+        assertFalse(standby.hasLeadership());
+
+        leader.close();
+        standbyElected.get(5, TimeUnit.SECONDS);
+        assertTrue(standby.hasLeadership());
+        assertFalse(leader.hasLeadership());
+        // Leaving the election isn't reported as a loss.
+        verifyZeroInteractions(leaderListener);
+    }
+
+    @Test
+    public void testLeaderPausedWhileConnectionSuspended() throws Exception {
+        LeadershipListener listener = mock(LeadershipListener.class);
+        CuratorLeaderElection leader = createElection("leader");
+        leader.awaitLeadership(listener);
+
+        testZk.stop();
+        try {
+            verify(listener, timeout(10000)).onSuspended();
+            assertFalse(leader.hasLeadership());
+        } finally {
+            testZk.restart();
+        }
+
+        // The session outlived the suspension, and no other instance was elected meanwhile.
+        verify(listener, timeout(10000)).onResumed();
+        assertTrue(leader.hasLeadership());
+        verify(listener, never()).onLost();
+    }
+
+    private CuratorLeaderElection createElection(String participantId) {
+        CuratorPersister curator = new CuratorPersister(
+                testZk.getConnectString(), new ExponentialBackoffRetry(100, 1));
+        CuratorLeaderElection election = new CuratorLeaderElection(curator, FRAMEWORK_NAME, participantId);
+        elections.add(election);
+        return election;
+    }
+
+    private static CompletableFuture<Void> awaitLeadershipAsync(
+            CuratorLeaderElection election, LeadershipListener listener) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                election.awaitLeadership(listener);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+}
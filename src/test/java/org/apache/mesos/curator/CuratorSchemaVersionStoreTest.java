@@ -63,10 +63,10 @@ public class CuratorSchemaVersionStoreTest {
         // not initialized until first fetch:
         assertFalse(directHasVersion());
 
-        assertEquals(1, store.fetch());
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION, store.fetch());
 
         // check that underlying storage now has the data:
-        assertEquals(1, getDirectVersion());
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION, getDirectVersion());
     }
 
     @Test
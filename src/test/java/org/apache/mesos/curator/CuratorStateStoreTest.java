@@ -1,5 +1,6 @@
 package org.apache.mesos.curator;
 
+import com.google.common.io.ByteStreams;
 import org.apache.curator.retry.ExponentialBackoffRetry;
 import org.apache.curator.test.TestingServer;
 import org.apache.mesos.Protos;
@@ -7,10 +8,13 @@ import org.apache.mesos.Protos.SlaveID;
 import org.apache.mesos.offer.TaskUtils;
 import org.apache.mesos.state.StateStore;
 import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StoredTask;
 import org.apache.mesos.storage.CuratorPersister;
 import org.apache.mesos.testing.CuratorTestUtils;
 import org.junit.*;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 
@@ -57,6 +61,22 @@ public class CuratorStateStoreTest {
         ((CuratorStateStore) store).close();
     }
 
+    @Test
+    public void testExistingBucketsNotRewritten() throws Exception {
+        CuratorPersister curator = new CuratorPersister(
+                testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+        String bucketsPath = "/dcos-service-test-root-path/TaskBuckets";
+        assertEquals(CuratorStateStore.TaskPathMapper.BUCKET_COUNT, curator.getChildren(bucketsPath).size());
+        long bucketMzxid = curator.getClient().checkExists().forPath(bucketsPath + "/00").getMzxid();
+        curator.clear(bucketsPath + "/3f");
+
+        // Opening another store only recreates the missing bucket.
+        new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString()).close();
+        assertEquals(CuratorStateStore.TaskPathMapper.BUCKET_COUNT, curator.getChildren(bucketsPath).size());
+        assertEquals(bucketMzxid, curator.getClient().checkExists().forPath(bucketsPath + "/00").getMzxid());
+        curator.close();
+    }
+
     @Test
     public void testStoreFetchFrameworkId() throws Exception {
         store.storeFrameworkId(FRAMEWORK_ID);
@@ -368,6 +388,56 @@ public class CuratorStateStoreTest {
         store.storeStatus(status);
     }
 
+    @Test
+    public void testStoreStatusRejectedAfterTaskInfoUpdatedElsewhere() throws Exception {
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        store.storeTasks(Arrays.asList(task));
+        Protos.TaskStatus status = createTaskStatus(task.getTaskId());
+        store.storeStatus(status);
+
+        // Another store replaces the TaskInfo, which this store only knows from its own writes:
+        CuratorStateStore otherStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        Protos.TaskInfo taskNewId = createTask(TASK_NAME);
+        otherStore.storeTasks(Arrays.asList(taskNewId));
+        otherStore.close();
+
+        try {
+            store.storeStatus(status);
+            fail("Expected exception");
+        } catch (StateStoreException e) {
+            // expected
+        }
+        Protos.TaskStatus statusNewId = createTaskStatus(taskNewId.getTaskId());
+        store.storeStatus(statusNewId);
+        assertEquals(statusNewId, store.fetchStatus(TASK_NAME).get());
+        assertEquals(taskNewId, store.fetchTask(TASK_NAME).get());
+    }
+
+    @Test(expected=StateStoreException.class)
+    public void testStoreStatusRejectedAfterTaskClearedElsewhere() throws Exception {
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        store.storeTasks(Arrays.asList(task));
+
+        CuratorStateStore otherStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        otherStore.clearTask(TASK_NAME);
+        otherStore.close();
+
+        store.storeStatus(createTaskStatus(task.getTaskId()));
+    }
+
+    @Test
+    public void testStoreStatusForTaskStoredBeforeStart() throws Exception {
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        store.storeTasks(Arrays.asList(task));
+        ((CuratorStateStore) store).close();
+
+        store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        Protos.TaskStatus status = createTaskStatus(task.getTaskId());
+        store.storeStatus(status);
+        assertEquals(status, store.fetchStatus(TASK_NAME).get());
+        assertEquals(task, store.fetchTask(TASK_NAME).get());
+    }
+
     // taskid is required and cannot be unset, so lets try the next best thing
     @Test(expected=StateStoreException.class)
     public void testStoreStatusEmptyTaskId() throws Exception {
@@ -443,6 +513,36 @@ public class CuratorStateStoreTest {
         assertTrue(store.fetchPropertyKeys().isEmpty());
     }
 
+    @Test
+    public void testStreamedPropertyExceedsValueLimit() throws Exception {
+        byte[] value = new byte[3 * 1024 * 1024];
+        new Random(0).nextBytes(value);
+        store.storeProperty(GOOD_PROPERTY_KEY, PROPERTY_VALUE.getBytes(StandardCharsets.UTF_8));
+        try (OutputStream stream = store.openPropertyOutputStream(GOOD_PROPERTY_KEY)) {
+            stream.write(value);
+        }
+
+        try (InputStream stream = store.openPropertyInputStream(GOOD_PROPERTY_KEY)) {
+            assertArrayEquals(value, ByteStreams.toByteArray(stream));
+        }
+        assertArrayEquals(value, store.fetchProperty(GOOD_PROPERTY_KEY));
+        assertEquals(Arrays.asList(GOOD_PROPERTY_KEY), new ArrayList<>(store.fetchPropertyKeys()));
+
+        // A plain value replaces the streamed value:
+        store.storeProperty(GOOD_PROPERTY_KEY, PROPERTY_VALUE.getBytes(StandardCharsets.UTF_8));
+        try (InputStream stream = store.openPropertyInputStream(GOOD_PROPERTY_KEY)) {
+            assertEquals(PROPERTY_VALUE, new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8));
+        }
+
+        store.clearProperty(GOOD_PROPERTY_KEY);
+        assertTrue(store.fetchPropertyKeys().isEmpty());
+    }
+
+    @Test(expected = StateStoreException.class)
+    public void testStreamedPropertyMissing() throws Exception {
+        store.openPropertyInputStream(GOOD_PROPERTY_KEY);
+    }
+
     @Test
     public void testPropertiesListEmpty() {
         assertTrue(store.fetchPropertyKeys().isEmpty());
@@ -503,6 +603,225 @@ public class CuratorStateStoreTest {
         assertEquals(testTask, store.fetchTasksNeedingRecovery().iterator().next());
     }
 
+    @Test
+    public void testStoreTasksAndStatuses() throws Exception {
+        Protos.TaskInfo existingTask = createTask("existing");
+        store.storeTasks(Arrays.asList(existingTask));
+
+        Protos.TaskInfo relaunchedTask = createTask("existing");
+        Protos.TaskInfo newTask = createTask("new");
+        Protos.TaskStatus relaunchedStatus = createTaskStatus(relaunchedTask.getTaskId());
+        Protos.TaskStatus newStatus = createTaskStatus(newTask.getTaskId());
+        store.storeTasksAndStatuses(
+                Arrays.asList(relaunchedTask, newTask),
+                Arrays.asList(relaunchedStatus, newStatus));
+
+        assertEquals(relaunchedTask, store.fetchTask("existing").get());
+        assertEquals(relaunchedStatus, store.fetchStatus("existing").get());
+        assertEquals(newTask, store.fetchTask("new").get());
+        assertEquals(newStatus, store.fetchStatus("new").get());
+    }
+
+    @Test
+    public void testStoreTasksAndStatusesForStoredTask() throws Exception {
+        Protos.TaskInfo storedTask = createTask("stored");
+        store.storeTasks(Arrays.asList(storedTask));
+
+        Protos.TaskStatus status = createTaskStatus(storedTask.getTaskId());
+        store.storeTasksAndStatuses(Collections.emptyList(), Arrays.asList(status));
+        assertEquals(status, store.fetchStatus("stored").get());
+    }
+
+    @Test
+    public void testStoreTasksAndStatusesMismatchStoresNothing() throws Exception {
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        try {
+            store.storeTasksAndStatuses(
+                    Arrays.asList(task),
+                    Arrays.asList(createTaskStatus(TaskUtils.toTaskId(TASK_NAME))));
+            fail("Expected a mismatched Task ID to be rejected");
+        } catch (StateStoreException e) {
+            // expected
+        }
+
+        assertFalse(store.fetchTask(TASK_NAME).isPresent());
+        assertTrue(store.fetchTaskNames().isEmpty());
+    }
+
+    @Test
+    public void testFetchStoredTasks() throws Exception {
+        assertTrue(store.fetchStoredTasks().isEmpty());
+
+        Protos.TaskInfo taskA = createTask("a");
+        Protos.TaskInfo taskB = createTask("b");
+        store.storeTasks(Arrays.asList(taskA, taskB));
+        Protos.TaskStatus statusA = createTaskStatus(taskA.getTaskId());
+        store.storeStatus(statusA);
+
+        assertEquals(
+                new HashSet<>(Arrays.asList(
+                        new StoredTask(taskA, Optional.of(statusA)),
+                        new StoredTask(taskB, Optional.empty()))),
+                new HashSet<>(store.fetchStoredTasks()));
+
+        // The status of a relaunched Task is kept, but is no longer current.
+        Protos.TaskInfo relaunchedTaskA = createTask("a");
+        store.storeTasks(Arrays.asList(relaunchedTaskA));
+        for (StoredTask storedTask : store.fetchStoredTasks()) {
+            if (storedTask.getName().equals("a")) {
+                assertEquals(statusA, storedTask.getStatus().get());
+                assertFalse(storedTask.getCurrentStatus().isPresent());
+            }
+        }
+    }
+
+    @Test
+    public void testFetchManyTasksAndStatuses() throws Exception {
+        List<Protos.TaskInfo> tasks = new ArrayList<>();
+        List<Protos.TaskStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Protos.TaskInfo task = createTask("task-" + i);
+            tasks.add(task);
+            if (i % 2 == 0) {
+                statuses.add(createTaskStatus(task.getTaskId()));
+            }
+        }
+        store.storeTasks(tasks);
+        for (Protos.TaskStatus status : statuses) {
+            store.storeStatus(status);
+        }
+
+        assertEquals(new HashSet<>(tasks), new HashSet<>(store.fetchTasks()));
+        assertEquals(new HashSet<>(statuses), new HashSet<>(store.fetchStatuses()));
+        assertEquals(300, store.fetchStoredTasks().size());
+    }
+
+    @Test
+    public void testTasksShareCommandBlob() throws Exception {
+        Protos.CommandInfo command = Protos.CommandInfo.newBuilder().setValue("./run-server").build();
+        List<Protos.TaskInfo> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(createTask("task-" + i).toBuilder().setCommand(command).build());
+        }
+        store.storeTasks(tasks);
+        assertEquals(new HashSet<>(tasks), new HashSet<>(store.fetchTasks()));
+
+        CuratorPersister curator = new CuratorPersister(
+                testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+        String blobsPath = "/dcos-service-test-root-path/" + TaskBlobStore.TASK_BLOBS_ROOT_NAME;
+        assertEquals(1, curator.getChildren(blobsPath).size());
+
+        // The blob of the replaced command is deleted by the next garbage collection, which creating a store skips:
+        Protos.CommandInfo newCommand = command.toBuilder().setValue("./run-server --verbose").build();
+        List<Protos.TaskInfo> updatedTasks = new ArrayList<>();
+        for (Protos.TaskInfo task : tasks) {
+            updatedTasks.add(task.toBuilder().setCommand(newCommand).build());
+        }
+        store.storeTasks(updatedTasks);
+        assertEquals(2, curator.getChildren(blobsPath).size());
+        ((CuratorStateStore) store).close();
+        store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        assertEquals(2, curator.getChildren(blobsPath).size());
+        ((CuratorStateStore) store).collectGarbage();
+        assertEquals(1, curator.getChildren(blobsPath).size());
+        assertEquals(new HashSet<>(updatedTasks), new HashSet<>(store.fetchTasks()));
+        curator.close();
+    }
+
+    @Test
+    public void testIndexedLookups() throws Exception {
+        UUID targetConfig = UUID.randomUUID();
+        UUID oldConfig = UUID.randomUUID();
+        Protos.TaskInfo taskA = TaskUtils.setTargetConfiguration(createTask("a", "agent-1"), targetConfig);
+        Protos.TaskInfo taskB = TaskUtils.setTargetConfiguration(createTask("b", "agent-2"), oldConfig);
+        Protos.TaskInfo taskC = createTask("c", "agent-1");
+        Protos.TaskStatus statusA = createTaskStatus(taskA.getTaskId(), Protos.TaskState.TASK_RUNNING);
+        Protos.TaskStatus statusB = createTaskStatus(taskB.getTaskId(), Protos.TaskState.TASK_FAILED);
+        store.storeTasksAndStatuses(Arrays.asList(taskA, taskB, taskC), Arrays.asList(statusA, statusB));
+
+        assertEquals(asSet(taskA, taskC), new HashSet<>(store.fetchTasksOnAgent(toAgentId("agent-1"))));
+        assertTrue(store.fetchTasksOnAgent(toAgentId("agent-3")).isEmpty());
+        assertEquals(asSet(new StoredTask(taskA, Optional.of(statusA))),
+                new HashSet<>(store.fetchTasksInState(Protos.TaskState.TASK_RUNNING)));
+        assertEquals(asSet(taskB), new HashSet<>(store.fetchTasksNeedingRecovery()));
+        assertEquals(asSet(taskA), new HashSet<>(store.fetchTasksWithTargetConfiguration(targetConfig)));
+        assertEquals(asSet(taskB, taskC), new HashSet<>(store.fetchTasksNotOnTargetConfiguration(targetConfig)));
+
+        // A relaunched Task has no current status, and is updated to the target:
+        Protos.TaskInfo relaunchedTaskB = TaskUtils.setTargetConfiguration(createTask("b", "agent-3"), targetConfig);
+        store.storeTasks(Arrays.asList(relaunchedTaskB));
+        store.clearTask("c");
+        assertEquals(asSet(taskA), new HashSet<>(store.fetchTasksOnAgent(toAgentId("agent-1"))));
+        assertEquals(asSet(relaunchedTaskB), new HashSet<>(store.fetchTasksOnAgent(toAgentId("agent-3"))));
+        assertTrue(store.fetchTasksNeedingRecovery().isEmpty());
+        assertTrue(store.fetchTasksInState(Protos.TaskState.TASK_FAILED).isEmpty());
+        assertEquals(asSet(taskA, relaunchedTaskB),
+                new HashSet<>(store.fetchTasksWithTargetConfiguration(targetConfig)));
+        assertTrue(store.fetchTasksNotOnTargetConfiguration(targetConfig).isEmpty());
+    }
+
+    @Test
+    public void testIndexRebuiltOnStartupAndUpdatedByOtherStores() throws Exception {
+        Protos.TaskInfo taskA = createTask("a", "agent-1");
+        Protos.TaskStatus statusA = createTaskStatus(taskA.getTaskId(), Protos.TaskState.TASK_LOST);
+        store.storeTasksAndStatuses(Arrays.asList(taskA), Arrays.asList(statusA));
+        ((CuratorStateStore) store).close();
+
+        store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        assertEquals(asSet(taskA), new HashSet<>(store.fetchTasksNeedingRecovery()));
+        assertEquals(asSet(taskA), new HashSet<>(store.fetchTasksOnAgent(toAgentId("agent-1"))));
+
+        CuratorStateStore otherStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        Protos.TaskInfo taskB = createTask("b", "agent-1");
+        otherStore.storeTasks(Arrays.asList(taskB));
+        otherStore.storeStatus(createTaskStatus(taskA.getTaskId(), Protos.TaskState.TASK_RUNNING));
+        otherStore.close();
+        // Changes by other stores are indexed once their watch events are received:
+        for (int i = 0; i < 100 && !store.fetchTasksNeedingRecovery().isEmpty(); i++) {
+            Thread.sleep(100);
+        }
+        assertTrue(store.fetchTasksNeedingRecovery().isEmpty());
+        for (int i = 0; i < 100 && store.fetchTasksOnAgent(toAgentId("agent-1")).size() < 2; i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(asSet(taskA, taskB), new HashSet<>(store.fetchTasksOnAgent(toAgentId("agent-1"))));
+    }
+
+    @Test
+    public void testIndexUpdatedByAsyncWrites() throws Exception {
+        CuratorStateStore curatorStore = (CuratorStateStore) store;
+        Protos.TaskInfo taskA = createTask("a", "agent-1");
+        store.storeTasks(Arrays.asList(taskA));
+        assertTrue(store.fetchTasksNeedingRecovery().isEmpty());
+        for (int i = 0; i < 100 && !curatorStore.changeFeed.queryIndex(index -> new HashSet<>()).isPresent(); i++) {
+            Thread.sleep(100);
+        }
+
+        // Writes through the async store are indexed once their futures complete, without awaiting watch events:
+        curatorStore.getAsyncStateStore()
+                .storeStatus(createTaskStatus(taskA.getTaskId(), Protos.TaskState.TASK_FAILED)).join();
+        assertEquals(asSet(taskA), new HashSet<>(store.fetchTasksNeedingRecovery()));
+        curatorStore.getAsyncStateStore().clearTask("a").join();
+        assertTrue(store.fetchTasksNeedingRecovery().isEmpty());
+    }
+
+    private static Protos.TaskStatus createTaskStatus(Protos.TaskID taskId, Protos.TaskState state) {
+        return TASK_STATUS.toBuilder().setTaskId(taskId).setState(state).build();
+    }
+
+    private static Protos.TaskInfo createTask(String taskName, String agentId) {
+        return createTask(taskName).toBuilder().setSlaveId(toAgentId(agentId)).build();
+    }
+
+    private static SlaveID toAgentId(String agentId) {
+        return SlaveID.newBuilder().setValue(agentId).build();
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> asSet(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
     private static Protos.TaskStatus createTaskStatus(Protos.TaskID taskId) {
         return TASK_STATUS.toBuilder().setTaskId(taskId).build();
     }
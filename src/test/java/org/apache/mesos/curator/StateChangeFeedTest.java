@@ -0,0 +1,209 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.AsyncStateStore;
+import org.apache.mesos.state.BlockingStateStore;
+import org.apache.mesos.state.StateStore;
+import org.apache.mesos.state.StateStoreListener;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests to validate the changes reported to the {@link StateStoreListener}s of a {@link CuratorStateStore}.
+ */
+public class StateChangeFeedTest {
+    private static final String ROOT_ZK_PATH = "/test-root-path";
+    private static final String TASK_NAME = "test-task-name";
+    private static final long EVENT_TIMEOUT_MS = 10000;
+    // How long to wait for events which must not be reported, eg the watch event which echoes a local write:
+    private static final long NO_EVENT_TIMEOUT_MS = 500;
+
+    private static TestingServer testZk;
+    private CuratorStateStore store;
+    private CuratorStateStore otherStore;
+    private RecordingListener listener;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        otherStore = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        listener = new RecordingListener();
+    }
+
+    @After
+    public void afterEach() {
+        store.close();
+        otherStore.close();
+    }
+
+    @Test
+    public void testLocalWritesReportedOnce() throws Exception {
+        store.subscribe(listener);
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        Protos.TaskStatus status = createTaskStatus(task);
+
+        store.storeTasks(Arrays.asList(task));
+        assertEquals("task:" + task.getTaskId().getValue(), listener.next());
+        store.storeStatus(status);
+        assertEquals("status:" + status.getState(), listener.next());
+        store.storeProperty("key", toBytes("value"));
+        assertEquals("property:key=value", listener.next());
+        store.clearProperty("key");
+        assertEquals("property:key cleared", listener.next());
+        store.clearTask(TASK_NAME);
+        assertEquals("cleared:" + TASK_NAME, listener.next());
+
+        store.storeTasks(Arrays.asList(task));
+        assertEquals("task:" + task.getTaskId().getValue(), listener.next());
+        // Writing the same TaskInfo again is not a change:
+        store.storeTasks(Arrays.asList(task));
+        listener.assertNoMoreEvents();
+    }
+
+    @Test
+    public void testExternalWritesReported() throws Exception {
+        store.subscribe(listener);
+        Protos.TaskInfo task = createTask(TASK_NAME).toBuilder()
+                .setCommand(Protos.CommandInfo.newBuilder().setValue("./run-server"))
+                .build();
+        Protos.TaskStatus status = createTaskStatus(task);
+
+        otherStore.storeTasksAndStatuses(Arrays.asList(task), Arrays.asList(status));
+        assertEquals("task:" + task.getTaskId().getValue(), listener.next());
+        assertEquals(task, listener.lastTaskInfo);
+        assertEquals("status:" + status.getState(), listener.next());
+        otherStore.storeProperty("key", toBytes("value"));
+        assertEquals("property:key=value", listener.next());
+        otherStore.clearTask(TASK_NAME);
+        assertEquals("cleared:" + TASK_NAME, listener.next());
+        listener.assertNoMoreEvents();
+    }
+
+    @Test
+    public void testOnlyChangesAfterSubscribingReported() throws Exception {
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        store.storeTasks(Arrays.asList(task));
+        store.storeProperty("key", toBytes("value"));
+
+        store.subscribe(listener);
+        store.storeProperty("key", toBytes("value"));
+        Protos.TaskStatus status = createTaskStatus(task);
+        store.storeStatus(status);
+        assertEquals("status:" + status.getState(), listener.next());
+        listener.assertNoMoreEvents();
+
+        store.unsubscribe(listener);
+        store.storeStatus(status.toBuilder().setState(Protos.TaskState.TASK_FINISHED).build());
+        listener.assertNoMoreEvents();
+    }
+
+    @Test
+    public void testListenersInvokedWithoutHoldingFeed() throws Exception {
+        store.subscribe(listener);
+        CompletableFuture<Collection<Protos.TaskInfo>> otherThreadRead = new CompletableFuture<>();
+        store.subscribe(new StateStoreListener() {
+            @Override
+            public void onStatusStored(Protos.TaskStatus status) {
+                // Reads the index from another thread, which would wait forever if the feed was held while notifying.
+                try {
+                    otherThreadRead.complete(CompletableFuture.supplyAsync(store::fetchTasksNeedingRecovery)
+                            .get(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                } catch (Exception e) {
+                    otherThreadRead.completeExceptionally(e);
+                }
+            }
+        });
+
+        Protos.TaskInfo task = createTask(TASK_NAME);
+        store.storeTasks(Arrays.asList(task));
+        store.storeStatus(createTaskStatus(task).toBuilder().setState(Protos.TaskState.TASK_FAILED).build());
+        assertEquals(Arrays.asList(task), otherThreadRead.get(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDefaultStoreIgnoresListeners() throws Exception {
+        StateStore defaultStore = new BlockingStateStore(mock(AsyncStateStore.class));
+        assertFalse(defaultStore.isSubscribable());
+        defaultStore.subscribe(listener);
+        defaultStore.unsubscribe(listener);
+        assertTrue(store.isSubscribable());
+    }
+
+    private static Protos.TaskInfo createTask(String taskName) {
+        return Protos.TaskInfo.newBuilder()
+                .setName(taskName)
+                .setTaskId(TaskUtils.toTaskId(taskName))
+                .setSlaveId(SlaveID.newBuilder().setValue("ignored")) // proto field required
+                .build();
+    }
+
+    private static Protos.TaskStatus createTaskStatus(Protos.TaskInfo task) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(task.getTaskId())
+                .setState(Protos.TaskState.TASK_RUNNING)
+                .build();
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class RecordingListener implements StateStoreListener {
+        private final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        private volatile Protos.TaskInfo lastTaskInfo;
+
+        @Override
+        public void onTaskStored(Protos.TaskInfo taskInfo) {
+            lastTaskInfo = taskInfo;
+            events.add("task:" + taskInfo.getTaskId().getValue());
+        }
+
+        @Override
+        public void onStatusStored(Protos.TaskStatus status) {
+            events.add("status:" + status.getState());
+        }
+
+        @Override
+        public void onTaskCleared(String taskName) {
+            events.add("cleared:" + taskName);
+        }
+
+        @Override
+        public void onPropertyChanged(String key, Optional<byte[]> value) {
+            events.add(value.isPresent()
+                    ? "property:" + key + "=" + new String(value.get(), StandardCharsets.UTF_8)
+                    : "property:" + key + " cleared");
+        }
+
+        private String next() throws InterruptedException {
+            String event = events.poll(EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("Expected an event", event);
+            return event;
+        }
+
+        private void assertNoMoreEvents() throws InterruptedException {
+            assertNull(events.poll(NO_EVENT_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+}
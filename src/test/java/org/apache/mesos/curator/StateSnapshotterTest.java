@@ -0,0 +1,200 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
+import org.apache.mesos.config.StringConfiguration;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+import org.mockito.ArgumentMatcher;
+import org.mockito.InOrder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+
+/**
+ * Tests to validate the export and restore of snapshots by the {@link StateSnapshotter}.
+ */
+public class StateSnapshotterTest {
+    private static final String SOURCE_FRAMEWORK = "source-framework";
+    private static final String TARGET_FRAMEWORK = "target-framework";
+    private static final String TARGET_ROOT_PATH = "/dcos-service-target-framework";
+
+    private static TestingServer testZk;
+    private CuratorPersister curator;
+    private StateSnapshotter snapshotter;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        curator = new CuratorPersister(testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+        snapshotter = new StateSnapshotter(curator);
+    }
+
+    @After
+    public void afterEach() {
+        snapshotter.close();
+    }
+
+    @Test
+    public void testExportRestore() throws Exception {
+        List<Protos.TaskInfo> tasks = new ArrayList<>();
+        List<Protos.TaskStatus> statuses = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Protos.TaskInfo task = createTask("task-" + i);
+            tasks.add(task);
+            statuses.add(Protos.TaskStatus.newBuilder()
+                    .setTaskId(task.getTaskId())
+                    .setState(Protos.TaskState.TASK_RUNNING)
+                    .build());
+        }
+        byte[] largeProperty = new byte[2 * 1024 * 1024];
+        new Random(0).nextBytes(largeProperty);
+
+        CuratorStateStore sourceStore = new CuratorStateStore(SOURCE_FRAMEWORK, testZk.getConnectString());
+        sourceStore.storeFrameworkId(Protos.FrameworkID.newBuilder().setValue("framework-id").build());
+        sourceStore.storeTasksAndStatuses(tasks, statuses);
+        sourceStore.storeProperty("key", "value".getBytes(StandardCharsets.UTF_8));
+        try (OutputStream output = sourceStore.openPropertyOutputStream("large")) {
+            output.write(largeProperty);
+        }
+        CuratorConfigStore<StringConfiguration> sourceConfigStore =
+                new CuratorConfigStore<>(SOURCE_FRAMEWORK, testZk.getConnectString());
+        UUID configId = sourceConfigStore.store(new StringConfiguration("config"));
+        sourceConfigStore.setTargetConfig(configId);
+
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        long nodeCount = snapshotter.export(SOURCE_FRAMEWORK, snapshot);
+        assertEquals(nodeCount,
+                snapshotter.restore(TARGET_FRAMEWORK, new ByteArrayInputStream(snapshot.toByteArray())));
+
+        CuratorStateStore targetStore = new CuratorStateStore(TARGET_FRAMEWORK, testZk.getConnectString());
+        assertEquals(sourceStore.fetchFrameworkId(), targetStore.fetchFrameworkId());
+        assertEquals(new HashSet<>(sourceStore.fetchStoredTasks()), new HashSet<>(targetStore.fetchStoredTasks()));
+        assertEquals(200, targetStore.fetchStoredTasks().size());
+        assertEquals("value", new String(targetStore.fetchProperty("key"), StandardCharsets.UTF_8));
+        assertArrayEquals(largeProperty, targetStore.fetchProperty("large"));
+        CuratorConfigStore<StringConfiguration> targetConfigStore =
+                new CuratorConfigStore<>(TARGET_FRAMEWORK, testZk.getConnectString());
+        assertEquals(configId, targetConfigStore.getTargetConfig());
+        assertEquals(new StringConfiguration("config"),
+                targetConfigStore.fetch(configId, new StringConfiguration.Factory()));
+
+        sourceStore.close();
+        sourceConfigStore.close();
+        targetStore.close();
+        targetConfigStore.close();
+    }
+
+    @Test
+    public void testRestoreRefusesExistingFramework() throws Exception {
+        byte[] snapshot = exportSimpleFramework();
+        curator.store(TARGET_ROOT_PATH + "/FrameworkID", new byte[] {1});
+        try {
+            snapshotter.restore(TARGET_FRAMEWORK, new ByteArrayInputStream(snapshot));
+            fail("Expected exception");
+        } catch (IOException e) {
+            // expected
+        }
+        assertArrayEquals(new byte[] {1}, curator.fetch(TARGET_ROOT_PATH + "/FrameworkID"));
+    }
+
+    @Test
+    public void testLeaderElectionIsNotExported() throws Exception {
+        CuratorLeaderElection leaderElection = new CuratorLeaderElection(
+                new CuratorPersister(testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3)),
+                SOURCE_FRAMEWORK,
+                "leader");
+        leaderElection.awaitLeadership(mock(LeadershipListener.class));
+        byte[] snapshot = exportSimpleFramework();
+        leaderElection.close();
+
+        snapshotter.restore(TARGET_FRAMEWORK, new ByteArrayInputStream(snapshot));
+        assertFalse(curator.getChildren(TARGET_ROOT_PATH).contains(CuratorLeaderElection.LEADER_LATCH_ROOT_NAME));
+        assertFalse(curator.getChildren(TARGET_ROOT_PATH).isEmpty());
+    }
+
+    @Test
+    public void testInvalidSnapshotIsNotRestored() throws Exception {
+        byte[] snapshot = exportSimpleFramework();
+
+        byte[] truncated = Arrays.copyOf(snapshot, snapshot.length / 2);
+        assertRestoreFails(truncated);
+        byte[] corrupt = snapshot.clone();
+        corrupt[corrupt.length / 2] ^= 1;
+        assertRestoreFails(corrupt);
+        assertRestoreFails("not a snapshot".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRecordsExportedBeforeBlobs() throws Exception {
+        CuratorStateStore sourceStore = new CuratorStateStore(SOURCE_FRAMEWORK, testZk.getConnectString());
+        sourceStore.storeTasks(Arrays.asList(createTask("task")));
+        sourceStore.close();
+
+        CuratorPersister spyCurator = spy(curator);
+        new StateSnapshotter(spyCurator).export(SOURCE_FRAMEWORK, new ByteArrayOutputStream());
+        InOrder inOrder = inOrder(spyCurator);
+        inOrder.verify(spyCurator).fetchAll(argThat(containsPathUnder("TaskBuckets")));
+        inOrder.verify(spyCurator).fetchAll(argThat(containsPathUnder(TaskBlobStore.TASK_BLOBS_ROOT_NAME)));
+    }
+
+    private static ArgumentMatcher<Collection<String>> containsPathUnder(String rootName) {
+        return new ArgumentMatcher<Collection<String>>() {
+            @Override
+            public boolean matches(Object paths) {
+                for (String path : (Collection<String>) paths) {
+                    if (path.contains("/" + rootName + "/")) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+        };
+    }
+
+    private void assertRestoreFails(byte[] snapshot) throws Exception {
+        try {
+            snapshotter.restore(TARGET_FRAMEWORK, new ByteArrayInputStream(snapshot));
+            fail("Expected exception");
+        } catch (IOException e) {
+            // expected
+        }
+        assertNull(curator.getClient().checkExists().forPath(TARGET_ROOT_PATH));
+    }
+
+    private byte[] exportSimpleFramework() throws Exception {
+        CuratorStateStore sourceStore = new CuratorStateStore(SOURCE_FRAMEWORK, testZk.getConnectString());
+        sourceStore.storeTasks(Arrays.asList(createTask("task")));
+        sourceStore.close();
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        snapshotter.export(SOURCE_FRAMEWORK, snapshot);
+        return snapshot.toByteArray();
+    }
+
+    private static Protos.TaskInfo createTask(String taskName) {
+        return Protos.TaskInfo.newBuilder()
+                .setName(taskName)
+                .setTaskId(TaskUtils.toTaskId(taskName))
+                .setSlaveId(Protos.SlaveID.newBuilder().setValue("ignored")) // proto field required
+                .setCommand(Protos.CommandInfo.newBuilder().setValue("./run-server"))
+                .build();
+    }
+}
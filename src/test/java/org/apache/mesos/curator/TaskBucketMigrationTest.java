@@ -0,0 +1,142 @@
+package org.apache.mesos.curator;
+
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.StoredTask;
+import org.apache.mesos.storage.CuratorPersister;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the migration of schema version 1 to the bucketed layout of {@link CuratorStateStore}.
+ */
+public class TaskBucketMigrationTest {
+    private static final String ROOT_ZK_PATH = "/test-root-path";
+    private static final String SERVICE_ROOT_PATH = "/dcos-service-test-root-path";
+    private static final String TASKS_ROOT_PATH = SERVICE_ROOT_PATH + "/Tasks";
+
+    private static TestingServer testZk;
+    private CuratorPersister curator;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        curator = new CuratorPersister(testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+    }
+
+    @After
+    public void afterEach() {
+        curator.close();
+    }
+
+    @Test
+    public void testMigrateVersion1() throws Exception {
+        Protos.TaskInfo taskA = createTask("task-a");
+        Protos.TaskInfo taskB = createTask("task-b");
+        Protos.TaskStatus statusA = createStatus("task-a");
+        storeVersion(1);
+        curator.store(TASKS_ROOT_PATH + "/task-a/TaskInfo", taskA.toByteArray());
+        curator.store(TASKS_ROOT_PATH + "/task-a/TaskStatus", statusA.toByteArray());
+        curator.store(TASKS_ROOT_PATH + "/task-b/TaskInfo", taskB.toByteArray());
+        // A Task node without a TaskInfo was never readable as a Task:
+        curator.store(TASKS_ROOT_PATH + "/task-c/TaskStatus", createStatus("task-c").toByteArray());
+
+        CuratorStateStore store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        try {
+            assertEquals(new HashSet<>(Arrays.asList("task-a", "task-b")), new HashSet<>(store.fetchTaskNames()));
+            assertEquals(
+                    new HashSet<>(Arrays.asList(
+                            new StoredTask(taskA, Optional.of(statusA)),
+                            new StoredTask(taskB, Optional.empty()))),
+                    new HashSet<>(store.fetchStoredTasks()));
+            assertEquals(statusA, store.fetchStatus("task-a").get());
+        } finally {
+            store.close();
+        }
+
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION, fetchVersion());
+        assertFalse(curator.getChildren(SERVICE_ROOT_PATH).contains("Tasks"));
+    }
+
+    @Test
+    public void testMigrateInterruptedAfterRecords() throws Exception {
+        Protos.TaskInfo taskA = createTask("task-a");
+        storeVersion(1);
+        curator.store(TASKS_ROOT_PATH + "/task-a/TaskInfo", taskA.toByteArray());
+        // The records were written but the old Tasks were not yet deleted:
+        new TaskBucketMigration().migrate(curator, SERVICE_ROOT_PATH);
+        curator.store(TASKS_ROOT_PATH + "/task-a/TaskInfo", taskA.toByteArray());
+
+        CuratorStateStore store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        try {
+            assertEquals(Arrays.asList(taskA), new ArrayList<>(store.fetchTasks()));
+        } finally {
+            store.close();
+        }
+        assertFalse(curator.getChildren(SERVICE_ROOT_PATH).contains("Tasks"));
+    }
+
+    @Test
+    public void testMigrateWithoutTasks() throws Exception {
+        storeVersion(1);
+        CuratorStateStore store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        try {
+            assertTrue(store.fetchTaskNames().isEmpty());
+        } finally {
+            store.close();
+        }
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION, fetchVersion());
+    }
+
+    @Test
+    public void testNewInstallUsesCurrentVersion() throws Exception {
+        CuratorStateStore store = new CuratorStateStore(ROOT_ZK_PATH, testZk.getConnectString());
+        try {
+            store.storeTasks(Arrays.asList(createTask("task-a")));
+        } finally {
+            store.close();
+        }
+        assertEquals(CuratorSchemaVersionStore.CURRENT_SCHEMA_VERSION, fetchVersion());
+        assertEquals(
+                CuratorStateStore.TaskPathMapper.BUCKET_COUNT,
+                curator.getChildren(SERVICE_ROOT_PATH + "/TaskBuckets").size());
+    }
+
+    private void storeVersion(int version) throws Exception {
+        curator.store(SERVICE_ROOT_PATH + "/SchemaVersion",
+                String.valueOf(version).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private int fetchVersion() throws Exception {
+        byte[] bytes = curator.fetch(SERVICE_ROOT_PATH + "/SchemaVersion");
+        return Integer.parseInt(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private static Protos.TaskInfo createTask(String taskName) {
+        return Protos.TaskInfo.newBuilder()
+                .setName(taskName)
+                .setTaskId(TaskUtils.toTaskId(taskName))
+                .setSlaveId(SlaveID.newBuilder().setValue("ignored")) // proto field required
+                .build();
+    }
+
+    private static Protos.TaskStatus createStatus(String taskName) {
+        return Protos.TaskStatus.newBuilder()
+                .setTaskId(TaskUtils.toTaskId(taskName))
+                .setState(Protos.TaskState.TASK_RUNNING)
+                .build();
+    }
+}
@@ -0,0 +1,135 @@
+package org.apache.mesos.curator;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.offer.TaskUtils;
+import org.apache.mesos.state.StateStoreException;
+import org.apache.mesos.state.StoredTask;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the encoding of {@link TaskRecord}s.
+ */
+public class TaskRecordTest {
+    private static final Protos.TaskInfo TASK_INFO = Protos.TaskInfo.newBuilder()
+            .setName("test-task-name")
+            .setTaskId(TaskUtils.toTaskId("test-task-name"))
+            .setSlaveId(SlaveID.newBuilder().setValue("ignored")) // proto field required
+            .build();
+    private static final Protos.TaskStatus TASK_STATUS = Protos.TaskStatus.newBuilder()
+            .setTaskId(TASK_INFO.getTaskId())
+            .setState(Protos.TaskState.TASK_RUNNING)
+            .build();
+    private static final Protos.CommandInfo COMMAND = Protos.CommandInfo.newBuilder()
+            .setValue("./run-server --port=$PORT0")
+            .addUris(Protos.CommandInfo.URI.newBuilder().setValue("http://example.com/server.tgz"))
+            .build();
+
+    @Test
+    public void testRoundTripWithStatus() {
+        StoredTask storedTask = new StoredTask(TASK_INFO, Optional.of(TASK_STATUS));
+        assertEquals(storedTask, roundTrip(storedTask));
+    }
+
+    @Test
+    public void testRoundTripWithoutStatus() {
+        StoredTask storedTask = new StoredTask(TASK_INFO, Optional.empty());
+        TaskRecord record = TaskRecord.of(storedTask);
+        assertTrue(record.getBlobIds().isEmpty());
+        assertEquals(storedTask, roundTrip(storedTask));
+    }
+
+    @Test
+    public void testCommandSharedAcrossTasks() {
+        TaskRecord first = TaskRecord.of(new StoredTask(TASK_INFO.toBuilder().setCommand(COMMAND).build(),
+                Optional.empty()));
+        TaskRecord second = TaskRecord.of(new StoredTask(
+                TASK_INFO.toBuilder().setName("other-task-name").setCommand(COMMAND).build(), Optional.empty()));
+        assertEquals(1, first.getBlobIds().size());
+        assertEquals(first.getBlobIds(), second.getBlobIds());
+        assertFalse(first.getStrippedInfo().hasCommand());
+    }
+
+    @Test
+    public void testRoundTripPackedTask() {
+        Protos.TaskInfo info = TaskUtils.packTaskInfo(TASK_INFO.toBuilder()
+                .setExecutor(Protos.ExecutorInfo.newBuilder()
+                        .setExecutorId(Protos.ExecutorID.newBuilder().setValue("test-executor"))
+                        .setCommand(Protos.CommandInfo.newBuilder().setValue("./executor")))
+                .setCommand(COMMAND)
+                .setData(Protos.Labels.newBuilder()
+                        .addLabels(Protos.Label.newBuilder().setKey("key").setValue("value"))
+                        .build()
+                        .toByteString())
+                .build());
+        StoredTask storedTask = new StoredTask(info, Optional.of(TASK_STATUS));
+        TaskRecord record = TaskRecord.of(storedTask);
+        assertEquals(2, record.getBlobIds().size());
+        assertTrue(record.getStrippedInfo().getData().size() < info.getData().size());
+        assertEquals(storedTask, roundTrip(storedTask));
+    }
+
+    @Test
+    public void testRoundTripWithExecutor() {
+        Protos.TaskInfo info = TASK_INFO.toBuilder()
+                .setExecutor(Protos.ExecutorInfo.newBuilder()
+                        .setExecutorId(Protos.ExecutorID.newBuilder().setValue("test-executor"))
+                        .setCommand(COMMAND))
+                .build();
+        StoredTask storedTask = new StoredTask(info, Optional.empty());
+        assertEquals(1, TaskRecord.of(storedTask).getBlobIds().size());
+        assertEquals(storedTask, roundTrip(storedTask));
+    }
+
+    @Test
+    public void testEncodingIsDeterministic() {
+        StoredTask storedTask = new StoredTask(TASK_INFO.toBuilder().setCommand(COMMAND).build(),
+                Optional.of(TASK_STATUS));
+        assertArrayEquals(TaskRecord.of(storedTask).toBytes(), TaskRecord.of(storedTask).toBytes());
+    }
+
+    @Test
+    public void testParseInlineFormat() {
+        byte[] info = TASK_INFO.toByteArray();
+        byte[] status = TASK_STATUS.toByteArray();
+        byte[] record = new byte[1 + 1 + info.length + 1 + status.length];
+        record[0] = 1;
+        record[1] = (byte) info.length;
+        System.arraycopy(info, 0, record, 2, info.length);
+        record[2 + info.length] = (byte) status.length;
+        System.arraycopy(status, 0, record, 3 + info.length, status.length);
+
+        assertEquals(new StoredTask(TASK_INFO, Optional.of(TASK_STATUS)),
+                TaskRecord.parse(record).resolve(Collections.emptyMap()));
+    }
+
+    @Test(expected = StateStoreException.class)
+    public void testResolveMissingBlob() {
+        StoredTask storedTask = new StoredTask(TASK_INFO.toBuilder().setCommand(COMMAND).build(), Optional.empty());
+        TaskRecord.parse(TaskRecord.of(storedTask).toBytes()).resolve(Collections.emptyMap());
+    }
+
+    @Test(expected = StateStoreException.class)
+    public void testParseUnknownFormat() {
+        byte[] record = TaskRecord.of(new StoredTask(TASK_INFO, Optional.empty())).toBytes();
+        record[0] = 3;
+        TaskRecord.parse(record);
+    }
+
+    @Test(expected = StateStoreException.class)
+    public void testParseTruncated() {
+        byte[] record = TaskRecord.of(new StoredTask(TASK_INFO, Optional.of(TASK_STATUS))).toBytes();
+        TaskRecord.parse(Arrays.copyOf(record, record.length - 1));
+    }
+
+    private static StoredTask roundTrip(StoredTask storedTask) {
+        TaskRecord record = TaskRecord.of(storedTask);
+        return TaskRecord.parse(record.toBytes()).resolve(record.getBlobs());
+    }
+}
@@ -148,4 +148,55 @@ public class MesosResourcePoolTest {
         pool.release(new MesosResource(resource));
         Assert.assertEquals(2, pool.getUnreservedMergedPool().get("cpus").getScalar().getValue(), 0.0);
     }
+
+    @Test
+    public void testConsumeUnreservedScalarRepeatedly() {
+        Offer offer = OfferTestUtils.getOffer(Arrays.asList(
+                ResourceTestUtils.getUnreservedCpu(1.0),
+                ResourceTestUtils.getUnreservedCpu(1.0)));
+        MesosResourcePool pool = new MesosResourcePool(offer);
+        ResourceRequirement resReq = new ResourceRequirement(ResourceTestUtils.getDesiredCpu(0.75));
+
+        Assert.assertEquals(2.0, pool.getUnreservedMergedPool().get("cpus").getScalar().getValue(), 0.0);
+        Assert.assertNotNull(pool.consume(resReq));
+        Assert.assertNotNull(pool.consume(resReq));
+        Assert.assertNull(pool.consume(resReq));
+        Assert.assertEquals(0.5, pool.getUnreservedMergedPool().get("cpus").getScalar().getValue(), 0.0);
+        Assert.assertEquals(0.5, pool.getUnreservedScalar("cpus"), 0.0);
+        Assert.assertEquals(0.0, pool.getUnreservedScalar("mem"), 0.0);
+    }
+
+    @Test
+    public void testReleaseAbsentMergedResource() {
+        Offer offer = OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(1.0));
+        MesosResourcePool pool = new MesosResourcePool(offer);
+        ResourceRequirement resReq = new ResourceRequirement(ResourceTestUtils.getUnreservedMem(1.0));
+
+        Assert.assertNull(pool.getUnreservedMergedPool().get("mem"));
+        Assert.assertNull(pool.consume(resReq));
+        pool.release(new MesosResource(ResourceTestUtils.getUnreservedMem(1.0)));
+        Assert.assertEquals(1.0, pool.getUnreservedMergedPool().get("mem").getScalar().getValue(), 0.0);
+        Assert.assertNotNull(pool.consume(resReq));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnreservedMergedPoolIsReadOnly() {
+        MesosResourcePool pool = new MesosResourcePool(OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(1.0)));
+        pool.getUnreservedMergedPool().remove("cpus");
+    }
+
+    @Test
+    public void testCopiedPoolTracksScalarsIndependently() {
+        MesosResourcePool pool = new MesosResourcePool(OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(1.0)));
+        MesosResourcePool copy = new MesosResourcePool(pool);
+
+        copy.release(new MesosResource(ResourceTestUtils.getUnreservedMem(1.0)));
+        Assert.assertNotNull(copy.consume(new ResourceRequirement(ResourceTestUtils.getDesiredCpu(1.0))));
+
+        Assert.assertEquals(1.0, copy.getUnreservedScalar("mem"), 0.0);
+        Assert.assertEquals(0.0, copy.getUnreservedScalar("cpus"), 0.0);
+        Assert.assertEquals(0.0, pool.getUnreservedScalar("mem"), 0.0);
+        Assert.assertEquals(1.0, pool.getUnreservedScalar("cpus"), 0.0);
+        Assert.assertEquals(1, pool.getUnreservedMergedPool().size());
+    }
 }
@@ -0,0 +1,127 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.testutils.ResourceTestUtils;
+import org.apache.mesos.testutils.TestConstants;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.mockito.Mockito.*;
+
+public class OfferBufferTest {
+    private static final Offer OFFER_0 = getOffer(0);
+    private static final Offer OFFER_1 = getOffer(1);
+
+    @Mock private SchedulerDriver mockSchedulerDriver;
+
+    private TestOfferBuffer offerBuffer;
+
+    @Before
+    public void beforeEach() {
+        MockitoAnnotations.initMocks(this);
+        offerBuffer = new TestOfferBuffer(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void testOffersAreHeldUntilExpiry() {
+        offerBuffer.add(Arrays.asList(OFFER_0));
+        offerBuffer.now += 3000;
+        offerBuffer.add(Arrays.asList(OFFER_1, OFFER_0));
+        Assert.assertEquals(Arrays.asList(OFFER_0, OFFER_1), offerBuffer.getOffers());
+
+        Assert.assertTrue(offerBuffer.declineExpired(mockSchedulerDriver).isEmpty());
+        verifyZeroInteractions(mockSchedulerDriver);
+
+        // Re-adding an Offer does not extend its time-to-live.
+        offerBuffer.now += 2000;
+        Assert.assertEquals(Arrays.asList(OFFER_0.getId()), offerBuffer.declineExpired(mockSchedulerDriver));
+        verify(mockSchedulerDriver).declineOffer(OFFER_0.getId());
+        Assert.assertEquals(Arrays.asList(OFFER_1), offerBuffer.getOffers());
+
+        offerBuffer.now += 3000;
+        Assert.assertEquals(Arrays.asList(OFFER_1.getId()), offerBuffer.declineExpired(mockSchedulerDriver));
+        Assert.assertTrue(offerBuffer.isEmpty());
+    }
+
+    @Test
+    public void testRemoveAcceptedOffers() {
+        offerBuffer.add(Arrays.asList(OFFER_0, OFFER_1));
+        offerBuffer.remove(Arrays.asList(OFFER_1.getId()));
+        Assert.assertEquals(Arrays.asList(OFFER_0), offerBuffer.getOffers());
+    }
+
+    @Test
+    public void testRescindedOffersAreNotDeclined() {
+        offerBuffer.add(Arrays.asList(OFFER_0, OFFER_1));
+        Assert.assertTrue(offerBuffer.rescind(OFFER_0.getId()));
+        Assert.assertFalse(offerBuffer.rescind(OFFER_0.getId()));
+        Assert.assertEquals(1, offerBuffer.size());
+
+        offerBuffer.now += 5000;
+        offerBuffer.declineExpired(mockSchedulerDriver);
+        verify(mockSchedulerDriver, never()).declineOffer(OFFER_0.getId());
+        verify(mockSchedulerDriver).declineOffer(OFFER_1.getId());
+    }
+
+    @Test
+    public void testDeclineWithFilters() {
+        Protos.Filters filters = Protos.Filters.newBuilder().setRefuseSeconds(30).build();
+        offerBuffer.add(Arrays.asList(OFFER_0));
+        offerBuffer.now += 5000;
+        offerBuffer.add(Arrays.asList(OFFER_1));
+
+        Assert.assertEquals(Arrays.asList(OFFER_0.getId()), offerBuffer.declineExpired(mockSchedulerDriver, filters));
+        verify(mockSchedulerDriver).declineOffer(OFFER_0.getId(), filters);
+
+        Assert.assertEquals(Arrays.asList(OFFER_1.getId()), offerBuffer.declineAll(mockSchedulerDriver, filters));
+        verify(mockSchedulerDriver).declineOffer(OFFER_1.getId(), filters);
+        verify(mockSchedulerDriver, never()).declineOffer(any());
+        Assert.assertTrue(offerBuffer.isEmpty());
+    }
+
+    @Test
+    public void testZeroTtl() {
+        offerBuffer = new TestOfferBuffer(Duration.ZERO);
+        offerBuffer.add(Arrays.asList(OFFER_0));
+        Assert.assertEquals(Arrays.asList(OFFER_0), offerBuffer.getOffers());
+        Assert.assertEquals(Arrays.asList(OFFER_0), offerBuffer.removeExpired());
+        Assert.assertEquals(Collections.emptyList(), offerBuffer.getOffers());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeTtl() {
+        new OfferBuffer(Duration.ofSeconds(-1));
+    }
+
+    private static Offer getOffer(int i) {
+        return Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue("test-offer-id-" + i))
+                .setFrameworkId(TestConstants.FRAMEWORK_ID)
+                .setSlaveId(TestConstants.AGENT_ID)
+                .setHostname(TestConstants.HOSTNAME)
+                .addResources(ResourceTestUtils.getUnreservedCpu(1.0))
+                .build();
+    }
+
+    private static class TestOfferBuffer extends OfferBuffer {
+        private long now = 0;
+
+        private TestOfferBuffer(Duration ttl) {
+            super(ttl);
+        }
+
+        @Override
+        protected long getCurrentTimeMs() {
+            return now;
+        }
+    }
+}
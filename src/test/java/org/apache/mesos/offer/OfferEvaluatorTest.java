@@ -10,6 +10,7 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 public class OfferEvaluatorTest {
 
@@ -876,7 +877,66 @@ public class OfferEvaluatorTest {
         Assert.assertEquals(Operation.Type.LAUNCH, launchOperation.getType());
     }
 
+    @Test
+    public void testParallelEvaluationSelectsFirstFit() throws InvalidRequirementException {
+        List<Offer> offers = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            offers.add(OfferTestUtils.getOffer(ResourceUtils.getUnreservedScalar("cpus", 1.0 + (i % 10))));
+        }
+        OfferRequirement offerRequirement =
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(9.0));
+
+        List<OfferRecommendation> serial = evaluator.evaluate(offerRequirement, offers);
+        List<OfferRecommendation> parallel =
+                new OfferEvaluator(new ForkJoinPool(4)).evaluate(offerRequirement, offers);
+
+        Assert.assertEquals(2, parallel.size());
+        Assert.assertSame(offers.get(8), serial.get(0).getOffer());
+        Assert.assertSame(offers.get(8), parallel.get(0).getOffer());
+    }
+
+    @Test
+    public void testScoredEvaluationSelectsHighestScore() throws InvalidRequirementException {
+        List<Offer> offers = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            offers.add(OfferTestUtils.getOffer(ResourceUtils.getUnreservedScalar("cpus", 1.0 + (i % 10))));
+        }
+        OfferRequirement offerRequirement =
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0));
+        // Prefer the offer with the most remaining cpus.  Several offers tie, the earliest must win.
+        OfferScorer scorer = (requirement, pool) -> pool.getUnreservedMergedPool().get("cpus").getScalar().getValue();
+
+        List<OfferRecommendation> serial = new OfferEvaluator(scorer).evaluate(offerRequirement, offers);
+        List<OfferRecommendation> parallel =
+                new OfferEvaluator(new ForkJoinPool(4), scorer).evaluate(offerRequirement, offers);
+
+        Assert.assertSame(offers.get(9), serial.get(0).getOffer());
+        Assert.assertSame(offers.get(9), parallel.get(0).getOffer());
+    }
+
     private static Label getFirstLabel(Resource resource) {
         return resource.getReservation().getLabels().getLabels(0);
     }
+
+    @Test
+    public void testUnfitOffersAreCached() throws InvalidRequirementException {
+        UnfitOfferCache unfitOfferCache = new UnfitOfferCache();
+        OfferEvaluator cachingEvaluator = new OfferEvaluator(null, null, unfitOfferCache);
+        String resourceId = UUID.randomUUID().toString();
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getExpectedMountVolume(2500, resourceId));
+
+        // The Offer contains the expected volume, which passes the compiled needs, but the volume is too small.
+        Offer offer = OfferTestUtils.getOffer(ResourceTestUtils.getExpectedMountVolume(2000, resourceId));
+        Assert.assertEquals(0, cachingEvaluator.evaluate(offerRequirement, Arrays.asList(offer)).size());
+        Assert.assertEquals(1, unfitOfferCache.size());
+        Assert.assertTrue(unfitOfferCache.isUnfit(
+                offerRequirement.getNeeds(), offer.getSlaveId(), UnfitOfferCache.getFingerprint(offer)));
+        Assert.assertEquals(0, cachingEvaluator.evaluate(offerRequirement, offer).size());
+
+        // Different resources from the same agent are evaluated again.
+        Offer fittingOffer = OfferTestUtils.getOffer(ResourceTestUtils.getExpectedMountVolume(3000, resourceId));
+        Assert.assertEquals(1, cachingEvaluator.evaluate(offerRequirement, Arrays.asList(fittingOffer)).size());
+        Assert.assertEquals(0, unfitOfferCache.size());
+    }
 }
@@ -0,0 +1,209 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.testutils.OfferRequirementTestUtils;
+import org.apache.mesos.testutils.ResourceTestUtils;
+import org.apache.mesos.testutils.TaskTestUtils;
+import org.apache.mesos.testutils.TestConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class OfferIndexTest {
+    @Test
+    public void testScalarCandidates() throws InvalidRequirementException {
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedCpu(1.0)),
+                getOffer(1, ResourceTestUtils.getUnreservedCpu(3.0)),
+                getOffer(2, ResourceTestUtils.getUnreservedMem(100)),
+                getOffer(3, ResourceTestUtils.getUnreservedCpu(2.0)));
+        OfferIndex index = new OfferIndex(offers);
+
+        OfferRequirement offerRequirement =
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(2.0));
+
+        Assert.assertEquals(Arrays.asList(offers.get(1), offers.get(3)), index.getCandidates(offerRequirement));
+    }
+
+    @Test
+    public void testSummedScalarCandidates() throws InvalidRequirementException {
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedCpu(0.3)),
+                getOffer(1, ResourceTestUtils.getUnreservedCpu(0.2)));
+        OfferIndex index = new OfferIndex(offers);
+
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(
+                Arrays.asList(ResourceTestUtils.getDesiredCpu(0.1), ResourceTestUtils.getDesiredCpu(0.2)));
+
+        Assert.assertEquals(Arrays.asList(offers.get(0)), index.getCandidates(offerRequirement));
+    }
+
+    @Test
+    public void testPortCandidates() throws InvalidRequirementException {
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedPorts(10000, 10000)),
+                getOffer(1, ResourceTestUtils.getUnreservedPorts(9000, 9010)),
+                getOffer(2, ResourceTestUtils.getUnreservedCpu(1.0)));
+        OfferIndex index = new OfferIndex(offers);
+
+        OfferRequirement staticPorts = OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredRanges("ports", 9005, 9006));
+        Assert.assertEquals(Arrays.asList(offers.get(1)), index.getCandidates(staticPorts));
+
+        OfferRequirement dynamicPort = OfferRequirementTestUtils.getOfferRequirement(
+                DynamicPortRequirement.getDesiredDynamicPort(
+                        TestConstants.PORT_NAME,
+                        TestConstants.ROLE,
+                        TestConstants.PRINCIPAL));
+        Assert.assertEquals(Arrays.asList(offers.get(0), offers.get(1)), index.getCandidates(dynamicPort));
+    }
+
+    @Test
+    public void testReservedResourceCandidates() throws InvalidRequirementException {
+        Resource expectedCpu = ResourceTestUtils.getExpectedScalar("cpus", 1.0, TestConstants.RESOURCE_ID);
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedCpu(4.0)),
+                getOffer(1, expectedCpu),
+                getOffer(2, ResourceTestUtils.getExpectedScalar("cpus", 1.0, "other-resource-id")));
+        OfferIndex index = new OfferIndex(offers);
+
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(expectedCpu);
+
+        Assert.assertEquals(Arrays.asList(offers.get(1)), index.getCandidates(offerRequirement));
+    }
+
+    @Test
+    public void testPlacementCandidates() throws InvalidRequirementException {
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedCpu(1.0)),
+                getOffer(1, ResourceTestUtils.getUnreservedCpu(1.0)),
+                getOffer(2, ResourceTestUtils.getUnreservedCpu(1.0)));
+        OfferIndex index = new OfferIndex(offers);
+
+        OfferRequirement avoid = OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredCpu(1.0), Arrays.asList(getAgentId(1).getValue()), Collections.emptyList());
+        Assert.assertEquals(Arrays.asList(offers.get(0), offers.get(2)), index.getCandidates(avoid));
+
+        OfferRequirement colocate = OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredCpu(1.0), Collections.emptyList(), Arrays.asList(getAgentId(2).getValue()));
+        Assert.assertEquals(Arrays.asList(offers.get(2)), index.getCandidates(colocate));
+        Assert.assertEquals(Arrays.asList(offers.get(2)), index.getOffers(getAgentId(2)));
+    }
+
+    @Test
+    public void testExistingExecutorCandidates() throws InvalidRequirementException {
+        Resource offeredCpu = ResourceTestUtils.getUnreservedCpu(1.0);
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, offeredCpu),
+                Offer.newBuilder(getOffer(1, offeredCpu)).addExecutorIds(TestConstants.EXECUTOR_ID).build());
+        OfferIndex index = new OfferIndex(offers);
+
+        OfferRequirement offerRequirement = new OfferRequirement(
+                Arrays.asList(TaskTestUtils.getTaskInfo(ResourceTestUtils.getDesiredCpu(1.0))),
+                Optional.of(TaskTestUtils.getExistingExecutorInfo(ResourceTestUtils.getUnreservedCpu(0.0))));
+
+        Assert.assertEquals(Arrays.asList(offers.get(1)), index.getCandidates(offerRequirement));
+    }
+
+    @Test
+    public void testSingleCandidateAmongManyOffers() throws InvalidRequirementException {
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(
+                Arrays.asList(ResourceTestUtils.getDesiredCpu(8.0), ResourceTestUtils.getDesiredMem(1024)));
+
+        // Only the final offer is large enough to satisfy the requirement.
+        int offerCount = 100;
+        List<Offer> offers = new ArrayList<>();
+        for (int i = 0; i < offerCount; i++) {
+            double cpus = (i == offerCount - 1) ? 8.0 : 1.0 + (i % 4);
+            offers.add(getOffer(i, Arrays.asList(
+                    ResourceTestUtils.getUnreservedCpu(cpus),
+                    ResourceTestUtils.getUnreservedMem(4096),
+                    ResourceTestUtils.getUnreservedDisk(10240),
+                    ResourceTestUtils.getUnreservedPorts(10000, 11000))));
+        }
+        OfferIndex index = new OfferIndex(offers);
+        Assert.assertEquals(Arrays.asList(offers.get(offerCount - 1)), index.getCandidates(offerRequirement));
+
+        // The evaluation over the single candidate matches a serial evaluation of every offer.
+        OfferEvaluator evaluator = new OfferEvaluator();
+        List<OfferRecommendation> unindexed = Collections.emptyList();
+        for (Offer offer : offers) {
+            unindexed = evaluator.evaluate(offerRequirement, offer);
+            if (!unindexed.isEmpty()) {
+                break;
+            }
+        }
+        List<OfferRecommendation> indexed = evaluator.evaluate(offerRequirement, index);
+        Assert.assertEquals(unindexed.size(), indexed.size());
+        Assert.assertEquals(offers.get(offerCount - 1), indexed.get(0).getOffer());
+    }
+
+    @Test
+    public void testCandidatesMayFit() throws InvalidRequirementException {
+        Resource expectedCpu = ResourceTestUtils.getExpectedScalar("cpus", 1.0, TestConstants.RESOURCE_ID);
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedCpu(1.0)),
+                getOffer(1, Arrays.asList(
+                        ResourceTestUtils.getUnreservedCpu(2.0), ResourceTestUtils.getUnreservedPorts(9000, 9010))),
+                getOffer(2, expectedCpu),
+                Offer.newBuilder(getOffer(3, ResourceTestUtils.getUnreservedCpu(4.0)))
+                        .addExecutorIds(TestConstants.EXECUTOR_ID)
+                        .build());
+        OfferIndex index = new OfferIndex(offers);
+
+        // The evaluator relies on every candidate passing mayFit(), so it only checks Offers which were not indexed.
+        List<OfferRequirement> offerRequirements = Arrays.asList(
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(2.0)),
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredRanges("ports", 9005, 9006)),
+                OfferRequirementTestUtils.getOfferRequirement(expectedCpu),
+                OfferRequirementTestUtils.getOfferRequirement(
+                        ResourceTestUtils.getDesiredCpu(1.0),
+                        Arrays.asList(getAgentId(0).getValue()),
+                        Collections.emptyList()),
+                new OfferRequirement(
+                        Arrays.asList(TaskTestUtils.getTaskInfo(ResourceTestUtils.getDesiredCpu(1.0))),
+                        Optional.of(TaskTestUtils.getExistingExecutorInfo(ResourceTestUtils.getUnreservedCpu(0.0)))));
+        for (OfferRequirement offerRequirement : offerRequirements) {
+            List<Offer> candidates = index.getCandidates(offerRequirement);
+            for (Offer offer : offers) {
+                Assert.assertEquals(
+                        offer.getId().getValue(),
+                        offerRequirement.getNeeds().mayFit(offer),
+                        candidates.contains(offer));
+            }
+        }
+    }
+
+    @Test
+    public void testFingerprintComputedOncePerIndex() {
+        List<Offer> offers = Arrays.asList(
+                getOffer(0, ResourceTestUtils.getUnreservedCpu(1.0)),
+                getOffer(1, ResourceTestUtils.getUnreservedCpu(1.0)));
+        OfferIndex index = new OfferIndex(offers);
+
+        Assert.assertEquals(UnfitOfferCache.getFingerprint(offers.get(0)), index.getFingerprint(offers.get(0)));
+        Assert.assertSame(index.getFingerprint(offers.get(0)), index.getFingerprint(offers.get(0)));
+        Assert.assertNotSame(index.getFingerprint(offers.get(0)), index.getFingerprint(offers.get(1)));
+    }
+
+    private static Offer getOffer(int i, Resource resource) {
+        return getOffer(i, Arrays.asList(resource));
+    }
+
+    private static Offer getOffer(int i, List<Resource> resources) {
+        return Offer.newBuilder()
+                .setId(Protos.OfferID.newBuilder().setValue("test-offer-id-" + i))
+                .setFrameworkId(TestConstants.FRAMEWORK_ID)
+                .setSlaveId(getAgentId(i))
+                .setHostname(TestConstants.HOSTNAME)
+                .addAllResources(resources)
+                .build();
+    }
+
+    private static Protos.SlaveID getAgentId(int i) {
+        return Protos.SlaveID.newBuilder().setValue("test-slave-id-" + i).build();
+    }
+}
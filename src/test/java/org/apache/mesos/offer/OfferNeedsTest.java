@@ -0,0 +1,127 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.Resource;
+import org.apache.mesos.testutils.OfferRequirementTestUtils;
+import org.apache.mesos.testutils.OfferTestUtils;
+import org.apache.mesos.testutils.ResourceTestUtils;
+import org.apache.mesos.testutils.TaskTestUtils;
+import org.apache.mesos.testutils.TestConstants;
+import org.apache.mesos.util.RangeSet;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+
+public class OfferNeedsTest {
+
+    @Test
+    public void testCompileUnreservedDemand() throws InvalidRequirementException {
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(Arrays.asList(
+                ResourceTestUtils.getDesiredCpu(1.0),
+                ResourceTestUtils.getDesiredCpu(0.5),
+                ResourceTestUtils.getDesiredMem(256),
+                ResourceTestUtils.getDesiredRanges("ports", 9000, 9001),
+                DynamicPortRequirement.getDesiredDynamicPort(
+                        TestConstants.PORT_NAME,
+                        TestConstants.ROLE,
+                        TestConstants.PRINCIPAL)));
+        OfferNeeds needs = offerRequirement.getNeeds();
+
+        Assert.assertSame(needs, offerRequirement.getNeeds());
+        Assert.assertTrue(needs.hasUnreservedDemand());
+        Assert.assertEquals(2, needs.getScalarCount());
+        Assert.assertEquals("cpus", needs.getScalarName(0));
+        Assert.assertEquals(1.5, needs.getScalarDemand(0), 0.0);
+        Assert.assertEquals("mem", needs.getScalarName(1));
+        Assert.assertEquals(256, needs.getScalarDemand(1), 0.0);
+        Assert.assertEquals(1, needs.getRangeCount());
+        Assert.assertEquals("ports", needs.getRangeName(0));
+        Assert.assertEquals(3, needs.getRangeDemand(0));
+        Assert.assertEquals(RangeSet.of(9000, 9001), needs.getStaticRanges().get("ports"));
+    }
+
+    @Test
+    public void testMayFitScalars() throws InvalidRequirementException {
+        OfferNeeds needs = OfferRequirementTestUtils.getOfferRequirement(Arrays.asList(
+                ResourceTestUtils.getDesiredCpu(1.0),
+                ResourceTestUtils.getDesiredMem(256))).getNeeds();
+
+        Assert.assertTrue(needs.mayFit(OfferTestUtils.getOffer(Arrays.asList(
+                ResourceTestUtils.getUnreservedCpu(0.5),
+                ResourceTestUtils.getUnreservedCpu(0.5),
+                ResourceTestUtils.getUnreservedMem(256)))));
+        Assert.assertFalse(needs.mayFit(OfferTestUtils.getOffer(Arrays.asList(
+                ResourceTestUtils.getUnreservedCpu(0.5),
+                ResourceTestUtils.getUnreservedMem(256)))));
+        Assert.assertFalse(needs.mayFit(OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(2.0))));
+        Assert.assertFalse(needs.mayFit(OfferTestUtils.getOffer(Arrays.asList(
+                ResourceTestUtils.getExpectedScalar("cpus", 1.0, TestConstants.RESOURCE_ID),
+                ResourceTestUtils.getUnreservedMem(256)))));
+    }
+
+    @Test
+    public void testMayFitReservedResources() throws InvalidRequirementException {
+        Resource expectedCpu = ResourceTestUtils.getExpectedScalar("cpus", 1.0, TestConstants.RESOURCE_ID);
+        OfferNeeds needs = OfferRequirementTestUtils.getOfferRequirement(expectedCpu).getNeeds();
+
+        Assert.assertFalse(needs.hasUnreservedDemand());
+        Assert.assertEquals(Collections.singleton(TestConstants.RESOURCE_ID), needs.getExpectedResourceIds());
+        Assert.assertTrue(needs.mayFit(OfferTestUtils.getOffer(expectedCpu)));
+        Assert.assertFalse(needs.mayFit(OfferTestUtils.getOffer(
+                ResourceTestUtils.getExpectedScalar("cpus", 1.0, "other-resource-id"))));
+    }
+
+    @Test
+    public void testMayFitPlacement() throws InvalidRequirementException {
+        Offer offer = OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(1.0));
+        Protos.SlaveID otherAgent = Protos.SlaveID.newBuilder().setValue("other-slave-id").build();
+
+        OfferNeeds avoid = OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredCpu(1.0),
+                Arrays.asList(offer.getSlaveId().getValue()),
+                Collections.emptyList()).getNeeds();
+        Assert.assertFalse(avoid.mayFit(offer));
+        Assert.assertTrue(avoid.meetsPlacementConstraints(otherAgent));
+
+        OfferNeeds colocate = OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredCpu(1.0),
+                Collections.emptyList(),
+                Arrays.asList(offer.getSlaveId().getValue())).getNeeds();
+        Assert.assertTrue(colocate.mayFit(offer));
+        Assert.assertFalse(colocate.meetsPlacementConstraints(otherAgent));
+    }
+
+    @Test
+    public void testMayFitExistingExecutor() throws InvalidRequirementException {
+        OfferNeeds needs = new OfferRequirement(
+                Arrays.asList(TaskTestUtils.getTaskInfo(ResourceTestUtils.getDesiredCpu(1.0))),
+                Optional.of(TaskTestUtils.getExistingExecutorInfo(ResourceTestUtils.getUnreservedCpu(0.0))))
+                .getNeeds();
+
+        Assert.assertEquals(TestConstants.EXECUTOR_ID, needs.getExpectedExecutorId());
+        Offer offer = OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(1.0));
+        Assert.assertFalse(needs.mayFit(offer));
+        Assert.assertTrue(needs.mayFit(Offer.newBuilder(offer).addExecutorIds(TestConstants.EXECUTOR_ID).build()));
+    }
+
+    @Test
+    public void testFingerprint() throws InvalidRequirementException {
+        OfferNeeds needs = OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0))
+                .getNeeds();
+
+        // Placement constraints are checked by mayFit(), so they do not affect the fingerprint.
+        Assert.assertEquals(needs.getFingerprint(), OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredCpu(1.0),
+                Arrays.asList(TestConstants.AGENT_ID.getValue()),
+                Collections.emptyList()).getNeeds().getFingerprint());
+        Assert.assertNotEquals(needs.getFingerprint(), OfferRequirementTestUtils.getOfferRequirement(
+                ResourceTestUtils.getDesiredCpu(2.0)).getNeeds().getFingerprint());
+        Assert.assertNotEquals(needs.getFingerprint(), OfferRequirementTestUtils.getOfferRequirement(Arrays.asList(
+                ResourceTestUtils.getDesiredCpu(1.0),
+                ResourceTestUtils.getDesiredMem(256))).getNeeds().getFingerprint());
+    }
+}
@@ -0,0 +1,75 @@
+package org.apache.mesos.offer;
+
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.testutils.OfferRequirementTestUtils;
+import org.apache.mesos.testutils.OfferTestUtils;
+import org.apache.mesos.testutils.ResourceTestUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class OfferScorerTest {
+    private static final List<Offer> OFFERS = Arrays.asList(
+            // Fits exactly.
+            OfferTestUtils.getOffer(Arrays.asList(
+                    ResourceTestUtils.getUnreservedCpu(2.0),
+                    ResourceTestUtils.getUnreservedMem(2048))),
+            // Mostly idle.
+            OfferTestUtils.getOffer(Arrays.asList(
+                    ResourceTestUtils.getUnreservedCpu(16.0),
+                    ResourceTestUtils.getUnreservedMem(65536))),
+            // Cpu is the bottleneck.
+            OfferTestUtils.getOffer(Arrays.asList(
+                    ResourceTestUtils.getUnreservedCpu(2.0),
+                    ResourceTestUtils.getUnreservedMem(32768))),
+            // Does not fit.
+            OfferTestUtils.getOffer(Arrays.asList(
+                    ResourceTestUtils.getUnreservedCpu(1.0),
+                    ResourceTestUtils.getUnreservedMem(65536))));
+
+    @Test
+    public void testBestFit() throws InvalidRequirementException {
+        Assert.assertSame(OFFERS.get(0), evaluate(new BestFitOfferScorer()));
+    }
+
+    @Test
+    public void testWorstFit() throws InvalidRequirementException {
+        Assert.assertSame(OFFERS.get(1), evaluate(new WorstFitOfferScorer()));
+    }
+
+    @Test
+    public void testDominantResourceFit() throws InvalidRequirementException {
+        // Offers 0 and 2 both have cpu fully consumed, ties are resolved in offer order.
+        Assert.assertSame(OFFERS.get(0), evaluate(new DominantResourceOfferScorer()));
+        Assert.assertSame(OFFERS.get(2), evaluate(new DominantResourceOfferScorer(), OFFERS.subList(1, 4)));
+    }
+
+    @Test
+    public void testScoreIgnoresUndemandedResources() throws InvalidRequirementException {
+        OfferRequirement offerRequirement =
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(2.0));
+        MesosResourcePool pool = new MesosResourcePool(OFFERS.get(2));
+        for (ResourceRequirement resourceRequirement :
+                offerRequirement.getTaskRequirements().iterator().next().getResourceRequirements()) {
+            pool.consume(resourceRequirement);
+        }
+
+        Assert.assertEquals(0, new BestFitOfferScorer().score(offerRequirement, pool), 0.0);
+        Assert.assertEquals(1, new DominantResourceOfferScorer().score(offerRequirement, pool), 0.0);
+    }
+
+    private static Offer evaluate(OfferScorer offerScorer) throws InvalidRequirementException {
+        return evaluate(offerScorer, OFFERS);
+    }
+
+    private static Offer evaluate(OfferScorer offerScorer, List<Offer> offers) throws InvalidRequirementException {
+        OfferRequirement offerRequirement = OfferRequirementTestUtils.getOfferRequirement(Arrays.asList(
+                ResourceTestUtils.getDesiredCpu(2.0),
+                ResourceTestUtils.getDesiredMem(1024)));
+        List<OfferRecommendation> recommendations =
+                new OfferEvaluator(offerScorer).evaluate(offerRequirement, offers);
+        return recommendations.get(0).getOffer();
+    }
+}
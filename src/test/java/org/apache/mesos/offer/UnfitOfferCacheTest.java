@@ -0,0 +1,75 @@
+package org.apache.mesos.offer;
+
+import com.google.protobuf.ByteString;
+import org.apache.mesos.Protos.Offer;
+import org.apache.mesos.Protos.SlaveID;
+import org.apache.mesos.testutils.OfferRequirementTestUtils;
+import org.apache.mesos.testutils.OfferTestUtils;
+import org.apache.mesos.testutils.ResourceTestUtils;
+import org.apache.mesos.testutils.TestConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class UnfitOfferCacheTest {
+    private static final SlaveID OTHER_AGENT_ID = SlaveID.newBuilder().setValue("other-agent-id").build();
+
+    @Test
+    public void testFingerprintIgnoresOfferId() {
+        Offer offer = OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(1.0));
+        Offer renewedOffer = Offer.newBuilder(offer)
+                .setId(TestConstants.OFFER_ID.toBuilder().setValue("other-offer-id"))
+                .build();
+        Assert.assertEquals(UnfitOfferCache.getFingerprint(offer), UnfitOfferCache.getFingerprint(renewedOffer));
+        Assert.assertNotEquals(
+                UnfitOfferCache.getFingerprint(offer),
+                UnfitOfferCache.getFingerprint(OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(2.0))));
+    }
+
+    @Test
+    public void testHitAndInvalidation() throws InvalidRequirementException {
+        OfferNeeds needs = OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0))
+                .getNeeds();
+        OfferNeeds otherNeeds = OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(2.0))
+                .getNeeds();
+        ByteString fingerprint = getFingerprint(1.0);
+        UnfitOfferCache cache = new UnfitOfferCache();
+
+        cache.putUnfit(needs, TestConstants.AGENT_ID, fingerprint);
+        Assert.assertTrue(cache.isUnfit(needs, TestConstants.AGENT_ID, fingerprint));
+        Assert.assertFalse(cache.isUnfit(needs, OTHER_AGENT_ID, fingerprint));
+        Assert.assertFalse(cache.isUnfit(otherNeeds, TestConstants.AGENT_ID, fingerprint));
+
+        // The agent now offers different resources, which invalidates the entry.
+        Assert.assertFalse(cache.isUnfit(needs, TestConstants.AGENT_ID, getFingerprint(2.0)));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(cache.isUnfit(needs, TestConstants.AGENT_ID, fingerprint));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws InvalidRequirementException {
+        OfferNeeds needs = OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0))
+                .getNeeds();
+        SlaveID thirdAgentId = SlaveID.newBuilder().setValue("third-agent-id").build();
+        ByteString fingerprint = getFingerprint(1.0);
+        UnfitOfferCache cache = new UnfitOfferCache(2);
+
+        cache.putUnfit(needs, TestConstants.AGENT_ID, fingerprint);
+        cache.putUnfit(needs, OTHER_AGENT_ID, fingerprint);
+        Assert.assertTrue(cache.isUnfit(needs, TestConstants.AGENT_ID, fingerprint));
+        cache.putUnfit(needs, thirdAgentId, fingerprint);
+
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.isUnfit(needs, TestConstants.AGENT_ID, fingerprint));
+        Assert.assertFalse(cache.isUnfit(needs, OTHER_AGENT_ID, fingerprint));
+        Assert.assertTrue(cache.isUnfit(needs, thirdAgentId, fingerprint));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSize() {
+        new UnfitOfferCache(0);
+    }
+
+    private static ByteString getFingerprint(double cpus) {
+        return UnfitOfferCache.getFingerprint(OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(cpus)));
+    }
+}
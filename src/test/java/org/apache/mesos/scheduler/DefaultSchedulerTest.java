@@ -3,6 +3,8 @@ package org.apache.mesos.scheduler;
 import org.apache.curator.test.TestingServer;
 import org.apache.mesos.Protos;
 import org.apache.mesos.SchedulerDriver;
+import org.apache.mesos.config.ConfigStore;
+import org.apache.mesos.config.StringConfiguration;
 import org.apache.mesos.offer.ResourceUtils;
 import org.apache.mesos.scheduler.plan.Block;
 import org.apache.mesos.scheduler.plan.Phase;
@@ -26,7 +28,10 @@ import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 import static org.awaitility.Awaitility.to;
@@ -105,6 +110,13 @@ public class DefaultSchedulerTest {
         register();
     }
 
+    @After
+    public void afterEach() {
+        if (defaultScheduler.getLeaderElection() != null) {
+            defaultScheduler.getLeaderElection().close();
+        }
+    }
+
     @Test
     public void testConstruction() {
         Assert.assertNotNull(defaultScheduler);
@@ -206,6 +218,89 @@ public class DefaultSchedulerTest {
         Assert.assertTrue(inExpectedState(plan, Arrays.asList(Status.PENDING, Status.PENDING, Status.PENDING)));
     }
 
+    @Test
+    public void testOfferRescinded() throws InterruptedException {
+        Plan plan = defaultScheduler.getPlan();
+
+        // An unused Offer is held rather than declined, and is evicted when it is rescinded
+        UUID offerId = UUID.randomUUID();
+        defaultScheduler.resourceOffers(mockSchedulerDriver, Arrays.asList(getInsufficientOfferForTaskA(offerId)));
+        defaultScheduler.offerRescinded(mockSchedulerDriver, getOfferId(offerId));
+        defaultScheduler.awaitTermination();
+
+        verify(mockSchedulerDriver, never()).declineOffer(getOfferId(offerId));
+        verify(mockSchedulerDriver, never()).acceptOffers(any(), anyCollection(), any());
+        Assert.assertTrue(inExpectedState(plan, Arrays.asList(Status.PENDING, Status.PENDING, Status.PENDING)));
+    }
+
+    @Test
+    public void testLeakedReservationCleanedWhileIdle() throws Exception {
+        ServiceSpecification idleServiceSpecification = new ServiceSpecification() {
+            @Override
+            public String getName() {
+                return SERVICE_NAME + "-idle";
+            }
+
+            @Override
+            public List<TaskSet> getTaskSets() {
+                return Collections.emptyList();
+            }
+        };
+        SchedulerDriver idleDriver = mock(SchedulerDriver.class);
+        DefaultScheduler idleScheduler =
+                new DefaultScheduler(idleServiceSpecification, testingServer.getConnectString());
+        idleScheduler.registered(idleDriver, TestConstants.FRAMEWORK_ID, TestConstants.MASTER_INFO);
+
+        // Without pending work Offers are suppressed
+        verify(idleDriver, timeout(2000).times(1)).suppressOffers();
+
+        // An agent returns with a reservation which no Task expects, and offers it
+        UUID offerId = UUID.randomUUID();
+        Protos.Offer offer = Protos.Offer.newBuilder(getInsufficientOfferForTaskA(offerId))
+                .addResources(ResourceTestUtils.getExpectedCpu(TASK_A_CPU))
+                .build();
+        idleScheduler.resourceOffers(idleDriver, Arrays.asList(offer));
+        ArgumentCaptor<Collection> operationsCaptor = ArgumentCaptor.forClass(Collection.class);
+        verify(idleDriver, timeout(1000).times(1)).acceptOffers(
+                (Collection<Protos.OfferID>) Matchers.argThat(contains(getOfferId(offerId))),
+                operationsCaptor.capture(),
+                any());
+        idleScheduler.awaitTermination();
+        idleScheduler.getLeaderElection().close();
+
+        Collection<Protos.Offer.Operation> operations = operationsCaptor.getValue();
+        Assert.assertEquals(1, operations.size());
+        Assert.assertEquals(1, countOperationType(Protos.Offer.Operation.Type.UNRESERVE, operations));
+    }
+
+    @Test
+    public void testUnreferencedConfigsClearedOnRegistration() throws Exception {
+        @SuppressWarnings("unchecked")
+        ConfigStore<StringConfiguration> configStore = mock(ConfigStore.class);
+        ServiceSpecification otherServiceSpecification = new ServiceSpecification() {
+            @Override
+            public String getName() {
+                return SERVICE_NAME + "-with-configs";
+            }
+
+            @Override
+            public List<TaskSet> getTaskSets() {
+                return serviceSpecification.getTaskSets();
+            }
+        };
+        DefaultScheduler configScheduler = DefaultScheduler.builder(otherServiceSpecification)
+                .setZkConnectionString(testingServer.getConnectString())
+                .setConfigStore(configStore)
+                .build();
+        verify(configStore, never()).clearUnreferenced(anyCollection());
+
+        configScheduler.registered(
+                mock(SchedulerDriver.class), TestConstants.FRAMEWORK_ID, TestConstants.MASTER_INFO);
+        configScheduler.awaitTermination();
+        configScheduler.getLeaderElection().close();
+        verify(configStore, times(1)).clearUnreferenced(Collections.emptyList());
+    }
+
     @Test
     public void updatePerTaskASpecification() throws InterruptedException, IOException {
         // Launch A and B in original configuration
@@ -239,10 +334,7 @@ public class DefaultSchedulerTest {
             }
         };
 
-        defaultScheduler = new DefaultScheduler(
-                serviceSpecification,
-                testingServer.getConnectString());
-        register();
+        restartScheduler();
 
         Plan plan = defaultScheduler.getPlan();
         Assert.assertTrue(inExpectedState(plan, Arrays.asList(Status.PENDING, Status.COMPLETE, Status.PENDING)));
@@ -281,10 +373,7 @@ public class DefaultSchedulerTest {
             }
         };
 
-        defaultScheduler = new DefaultScheduler(
-                serviceSpecification,
-                testingServer.getConnectString());
-        register();
+        restartScheduler();
 
         Plan plan = defaultScheduler.getPlan();
         Assert.assertTrue(inExpectedState(plan, Arrays.asList(Status.COMPLETE, Status.PENDING, Status.PENDING)));
@@ -323,10 +412,7 @@ public class DefaultSchedulerTest {
             }
         };
 
-        defaultScheduler = new DefaultScheduler(
-                serviceSpecification,
-                testingServer.getConnectString());
-        register();
+        restartScheduler();
 
         Plan plan = defaultScheduler.getPlan();
         Assert.assertTrue(inExpectedState(plan, Arrays.asList(Status.COMPLETE, Status.PENDING, Status.PENDING)));
@@ -365,10 +451,7 @@ public class DefaultSchedulerTest {
             }
         };
 
-        defaultScheduler = new DefaultScheduler(
-                serviceSpecification,
-                testingServer.getConnectString());
-        register();
+        restartScheduler();
 
         Plan plan = defaultScheduler.getPlan();
         Assert.assertTrue(inExpectedState(
@@ -433,6 +516,48 @@ public class DefaultSchedulerTest {
         verify(mockSchedulerDriver, times(1)).acceptOffers(any(), any(), any());
     }
 
+    @Test
+    public void testStandbyTakeover() throws Exception {
+        // The registered scheduler holds leadership while the standby waits
+        DefaultScheduler standbyScheduler = new DefaultScheduler(
+                serviceSpecification,
+                testingServer.getConnectString());
+        CompletableFuture<Void> takeover = CompletableFuture.runAsync(() -> {
+            try {
+                standbyScheduler.awaitLeadership();
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        try {
+            takeover.get(500, TimeUnit.MILLISECONDS);
+            Assert.fail("Standby elected while the leader is running");
+        } catch (TimeoutException e) {
+            // expected
+        }
+        // The standby builds its plan from a replica of the framework's state before it is elected
+        Assert.assertTrue(inExpectedState(
+                standbyScheduler.getPlan(), Arrays.asList(Status.PENDING, Status.PENDING, Status.PENDING)));
+
+        // The leader launches Task A-0, which the standby's plan follows
+        testLaunchA();
+        Awaitility.await().atMost(2, TimeUnit.SECONDS).until(() -> inExpectedState(
+                standbyScheduler.getPlan(), Arrays.asList(Status.COMPLETE, Status.PENDING, Status.PENDING)));
+
+        // The leader fails
+        defaultScheduler.getLeaderElection().close();
+        takeover.get(5, TimeUnit.SECONDS);
+        Plan plan = standbyScheduler.getPlan();
+        Assert.assertTrue(inExpectedState(plan, Arrays.asList(Status.COMPLETE, Status.PENDING, Status.PENDING)));
+
+        // The running Task was already observed in standby, so only implicit reconciliation is needed on registration
+        SchedulerDriver standbyDriver = mock(SchedulerDriver.class);
+        standbyScheduler.registered(standbyDriver, TestConstants.FRAMEWORK_ID, TestConstants.MASTER_INFO);
+        verify(standbyDriver, times(1)).reconcileTasks(Collections.emptyList());
+        verify(standbyDriver, times(1)).reconcileTasks(any());
+        standbyScheduler.getLeaderElection().close();
+    }
+
     private int countOperationType(
             Protos.Offer.Operation.Type operationType,
             Collection<Protos.Offer.Operation> operations) {
@@ -466,6 +591,18 @@ public class DefaultSchedulerTest {
         defaultScheduler.registered(mockSchedulerDriver, TestConstants.FRAMEWORK_ID, TestConstants.MASTER_INFO);
     }
 
+    /**
+     * Replaces the scheduler with a new one, as after a restart.  The previous scheduler leaves the election first, as
+     * the new one is elected before it initializes on registration.
+     */
+    private void restartScheduler() {
+        defaultScheduler.getLeaderElection().close();
+        defaultScheduler = new DefaultScheduler(
+                serviceSpecification,
+                testingServer.getConnectString());
+        register();
+    }
+
     private Protos.Offer getInsufficientOfferForTaskA(UUID offerId) {
         return Protos.Offer.newBuilder()
                 .setId(Protos.OfferID.newBuilder().setValue(offerId.toString()).build())
@@ -0,0 +1,122 @@
+package org.apache.mesos.scheduler;
+
+import org.apache.mesos.SchedulerDriver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.Duration;
+
+import static org.mockito.Mockito.*;
+
+public class OfferDemandTrackerTest {
+    @Mock private SchedulerDriver mockSchedulerDriver;
+
+    private TestOfferDemandTracker demandTracker;
+
+    @Before
+    public void beforeEach() {
+        MockitoAnnotations.initMocks(this);
+        demandTracker = new TestOfferDemandTracker(Duration.ofSeconds(1), Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void testSuppressWithoutDemand() {
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        verify(mockSchedulerDriver, times(1)).suppressOffers();
+        verify(mockSchedulerDriver, never()).reviveOffers();
+        Assert.assertTrue(demandTracker.isSuppressed());
+        Assert.assertEquals(30.0, demandTracker.getDeclineFilters().getRefuseSeconds(), 0.0);
+    }
+
+    @Test
+    public void testReviveOnDemandIncrease() {
+        // The first update revives, as a previous scheduler instance may have left Offers suppressed.
+        demandTracker.updateDemand(mockSchedulerDriver, 2);
+        verify(mockSchedulerDriver, times(1)).reviveOffers();
+
+        // Demand which is being worked off does not revive.
+        demandTracker.updateDemand(mockSchedulerDriver, 1);
+        verify(mockSchedulerDriver, times(1)).reviveOffers();
+
+        demandTracker.updateDemand(mockSchedulerDriver, 2);
+        verify(mockSchedulerDriver, times(2)).reviveOffers();
+
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        demandTracker.updateDemand(mockSchedulerDriver, 1);
+        verify(mockSchedulerDriver, times(1)).suppressOffers();
+        verify(mockSchedulerDriver, times(3)).reviveOffers();
+        Assert.assertFalse(demandTracker.isSuppressed());
+    }
+
+    @Test
+    public void testDeclineFilterGrowsUntilOffersAreUsed() {
+        demandTracker.updateDemand(mockSchedulerDriver, 1);
+        Assert.assertEquals(1.0, demandTracker.getDeclineFilters().getRefuseSeconds(), 0.0);
+
+        demandTracker.now += 10000;
+        Assert.assertEquals(10.0, demandTracker.getDeclineFilters().getRefuseSeconds(), 0.0);
+
+        demandTracker.now += 60000;
+        Assert.assertEquals(30.0, demandTracker.getDeclineFilters().getRefuseSeconds(), 0.0);
+
+        demandTracker.offersUsed();
+        Assert.assertEquals(1.0, demandTracker.getDeclineFilters().getRefuseSeconds(), 0.0);
+
+        // New demand resets the filter, as reviving clears the filters already applied.
+        demandTracker.now += 20000;
+        demandTracker.updateDemand(mockSchedulerDriver, 2);
+        Assert.assertEquals(1.0, demandTracker.getDeclineFilters().getRefuseSeconds(), 0.0);
+    }
+
+    @Test
+    public void testReviveForCleanupWithoutDemand() {
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        verify(mockSchedulerDriver, times(1)).suppressOffers();
+
+        demandTracker.now += Duration.ofMinutes(10).toMillis() - 1;
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        verify(mockSchedulerDriver, never()).reviveOffers();
+
+        // Offers are revived once per cleanup interval, so that leaked resources are offered to be cleaned up.
+        demandTracker.now += 1;
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        verify(mockSchedulerDriver, times(1)).reviveOffers();
+        Assert.assertFalse(demandTracker.isSuppressed());
+
+        // They stay revived for the maximum decline filter, after which they are suppressed again.
+        demandTracker.now += 29999;
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        verify(mockSchedulerDriver, times(1)).suppressOffers();
+        demandTracker.now += 1;
+        demandTracker.updateDemand(mockSchedulerDriver, 0);
+        verify(mockSchedulerDriver, times(2)).suppressOffers();
+        verify(mockSchedulerDriver, times(1)).reviveOffers();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRefuseDurations() {
+        new OfferDemandTracker(Duration.ofSeconds(10), Duration.ofSeconds(5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCleanupInterval() {
+        new OfferDemandTracker(Duration.ofSeconds(1), Duration.ofSeconds(60), Duration.ofSeconds(60));
+    }
+
+    private static class TestOfferDemandTracker extends OfferDemandTracker {
+        private long now = 0;
+
+        private TestOfferDemandTracker(Duration minRefuse, Duration maxRefuse) {
+            super(minRefuse, maxRefuse);
+        }
+
+        @Override
+        protected long getCurrentTimeMs() {
+            return now;
+        }
+    }
+}
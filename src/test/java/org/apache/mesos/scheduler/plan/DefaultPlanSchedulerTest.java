@@ -5,8 +5,12 @@ import org.apache.mesos.Protos.Offer.Operation;
 import org.apache.mesos.SchedulerDriver;
 import org.apache.mesos.offer.*;
 import org.apache.mesos.scheduler.TaskKiller;
+import org.apache.mesos.testutils.OfferRequirementTestUtils;
+import org.apache.mesos.testutils.OfferTestUtils;
+import org.apache.mesos.testutils.ResourceTestUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -111,6 +115,77 @@ public class DefaultPlanSchedulerTest {
         assertTrue(block.isInProgress());
     }
 
+    @Test
+    public void testEvaluateMultipleBlocks() throws InvalidRequirementException {
+        Offer offer = OfferTestUtils.getOffer(ResourceTestUtils.getUnreservedCpu(2.0));
+        List<Offer> offers = Arrays.asList(offer);
+        List<TestOfferBlock> blocks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            OfferRequirement requirement =
+                    OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0));
+            blocks.add((TestOfferBlock) new TestOfferBlock(requirement).setStatus(Status.PENDING));
+        }
+        when(mockOfferAccepter.accept(eq(mockSchedulerDriver), anyListOf(OfferRecommendation.class)))
+                .thenReturn(Arrays.asList(offer.getId()));
+
+        scheduler = new DefaultPlanScheduler(mockOfferAccepter, new OfferEvaluator(), mockTaskKiller);
+        assertEquals(
+                Arrays.asList(offer.getId()),
+                scheduler.resourceOffersForBlocks(mockSchedulerDriver, offers, new ArrayList<>(blocks)));
+
+        // The first two blocks share the offer and are accepted together, the third no longer fits.
+        ArgumentCaptor<List> recommendations = ArgumentCaptor.forClass(List.class);
+        verify(mockOfferAccepter, times(1)).accept(eq(mockSchedulerDriver), recommendations.capture());
+        assertEquals(4, recommendations.getValue().size());
+        assertTrue(blocks.get(0).isInProgress());
+        assertTrue(blocks.get(1).isInProgress());
+        assertTrue(blocks.get(2).isPending());
+        assertTrue(blocks.get(2).operations.isEmpty());
+    }
+
+    @Test
+    public void testUpdateKillsOneTaskPerCycle() throws InvalidRequirementException {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            OfferRequirement requirement =
+                    OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0));
+            blocks.add(new DefaultBlock("block-" + i, requirement, Status.PENDING, true));
+        }
+        when(mockOfferEvaluator.evaluate(
+                any(OfferRequirement.class), any(OfferIndex.class), anyMapOf(OfferID.class, MesosResourcePool.class)))
+                .thenReturn(Collections.emptyList());
+        PhaseStrategy strategy = new DefaultInstallStrategy(DefaultPhase.create(UUID.randomUUID(), "phase", blocks));
+
+        List<Block> currentBlocks = strategy.getCurrentBlocks();
+        assertEquals(Arrays.asList(blocks.get(0)), currentBlocks);
+        scheduler.resourceOffersForBlocks(mockSchedulerDriver, OFFERS, currentBlocks);
+        verify(mockTaskKiller, times(1)).killTask(anyString(), eq(false));
+
+        blocks.get(0).forceComplete();
+        assertEquals(Arrays.asList(blocks.get(1)), strategy.getCurrentBlocks());
+    }
+
+    @Test
+    public void testInstallBlocksExecuteTogether() throws InvalidRequirementException {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            OfferRequirement requirement =
+                    OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0));
+            blocks.add(new DefaultBlock("block-" + i, requirement, Status.PENDING));
+        }
+        blocks.add(new DefaultBlock("replacing-block",
+                OfferRequirementTestUtils.getOfferRequirement(ResourceTestUtils.getDesiredCpu(1.0)),
+                Status.PENDING,
+                true));
+        PhaseStrategy strategy = new DefaultInstallStrategy(DefaultPhase.create(UUID.randomUUID(), "phase", blocks));
+
+        assertEquals(blocks.subList(0, 3), strategy.getCurrentBlocks());
+        for (int i = 0; i < 3; i++) {
+            blocks.get(i).forceComplete();
+        }
+        assertEquals(blocks.subList(3, 4), strategy.getCurrentBlocks());
+    }
+
     private static class TestOfferBlock extends TestBlock {
         private final OfferRequirement requirement;
         private Collection<Operation> operations;
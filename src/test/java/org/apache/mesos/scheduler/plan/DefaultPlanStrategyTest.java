@@ -4,7 +4,9 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.Assert;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -44,6 +46,55 @@ public class DefaultPlanStrategyTest {
         Assert.assertEquals(block1, strategy.getCurrentBlock().get());
     }
 
+    @Test
+    public void testCurrentBlocks() {
+        TestBlock block0 = (TestBlock)phase.getBlock(0);
+        TestBlock block1 = (TestBlock)phase.getBlock(1);
+
+        Assert.assertTrue(strategy.getCurrentBlocks().isEmpty());
+        strategy.proceed();
+        Assert.assertEquals(Arrays.asList(block0), strategy.getCurrentBlocks());
+
+        block0.setStatus(Status.COMPLETE);
+        strategy.proceed();
+        Assert.assertEquals(Arrays.asList(block1), strategy.getCurrentBlocks());
+
+        DefaultInstallStrategy installStrategy = new DefaultInstallStrategy(phase);
+        Assert.assertEquals(Arrays.asList(block1), installStrategy.getCurrentBlocks());
+        block0.setStatus(Status.PENDING);
+        Assert.assertEquals(Arrays.asList(block0, block1), installStrategy.getCurrentBlocks());
+        installStrategy.interrupt();
+        Assert.assertTrue(installStrategy.getCurrentBlocks().isEmpty());
+    }
+
+    @Test
+    public void testCurrentBlocksRollsReplacingBlocksOneAtATime() {
+        List<Block> blocks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            blocks.add(new TestBlock() {
+                @Override
+                public boolean replacesTasks() {
+                    return true;
+                }
+            });
+        }
+        DefaultStageStrategy stageStrategy =
+                new DefaultStageStrategy(DefaultPhase.create(UUID.randomUUID(), "phase-1", blocks));
+
+        // Approve both canary blocks.
+        stageStrategy.proceed();
+        Assert.assertEquals(Arrays.asList(blocks.get(0)), stageStrategy.getCurrentBlocks());
+        ((TestBlock) blocks.get(0)).setStatus(Status.COMPLETE);
+        stageStrategy.proceed();
+        Assert.assertEquals(Arrays.asList(blocks.get(1)), stageStrategy.getCurrentBlocks());
+        ((TestBlock) blocks.get(1)).setStatus(Status.COMPLETE);
+
+        // The remaining blocks need no further approval, but are still rolled one at a time.
+        Assert.assertEquals(Arrays.asList(blocks.get(2)), stageStrategy.getCurrentBlocks());
+        ((TestBlock) blocks.get(2)).setStatus(Status.COMPLETE);
+        Assert.assertEquals(Arrays.asList(blocks.get(3)), stageStrategy.getCurrentBlocks());
+    }
+
     @Test
     public void testRestart() {
         TestBlock block0 = (TestBlock)phase.getBlock(0);
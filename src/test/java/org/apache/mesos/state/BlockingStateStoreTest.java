@@ -0,0 +1,66 @@
+package org.apache.mesos.state;
+
+import org.apache.mesos.Protos;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests to validate the operation of the {@link BlockingStateStore}.
+ */
+public class BlockingStateStoreTest {
+    @Mock private AsyncStateStore mockAsyncStateStore;
+    private StateStore store;
+
+    @Before
+    public void beforeEach() {
+        MockitoAnnotations.initMocks(this);
+        store = new BlockingStateStore(mockAsyncStateStore);
+    }
+
+    @Test
+    public void testReturnsResult() {
+        Collection<String> taskNames = Arrays.asList("a", "b");
+        when(mockAsyncStateStore.fetchTaskNames()).thenReturn(CompletableFuture.completedFuture(taskNames));
+        assertEquals(taskNames, store.fetchTaskNames());
+    }
+
+    @Test
+    public void testRethrowsStateStoreException() {
+        StateStoreException exception = new StateStoreException("test");
+        when(mockAsyncStateStore.clearTask("a")).thenReturn(failed(exception));
+        try {
+            store.clearTask("a");
+            fail("Expected exception");
+        } catch (StateStoreException e) {
+            assertSame(exception, e);
+        }
+    }
+
+    @Test
+    public void testWrapsOtherExceptions() {
+        IllegalStateException exception = new IllegalStateException("test");
+        when(mockAsyncStateStore.storeFrameworkId(Protos.FrameworkID.getDefaultInstance()))
+                .thenReturn(failed(exception));
+        try {
+            store.storeFrameworkId(Protos.FrameworkID.getDefaultInstance());
+            fail("Expected exception");
+        } catch (StateStoreException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    private static CompletableFuture<Void> failed(Throwable e) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+}
@@ -0,0 +1,228 @@
+package org.apache.mesos.storage;
+
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.mesos.testing.CuratorTestUtils;
+import org.apache.zookeeper.KeeperException;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the operation of the {@link CuratorPersister}.
+ */
+public class CuratorPersisterTest {
+    private static TestingServer testZk;
+    private CuratorPersister persister;
+
+    @BeforeClass
+    public static void beforeAll() throws Exception {
+        testZk = new TestingServer();
+    }
+
+    @Before
+    public void beforeEach() throws Exception {
+        CuratorTestUtils.clear(testZk);
+        persister = new CuratorPersister(testZk.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+    }
+
+    @After
+    public void afterEach() {
+        persister.close();
+    }
+
+    @Test
+    public void testStoreAllCreatesParents() throws Exception {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        values.put("/root/a/info", toBytes("a-info"));
+        values.put("/root/a/status", toBytes("a-status"));
+        values.put("/root/b/info", toBytes("b-info"));
+        persister.storeAll(values);
+
+        assertEquals("a-info", fetchString("/root/a/info"));
+        assertEquals("a-status", fetchString("/root/a/status"));
+        assertEquals("b-info", fetchString("/root/b/info"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(persister.getChildren("/root")));
+    }
+
+    @Test
+    public void testStoreAllUpdatesAndCreates() throws Exception {
+        persister.store("/root/a/info", toBytes("old"));
+
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        values.put("/root/a/info", toBytes("new"));
+        values.put("/root/a/status", toBytes("status"));
+        persister.storeAll(values);
+        assertEquals("new", fetchString("/root/a/info"));
+        assertEquals("status", fetchString("/root/a/status"));
+
+        // All nodes exist now, so only updates are needed.
+        values.put("/root/a/status", toBytes("updated"));
+        persister.storeAll(values);
+        assertEquals("updated", fetchString("/root/a/status"));
+    }
+
+    @Test
+    public void testStoreAllEmpty() throws Exception {
+        persister.storeAll(Collections.emptyMap());
+        assertTrue(persister.getChildren("/").contains("zookeeper"));
+    }
+
+    @Test
+    public void testFetchAll() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 600; i++) {
+            String path = "/root/" + i;
+            paths.add(path);
+            if (i % 3 != 0) {
+                persister.store(path, toBytes(String.valueOf(i)));
+            }
+        }
+
+        Map<String, byte[]> pathsToBytes = persister.fetchAll(paths);
+        assertEquals(400, pathsToBytes.size());
+        for (int i = 0; i < 600; i++) {
+            byte[] bytes = pathsToBytes.get("/root/" + i);
+            if (i % 3 == 0) {
+                assertNull(bytes);
+            } else {
+                assertEquals(String.valueOf(i), new String(bytes, StandardCharsets.UTF_8));
+            }
+        }
+
+        assertTrue(persister.fetchAll(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testFetchIfPresent() throws Exception {
+        persister.store("/root/a/info", toBytes("a-info"));
+        assertEquals("a-info", new String(persister.fetchIfPresent("/root/a/info").get(), StandardCharsets.UTF_8));
+        assertFalse(persister.fetchIfPresent("/root/missing").isPresent());
+    }
+
+    @Test
+    public void testAsyncStoreFetchClear() throws Exception {
+        persister.storeAsync("/root/a/info", toBytes("created")).join();
+        assertEquals("created", new String(persister.fetchAsync("/root/a/info").join(), StandardCharsets.UTF_8));
+        persister.storeAsync("/root/a/info", toBytes("updated")).join();
+        assertEquals("updated", fetchString("/root/a/info"));
+        assertEquals(Arrays.asList("info"), new ArrayList<>(persister.getChildrenAsync("/root/a").join()));
+
+        persister.clearAsync("/root").join();
+        assertFalse(persister.getChildren("/").contains("root"));
+    }
+
+    @Test
+    public void testAsyncFetchMissing() throws Exception {
+        try {
+            persister.fetchAsync("/missing").join();
+            fail("Expected exception");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof KeeperException.NoNodeException);
+        }
+    }
+
+    @Test
+    public void testCompareAndSet() throws Exception {
+        persister.store("/root", new byte[0]);
+        persister.compareAndSet("/root/a", new VersionedData(toBytes("created"), VersionedData.ABSENT));
+        VersionedData created = persister.fetchVersioned("/root/a");
+        assertEquals("created", new String(created.getData(), StandardCharsets.UTF_8));
+
+        persister.compareAndSet("/root/a", new VersionedData(toBytes("updated"), created.getVersion()));
+        assertEquals("updated", fetchString("/root/a"));
+
+        try {
+            persister.compareAndSet("/root/a", new VersionedData(toBytes("stale"), created.getVersion()));
+            fail("Expected exception");
+        } catch (KeeperException.BadVersionException e) {
+            // expected
+        }
+        try {
+            persister.compareAndSet("/root/a", new VersionedData(toBytes("stale"), VersionedData.ABSENT));
+            fail("Expected exception");
+        } catch (KeeperException.NodeExistsException e) {
+            // expected
+        }
+        assertEquals("updated", fetchString("/root/a"));
+    }
+
+    @Test
+    public void testCompareAndSetAllIsAtomic() throws Exception {
+        persister.store("/root/a", toBytes("a"));
+        VersionedData a = persister.fetchVersioned("/root/a");
+        persister.store("/root/a", toBytes("a-concurrent"));
+
+        Map<String, VersionedData> values = new LinkedHashMap<>();
+        values.put("/root/b", new VersionedData(toBytes("b"), VersionedData.ABSENT));
+        values.put("/root/a", new VersionedData(toBytes("a-stale"), a.getVersion()));
+        try {
+            persister.compareAndSetAll(values);
+            fail("Expected exception");
+        } catch (KeeperException.BadVersionException e) {
+            // expected
+        }
+        assertEquals("a-concurrent", fetchString("/root/a"));
+        assertEquals(Arrays.asList("a"), new ArrayList<>(persister.getChildren("/root")));
+
+        int version = persister.fetchVersioned("/root/a").getVersion();
+        values.put("/root/a", new VersionedData(toBytes("a-updated"), version));
+        persister.compareAndSetAll(values);
+        Map<String, VersionedData> fetched = persister.fetchAllVersioned(Arrays.asList("/root/a", "/root/b"));
+        assertEquals("a-updated", new String(fetched.get("/root/a").getData(), StandardCharsets.UTF_8));
+        assertEquals("b", new String(fetched.get("/root/b").getData(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testAsyncCompareAndSet() throws Exception {
+        persister.store("/root", new byte[0]);
+        persister.compareAndSetAsync("/root/a", new VersionedData(toBytes("created"), VersionedData.ABSENT)).join();
+        VersionedData created = persister.fetchVersionedAsync("/root/a").join();
+        persister.compareAndSetAsync("/root/a", new VersionedData(toBytes("updated"), created.getVersion())).join();
+        try {
+            persister.compareAndSetAsync("/root/a", new VersionedData(toBytes("stale"), created.getVersion())).join();
+            fail("Expected exception");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof KeeperException.BadVersionException);
+        }
+        assertEquals("updated", fetchString("/root/a"));
+    }
+
+    @Test
+    public void testCompareAndSetAllRequiresPaths() throws Exception {
+        persister.store("/root/required", toBytes("required"));
+        Map<String, VersionedData> values = new LinkedHashMap<>();
+        values.put("/root/a", new VersionedData(toBytes("a"), VersionedData.ABSENT));
+        persister.compareAndSetAll(values, Arrays.asList("/root/required"));
+        assertEquals("a", fetchString("/root/a"));
+
+        values.put("/root/b", new VersionedData(toBytes("b"), VersionedData.ABSENT));
+        values.remove("/root/a");
+        try {
+            persister.compareAndSetAll(values, Arrays.asList("/root/required", "/root/missing"));
+            fail("Expected exception");
+        } catch (KeeperException.NoNodeException e) {
+            // expected
+        }
+        assertEquals(new HashSet<>(Arrays.asList("a", "required")), new HashSet<>(persister.getChildren("/root")));
+    }
+
+    @Test
+    public void testCreateIfAbsentAsync() throws Exception {
+        persister.createIfAbsentAsync("/root/a", toBytes("created")).join();
+        persister.createIfAbsentAsync("/root/a", toBytes("ignored")).join();
+        assertEquals("created", fetchString("/root/a"));
+    }
+
+    private String fetchString(String path) throws Exception {
+        return new String(persister.fetch(path), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
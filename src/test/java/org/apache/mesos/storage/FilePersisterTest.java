@@ -0,0 +1,221 @@
+package org.apache.mesos.storage;
+
+import org.apache.zookeeper.KeeperException;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests to validate the operation of the {@link FilePersister}.
+ */
+public class FilePersisterTest {
+    private static final int SEGMENT_BYTES = 4096;
+    private static final long COMPACTION_BYTES = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+    private FilePersister persister;
+
+    @Before
+    public void beforeEach() throws Exception {
+        directory = folder.getRoot().toPath().resolve("log");
+        persister = open();
+    }
+
+    @After
+    public void afterEach() {
+        persister.close();
+    }
+
+    @Test
+    public void testStoreCreatesParents() throws Exception {
+        persister.store("/root/a/info", toBytes("a-info"));
+        persister.store("/root/b", toBytes("b"));
+
+        assertEquals("a-info", fetchString("/root/a/info"));
+        assertEquals(0, persister.fetch("/root/a").length);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(persister.getChildren("/root")));
+        assertEquals(Arrays.asList("root"), new ArrayList<>(persister.getChildren("/")));
+        assertTrue(persister.getChildren("/root/b").isEmpty());
+    }
+
+    @Test
+    public void testClearDeletesChildren() throws Exception {
+        persister.store("/root/a/info", toBytes("a-info"));
+        persister.store("/root/ab", toBytes("ab"));
+        persister.clear("/root/a");
+
+        assertEquals(Arrays.asList("ab"), new ArrayList<>(persister.getChildren("/root")));
+        assertTrue(persister.fetchAll(Arrays.asList("/root/a", "/root/a/info")).isEmpty());
+    }
+
+    @Test(expected = KeeperException.NoNodeException.class)
+    public void testFetchMissing() throws Exception {
+        persister.fetch("/missing");
+    }
+
+    @Test(expected = KeeperException.NoNodeException.class)
+    public void testClearMissing() throws Exception {
+        persister.clear("/missing");
+    }
+
+    @Test(expected = KeeperException.NoNodeException.class)
+    public void testGetChildrenMissing() throws Exception {
+        persister.getChildren("/missing");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStoreInvalidPath() throws Exception {
+        persister.store("root/", toBytes("invalid"));
+    }
+
+    @Test
+    public void testReopenReplaysLog() throws Exception {
+        Map<String, byte[]> values = new LinkedHashMap<>();
+        values.put("/root/a", toBytes("a"));
+        values.put("/root/b", toBytes("b"));
+        persister.storeAll(values);
+        persister.store("/root/a", toBytes("a-updated"));
+        persister.store("/root/c/d", toBytes("d"));
+        persister.clear("/root/c");
+
+        persister.close();
+        persister = open();
+        assertEquals("a-updated", fetchString("/root/a"));
+        assertEquals("b", fetchString("/root/b"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(persister.getChildren("/root")));
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            persister.store("/root/" + (i % 10), toBytes("value-" + i));
+        }
+        assertEquals(1, listFiles(".snap").size());
+        assertTrue(listFiles(".log").size() <= COMPACTION_BYTES / SEGMENT_BYTES + 1);
+
+        persister.close();
+        persister = open();
+        for (int i = 0; i < 10; i++) {
+            assertEquals("value-" + (990 + i), fetchString("/root/" + i));
+        }
+        assertEquals(10, persister.getChildren("/root").size());
+    }
+
+    @Test
+    public void testRecordLargerThanSegment() throws Exception {
+        byte[] large = new byte[3 * SEGMENT_BYTES];
+        Arrays.fill(large, (byte) 7);
+        persister.store("/root/small", toBytes("small"));
+        persister.store("/root/large", large);
+        persister.store("/root/after", toBytes("after"));
+
+        persister.close();
+        persister = open();
+        assertArrayEquals(large, persister.fetch("/root/large"));
+        assertEquals("small", fetchString("/root/small"));
+        assertEquals("after", fetchString("/root/after"));
+    }
+
+    @Test
+    public void testCorruptTailIsDiscarded() throws Exception {
+        persister.store("/root/a", toBytes("a-value"));
+        persister.store("/root/b", toBytes("b-value"));
+        persister.close();
+
+        // Flip a byte of the last record, as if it was partially written:
+        Path segmentPath = listFiles(".log").get(0);
+        byte[] segment = Files.readAllBytes(segmentPath);
+        int offset = indexOf(segment, toBytes("b-value"));
+        segment[offset] ^= 1;
+        Files.write(segmentPath, segment);
+
+        persister = open();
+        assertEquals("a-value", fetchString("/root/a"));
+        assertTrue(persister.fetchAll(Arrays.asList("/root/b")).isEmpty());
+
+        persister.store("/root/c", toBytes("c"));
+        persister.close();
+        persister = open();
+        assertEquals(new HashSet<>(Arrays.asList("a", "c")), new HashSet<>(persister.getChildren("/root")));
+    }
+
+    @Test
+    public void testTornRecordIsDiscardedBeforeRollover() throws Exception {
+        persister.store("/root/a", toBytes("a-value"));
+        persister.store("/root/b", toBytes("a-much-longer-b-value"));
+        persister.close();
+
+        // Zero the length of the last record, as if the process stopped before it was written last:
+        Path segmentPath = listFiles(".log").get(0);
+        byte[] segment = Files.readAllBytes(segmentPath);
+        // The length and CRC precede the record type, the value count and the length of the path.
+        int offset = indexOf(segment, toBytes("/root/b")) - Short.BYTES - Integer.BYTES - 1 - 2 * Integer.BYTES;
+        Arrays.fill(segment, offset, offset + Integer.BYTES, (byte) 0);
+        Files.write(segmentPath, segment);
+
+        persister = open();
+        assertTrue(persister.fetchAll(Arrays.asList("/root/b")).isEmpty());
+        // A shorter record followed by one which doesn't fit, so the segment ends after the remains of the torn one:
+        persister.store("/root/c", toBytes("c"));
+        persister.store("/root/d", new byte[SEGMENT_BYTES]);
+        assertEquals(2, listFiles(".log").size());
+
+        persister.close();
+        persister = open();
+        assertEquals("a-value", fetchString("/root/a"));
+        assertEquals("c", fetchString("/root/c"));
+        assertEquals(new HashSet<>(Arrays.asList("a", "c", "d")), new HashSet<>(persister.getChildren("/root")));
+    }
+
+    @Test
+    public void testFetchReturnsCopy() throws Exception {
+        persister.store("/root/a", toBytes("a-value"));
+        persister.fetch("/root/a")[0] = 'x';
+        persister.fetchAll(Arrays.asList("/root/a")).get("/root/a")[1] = 'x';
+        assertEquals("a-value", fetchString("/root/a"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() throws Exception {
+        persister.close();
+        persister.fetch("/");
+    }
+
+    private FilePersister open() throws IOException {
+        return new FilePersister(directory, false, SEGMENT_BYTES, COMPACTION_BYTES);
+    }
+
+    private List<Path> listFiles(String suffix) throws IOException {
+        return Files.list(directory)
+                .filter(path -> path.toString().endsWith(suffix))
+                .collect(Collectors.toList());
+    }
+
+    private String fetchString(String path) throws Exception {
+        return new String(persister.fetch(path), StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + target.length), target)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Not found");
+    }
+
+    private static byte[] toBytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
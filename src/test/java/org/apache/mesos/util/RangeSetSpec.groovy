@@ -0,0 +1,136 @@
+package org.apache.mesos.util
+
+import org.apache.mesos.Protos.Value
+import spock.lang.Specification
+
+/**
+ * Test RangeSet and MutableRangeSet.
+ */
+class RangeSetSpec extends Specification {
+
+  def "adjacent and overlapping ranges are coalesced"() {
+    when:
+    def rangeSet = new MutableRangeSet()
+        .add(5, 7)
+        .add(1, 2)
+        .add(3, 4)
+        .add(10, 12)
+        .add(6, 11)
+        .toRangeSet()
+
+    then:
+    rangeSet == RangeSet.of(1, 12)
+    rangeSet.getRangeCount() == 1
+    rangeSet.size() == 12
+  }
+
+  def "ranges added before all existing ranges are coalesced"() {
+    expect:
+    new MutableRangeSet().add(10, 20).add(5, 9).toString() == "[5-20]"
+    new MutableRangeSet().add(3, 3).add(2, 2).toString() == "[2-3]"
+    new MutableRangeSet().add(3, 3).add(1, 1).toString() == "[1-1, 3-3]"
+    new MutableRangeSet().add(10, 20).add(1, 30).toString() == "[1-30]"
+  }
+
+  def "unsorted input is normalized"() {
+    given:
+    def ranges = Value.Ranges.newBuilder()
+        .addRange(Value.Range.newBuilder().setBegin(20).setEnd(30))
+        .addRange(Value.Range.newBuilder().setBegin(5).setEnd(9))
+        .addRange(Value.Range.newBuilder().setBegin(10).setEnd(12))
+        .addRange(Value.Range.newBuilder().setBegin(1).setEnd(2))
+        .build()
+
+    expect:
+    RangeSet.of(ranges).toString() == "[1-2, 5-12, 20-30]"
+    Algorithms.createRanges(Arrays.asList(3, 2, 1)) == RangeSet.of(1, 3).toRanges()
+  }
+
+  def "empty ranges are ignored"() {
+    when:
+    def rangeSet = new MutableRangeSet().add(5, 4).toRangeSet()
+
+    then:
+    rangeSet.isEmpty()
+    rangeSet == RangeSet.empty()
+  }
+
+  def "union of disjoint sets"() {
+    given:
+    def r1 = RangeSet.of(1, 3).union(RangeSet.of(10, 12))
+    def r2 = RangeSet.of(5, 7)
+
+    when:
+    def union = r1.union(r2)
+
+    then:
+    union.getRangeCount() == 3
+    union.toString() == "[1-3, 5-7, 10-12]"
+    union == r2.union(r1)
+  }
+
+  def "difference splits ranges"() {
+    given:
+    def minuend = RangeSet.of(1, 20)
+    def subtrahend = RangeSet.of(5, 6).union(RangeSet.of(10, 25))
+
+    when:
+    def difference = minuend.difference(subtrahend)
+
+    then:
+    difference.toString() == "[1-4, 7-9]"
+    minuend.difference(minuend).isEmpty()
+  }
+
+  def "remove splits ranges"() {
+    when:
+    def rangeSet = new MutableRangeSet().add(1, 10).add(20, 30)
+    rangeSet.remove(5, 22)
+
+    then:
+    rangeSet.toString() == "[1-4, 23-30]"
+    !rangeSet.contains(5)
+    rangeSet.contains(23)
+    rangeSet.size() == 12
+  }
+
+  def "containment"() {
+    given:
+    def rangeSet = RangeSet.of(1, 5).union(RangeSet.of(10, 15))
+
+    expect:
+    rangeSet.contains(1)
+    !rangeSet.contains(7)
+    rangeSet.contains(10, 15)
+    !rangeSet.contains(4, 10)
+    rangeSet.containsAll(RangeSet.of(2, 3).union(RangeSet.of(11, 12)))
+    !rangeSet.containsAll(RangeSet.of(5, 10))
+    rangeSet.containsAll(RangeSet.empty())
+  }
+
+  def "values beyond the int range are preserved"() {
+    given:
+    long large = Integer.MAX_VALUE + 10L
+
+    when:
+    def rangeSet = RangeSet.of(large, large + 5).union(RangeSet.of(large + 6, Long.MAX_VALUE))
+
+    then:
+    rangeSet.getRangeCount() == 1
+    rangeSet.getBegin(0) == large
+    rangeSet.getEnd(0) == Long.MAX_VALUE
+    rangeSet.contains(Long.MAX_VALUE)
+    !rangeSet.contains(Integer.MAX_VALUE)
+    rangeSet.difference(RangeSet.of(Long.MAX_VALUE, Long.MAX_VALUE)).getEnd(0) == Long.MAX_VALUE - 1
+  }
+
+  def "conversion to and from protobuf"() {
+    given:
+    def rangeSet = RangeSet.of(1, 3).union(RangeSet.of(8, 9))
+
+    expect:
+    RangeSet.of(rangeSet.toProto()) == rangeSet
+    Algorithms.countValuesInRanges(rangeSet.toRanges()) == 5
+    Algorithms.createRanges(Arrays.asList(3, 1, 2, 9, 8)) == rangeSet.toRanges()
+  }
+}